@@ -36,6 +36,7 @@ import java.io.DataOutputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.SortedMap;
@@ -100,17 +101,6 @@ public class JoinCostPrecomputer extends VoiceImportComponent {
 		System.out.println("Will retain the top " + retainPercent + "% (but at least " + retainMin
 				+ ") of all joins within a phone");
 
-		/* Make a new join cost file to write to */
-		DataOutputStream jc = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(getProp(JOINCOSTFILE))));
-
-		/**********/
-		/* HEADER */
-		/**********/
-		/* Make a new mary header and ouput it */
-		MaryHeader hdr = new MaryHeader(MaryHeader.PRECOMPUTED_JOINCOSTS);
-		hdr.writeTo(jc);
-		hdr = null;
-
 		FeatureFileReader unitFeatures = FeatureFileReader.getFeatureFileReader(getProp(UNITFEATURESFILE));
 		JoinCostFeatures joinFeatures = new JoinCostFeatures(getProp(JOINCOSTFEATURESFILE));
 		UnitFileReader units = new UnitFileReader(getProp(UNITFILE));
@@ -149,25 +139,31 @@ public class JoinCostPrecomputer extends VoiceImportComponent {
 		for (int i = 0; i < nPhonemes; i++) {
 			totalLeftUnits += left[i].size();
 		}
-		jc.writeInt(totalLeftUnits);
+		// the retained joins for each left unit, sorted by right unit index:
+		int[][] rightUnits = new int[numUnits][];
+		float[][] costs = new float[numUnits][];
+		int totalEntries = 0;
 		for (int i = 0; i < nPhonemes; i++) {
 			String phoneSymbol = def.getFeatureValueAsString(iPhoneme, i);
 			int nLeftPhoneme = left[i].size();
 			int nRightPhoneme = right[i].size();
 			System.out.println(phoneSymbol + ": " + nLeftPhoneme + " left, " + nRightPhoneme + " right half phones");
+			int[] rightIndices = new int[nRightPhoneme];
+			for (int k = 0; k < nRightPhoneme; k++) {
+				rightIndices[k] = ((Unit) right[i].get(k)).index;
+			}
+			double[] rowCosts = new double[nRightPhoneme];
 			for (int j = 0; j < nLeftPhoneme; j++) {
 				Unit uleft = (Unit) left[i].get(j);
 				SortedMap sortedCosts = new TreeMap();
 				int ileft = uleft.index;
 				// System.out.println("Left unit "+j+" (index "+ileft+")");
-				jc.writeInt(ileft);
+				joinFeatures.cost(ileft, rightIndices, rowCosts);
 				// Now for this left halfphone, compute the cost of joining to each
 				// right halfphones of the same phone, and remember only the best.
 				for (int k = 0; k < nRightPhoneme; k++) {
 					Unit uright = (Unit) right[i].get(k);
-					int iright = uright.index;
-					// System.out.println("right unit "+k+" (index "+iright+")");
-					double cost = joinFeatures.cost(ileft, iright);
+					double cost = rowCosts[k];
 					Double dCost = new Double(cost);
 					// make sure we don't overwrite any existing entry:
 					if (!sortedCosts.containsKey(dCost)) {
@@ -189,7 +185,8 @@ public class JoinCostPrecomputer extends VoiceImportComponent {
 					nRetain = retainMin;
 				if (nRetain > nRightPhoneme)
 					nRetain = nRightPhoneme;
-				jc.writeInt(nRetain);
+				// Retained joins as (right index, cost bits) pairs packed into longs, to be sorted by right index:
+				long[] retained = new long[nRetain];
 				Iterator it = sortedCosts.keySet().iterator();
 				for (int k = 0; k < nRetain;) {
 					Double cost = (Double) it.next();
@@ -198,8 +195,7 @@ public class JoinCostPrecomputer extends VoiceImportComponent {
 					if (ob instanceof Unit) {
 						Unit u = (Unit) ob;
 						int iright = u.index;
-						jc.writeInt(iright);
-						jc.writeFloat(fcost);
+						retained[k] = pack(iright, fcost);
 						k++;
 					} else {
 						assert ob instanceof List;
@@ -207,20 +203,84 @@ public class JoinCostPrecomputer extends VoiceImportComponent {
 						for (Iterator li = l.iterator(); k < nRetain && li.hasNext();) {
 							Unit u = (Unit) li.next();
 							int iright = u.index;
-							jc.writeInt(iright);
-							jc.writeFloat(fcost);
+							retained[k] = pack(iright, fcost);
 							k++;
 						}
 					}
 				}
+				Arrays.sort(retained);
+				rightUnits[ileft] = new int[nRetain];
+				costs[ileft] = new float[nRetain];
+				for (int k = 0; k < nRetain; k++) {
+					rightUnits[ileft][k] = (int) (retained[k] >>> 32);
+					costs[ileft][k] = Float.intBitsToFloat((int) retained[k]);
+				}
+				totalEntries += nRetain;
 			}
 			percent += 100 * nLeftPhoneme / totalLeftUnits;
 		}
-		jc.close();
+		writeJoinCostTable(getProp(JOINCOSTFILE), rightUnits, costs, totalEntries);
 		PrecompiledJoinCostReader tester = new PrecompiledJoinCostReader(getProp(JOINCOSTFILE));
 		return true;
 	}
 
+	private static long pack(int rightIndex, float cost) {
+		return ((long) rightIndex << 32) | (Float.floatToRawIntBits(cost) & 0xffffffffL);
+	}
+
+	/**
+	 * Write the join costs as a compressed sparse row table, in the format read by {@link PrecompiledJoinCostReader}.
+	 * 
+	 * @param fileName
+	 *            the file to write
+	 * @param rightUnits
+	 *            for each left unit index, the sorted indices of the right units it can join, or null
+	 * @param costs
+	 *            for each left unit index, the costs of joining the right units, or null
+	 * @param totalEntries
+	 *            the total number of joins
+	 * @throws IOException
+	 *             if the file cannot be written
+	 */
+	static void writeJoinCostTable(String fileName, int[][] rightUnits, float[][] costs, int totalEntries) throws IOException {
+		int numUnits = rightUnits.length;
+		DataOutputStream jc = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName)));
+		try {
+			/* Make a new mary header and ouput it */
+			new MaryHeader(MaryHeader.PRECOMPUTED_JOINCOSTS_TABLE).writeTo(jc);
+			jc.writeInt(numUnits);
+			jc.writeInt(totalEntries);
+			/* Row offsets */
+			int offset = 0;
+			for (int i = 0; i < numUnits; i++) {
+				jc.writeInt(offset);
+				if (rightUnits[i] != null) {
+					offset += rightUnits[i].length;
+				}
+			}
+			jc.writeInt(offset);
+			assert offset == totalEntries;
+			/* Right unit indices */
+			for (int i = 0; i < numUnits; i++) {
+				if (rightUnits[i] != null) {
+					for (int r : rightUnits[i]) {
+						jc.writeInt(r);
+					}
+				}
+			}
+			/* Costs */
+			for (int i = 0; i < numUnits; i++) {
+				if (costs[i] != null) {
+					for (float c : costs[i]) {
+						jc.writeFloat(c);
+					}
+				}
+			}
+		} finally {
+			jc.close();
+		}
+	}
+
 	/**
 	 * Provide the progress of computation, in percent, or -1 if that feature is not implemented.
 	 * 
@@ -0,0 +1,211 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.cart;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import marytts.cart.DecisionNode.BinaryByteDecisionNode;
+import marytts.cart.DecisionNode.BinaryFloatDecisionNode;
+import marytts.cart.DecisionNode.BinaryShortDecisionNode;
+import marytts.cart.DecisionNode.ByteDecisionNode;
+import marytts.cart.DecisionNode.ShortDecisionNode;
+import marytts.cart.LeafNode.IntArrayLeafNode;
+import marytts.features.FeatureDefinition;
+import marytts.features.FeatureVector;
+import marytts.modules.phonemiser.AllophoneSet;
+import marytts.tools.newlanguage.LTSTrainer;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * The compiled form of a CART must lead to the same nodes as the object tree. The trees are a letter-to-sound tree trained on the
+ * test lexicon of {@link marytts.tools.newlanguage.LTSTrainerTest}, which only has byte decision nodes, and a hand-built tree with
+ * every type of decision node.
+ */
+public class CompiledCARTTest {
+	private static final int[] MIN_NUMBER_OF_DATA = { 0, 1, 5, 20, 100 };
+
+	private static CART tree;
+	private static List<FeatureVector> featureVectors;
+
+	@BeforeClass
+	public static void trainTree() throws Exception {
+		AllophoneSet allophoneSet = AllophoneSet.getAllophoneSet(
+				CompiledCARTTest.class.getResourceAsStream("/marytts/tools/newlanguage/allophones.it.xml"), "test");
+		LTSTrainer trainer = new LTSTrainer(allophoneSet, true, true, 2);
+		BufferedReader lexicon = new BufferedReader(new InputStreamReader(
+				CompiledCARTTest.class.getResourceAsStream("/marytts/tools/newlanguage/LTS_test.it.txt"), "UTF-8"));
+		try {
+			trainer.readLexicon(lexicon, "\\s");
+		} finally {
+			lexicon.close();
+		}
+		for (int i = 0; i < 5; i++) {
+			trainer.alignIteration();
+		}
+		tree = trainer.trainTree(10);
+
+		// random feature vectors, which reach all parts of the tree:
+		FeatureDefinition fd = tree.getFeatureDefinition();
+		Random random = new Random(42);
+		featureVectors = new ArrayList<FeatureVector>();
+		for (int i = 0; i < 20000; i++) {
+			byte[] bytes = new byte[fd.getNumberOfByteFeatures()];
+			for (int f = 0; f < bytes.length; f++) {
+				bytes[f] = (byte) random.nextInt(fd.getNumberOfValues(f));
+			}
+			short[] shorts = new short[fd.getNumberOfShortFeatures()];
+			for (int f = 0; f < shorts.length; f++) {
+				shorts[f] = (short) random.nextInt(fd.getNumberOfValues(bytes.length + f));
+			}
+			featureVectors.add(fd.toFeatureVector(i, bytes, shorts, new float[fd.getNumberOfContinuousFeatures()]));
+		}
+	}
+
+	@Test
+	public void compiledTreeReachesSameNodes() {
+		assertNull(tree.getCompiledCART());
+		Node[][] expected = new Node[MIN_NUMBER_OF_DATA.length][featureVectors.size()];
+		for (int m = 0; m < MIN_NUMBER_OF_DATA.length; m++) {
+			for (int i = 0; i < featureVectors.size(); i++) {
+				expected[m][i] = tree.interpretToNode(featureVectors.get(i), MIN_NUMBER_OF_DATA[m]);
+			}
+		}
+		Object[] expectedData = new Object[featureVectors.size()];
+		for (int i = 0; i < featureVectors.size(); i++) {
+			expectedData[i] = tree.interpret(featureVectors.get(i));
+		}
+
+		CompiledCART compiled = tree.compile();
+		assertSame(compiled, tree.getCompiledCART());
+		for (int i = 0; i < featureVectors.size(); i++) {
+			FeatureVector fv = featureVectors.get(i);
+			for (int m = 0; m < MIN_NUMBER_OF_DATA.length; m++) {
+				assertNotNull(expected[m][i]);
+				assertSame(expected[m][i], tree.interpretToNode(fv, MIN_NUMBER_OF_DATA[m]));
+			}
+			assertSame(expected[0][i] instanceof LeafNode ? expected[0][i] : null, compiled.interpretToLeaf(fv));
+			// leaves return their data arrays, not copies:
+			assertSame(expectedData[i], tree.interpret(fv));
+		}
+
+		tree.setRootNode(tree.getRootNode());
+		assertNull(tree.getCompiledCART());
+	}
+
+	@Test
+	public void compiledTreeWithAllNodeTypesReachesSameNodes() throws Exception {
+		FeatureDefinition fd = new FeatureDefinition(new BufferedReader(new StringReader("ByteValuedFeatureProcessors\n"
+				+ "phone 0 a e i o u\n" + "stress 0 1 2\n" + "ShortValuedFeatureProcessors\n" + "syllables 0 1 2 3\n"
+				+ "pos 0 n v adj\n" + "ContinuousFeatureProcessors\n" + "duration\n")), false);
+		DecisionNode root = new ByteDecisionNode("phone", 6, fd);
+		// phone 0:
+		DecisionNode byStress = new BinaryByteDecisionNode("stress", "1", fd);
+		byStress.addDaughter(leaf(1));
+		byStress.addDaughter(leaf(2));
+		root.addDaughter(byStress);
+		// phone a:
+		DecisionNode bySyllables = new BinaryShortDecisionNode("syllables", "2", fd);
+		DecisionNode byDuration = new BinaryFloatDecisionNode("duration", 0.1f, fd);
+		byDuration.addDaughter(leaf(3));
+		byDuration.addDaughter(leaf(8));
+		bySyllables.addDaughter(byDuration);
+		bySyllables.addDaughter(leaf(4));
+		root.addDaughter(bySyllables);
+		// phone e, with an empty daughter:
+		DecisionNode byPos = new ShortDecisionNode("pos", 4, fd);
+		byPos.addDaughter(leaf(5));
+		byPos.addDaughter(leaf(1));
+		byPos.addDaughter(null);
+		byPos.addDaughter(leaf(7));
+		root.addDaughter(byPos);
+		// phone i, a float test on a byte feature:
+		DecisionNode byStressValue = new BinaryFloatDecisionNode("stress", 1.5f, fd);
+		byStressValue.addDaughter(leaf(6));
+		byStressValue.addDaughter(leaf(2));
+		root.addDaughter(byStressValue);
+		// phone o has no subtree:
+		root.addDaughter(null);
+		// phone u:
+		root.addDaughter(leaf(9));
+		root.countData();
+		CART handBuilt = new CART(root, fd);
+
+		List<FeatureVector> vectors = new ArrayList<FeatureVector>();
+		for (byte phone = 0; phone < 6; phone++) {
+			for (byte stress = 0; stress < 3; stress++) {
+				for (short syllables = 0; syllables < 4; syllables++) {
+					for (short pos = 0; pos < 4; pos++) {
+						for (float duration : new float[] { 0.05f, 0.1f, 0.2f }) {
+							vectors.add(fd.toFeatureVector(vectors.size(), new byte[] { phone, stress }, new short[] { syllables,
+									pos }, new float[] { duration }));
+						}
+					}
+				}
+			}
+		}
+		int[] minNumberOfData = { 0, 1, 2, 4, 7, 10, 100 };
+		Node[][] expected = new Node[minNumberOfData.length][vectors.size()];
+		for (int m = 0; m < minNumberOfData.length; m++) {
+			for (int i = 0; i < vectors.size(); i++) {
+				expected[m][i] = handBuilt.interpretToNode(vectors.get(i), minNumberOfData[m]);
+			}
+		}
+
+		CompiledCART compiled = handBuilt.compile();
+		assertEquals(17, compiled.getNumberOfNodes());
+		for (int i = 0; i < vectors.size(); i++) {
+			FeatureVector fv = vectors.get(i);
+			for (int m = 0; m < minNumberOfData.length; m++) {
+				assertSame(i + "/" + minNumberOfData[m], expected[m][i], handBuilt.interpretToNode(fv, minNumberOfData[m]));
+			}
+			LeafNode leaf = compiled.interpretToLeaf(fv);
+			assertSame(expected[0][i] instanceof LeafNode ? expected[0][i] : null, leaf);
+		}
+		// vectors are ordered by phone (144 each), stress (48), syllables (12), pos (3) and duration:
+		assertSame(byStress.getDaughter(0), compiled.interpretToLeaf(vectors.get(48)));
+		assertSame(byStress.getDaughter(1), compiled.interpretToLeaf(vectors.get(96)));
+		assertSame(byDuration.getDaughter(0), compiled.interpretToLeaf(vectors.get(144 + 2 * 12)));
+		assertSame(byDuration.getDaughter(1), compiled.interpretToLeaf(vectors.get(144 + 2 * 12 + 1)));
+		assertSame(bySyllables.getDaughter(1), compiled.interpretToLeaf(vectors.get(144 + 12)));
+		assertSame(byPos.getDaughter(3), compiled.interpretToLeaf(vectors.get(2 * 144 + 3 * 3)));
+		assertSame(byStressValue.getDaughter(0), compiled.interpretToLeaf(vectors.get(3 * 144 + 48)));
+		assertSame(byStressValue.getDaughter(1), compiled.interpretToLeaf(vectors.get(3 * 144 + 2 * 48)));
+		assertNull(compiled.interpretToLeaf(vectors.get(2 * 144 + 2 * 3)));
+		assertSame(byPos, compiled.interpretToNode(vectors.get(2 * 144 + 2 * 3), 0));
+		assertNull(compiled.interpretToLeaf(vectors.get(4 * 144)));
+		assertSame(root, compiled.interpretToNode(vectors.get(4 * 144), 0));
+	}
+
+	private static LeafNode leaf(int numberOfData) {
+		return new IntArrayLeafNode(new int[numberOfData]);
+	}
+}
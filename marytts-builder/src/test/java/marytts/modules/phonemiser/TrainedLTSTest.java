@@ -0,0 +1,140 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.modules.phonemiser;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import marytts.cart.CART;
+import marytts.cart.LeafNode.StringAndFloatLeafNode;
+import marytts.features.FeatureDefinition;
+import marytts.features.FeatureVector;
+import marytts.tools.newlanguage.LTSTrainer;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * The lookup tables of {@link TrainedLTS} must give the same predictions as looking up every grapheme in the feature definition.
+ * The model is trained on the test lexicon of {@link marytts.tools.newlanguage.LTSTrainerTest}.
+ */
+public class TrainedLTSTest {
+	private static AllophoneSet allophoneSet;
+	private static CART tree;
+	private static TrainedLTS lts;
+	private static List<String> words;
+
+	@BeforeClass
+	public static void trainModel() throws Exception {
+		allophoneSet = AllophoneSet.getAllophoneSet(
+				TrainedLTSTest.class.getResourceAsStream("/marytts/tools/newlanguage/allophones.it.xml"), "test");
+		LTSTrainer trainer = new LTSTrainer(allophoneSet, true, true, 2);
+		words = new ArrayList<String>();
+		BufferedReader lexicon = new BufferedReader(new InputStreamReader(
+				TrainedLTSTest.class.getResourceAsStream("/marytts/tools/newlanguage/LTS_test.it.txt"), "UTF-8"));
+		try {
+			String line;
+			while ((line = lexicon.readLine()) != null) {
+				words.add(line.split("\\s")[0]);
+			}
+		} finally {
+			lexicon.close();
+		}
+		lexicon = new BufferedReader(new InputStreamReader(
+				TrainedLTSTest.class.getResourceAsStream("/marytts/tools/newlanguage/LTS_test.it.txt"), "UTF-8"));
+		try {
+			trainer.readLexicon(lexicon, "\\s");
+		} finally {
+			lexicon.close();
+		}
+		for (int i = 0; i < 5; i++) {
+			trainer.alignIteration();
+		}
+		tree = trainer.trainTree(10);
+		lts = new TrainedLTS(allophoneSet, tree);
+	}
+
+	/**
+	 * The prediction as done before the lookup tables: each grapheme is looked up in the feature definition, and unknown ones are
+	 * replaced by "null".
+	 */
+	private static String referencePrediction(String graphemes) {
+		FeatureDefinition fd = tree.getFeatureDefinition();
+		int context = Integer.parseInt(tree.getProperties().getProperty("context"));
+		if (Boolean.parseBoolean(tree.getProperties().getProperty("lowercase"))) {
+			graphemes = graphemes.toLowerCase(allophoneSet.getLocale());
+		}
+		String result = "";
+		for (int i = 0; i < graphemes.length(); i++) {
+			byte[] byteFeatures = new byte[2 * context + 1];
+			for (int fnr = 0; fnr < 2 * context + 1; fnr++) {
+				int pos = i - context + fnr;
+				String grAtPos = (pos < 0 || pos >= graphemes.length()) ? "null" : graphemes.substring(pos, pos + 1);
+				try {
+					byteFeatures[fnr] = fd.getFeatureValueAsByte(fnr, grAtPos);
+				} catch (IllegalArgumentException iae) {
+					byteFeatures[fnr] = fd.getFeatureValueAsByte(fnr, "null");
+				}
+			}
+			FeatureVector fv = new FeatureVector(byteFeatures, new short[] {}, new float[] {}, 0);
+			StringAndFloatLeafNode leaf = (StringAndFloatLeafNode) tree.interpretToNode(fv, 0);
+			String prediction = leaf.mostProbableString(fd, fd.getFeatureIndex(TrainedLTS.PREDICTED_STRING_FEATURENAME));
+			result += prediction.substring(1, prediction.length() - 1);
+		}
+		return result;
+	}
+
+	@Test
+	public void lexiconWords() {
+		for (String word : words) {
+			assertEquals(word, referencePrediction(word), lts.predictPronunciation(word));
+		}
+	}
+
+	@Test
+	public void unknownCharacters() {
+		// unknown characters, including characters beyond the lookup tables, upper case, and surrogate pairs:
+		String[] unknown = { "", "x", "Perch\u00e9", "ABIURATO", "stra\u00dfe", "a-b c", "42", "a.b", "\u03c9mega",
+				"\u65e5\u672c\u8a9e", "a\uffffb", "\u0100bc", "ab\ud83d\ude00", "\u0000" };
+		for (String word : unknown) {
+			assertEquals(word, referencePrediction(word), lts.predictPronunciation(word));
+		}
+	}
+
+	@Test
+	public void batchPredictsEachWord() {
+		List<String> batch = new ArrayList<String>(words);
+		batch.add("");
+		batch.add("\u65e5\u672c\u8a9e");
+		batch.add("a\uffffb");
+		batch.add("ABIURATO");
+		String[] input = batch.toArray(new String[batch.size()]);
+		String[] expected = new String[input.length];
+		for (int i = 0; i < input.length; i++) {
+			expected[i] = referencePrediction(input[i]);
+		}
+		assertArrayEquals(expected, lts.predictPronunciations(input));
+	}
+}
@@ -0,0 +1,134 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.tools.voiceimport;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import marytts.unitselection.select.PrecompiledJoinCostReader;
+import marytts.util.data.MaryHeader;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * A join cost table written by {@link JoinCostPrecomputer} must give the same costs as the same joins written in the older list
+ * format.
+ */
+public class JoinCostPrecomputerTest {
+	private static final int NUM_UNITS = 60;
+
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	@Test
+	public void tableGivesCostsOfLists() throws Exception {
+		Random random = new Random(455);
+		int[][] rightUnits = new int[NUM_UNITS][];
+		float[][] costs = new float[NUM_UNITS][];
+		int totalEntries = 0;
+		// the last unit is never a left unit, so that its row is empty in the table and missing from the lists:
+		for (int left = 0; left < NUM_UNITS - 1; left++) {
+			if (random.nextInt(3) == 0) {
+				continue; // a unit that is never a left unit
+			}
+			List<Integer> rights = new ArrayList<Integer>();
+			for (int right = 0; right < NUM_UNITS; right++) {
+				if (random.nextInt(4) == 0) {
+					rights.add(right);
+				}
+			}
+			rightUnits[left] = new int[rights.size()];
+			costs[left] = new float[rights.size()];
+			for (int k = 0; k < rights.size(); k++) {
+				rightUnits[left][k] = rights.get(k);
+				costs[left][k] = random.nextFloat();
+			}
+			totalEntries += rights.size();
+		}
+
+		File table = tmp.newFile("joinCosts.mry");
+		JoinCostPrecomputer.writeJoinCostTable(table.getPath(), rightUnits, costs, totalEntries);
+		assertEquals(MaryHeader.PRECOMPUTED_JOINCOSTS_TABLE, MaryHeader.peekFileType(table.getPath()));
+		File lists = tmp.newFile("joinCostLists.mry");
+		writeJoinCostLists(lists, rightUnits, costs, random);
+		assertEquals(MaryHeader.PRECOMPUTED_JOINCOSTS, MaryHeader.peekFileType(lists.getPath()));
+
+		PrecompiledJoinCostReader fromTable = new PrecompiledJoinCostReader(table.getPath());
+		PrecompiledJoinCostReader fromLists = new PrecompiledJoinCostReader(lists.getPath());
+		for (int left = -1; left <= NUM_UNITS; left++) {
+			for (int right = -1; right <= NUM_UNITS; right++) {
+				double expected = Double.POSITIVE_INFINITY;
+				if (left >= 0 && left < NUM_UNITS && rightUnits[left] != null) {
+					for (int k = 0; k < rightUnits[left].length; k++) {
+						if (rightUnits[left][k] == right) {
+							expected = costs[left][k];
+						}
+					}
+				}
+				assertEquals(left + "-" + right, expected, fromTable.cost(left, right), 0);
+				assertEquals(left + "-" + right, expected, fromLists.cost(left, right), 0);
+			}
+		}
+	}
+
+	/*
+	 * The older format, as written before the table: the left units in no particular order, each with its right units in order
+	 * of cost rather than of index.
+	 */
+	private static void writeJoinCostLists(File file, int[][] rightUnits, float[][] costs, Random random) throws Exception {
+		List<Integer> lefts = new ArrayList<Integer>();
+		for (int left = 0; left < rightUnits.length; left++) {
+			if (rightUnits[left] != null) {
+				lefts.add(left);
+			}
+		}
+		Collections.shuffle(lefts, random);
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		try {
+			new MaryHeader(MaryHeader.PRECOMPUTED_JOINCOSTS).writeTo(out);
+			out.writeInt(lefts.size());
+			for (int left : lefts) {
+				out.writeInt(left);
+				out.writeInt(rightUnits[left].length);
+				List<Integer> order = new ArrayList<Integer>();
+				for (int k = 0; k < rightUnits[left].length; k++) {
+					order.add(k);
+				}
+				Collections.shuffle(order, random);
+				for (int k : order) {
+					out.writeInt(rightUnits[left][k]);
+					out.writeFloat(costs[left][k]);
+				}
+			}
+		} finally {
+			out.close();
+		}
+	}
+}
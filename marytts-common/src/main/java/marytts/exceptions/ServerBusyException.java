@@ -0,0 +1,42 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.exceptions;
+
+/**
+ * Thrown when a request cannot be admitted for processing because the server is saturated, i.e. all synthesis workers are busy
+ * and the waiting queue is full, or the request has waited longer than the configured queue timeout.
+ */
+public class ServerBusyException extends Exception {
+	private int retryAfterSeconds;
+
+	public ServerBusyException(String message, int retryAfterSeconds) {
+		super(message);
+		this.retryAfterSeconds = retryAfterSeconds;
+	}
+
+	/**
+	 * The number of seconds after which the client may retry the request.
+	 * 
+	 * @return retryAfterSeconds
+	 */
+	public int getRetryAfterSeconds() {
+		return retryAfterSeconds;
+	}
+}
@@ -19,42 +19,73 @@
  */
 package marytts.fst;
 
-import java.io.BufferedInputStream;
-import java.io.DataInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
-import java.util.ArrayList;
 
 /**
  * An implementation of a finite state transducer. This class does nothing but load and represent the FST. It is used by other
  * classes doing something reasonable with it.
+ * <p>
+ * The arcs are used in place, in the binary layout of the FST file, so that an FST can be memory-mapped from its file (see
+ * {@link #mapFile(String)}) instead of being read onto the heap. Only the labels, which are few, are decoded into strings.
  * 
  * @author Andreas Eisele
  */
 public class FST {
-	// The following variables are package-readable, so that they can be
-	// directly accessed by all classes in this package.
-	int[] targets;
-	short[] labels;
-	boolean[] isLast;
-
-	short[] offsets;
-	byte[] bytes;
-	int[] mapping;
-	ArrayList strings = new ArrayList();
+	// Each arc is an int: the target in bits 0-19, the label in bits 20-30, and whether it is the last arc of its state in bit 31.
+	private IntBuffer arcs;
+	// The strings of the input and output side of each label:
+	private String[] inputLabels;
+	private String[] outputLabels;
+	private boolean mapped;
 
+	/**
+	 * Load the fst from the given file onto the heap. Assumes header.
+	 * 
+	 * @param fileName
+	 *            the name of the file
+	 * @throws IOException
+	 *             IOException
+	 */
 	public FST(String fileName) throws IOException {
 		FileInputStream fis = new FileInputStream(fileName);
 		try {
-			load(fis);
+			load(ByteBuffer.wrap(readFully(fis)));
 		} finally {
 			fis.close();
 		}
 	}
 
+	/**
+	 * Memory-map the fst from the given file, which must have a header. The file must not be modified while the FST is in use.
+	 * 
+	 * @param fileName
+	 *            the name of the file
+	 * @return the fst, traversed in place in the mapped file
+	 * @throws IOException
+	 *             IOException
+	 */
+	public static FST mapFile(String fileName) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(fileName, "r");
+		try {
+			FileChannel channel = file.getChannel();
+			// the mapping stays valid after the channel is closed:
+			FST fst = new FST(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+			fst.mapped = true;
+			return fst;
+		} finally {
+			file.close();
+		}
+	}
+
 	/**
 	 * Load the fst from the given input stream. Assumes header.
 	 * 
@@ -64,7 +95,19 @@ public class FST {
 	 *             IOException
 	 */
 	public FST(InputStream inStream) throws IOException {
-		load(inStream);
+		load(ByteBuffer.wrap(readFully(inStream)));
+	}
+
+	/**
+	 * Use the fst in the given buffer, such as a memory-mapped file, in place. Assumes header.
+	 * 
+	 * @param buffer
+	 *            the fst, from the buffer's position to its limit; must not be modified while the FST is in use.
+	 * @throws IOException
+	 *             if the buffer does not contain a valid FST
+	 */
+	public FST(ByteBuffer buffer) throws IOException {
+		load(buffer);
 	}
 
 	/**
@@ -117,7 +160,7 @@ public class FST {
 	public FST(String fileName, String encoding, boolean verbose) throws IOException, UnsupportedEncodingException {
 		FileInputStream fis = new FileInputStream(fileName);
 		try {
-			loadHeaderless(fis, encoding, verbose);
+			loadHeaderless(ByteBuffer.wrap(readFully(fis)), encoding, verbose);
 		} finally {
 			fis.close();
 		}
@@ -136,123 +179,118 @@ public class FST {
 	 *             UnsupportedEncodingException
 	 */
 	public FST(InputStream inStream, String encoding) throws IOException, UnsupportedEncodingException {
-		loadHeaderless(inStream, encoding, false);
+		loadHeaderless(ByteBuffer.wrap(readFully(inStream)), encoding, false);
 	}
 
-	private void load(InputStream inStream) throws IOException, UnsupportedEncodingException {
-		int i;
-		DataInputStream in = new DataInputStream(new BufferedInputStream(inStream));
-		// int fileSize= (int) f.length();
-		int fileSize = in.available(); // TODO: how robust is this??
+	/**
+	 * @return whether this FST is memory-mapped from its file, rather than held on the heap
+	 */
+	public boolean isMapped() {
+		return mapped;
+	}
 
-		int encLen = in.readInt();
-		byte[] encBytes = new byte[encLen];
+	/**
+	 * @return the number of arcs
+	 */
+	public int getNumberOfArcs() {
+		return arcs.limit();
+	}
 
-		in.read(encBytes, 0, encLen);
-		String encoding = new String(encBytes, "UTF-8");
+	int getTarget(int arc) {
+		return arcs.get(arc) & 1048575;
+	}
 
-		if (!Charset.isSupported(encoding))
-			throw new IOException("Encoding of FST file not correctly specified. Maybe file in old format.");
+	int getLabel(int arc) {
+		return (arcs.get(arc) >> 20) & 2047;
+	}
 
-		int overallBits = in.readInt();
-		int arcOffBits = in.readInt();
+	boolean isLast(int arc) {
+		return arcs.get(arc) < 0;
+	}
 
-		// System.out.println("bits: " + overallBits + "-" + arcOffBits);
+	String getInput(int label) {
+		return inputLabels[label];
+	}
 
-		// todo: allow for more flexibility
-		if (overallBits != 32 || arcOffBits != 20) {
-			throw new IOException("Cannot handle non-standard bit allocation for label and arc id's.");
-		}
+	String getOutput(int label) {
+		return outputLabels[label];
+	}
 
-		int nArcs = in.readInt();
-		// arcs = new int[nArcs];
+	private static byte[] readFully(InputStream inStream) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(inStream.available(), 8192));
+		byte[] buf = new byte[8192];
+		int n;
+		while ((n = inStream.read(buf)) != -1) {
+			out.write(buf, 0, n);
+		}
+		return out.toByteArray();
+	}
 
-		targets = new int[nArcs];
-		labels = new short[nArcs];
-		isLast = new boolean[nArcs];
+	private void load(ByteBuffer buffer) throws IOException, UnsupportedEncodingException {
+		ByteBuffer in = buffer.slice();
+		int encLen = in.getInt();
+		if (encLen < 0 || encLen > in.remaining())
+			throw new IOException("Encoding of FST file not correctly specified. Maybe file in old format.");
+		byte[] encBytes = new byte[encLen];
+		in.get(encBytes);
+		String encoding = new String(encBytes, "UTF-8");
 
-		for (i = 0; i < nArcs; i++) {
-			int thisArc = in.readInt();
+		if (!Charset.isSupported(encoding))
+			throw new IOException("Encoding of FST file not correctly specified. Maybe file in old format.");
 
-			targets[i] = thisArc & 1048575;
-			labels[i] = (short) ((thisArc >> 20) & 2047);
-			isLast[i] = ((byte) (thisArc >> 31)) != 0;
+		int overallBits = in.getInt();
+		int arcOffBits = in.getInt();
 
+		// todo: allow for more flexibility
+		if (overallBits != 32 || arcOffBits != 20) {
+			throw new IOException("Cannot handle non-standard bit allocation for label and arc id's.");
 		}
-
-		int nPairs = in.readInt();
-		offsets = new short[2 * nPairs];
-		for (i = 0; i < 2 * nPairs; i++)
-			offsets[i] = in.readShort();
-		// int nBytes = fileSize - 8 - 4 * (nPairs + nArcs);
-		int nBytes = fileSize - 20 - encLen - 4 * (nPairs + nArcs);
-		mapping = new int[nBytes];
-		bytes = new byte[nBytes];
-		in.readFully(bytes);
-		assert in.available() == 0 : "Partial file read... not good";
-
-		in.close();
-		createMapping(mapping, bytes, encoding);
+		loadHeaderless(in.slice(), encoding, false);
 	}
 
-	private void loadHeaderless(InputStream inStream, String encoding, boolean verbose) throws IOException,
+	private void loadHeaderless(ByteBuffer buffer, String encoding, boolean verbose) throws IOException,
 			UnsupportedEncodingException {
-		int i;
-		DataInputStream in = new DataInputStream(new BufferedInputStream(inStream));
-		// int fileSize= (int) f.length();
-		int fileSize = in.available(); // TODO: how robust is this??
-		int nArcs = in.readInt();
-		// arcs = new int[nArcs];
-
-		targets = new int[nArcs];
-		labels = new short[nArcs];
-		isLast = new boolean[nArcs];
+		ByteBuffer in = buffer.slice();
+		int fileSize = in.remaining();
+		int nArcs = in.getInt();
+		if (nArcs < 0 || 4L * nArcs > in.remaining())
+			throw new IOException("Invalid FST: " + nArcs + " arcs in " + fileSize + " bytes");
+		ByteBuffer arcBytes = in.slice();
+		arcBytes.limit(4 * nArcs);
+		arcs = arcBytes.asIntBuffer();
+		in.position(in.position() + 4 * nArcs);
 
-		for (i = 0; i < nArcs; i++) {
-			int thisArc = in.readInt();
-
-			targets[i] = thisArc & 1048575;
-			labels[i] = (short) ((thisArc >> 20) & 2047);
-			isLast[i] = ((byte) (thisArc >> 31)) != 0;
-
-		}
-
-		int nPairs = in.readInt();
-		offsets = new short[2 * nPairs];
-		for (i = 0; i < 2 * nPairs; i++)
-			offsets[i] = in.readShort();
-		int nBytes = fileSize - 8 - 4 * (nPairs + nArcs);
-		mapping = new int[nBytes];
-		bytes = new byte[nBytes];
-		in.readFully(bytes);
+		int nPairs = in.getInt();
+		short[] offsets = new short[2 * nPairs];
+		for (int i = 0; i < 2 * nPairs; i++)
+			offsets[i] = in.getShort();
+		ByteBuffer bytes = in.slice();
 		if (verbose) {
 			System.err.println("FST (" + fileSize + " Bytes, " + nArcs + " Arcs, " + nPairs + " Labels)" + " loaded");
 		}
-		in.close();
-		createMapping(mapping, bytes, encoding);
+		inputLabels = new String[nPairs];
+		outputLabels = new String[nPairs];
+		for (int i = 0; i < nPairs; i++) {
+			inputLabels[i] = getString(bytes, offsets[2 * i] & 0xffff, encoding);
+			outputLabels[i] = getString(bytes, offsets[2 * i + 1] & 0xffff, encoding);
+		}
 	}
 
-	private void createMapping(int[] mapping, byte[] bytes, String encoding) throws UnsupportedEncodingException {
-		mapping[0] = 0;
-		int last0 = -1;
-		String s;
-		int len;
-		for (int i = 0; i < bytes.length; i++) {
-			if (bytes[i] == 0) {
-				len = i - last0 - 1;
-				if (len == 0)
-					strings.add("");
-				else {
-					String str;
-					if (encoding != null)
-						str = new String(bytes, last0 + 1, len, encoding);
-					else
-						str = new String(bytes, last0 + 1, len);
-					strings.add(str);
-				}
-				mapping[last0 + 1] = strings.size() - 1;
-				last0 = i;
-			}
+	/**
+	 * Decode the zero-terminated string starting at the given offset.
+	 */
+	private static String getString(ByteBuffer bytes, int offset, String encoding) throws UnsupportedEncodingException {
+		int end = offset;
+		while (bytes.get(end) != 0) {
+			end++;
+		}
+		byte[] b = new byte[end - offset];
+		for (int i = 0; i < b.length; i++) {
+			b[i] = bytes.get(offset + i);
 		}
+		if (encoding != null)
+			return new String(b, encoding);
+		else
+			return new String(b);
 	}
 }
@@ -20,15 +20,16 @@
 package marytts.fst;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * An implementation of a finite state transducer lookup.
@@ -40,7 +41,7 @@ public class FSTLookup {
 	/**
 	 * Map "filename encoding" or "filename" to FST.
 	 */
-	private static Map<String, FST> knownFSTs = new HashMap<String, FST>();
+	private static ConcurrentMap<String, FST> knownFSTs = new ConcurrentHashMap<String, FST>();
 
 	// //////////////////// An individual FSTLookup class //////////////
 
@@ -48,7 +49,7 @@ public class FSTLookup {
 
 	/**
 	 * Initialise the finite state transducer lookup. This constructor will assume that the file contains a header indicating the
-	 * proper encoding.
+	 * proper encoding. The file is read onto the heap every time, so the lookup reflects the current content of the file.
 	 * 
 	 * @param fileName
 	 *            the name of the file from which to load the FST.
@@ -56,12 +57,36 @@ public class FSTLookup {
 	 *             if the FST cannot be loaded from the given file.
 	 */
 	public FSTLookup(String fileName) throws IOException {
-		InputStream inStream = new FileInputStream(fileName);
-		try {
-			init(inStream, fileName);
-		} finally {
-			inStream.close();
+		fst = new FST(fileName);
+	}
+
+	private FSTLookup(FST fst) {
+		this.fst = fst;
+	}
+
+	/**
+	 * Get a finite state transducer lookup for the given file, which must contain a header indicating the proper encoding. The
+	 * file is memory-mapped, and the mapping is shared by all lookups of the same file, so the file must not be modified while
+	 * the program is running. This is meant for lexicons loaded at startup; use {@link #FSTLookup(String)} for files that may
+	 * change.
+	 * 
+	 * @param fileName
+	 *            the name of the file from which to map the FST.
+	 * @return a lookup using the mapped FST
+	 * @throws IOException
+	 *             if the FST cannot be mapped from the given file.
+	 */
+	public static FSTLookup mapFile(String fileName) throws IOException {
+		String key = new File(fileName).getCanonicalPath();
+		FST fst = knownFSTs.get(key);
+		if (fst == null) {
+			FST newFST = FST.mapFile(fileName);
+			fst = knownFSTs.putIfAbsent(key, newFST);
+			if (fst == null) {
+				fst = newFST;
+			}
 		}
+		return new FSTLookup(fst);
 	}
 
 	/**
@@ -82,10 +107,12 @@ public class FSTLookup {
 	private void init(InputStream inStream, String identifier) throws IOException {
 		fst = knownFSTs.get(identifier);
 		if (fst == null) {
-			fst = new FST(inStream);
-			knownFSTs.put(identifier, fst);
+			FST newFST = new FST(inStream);
+			fst = knownFSTs.putIfAbsent(identifier, newFST);
+			if (fst == null) {
+				fst = newFST;
+			}
 		}
-
 	}
 
 	/**
@@ -131,8 +158,11 @@ public class FSTLookup {
 		String key = identifier + " " + encoding;
 		fst = knownFSTs.get(key);
 		if (fst == null) {
-			fst = new FST(inStream, encoding);
-			knownFSTs.put(key, fst);
+			FST newFST = new FST(inStream, encoding);
+			fst = knownFSTs.putIfAbsent(key, newFST);
+			if (fst == null) {
+				fst = newFST;
+			}
 		}
 	}
 
@@ -170,7 +200,7 @@ public class FSTLookup {
 
 	private void lookup(String word, int offset1, int arc, boolean generate, StringBuilder buffer2, List<String> results) {
 		do {
-			int label = fst.labels[arc];
+			int label = fst.getLabel(arc);
 			int offset2 = buffer2.length();
 			if (label == 0) {
 				if (offset1 == word.length()) {
@@ -179,22 +209,22 @@ public class FSTLookup {
 			} else {
 				String s1;
 				if (generate)
-					s1 = (String) fst.strings.get(fst.mapping[fst.offsets[2 * label + 1]]);
+					s1 = fst.getOutput(label);
 				else
-					s1 = (String) fst.strings.get(fst.mapping[fst.offsets[2 * label]]);
+					s1 = fst.getInput(label);
 				if (word.startsWith(s1, offset1)) {
 					String s2;
 					if (generate)
-						s2 = (String) fst.strings.get(fst.mapping[fst.offsets[2 * label]]);
+						s2 = fst.getInput(label);
 					else
-						s2 = (String) fst.strings.get(fst.mapping[fst.offsets[2 * label + 1]]);
+						s2 = fst.getOutput(label);
 					buffer2.append(s2);
-					lookup(word, offset1 + s1.length(), fst.targets[arc], generate, buffer2, results);
+					lookup(word, offset1 + s1.length(), fst.getTarget(arc), generate, buffer2, results);
 					if (offset2 < buffer2.length())
 						buffer2.delete(offset2, buffer2.length());
 				}
 			}
-		} while (!fst.isLast[arc++]);
+		} while (!fst.isLast(arc++));
 	}
 
 	/**
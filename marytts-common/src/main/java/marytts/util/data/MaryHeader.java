@@ -57,6 +57,7 @@ public class MaryHeader {
 	public final static int UNKNOWN = 0;
 	public final static int CARTS = 100;
 	public final static int DIRECTED_GRAPH = 110;
+	public final static int HMM_VOICE_SNAPSHOT = 120;
 	public final static int UNITS = 200;
 	public final static int LISTENERUNITS = 225;
 	public final static int UNITFEATS = 300;
@@ -65,6 +66,7 @@ public class MaryHeader {
 	public final static int JOINFEATS = 400;
 	public final static int SCOST = 445;
 	public final static int PRECOMPUTED_JOINCOSTS = 450;
+	public final static int PRECOMPUTED_JOINCOSTS_TABLE = 455;
 	public final static int TIMELINE = 500;
 
 	/* Private fields */
@@ -0,0 +1,110 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package marytts.fst;
+
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class FSTLookupTest {
+	private static final String[] LEXICON = { "haus|' h aU s|NN", "hausen|' h aU . z @ n|VV", "maus|' m aU s|NN", "mause|' m aU . z @|VV",
+			"laus|' l aU s", "lausen|' l aU . z @ n", "bauch|' b aU x|NN", "baum|' b aU m|NN", "bäume|' b OY . m @|NN",
+			"straße|' S t r a: . s @|NN", "ab|' a p", "aber|' ?a: . b 6|KON" };
+
+	private static final String[] OTHER_WORDS = { "", "h", "hau", "hauses", "mäuse", "xyz", "haus ", "bäum", "ab|" };
+
+	private static File writeFST(String[] lexicon) throws IOException {
+		StringBuilder lines = new StringBuilder();
+		for (String entry : lexicon) {
+			lines.append(entry).append('\n');
+		}
+		AlignerTrainer at = new AlignerTrainer(false, true);
+		at.readLexicon(new BufferedReader(new StringReader(lines.toString())), "\\s*\\|\\s*");
+		for (int i = 0; i < 4; i++) {
+			at.alignIteration();
+		}
+		TransducerTrie t = new TransducerTrie();
+		for (int i = 0, size = at.lexiconSize(); i < size; i++) {
+			t.add(at.getAlignment(i));
+			t.add(at.getInfoAlignment(i));
+		}
+		t.computeMinimization();
+		File file = File.createTempFile("lexicon", ".fst");
+		file.deleteOnExit();
+		DataOutputStream os = new DataOutputStream(new FileOutputStream(file));
+		try {
+			t.writeFST(os, "UTF-8");
+		} finally {
+			os.close();
+		}
+		return file;
+	}
+
+	private static void assertSameLookups(FSTLookup expected, FSTLookup actual, String word) {
+		Assert.assertEquals(actual.lookup(word), expected.lookup(word), word);
+		Assert.assertEquals(actual.lookup(word, true), expected.lookup(word, true), word + " (generate)");
+	}
+
+	@Test
+	public void mappedLookupEqualsHeapLookup() throws IOException {
+		File file = writeFST(LEXICON);
+		FSTLookup heap = new FSTLookup(file.getPath());
+		FSTLookup mapped = FSTLookup.mapFile(file.getPath());
+		Assert.assertEquals(heap.lookup("haus"), new String[] { "' h aU s" });
+		for (String entry : LEXICON) {
+			String[] parts = entry.split("\\|");
+			assertSameLookups(heap, mapped, parts[0]);
+			assertSameLookups(heap, mapped, parts[1]);
+			if (parts.length > 2) {
+				assertSameLookups(heap, mapped, parts[0] + parts[2]);
+			}
+		}
+		for (String word : OTHER_WORDS) {
+			assertSameLookups(heap, mapped, word);
+		}
+	}
+
+	@Test
+	public void mappedFSTIsShared() throws IOException {
+		File file = writeFST(LEXICON);
+		Assert.assertTrue(FST.mapFile(file.getPath()).isMapped());
+		Assert.assertFalse(new FST(file.getPath()).isMapped());
+		FSTLookup mapped = FSTLookup.mapFile(file.getPath());
+		Assert.assertEquals(FSTLookup.mapFile(file.getAbsolutePath()).lookup("maus"), mapped.lookup("maus"));
+	}
+
+	@Test
+	public void heapLookupReadsRewrittenFile() throws IOException {
+		File file = writeFST(LEXICON);
+		Assert.assertEquals(new FSTLookup(file.getPath()).lookup("bauch"), new String[] { "' b aU x" });
+		File other = writeFST(new String[] { "bauch|' b aU x @|NN", "kopf|' k O pf|NN" });
+		Assert.assertTrue(other.renameTo(file));
+		FSTLookup lookup = new FSTLookup(file.getPath());
+		Assert.assertEquals(lookup.lookup("bauch"), new String[] { "' b aU x @" });
+		Assert.assertEquals(lookup.lookup("kopf"), new String[] { "' k O pf" });
+	}
+}
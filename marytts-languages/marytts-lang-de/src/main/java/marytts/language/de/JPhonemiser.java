@@ -23,7 +23,6 @@ package marytts.language.de;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.util.ArrayList;
@@ -46,6 +45,7 @@ import marytts.language.de.phonemiser.PhonemiseDenglish;
 import marytts.language.de.phonemiser.Result;
 import marytts.modules.synthesis.PAConverter;
 import marytts.server.MaryProperties;
+import marytts.util.MaryRuntimeUtils;
 import marytts.util.MaryUtils;
 import marytts.util.dom.MaryDomUtils;
 
@@ -75,9 +75,20 @@ public class JPhonemiser extends marytts.modules.JPhonemiser {
 	}
 
 	public void startup() throws Exception {
-		super.startup();
 		phonemiseDenglish = new PhonemiseDenglish(this);
 		inflection = new Inflection();
+		if (MaryProperties.getBoolean("de.phonemiser.useenglish")) {
+			if (MaryProperties.getProperty("en_US.lexicon") != null) {
+				try {
+					usEnglishLexicon = MaryRuntimeUtils.needFSTLookup("en_US.lexicon");
+				} catch (Exception e) {
+					logger.info("Cannot load English lexicon '" + MaryProperties.getProperty("en_US.lexicon") + "'", e);
+				}
+			}
+		}
+		// Everything phonemise() needs is set up now, so the pronunciation cache can be pre-warmed;
+		// only then start logging, so that the words of the pre-warming list are not counted.
+		super.startup();
 
 		if (MaryProperties.getBoolean("de.phonemiser.logunknown")) {
 			String logBasepath = MaryProperties.maryBase() + File.separator + "log" + File.separator;
@@ -97,16 +108,6 @@ public class JPhonemiser extends marytts.modules.JPhonemiser {
 				logger.info("Could not create log directory " + logDir.getCanonicalPath() + " Logging disabled!", e);
 			}
 		}
-		if (MaryProperties.getBoolean("de.phonemiser.useenglish")) {
-			InputStream usLexStream = MaryProperties.getStream("en_US.lexicon");
-			if (usLexStream != null) {
-				try {
-					usEnglishLexicon = new FSTLookup(usLexStream, MaryProperties.getProperty("en_US.lexicon"));
-				} catch (Exception e) {
-					logger.info("Cannot load English lexicon '" + MaryProperties.getProperty("en_US.lexicon") + "'", e);
-				}
-			}
-		}
 	}
 
 	public void shutdown() {
@@ -230,7 +231,7 @@ public class JPhonemiser extends marytts.modules.JPhonemiser {
 							helper.append("foreign:en");
 					}
 					if (phon == null) {
-						phon = phonemise(graph, pos, helper);
+						phon = phonemiseCached(graph, pos, helper);
 					}
 					// null result should not be processed
 					if (phon == null) {
@@ -319,14 +320,7 @@ public class JPhonemiser extends marytts.modules.JPhonemiser {
 				g2pMethod.append("foreign:en");
 				logger.debug(text + " is English");
 				if (logEnglishFileName != null) {
-					String englishText = text.trim();
-					if (english2Frequency.containsKey(englishText)) {
-						int textFreq = english2Frequency.get(englishText);
-						textFreq++;
-						english2Frequency.put(englishText, textFreq);
-					} else {
-						english2Frequency.put(englishText, 1);
-					}
+					countWord(english2Frequency, text);
 				}
 				return englishTranscription;
 			}
@@ -366,14 +360,7 @@ public class JPhonemiser extends marytts.modules.JPhonemiser {
 		}
 		if (result != null) {
 			if (logUnknownFileName != null) {
-				String unknownText = text.trim();
-				if (unknown2Frequency.containsKey(unknownText)) {
-					int textFreq = unknown2Frequency.get(unknownText);
-					textFreq++;
-					unknown2Frequency.put(unknownText, textFreq);
-				} else {
-					unknown2Frequency.put(unknownText, new Integer(1));
-				}
+				countWord(unknown2Frequency, text);
 			}
 			g2pMethod.append("rules");
 			return result;
@@ -381,6 +368,24 @@ public class JPhonemiser extends marytts.modules.JPhonemiser {
 		return null;
 	}
 
+	/**
+	 * Keep the counts of English and unknown words right for words whose phonemisation comes from the pronunciation cache.
+	 */
+	@Override
+	protected void phonemisedFromCache(String text, String transcription, String g2pMethod) {
+		if (logEnglishFileName != null && "foreign:en".equals(g2pMethod)) {
+			countWord(english2Frequency, text);
+		} else if (logUnknownFileName != null && "rules".equals(g2pMethod)) {
+			countWord(unknown2Frequency, text);
+		}
+	}
+
+	private static void countWord(Map<String, Integer> word2Frequency, String text) {
+		String word = text.trim();
+		Integer freq = word2Frequency.get(word);
+		word2Frequency.put(word, freq != null ? freq + 1 : 1);
+	}
+
 	/**
 	 * Try to determine an English transcription of the text according to English rules, but using German Sampa.
 	 * 
@@ -29,7 +29,9 @@ import marytts.datatypes.MaryData;
 import marytts.datatypes.MaryDataType;
 import marytts.datatypes.MaryXML;
 import marytts.language.de.preprocess.ExpansionPattern;
+import marytts.language.de.preprocess.TokenFeatures;
 import marytts.modules.InternalModule;
+import marytts.server.MaryProperties;
 import marytts.util.dom.MaryDomUtils;
 import marytts.util.dom.NameNodeFilter;
 
@@ -48,9 +50,20 @@ import org.w3c.dom.traversal.TreeWalker;
  */
 
 public class Preprocess extends InternalModule {
+	private final boolean useDispatchIndex;
 
 	public Preprocess() {
+		this(MaryProperties.getBoolean("de.preprocess.dispatchindex", true));
+	}
+
+	/**
+	 * @param useDispatchIndex
+	 *            whether to skip the expansion patterns which cannot apply to a token, according to
+	 *            {@link ExpansionPattern#mayApplyTo(TokenFeatures)}, instead of trying all patterns on every token
+	 */
+	public Preprocess(boolean useDispatchIndex) {
 		super("Preprocess", MaryDataType.TOKENS, MaryDataType.WORDS, Locale.GERMAN);
+		this.useDispatchIndex = useDispatchIndex;
 	}
 
 	public MaryData process(MaryData d) throws Exception {
@@ -96,11 +109,18 @@ public class Preprocess extends InternalModule {
 				// ignore token
 				continue;
 			}
+			// Compute the features of the token once, and only try the patterns which can apply to them:
+			TokenFeatures features = useDispatchIndex ? new TokenFeatures(MaryDomUtils.tokenText(t)) : null;
 			Iterator<ExpansionPattern> it = ExpansionPattern.allPatterns().iterator();
 			boolean fullyExpanded = false;
 			while (!fullyExpanded && it.hasNext()) {
 				ExpansionPattern ep = (ExpansionPattern) it.next();
-				logger.debug("Now applying ep " + ep + " to token " + MaryDomUtils.getPlainTextBelow(t));
+				if (features != null && !ep.mayApplyTo(features)) {
+					continue;
+				}
+				if (logger.isDebugEnabled()) {
+					logger.debug("Now applying ep " + ep + " to token " + MaryDomUtils.getPlainTextBelow(t));
+				}
 				List<Element> expanded = new ArrayList<Element>();
 				fullyExpanded = ep.process(t, expanded);
 				// Element replacements may have been caused by ep.process());
@@ -116,7 +136,9 @@ public class Preprocess extends InternalModule {
 					Element lastToken = getLastToken(expanded);
 					assert lastToken != null;
 					tw.setCurrentNode(lastToken);
-					logger.debug("set treewalker position:" + MaryDomUtils.getPlainTextBelow((Element) tw.getCurrentNode()));
+					if (logger.isDebugEnabled()) {
+						logger.debug("set treewalker position:" + MaryDomUtils.getPlainTextBelow((Element) tw.getCurrentNode()));
+					}
 				} else { // not fully expanded
 					if (!expanded.isEmpty()) { // partial expansion
 						logger.debug("non-final expansion");
@@ -128,6 +150,10 @@ public class Preprocess extends InternalModule {
 						// assert lastToken != null;
 						tw.setCurrentNode(t);
 					}
+					// t, or its text, may have changed:
+					if (features != null) {
+						features = new TokenFeatures(MaryDomUtils.tokenText(t));
+					}
 				}
 
 			} // all patterns
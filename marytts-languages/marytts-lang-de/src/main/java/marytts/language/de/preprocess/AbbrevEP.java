@@ -28,9 +28,11 @@ import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.StringTokenizer;
 import java.util.regex.Pattern;
 
@@ -58,6 +60,8 @@ public class AbbrevEP extends ExpansionPattern {
 	}
 
 	private static final Map<String, String[]> abbrevDict = new HashMap<String, String[]>();
+	// the keys of abbrevDict without a final dot, so that a single lookup tells whether s or s + "." is in the dictionary:
+	private static final Set<String> abbrevStems = new HashSet<String>();
 
 	// We don't use sMatchingChars here, but override isCandidate().
 	private final Pattern reMatchingChars = null;
@@ -89,6 +93,17 @@ public class AbbrevEP extends ExpansionPattern {
 		return isAbbrev(str) || REPattern.onlyDigits.matcher(str).find() || ".".equals(str);
 	}
 
+	private static final long[] dot = TokenFeatures.charClass(".");
+	private static final long[] digits = TokenFeatures.charClass("0123456789");
+	private static final long[] consonants = TokenFeatures.charClass(REPattern.onlyConsonants);
+
+	@Override
+	public boolean mayApplyTo(TokenFeatures features) {
+		// necessary conditions for letterDot, nonInitialCapital, onlyConsonants, the dictionary, onlyDigits and ".":
+		return features.mayContainAnyOf(dot) || features.hasInnerCapital() || features.containsOnly(consonants)
+				|| features.containsOnly(digits) || abbrevStems.contains(features.getText());
+	}
+
 	protected int canDealWith(String s, int type) {
 		return match(s, type);
 	}
@@ -388,6 +403,7 @@ public class AbbrevEP extends ExpansionPattern {
 			value[0] = flex;
 			value[1] = graph;
 			abbrevDict.put(key, value);
+			abbrevStems.add(key.endsWith(".") ? key.substring(0, key.length() - 1) : key);
 		}
 	}
 
@@ -210,6 +210,20 @@ public class CompositeEP extends ExpansionPattern {
 		return false;
 	}
 
+	// set on first use, because specialChar is created after this pattern:
+	private volatile long[] composingChars;
+
+	@Override
+	public boolean mayApplyTo(TokenFeatures features) {
+		long[] chars = composingChars;
+		if (chars == null) {
+			chars = TokenFeatures.charClass("-'" + ExpansionPattern.getSplitAtChars());
+			composingChars = chars;
+		}
+		// process() only changes tokens with hyphens, apostrophes or split characters, or with both letters and digits
+		return features.mayContainAnyOf(chars) || features.hasDigit() && features.hasLetter();
+	}
+
 	protected int canDealWith(String input, int typeCode) {
 		return match(input, typeCode);
 	}
@@ -90,6 +90,8 @@ public class CurrencyEP extends ExpansionPattern {
 	protected final Pattern reCurrencyLeading = Pattern.compile("(" + sCurrencySymbol + ")(" + sCurrencyAmount + ")");
 	protected final Pattern reCurrencyTrailing = Pattern.compile("(" + sCurrencyAmount + ")(" + sCurrencySymbol + ")");
 	protected final Pattern reCurrencyAmountSubstructure = Pattern.compile(sCurrencyAmountSubstructure);
+	// the characters with which an amount or a currency symbol can start:
+	private final long[] currencyStart = getCurrencyStart();
 
 	private final Pattern reMatchingChars = null;
 
@@ -118,6 +120,15 @@ public class CurrencyEP extends ExpansionPattern {
 		return _sCurrencySymbol.toString();
 	}
 
+	// Only used to initialise currencyStart from _currencySymbolNames[]:
+	private long[] getCurrencyStart() {
+		StringBuilder chars = new StringBuilder("-0123456789");
+		for (int i = 0; i < _currencySymbolNames.length; i += 2) {
+			chars.append(_currencySymbolNames[i].charAt(0));
+		}
+		return TokenFeatures.charClass(chars.toString());
+	}
+
 	public CurrencyEP() {
 		super();
 	}
@@ -127,6 +138,14 @@ public class CurrencyEP extends ExpansionPattern {
 		return (s.length() <= 4 || number.isCandidate(t) || matchCurrency(s));
 	}
 
+	@Override
+	public boolean mayApplyTo(TokenFeatures features) {
+		// a currency amount always contains a digit;
+		// the matched text starts with an amount or a currency symbol, and with the text of the token
+		return features.mayStartWithAnyOf(currencyStart)
+				&& (features.length() <= 4 || features.hasDigit() || number.mayApplyTo(features));
+	}
+
 	protected int canDealWith(String s, int type) {
 		return match(s, type);
 	}
@@ -123,11 +123,21 @@ public class DateEP extends ExpansionPattern {
 	protected final Pattern reDay = Pattern.compile("(" + sDay + ")" + "?:" + sDot);
 
 	private final Pattern reMatchingChars = Pattern.compile(sMatchingChars);
+	private final long[] matchingChars = TokenFeatures.charClass(reMatchingChars);
 
 	public Pattern reMatchingChars() {
 		return reMatchingChars;
 	}
 
+	private static final long[] digits = TokenFeatures.charClass("0123456789");
+
+	@Override
+	public boolean mayApplyTo(TokenFeatures features) {
+		// dates are only matched automatically if they start with the day or the year,
+		// and the matched text starts with the text of the token
+		return features.mayStartWithAnyOf(digits) && features.mayContainAnyOf(matchingChars);
+	}
+
 	/**
 	 * Every subclass has its own logger. The important point is that if several threads are accessing the variable at the same
 	 * time, the logger needs to be thread-safe or it will produce rubbish.
@@ -281,6 +281,22 @@ public abstract class ExpansionPattern {
 		return reMatchingChars().matcher(MaryDomUtils.tokenText(t)).find();
 	}
 
+	/**
+	 * Cheap pre-selection of the patterns worth trying on a token: tell whether {@link #process(Element, List)} may do anything
+	 * for a token with the given features. This must not return false for any token which {@link #process(Element, List)}
+	 * could match or modify, but may return true for tokens it cannot; the default is to always return true. Subclasses
+	 * override this with tests on character classes, length, first character or dictionary lookups which are necessary
+	 * conditions for {@link #isCandidate(Element)}, or for {@link #match(String, int)} on a text starting with that of the
+	 * token.
+	 *
+	 * @param features
+	 *            the features of the token text
+	 * @return false if this pattern certainly cannot apply to the token
+	 */
+	public boolean mayApplyTo(TokenFeatures features) {
+		return true;
+	}
+
 	/**
 	 * Try to match and expand the entirety of tokens enclosed by the say-as tag <code>sayas</code>. The <code>type</code> of data
 	 * to expand is given. If the tokens can be matched according to <code>type</code>, they are expanded. Throws DOMException if
@@ -87,6 +87,7 @@ public class MeasureEP extends ExpansionPattern {
 
 	// Domain-specific primitives:
 	protected final String sMeasureSymbol = getMeasureSymbols();
+	private final int maxSymbolLength = getMaxSymbolLength();
 
 	// We don't use sMatchingChars here, but override isCandidate().
 
@@ -128,6 +129,18 @@ public class MeasureEP extends ExpansionPattern {
 		return _sMeasureSymbol.toString();
 	}
 
+	// Only used to initialize maxSymbolLength from _measureSymbolNames[]:
+	private int getMaxSymbolLength() {
+		int max = 0;
+		for (int i = 0; i < _nuDeFeMeasureSymbolNames.length; i += 2) {
+			max = Math.max(max, _nuDeFeMeasureSymbolNames[i].length());
+		}
+		for (int i = 0; i < _maMeasureSymbolNames.length; i += 2) {
+			max = Math.max(max, _maMeasureSymbolNames[i].length());
+		}
+		return max;
+	}
+
 	public MeasureEP() {
 		super();
 	}
@@ -137,6 +150,16 @@ public class MeasureEP extends ExpansionPattern {
 		return (reMeasureSymbol.matcher(s).matches() || number.isCandidate(t) || reMeasure.matcher(s).matches());
 	}
 
+	private static final long[] amountStart = TokenFeatures.charClass("-0123456789.,");
+
+	@Override
+	public boolean mayApplyTo(TokenFeatures features) {
+		// a measure symbol is at most maxSymbolLength long, and an amount always contains a digit;
+		// the matched text starts with the amount, and with the text of the token
+		return features.mayStartWithAnyOf(amountStart)
+				&& (features.length() <= maxSymbolLength || features.hasDigit() || number.mayApplyTo(features));
+	}
+
 	protected int canDealWith(String s, int type) {
 		return match(s, type);
 	}
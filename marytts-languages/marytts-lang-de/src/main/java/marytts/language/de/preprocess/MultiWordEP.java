@@ -91,6 +91,11 @@ public class MultiWordEP extends ExpansionPattern {
 		return constituentWordSet.contains(str);
 	}
 
+	@Override
+	public boolean mayApplyTo(TokenFeatures features) {
+		return constituentWordSet.contains(features.getText());
+	}
+
 	protected int canDealWith(String s, int type) {
 		return match(s, type);
 	}
@@ -101,6 +101,14 @@ public class NetEP extends ExpansionPattern {
 				|| s.equals("ftp") || s.equals("mailto"));
 	}
 
+	private static final long[] netChars = TokenFeatures.charClass("@./:");
+
+	@Override
+	public boolean mayApplyTo(TokenFeatures features) {
+		String s = features.getText();
+		return features.mayContainAnyOf(netChars) || s.equals("http") || s.equals("ftp") || s.equals("mailto");
+	}
+
 	/**
 	 * Inform whether this module performs a full expansion of the input, or whether other patterns should be applied after this
 	 * one.
@@ -92,6 +92,14 @@ public class NumberEP extends ExpansionPattern {
 				|| reRoman.matcher(s).matches() || reDigits.matcher(s).matches();
 	}
 
+	// all characters occurring in sFloat, sInteger, sOrdinal, sRoman and sDigits:
+	private static final long[] numberChars = TokenFeatures.charClass("0123456789.,-MDCLXVI");
+
+	@Override
+	public boolean mayApplyTo(TokenFeatures features) {
+		return features.length() > 0 && features.containsOnly(numberChars);
+	}
+
 	/**
 	 * Every subclass has its own logger. The important point is that if several threads are accessing the variable at the same
 	 * time, the logger needs to be thread-safe or it will produce rubbish.
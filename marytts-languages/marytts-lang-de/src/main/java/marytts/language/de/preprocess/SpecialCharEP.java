@@ -182,11 +182,18 @@ public class SpecialCharEP extends ExpansionPattern {
 	}
 
 	private final Pattern reMatchingChars = Pattern.compile(sMatchingChars);
+	private final long[] matchingChars = TokenFeatures.charClass(reMatchingChars);
 
 	public Pattern reMatchingChars() {
 		return reMatchingChars;
 	}
 
+	@Override
+	public boolean mayApplyTo(TokenFeatures features) {
+		// only a single special character is matched
+		return features.length() <= 1 && features.mayContainAnyOf(matchingChars);
+	}
+
 	private final Pattern reSplitAtChars = Pattern.compile(sSplitAtChars);
 
 	/**
@@ -58,11 +58,20 @@ public class TelephoneEP extends ExpansionPattern {
 	// Now the actual match patterns:
 	protected final Pattern reTelephone = Pattern.compile(sTelephone);
 	private final Pattern reMatchingChars = Pattern.compile(sMatchingChars);
+	private final long[] matchingChars = TokenFeatures.charClass(reMatchingChars);
 
 	public Pattern reMatchingChars() {
 		return reMatchingChars;
 	}
 
+	private static final long[] telephoneStart = TokenFeatures.charClass("0+");
+
+	@Override
+	public boolean mayApplyTo(TokenFeatures features) {
+		// the matched text starts with the text of the token
+		return features.mayStartWithAnyOf(telephoneStart) && features.mayContainAnyOf(matchingChars);
+	}
+
 	/**
 	 * Every subclass has its own logger. The important point is that if several threads are accessing the variable at the same
 	 * telephone, the logger needs to be thread-safe or it will produce rubbish.
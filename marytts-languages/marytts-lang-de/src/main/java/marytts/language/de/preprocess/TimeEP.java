@@ -66,11 +66,20 @@ public class TimeEP extends ExpansionPattern {
 			+ sSecond + ")" + sFinal);
 
 	private final Pattern reMatchingChars = Pattern.compile(sMatchingChars);
+	private final long[] matchingChars = TokenFeatures.charClass(reMatchingChars);
 
 	public Pattern reMatchingChars() {
 		return reMatchingChars;
 	}
 
+	private static final long[] digits = TokenFeatures.charClass("0123456789");
+
+	@Override
+	public boolean mayApplyTo(TokenFeatures features) {
+		// times start with the hour, and the matched text starts with the text of the token
+		return features.mayStartWithAnyOf(digits) && features.mayContainAnyOf(matchingChars);
+	}
+
 	/**
 	 * Every subclass has its own logger. The important point is that if several threads are accessing the variable at the same
 	 * time, the logger needs to be thread-safe or it will produce rubbish.
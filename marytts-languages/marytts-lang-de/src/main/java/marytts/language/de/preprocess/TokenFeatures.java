@@ -0,0 +1,181 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.language.de.preprocess;
+
+import java.util.regex.Pattern;
+
+/**
+ * Cheap features of a token text, computed in a single pass over its characters, with which
+ * {@link ExpansionPattern#mayApplyTo(TokenFeatures)} rules out patterns before any regular expression is tried.
+ * <p>
+ * Character classes are bit sets over the characters below 256, which covers ASCII, the umlauts and ß. Characters from 256 up
+ * are not represented in the classes, so tests for them answer conservatively.
+ */
+public class TokenFeatures {
+	private static final int CLASS_SIZE = 256;
+
+	private final String text;
+	// bit set of the characters below 256 occurring in the text:
+	private final long[] chars = new long[CLASS_SIZE / 64];
+	private boolean otherChars;
+	private boolean digit;
+	private boolean letter;
+	private boolean innerCapital;
+
+	public TokenFeatures(String text) {
+		this.text = text;
+		for (int i = 0, n = text.length(); i < n; i++) {
+			char c = text.charAt(i);
+			if (c < CLASS_SIZE) {
+				chars[c >>> 6] |= 1L << c;
+			} else {
+				otherChars = true;
+			}
+			if (c >= '0' && c <= '9') {
+				digit = true;
+			} else if (Character.isLetter(c)) {
+				letter = true;
+				if (i > 0 && Character.isUpperCase(c)) {
+					innerCapital = true;
+				}
+			}
+		}
+	}
+
+	public String getText() {
+		return text;
+	}
+
+	public int length() {
+		return text.length();
+	}
+
+	/**
+	 * @return whether the text contains one of the digits 0-9
+	 */
+	public boolean hasDigit() {
+		return digit;
+	}
+
+	/**
+	 * @return whether the text contains a letter
+	 */
+	public boolean hasLetter() {
+		return letter;
+	}
+
+	/**
+	 * @return whether the text contains an upper case letter after its first character
+	 */
+	public boolean hasInnerCapital() {
+		return innerCapital;
+	}
+
+	/**
+	 * Whether the text may contain a character of the given class: true if it contains one of the characters in the class, or
+	 * any character from 256 up.
+	 *
+	 * @param charClass
+	 *            a class created by one of the charClass() methods
+	 * @return false only if the text certainly contains no character matched by the class
+	 */
+	public boolean mayContainAnyOf(long[] charClass) {
+		if (otherChars) {
+			return true;
+		}
+		for (int i = 0; i < chars.length; i++) {
+			if ((chars[i] & charClass[i]) != 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Whether the text may start with a character of the given class: true if its first character is in the class or from 256
+	 * up, or if the text is empty.
+	 *
+	 * @param charClass
+	 *            a class created by one of the charClass() methods
+	 * @return false only if the text certainly starts with a character not matched by the class
+	 */
+	public boolean mayStartWithAnyOf(long[] charClass) {
+		if (text.length() == 0) {
+			return true;
+		}
+		char c = text.charAt(0);
+		return c >= CLASS_SIZE || (charClass[c >>> 6] & (1L << c)) != 0;
+	}
+
+	/**
+	 * Whether all characters of the text are in the given class. Characters from 256 up are never in a class.
+	 *
+	 * @param charClass
+	 *            a class created by one of the charClass() methods
+	 * @return true if the text consists of characters of the class only (which includes the empty text)
+	 */
+	public boolean containsOnly(long[] charClass) {
+		if (otherChars) {
+			return false;
+		}
+		for (int i = 0; i < chars.length; i++) {
+			if ((chars[i] & ~charClass[i]) != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Create a character class from the characters in a string; characters from 256 up are ignored.
+	 *
+	 * @param charsInClass
+	 *            charsInClass
+	 * @return the character class
+	 */
+	public static long[] charClass(String charsInClass) {
+		long[] charClass = new long[CLASS_SIZE / 64];
+		for (int i = 0; i < charsInClass.length(); i++) {
+			char c = charsInClass.charAt(i);
+			if (c < CLASS_SIZE) {
+				charClass[c >>> 6] |= 1L << c;
+			}
+		}
+		return charClass;
+	}
+
+	/**
+	 * Create a character class from a regular expression such as {@link ExpansionPattern#reMatchingChars()}: the class contains
+	 * the characters below 256 which, as a one-character string, are matched by the pattern.
+	 *
+	 * @param pattern
+	 *            a pattern like "[0-9:]"
+	 * @return the character class
+	 */
+	public static long[] charClass(Pattern pattern) {
+		long[] charClass = new long[CLASS_SIZE / 64];
+		for (char c = 0; c < CLASS_SIZE; c++) {
+			if (pattern.matcher(String.valueOf(c)).matches()) {
+				charClass[c >>> 6] |= 1L << c;
+			}
+		}
+		return charClass;
+	}
+}
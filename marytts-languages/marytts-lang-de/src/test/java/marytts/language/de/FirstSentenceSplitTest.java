@@ -0,0 +1,97 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package marytts.language.de;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import marytts.LocalMaryInterface;
+import marytts.MaryInterface;
+import marytts.datatypes.MaryDataType;
+import marytts.datatypes.MaryXML;
+import marytts.util.dom.MaryDomUtils;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+/**
+ * Low-latency synthesis splits the first paragraph after its first sentence, as found by the tokeniser; abbreviations and
+ * ordinal numbers must not be taken for the end of the sentence.
+ */
+public class FirstSentenceSplitTest {
+	private MaryInterface mary;
+
+	@Before
+	public void setUp() throws Exception {
+		mary = new LocalMaryInterface();
+		mary.setLocale(Locale.GERMAN);
+		mary.setOutputType(MaryDataType.TOKENS.name());
+	}
+
+	private static List<String> tokens(Document doc) {
+		List<String> tokens = new ArrayList<String>();
+		NodeList ts = doc.getElementsByTagName(MaryXML.TOKEN);
+		for (int i = 0; i < ts.getLength(); i++) {
+			tokens.add(MaryDomUtils.tokenText((Element) ts.item(i)));
+		}
+		return tokens;
+	}
+
+	private Document[] split(String text) throws Exception {
+		Document[] parts = MaryDomUtils.splitAfterFirstSentence(mary.generateXML(text));
+		assertNotNull("not split: " + text, parts);
+		return parts;
+	}
+
+	@Test
+	public void abbreviationsDoNotEndTheFirstSentence() throws Exception {
+		Document[] parts = split("Frau Prof. Müller kam ca. 5 Min. zu spät bzw. Herr Dr. Meier noch später. Danach gab es Kaffee.");
+		List<String> first = tokens(parts[0]);
+		assertTrue(first.toString(), first.containsAll(Arrays.asList("Müller", "spät", "Meier", "später")));
+		assertEquals("Danach", tokens(parts[1]).get(0));
+	}
+
+	@Test
+	public void ordinalsDoNotEndTheFirstSentence() throws Exception {
+		Document[] parts = split("Die Sitzung am 3. Oktober fiel aus. Sie wird am 10. November nachgeholt.");
+		List<String> first = tokens(parts[0]);
+		assertTrue(first.toString(), first.containsAll(Arrays.asList("Oktober", "aus")));
+		List<String> rest = tokens(parts[1]);
+		assertEquals("Sie", rest.get(0));
+		assertFalse(rest.toString(), rest.contains("Oktober"));
+	}
+
+	@Test
+	public void singleSentenceIsNotSplit() throws Exception {
+		assertNull(MaryDomUtils.splitAfterFirstSentence(mary.generateXML("Frau Prof. Müller kam ca. 5 Min. zu spät.")));
+	}
+}
@@ -0,0 +1,219 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.language.de;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+import marytts.LocalMaryInterface;
+import marytts.MaryInterface;
+import marytts.datatypes.MaryData;
+import marytts.datatypes.MaryDataType;
+import marytts.exceptions.MaryConfigurationException;
+import marytts.fst.AlignerTrainer;
+import marytts.fst.TransducerTrie;
+import marytts.util.cache.MemoCache;
+import marytts.util.dom.DomUtils;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+/**
+ * The pronunciation cache of the German phonemiser must give the same transcriptions and g2p methods as
+ * {@link JPhonemiser#phonemise(String, String, StringBuilder)}, for words from the lexicon, compounds, English words, words left to
+ * letter-to-sound rules, and for words pre-warmed into the cache at startup. A small US English lexicon and allophone set are
+ * provided so that the English path is taken.
+ */
+public class JPhonemiserCacheTest {
+	private static final String[] ENGLISH_LEXICON = { "download|' d aU n - l @U d", "headphones|' h E d - f @U n z",
+			"workshop|' w r= k - S A p" };
+
+	private static final String[] WORDS = { "Haus", "Häuser", "Straße", "und", "Haustürschlüssel",
+			"Donaudampfschifffahrtsgesellschaft", "Fensterbankblumen", "Kinderbuchautorin", "headphones", "Downloadbereich",
+			"Workshopleiter", "xq", "Qwrtzbl" };
+
+	private static final String[] SENTENCES = { "Die Donaudampfschifffahrtsgesellschaft sucht einen Kinderbuchautor.",
+			"Im Workshop gab es Headphones für alle Haustürschlüsselbesitzer.", "Das Haus am See hat drei Fensterbankblumen." };
+
+	private static File englishLexicon;
+	private static Document[] partsOfSpeech;
+
+	@BeforeClass
+	public static void setUp() throws Exception {
+		englishLexicon = writeFST(ENGLISH_LEXICON);
+		MaryInterface mary = new LocalMaryInterface();
+		mary.setLocale(Locale.GERMAN);
+		mary.setOutputType(MaryDataType.PARTSOFSPEECH.name());
+		partsOfSpeech = new Document[SENTENCES.length];
+		for (int i = 0; i < SENTENCES.length; i++) {
+			partsOfSpeech[i] = mary.generateXML(SENTENCES[i]);
+		}
+		// read when the phonemiser converts the first English transcription to German:
+		System.setProperty("en_US.allophoneset", "jar:/marytts/language/de/allophones.en_US.xml");
+	}
+
+	@AfterClass
+	public static void tearDown() {
+		System.clearProperty("en_US.allophoneset");
+	}
+
+	private static File writeFST(String[] lexicon) throws IOException {
+		StringBuilder lines = new StringBuilder();
+		for (String entry : lexicon) {
+			lines.append(entry).append('\n');
+		}
+		AlignerTrainer at = new AlignerTrainer(false, true);
+		at.readLexicon(new BufferedReader(new StringReader(lines.toString())), "\\s*\\|\\s*");
+		for (int i = 0; i < 4; i++) {
+			at.alignIteration();
+		}
+		TransducerTrie t = new TransducerTrie();
+		for (int i = 0, size = at.lexiconSize(); i < size; i++) {
+			t.add(at.getAlignment(i));
+			t.add(at.getInfoAlignment(i));
+		}
+		t.computeMinimization();
+		File file = File.createTempFile("en_US_lexicon", ".fst");
+		file.deleteOnExit();
+		DataOutputStream os = new DataOutputStream(new FileOutputStream(file));
+		try {
+			t.writeFST(os, "UTF-8");
+		} finally {
+			os.close();
+		}
+		return file;
+	}
+
+	/**
+	 * Gives access to the pronunciation cache.
+	 */
+	private static class Phonemiser extends JPhonemiser {
+		Phonemiser() throws IOException, MaryConfigurationException {
+			super();
+		}
+
+		MemoCache<String, String[]> getPronunciationCache() {
+			return pronunciationCache;
+		}
+
+		void disablePronunciationCache() {
+			pronunciationCache = null;
+		}
+
+		void prewarm(String wordList) throws IOException {
+			prewarmPronunciationCache(new ByteArrayInputStream(wordList.getBytes("UTF-8")), 1000);
+		}
+	}
+
+	/**
+	 * Start a phonemiser which looks up English words in the small English lexicon.
+	 */
+	private static Phonemiser startPhonemiser() throws Exception {
+		System.setProperty("de.phonemiser.useenglish", "true");
+		System.setProperty("en_US.lexicon", englishLexicon.getPath());
+		try {
+			Phonemiser phonemiser = new Phonemiser();
+			phonemiser.startup();
+			return phonemiser;
+		} finally {
+			System.clearProperty("de.phonemiser.useenglish");
+			System.clearProperty("en_US.lexicon");
+		}
+	}
+
+	@Test
+	public void cachedPhonemisationIsUncachedPhonemisation() throws Exception {
+		Phonemiser phonemiser = startPhonemiser();
+		Set<String> methods = new HashSet<String>();
+		for (String word : WORDS) {
+			for (String pos : new String[] { null, "NN" }) {
+				StringBuilder expectedMethod = new StringBuilder();
+				String expected = phonemiser.phonemise(word, pos, expectedMethod);
+				methods.add(expectedMethod.toString());
+				for (int pass = 0; pass < 2; pass++) {
+					StringBuilder method = new StringBuilder();
+					assertEquals(word + " " + pos, expected, phonemiser.phonemiseCached(word, pos, method));
+					assertEquals(word + " " + pos, expectedMethod.toString(), method.toString());
+				}
+			}
+		}
+		assertTrue(methods.toString(), methods.contains("lexicon"));
+		assertTrue(methods.toString(), methods.contains("compound"));
+		assertTrue(methods.toString(), methods.contains("foreign:en"));
+		assertEquals(2 * WORDS.length, phonemiser.getPronunciationCache().getMisses());
+		assertEquals(2 * WORDS.length, phonemiser.getPronunciationCache().getHits());
+	}
+
+	@Test
+	public void prewarmedPhonemisationIsUncachedPhonemisation() throws Exception {
+		Phonemiser phonemiser = startPhonemiser();
+		StringBuilder wordList = new StringBuilder("# rank word frequency\n");
+		for (int i = 0; i < WORDS.length; i++) {
+			wordList.append(i + 1).append(' ').append(WORDS[i]).append(' ').append(1000 - i).append('\n');
+		}
+		phonemiser.prewarm(wordList.toString());
+		MemoCache<String, String[]> cache = phonemiser.getPronunciationCache();
+		assertEquals(WORDS.length, cache.size());
+		long misses = cache.getMisses();
+		Phonemiser uncached = startPhonemiser();
+		uncached.disablePronunciationCache();
+		for (String word : WORDS) {
+			StringBuilder expectedMethod = new StringBuilder();
+			String expected = uncached.phonemise(word, null, expectedMethod);
+			StringBuilder method = new StringBuilder();
+			assertEquals(word, expected, phonemiser.phonemiseCached(word, null, method));
+			assertEquals(word, expectedMethod.toString(), method.toString());
+		}
+		assertEquals(misses, cache.getMisses());
+		assertEquals(WORDS.length, cache.getHits());
+	}
+
+	private static String phonemise(JPhonemiser phonemiser, Document partsOfSpeech) throws Exception {
+		MaryData in = new MaryData(MaryDataType.PARTSOFSPEECH, Locale.GERMAN);
+		in.setDocument((Document) partsOfSpeech.cloneNode(true));
+		return DomUtils.serializeToString(phonemiser.process(in).getDocument());
+	}
+
+	@Test
+	public void cachedProcessingIsUncachedProcessing() throws Exception {
+		Phonemiser cached = startPhonemiser();
+		Phonemiser uncached = startPhonemiser();
+		uncached.disablePronunciationCache();
+		for (int i = 0; i < SENTENCES.length; i++) {
+			String expected = phonemise(uncached, partsOfSpeech[i]);
+			assertEquals(SENTENCES[i], expected, phonemise(cached, partsOfSpeech[i]));
+			assertEquals(SENTENCES[i], expected, phonemise(cached, partsOfSpeech[i]));
+		}
+		assertTrue(cached.getPronunciationCache().getHits() > 0);
+	}
+}
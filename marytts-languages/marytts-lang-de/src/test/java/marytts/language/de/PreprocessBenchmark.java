@@ -0,0 +1,132 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.language.de;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import marytts.LocalMaryInterface;
+import marytts.datatypes.MaryData;
+import marytts.datatypes.MaryDataType;
+import marytts.datatypes.MaryXML;
+import marytts.language.de.preprocess.ExpansionPattern;
+import marytts.language.de.preprocess.TokenFeatures;
+import marytts.util.dom.DomUtils;
+
+import org.w3c.dom.Document;
+
+/**
+ * Throughput of the German {@link Preprocess} module on a text corpus, trying all expansion patterns on every token and with the
+ * dispatch index of {@link ExpansionPattern#mayApplyTo(TokenFeatures)}. Also checks that both give the same output;
+ * PreprocessTest does the same on a small text for every build.
+ * <p>
+ * Usage: <code>PreprocessBenchmark corpus.txt [rounds]</code>, where corpus.txt is a UTF-8 text file, such as a German news
+ * corpus, with one sentence or paragraph per line. A numeric id followed by a tab at the start of a line, as in the Leipzig
+ * corpora, is ignored. The corpus is tokenized once; only the preprocessing is timed.
+ */
+public class PreprocessBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 1) {
+			System.err.println("Usage: " + PreprocessBenchmark.class.getName() + " corpus.txt [rounds]");
+			System.exit(1);
+		}
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+		List<Document> inputs = tokenize(new File(args[0]));
+		int numTokens = 0;
+		for (Document doc : inputs) {
+			numTokens += doc.getElementsByTagName(MaryXML.TOKEN).getLength();
+		}
+		System.out.println(inputs.size() + " documents, " + numTokens + " tokens");
+
+		Preprocess[] modules = { new Preprocess(false), new Preprocess(true) };
+		String[] names = { "all patterns", "dispatch index" };
+		List<String> reference = null;
+		for (int m = 0; m < modules.length; m++) {
+			modules[m].startup();
+			// the first round warms up, and gives the output to compare:
+			List<String> outputs = new ArrayList<String>();
+			process(modules[m], inputs, outputs);
+			if (reference == null) {
+				reference = outputs;
+			} else {
+				int differences = 0;
+				for (int i = 0; i < outputs.size(); i++) {
+					if (!outputs.get(i).equals(reference.get(i))) {
+						differences++;
+					}
+				}
+				System.out.println(differences + " documents with output different from " + names[0]);
+			}
+			long best = Long.MAX_VALUE;
+			for (int r = 0; r < rounds; r++) {
+				best = Math.min(best, process(modules[m], inputs, null));
+			}
+			System.out.println(String.format(Locale.ENGLISH, "%-15s %10.0f tokens/s (best of %d rounds: %.1f ms)", names[m],
+					numTokens / (best / 1e9), rounds, best / 1e6));
+		}
+	}
+
+	private static List<Document> tokenize(File corpus) throws Exception {
+		LocalMaryInterface mary = new LocalMaryInterface();
+		mary.setLocale(Locale.GERMAN);
+		mary.setOutputType(MaryDataType.TOKENS.name());
+		List<Document> docs = new ArrayList<Document>();
+		BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(corpus), "UTF-8"));
+		try {
+			String line;
+			while ((line = br.readLine()) != null) {
+				line = line.replaceFirst("^[0-9]+\t", "").trim();
+				if (line.length() > 0) {
+					docs.add(mary.generateXML(line));
+				}
+			}
+		} finally {
+			br.close();
+		}
+		return docs;
+	}
+
+	/**
+	 * Preprocess copies of all inputs.
+	 *
+	 * @return the time spent in the module, in nanoseconds
+	 */
+	private static long process(Preprocess module, List<Document> inputs, List<String> outputs) throws Exception {
+		long time = 0;
+		for (Document doc : inputs) {
+			MaryData in = new MaryData(MaryDataType.TOKENS, Locale.GERMAN);
+			in.setDocument((Document) doc.cloneNode(true));
+			long start = System.nanoTime();
+			MaryData out = module.process(in);
+			time += System.nanoTime() - start;
+			if (outputs != null) {
+				outputs.add(DomUtils.serializeToString(out.getDocument()));
+			}
+		}
+		return time;
+	}
+}
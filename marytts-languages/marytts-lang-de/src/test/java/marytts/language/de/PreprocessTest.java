@@ -0,0 +1,122 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.language.de;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import marytts.LocalMaryInterface;
+import marytts.MaryInterface;
+import marytts.datatypes.MaryData;
+import marytts.datatypes.MaryDataType;
+import marytts.datatypes.MaryXML;
+import marytts.util.dom.DomUtils;
+import marytts.util.dom.MaryDomUtils;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * The dispatch index of the German preprocessor must only skip patterns which would not have changed a token. The test data
+ * contain dates, times, durations, currency amounts, telephone numbers, URLs and e-mail addresses, abbreviations, multiword
+ * expressions, roman and ordinal numbers and measures.
+ * <p>
+ * The text is tokenised by the German tokeniser, so that the preprocessor sees the tokens it sees in use. Both modes get the
+ * same tokens, so the comparison does not depend on the tokeniser; the text is also split at whitespace only, which leaves
+ * punctuation attached to words and so gives the patterns tokens which the tokeniser would not produce.
+ */
+public class PreprocessTest {
+	private static List<String> lines;
+	private static List<Document> tokenised;
+	private static List<Document> whitespaceTokenised;
+
+	@BeforeClass
+	public static void tokenise() throws Exception {
+		lines = new ArrayList<String>();
+		BufferedReader br = new BufferedReader(new InputStreamReader(PreprocessTest.class.getResourceAsStream("preprocess_testdata.txt"),
+				"UTF-8"));
+		try {
+			String line;
+			while ((line = br.readLine()) != null) {
+				if (line.trim().length() > 0) {
+					lines.add(line);
+				}
+			}
+		} finally {
+			br.close();
+		}
+		MaryInterface mary = new LocalMaryInterface();
+		mary.setLocale(Locale.GERMAN);
+		mary.setOutputType(MaryDataType.TOKENS.name());
+		tokenised = new ArrayList<Document>();
+		whitespaceTokenised = new ArrayList<Document>();
+		for (String line : lines) {
+			tokenised.add(mary.generateXML(line));
+			whitespaceTokenised.add(splitAtWhitespace(line));
+		}
+	}
+
+	private static Document splitAtWhitespace(String line) {
+		Document doc = MaryXML.newDocument();
+		doc.getDocumentElement().setAttribute("xml:lang", "de");
+		Element sentence = MaryXML.appendChildElement(MaryXML.appendChildElement(doc.getDocumentElement(), MaryXML.PARAGRAPH),
+				MaryXML.SENTENCE);
+		for (String word : line.trim().split("\\s+")) {
+			MaryDomUtils.setTokenText(MaryXML.appendChildElement(sentence, MaryXML.TOKEN), word);
+		}
+		return doc;
+	}
+
+	private static String preprocess(Preprocess module, Document tokens) throws Exception {
+		MaryData in = new MaryData(MaryDataType.TOKENS, Locale.GERMAN);
+		in.setDocument((Document) tokens.cloneNode(true));
+		return DomUtils.serializeToString(module.process(in).getDocument());
+	}
+
+	private static void assertSameOutput(List<Document> tokens) throws Exception {
+		Preprocess allPatterns = new Preprocess(false);
+		Preprocess dispatchIndex = new Preprocess(true);
+		allPatterns.startup();
+		dispatchIndex.startup();
+		for (int i = 0; i < lines.size(); i++) {
+			String expected = preprocess(allPatterns, tokens.get(i));
+			assertFalse("nothing expanded in: " + lines.get(i), expected.equals(DomUtils.serializeToString(tokens.get(i))));
+			assertEquals(lines.get(i), expected, preprocess(dispatchIndex, tokens.get(i)));
+		}
+	}
+
+	@Test
+	public void dispatchIndexGivesSameOutput() throws Exception {
+		assertSameOutput(tokenised);
+	}
+
+	@Test
+	public void dispatchIndexGivesSameOutputOnWhitespaceTokens() throws Exception {
+		assertSameOutput(whitespaceTokenised);
+	}
+}
@@ -17,7 +17,9 @@ import marytts.datatypes.MaryDataType;
 import marytts.datatypes.MaryXML;
 import marytts.exceptions.MaryConfigurationException;
 import marytts.modules.InternalModule;
+import marytts.server.MaryProperties;
 import marytts.util.MaryRuntimeUtils;
+import marytts.util.cache.MemoCache;
 import marytts.util.dom.MaryDomUtils;
 import marytts.util.dom.NameNodeFilter;
 
@@ -116,6 +118,27 @@ public class Preprocess extends InternalModule {
 	private static final Pattern ordinalPattern;
 	private static final Pattern currencySymbPattern;
 	private static final Pattern numberSPattern;
+	private static final Pattern commaNumberPattern = Pattern.compile("[\\$|£|€]?\\d+,[\\d,]+");
+	private static final Pattern fourDigitPattern = Pattern.compile("\\d{4}");
+	private static final Pattern digitsPattern = Pattern.compile("\\d+");
+	private static final Pattern singleAPattern = Pattern.compile("[aA]");
+	private static final Pattern ordinalSuffixPattern = Pattern.compile("st|nd|rd|th", Pattern.CASE_INSENSITIVE);
+	private static final Pattern meridiemPattern = Pattern.compile("a\\.m\\.|AM|PM|am|pm|p\\.m\\.");
+	private static final Pattern dashPattern = Pattern.compile("[-_]");
+	private static final Pattern punctSplitPattern = Pattern.compile("((?<=\\p{Punct})|(?=\\p{Punct}))");
+	private static final Pattern arrayPunctPattern = Pattern.compile("[,\\]\\[]");
+	private static final Pattern whitespacePattern = Pattern.compile("\\s+");
+	private static final Pattern voicelessPattern = Pattern.compile("[cfkpt]");
+
+	/**
+	 * The kinds of token that are handled differently, in the order in which they are tested.
+	 */
+	enum TokenType {
+		ORDINAL, SINGLE_A, DATE, NUMBER_S, YEAR_BCAD, YEAR, NUMBER_WORD, REAL_NUMBER, MONEY, CONTRACTION, ACRONYM, ABBREVIATION, TIME, DURATION, HASHTAG, URL, URL_DOT, SYMBOL, RANGE, DASH, CONSONANTS, PUNCTUATION_SPLIT, QUOTE, PUNCTUATION, OTHER
+	}
+
+	// expansions of frequent tokens, by token type, context and token text:
+	private final MemoCache<String, String> expansionCache;
 
 	// Regex initialization
 	static {
@@ -169,6 +192,8 @@ public class Preprocess extends InternalModule {
 
 	public Preprocess() {
 		super("Preprocess", MaryDataType.TOKENS, MaryDataType.WORDS, Locale.ENGLISH);
+		int cacheSize = MaryProperties.getInteger("en.preprocess.expansioncache", 10000);
+		this.expansionCache = cacheSize > 0 ? new MemoCache<String, String>(cacheSize, 4) : null;
 		this.rbnf = new RuleBasedNumberFormat(ULocale.ENGLISH, RuleBasedNumberFormat.SPELLOUT);
 		this.cardinalRule = "%spellout-numbering";
 		this.ordinalRule = getOrdinalRuleName(rbnf);
@@ -236,72 +261,69 @@ public class Preprocess extends InternalModule {
 
 			// save the original token text
 			String origText = MaryDomUtils.tokenText(t);
+			String text = origText;
 
 			// remove commas
-			if (MaryDomUtils.tokenText(t).matches("[\\$|£|€]?\\d+,[\\d,]+")) {
-				MaryDomUtils.setTokenText(t, MaryDomUtils.tokenText(t).replaceAll(",", ""));
+			if (text.indexOf(',') >= 0 && commaNumberPattern.matcher(text).matches()) {
+				text = text.replace(",", "");
+				MaryDomUtils.setTokenText(t, text);
 				// presume that a 4 digit number which had commas is not a year
-				if (MaryDomUtils.tokenText(t).matches("\\d{4}")) {
+				if (fourDigitPattern.matcher(text).matches()) {
 					isYear = false;
 				}
 			}
 			// isYear extra check
-			if (MaryDomUtils.tokenText(t).matches("\\d{4}") && !whichCurrency.equals("")) {
+			if (!whichCurrency.equals("") && fourDigitPattern.matcher(text).matches()) {
 				isYear = false;
 			}
 
 			// check if currency
-			if (MaryDomUtils.tokenText(t).matches(currencySymbPattern.pattern())) {
-				whichCurrency = MaryDomUtils.tokenText(t);
+			if (currencySymbPattern.matcher(text).matches()) {
+				whichCurrency = text;
 			}
 
 			/*
 			 * ACTUAL PROCESSING
 			 */
 
-			// ordinal
-			if (MaryDomUtils.tokenText(t).matches("(?i)" + ordinalPattern.pattern())) {
-				String matched = MaryDomUtils.tokenText(t).split("(?i)st|nd|rd|th")[0];
-				MaryDomUtils.setTokenText(t, expandOrdinal(Double.parseDouble(matched)));
-				// single a or A character
-			} else if (MaryDomUtils.tokenText(t).matches("[aA]")) {
+			TokenType type = classify(text, isYear, isURL);
+			switch (type) {
+			case ORDINAL:
+			case DATE:
+			case NUMBER_S:
+			case YEAR_BCAD:
+			case YEAR:
+			case NUMBER_WORD:
+			case ACRONYM:
+			case DURATION:
+			case HASHTAG:
+			case RANGE:
+				MaryDomUtils.setTokenText(t, expansion(type, text, ""));
+				break;
+			case SINGLE_A:
 				Element checkNextNode = MaryDomUtils.getNextSiblingElement((Element) t);
-				if (checkNextNode == null || MaryDomUtils.tokenText(checkNextNode).matches(myPunctPattern.pattern())
+				if (checkNextNode == null || myPunctPattern.matcher(MaryDomUtils.tokenText(checkNextNode)).matches()
 						|| MaryDomUtils.tokenText(checkNextNode).length() == 1) {
 					MaryDomUtils.setTokenText(t, "_a");
 				}
-				// date
-			} else if (MaryDomUtils.tokenText(t).matches(datePattern.pattern())) {
-				MaryDomUtils.setTokenText(t, expandDate(MaryDomUtils.tokenText(t)));
-				// number followed by s
-			} else if (MaryDomUtils.tokenText(t).matches(numberSPattern.pattern())) {
-				MaryDomUtils.setTokenText(t, expandNumberS(MaryDomUtils.tokenText(t)));
-				// year with bc or ad
-			} else if (MaryDomUtils.tokenText(t).matches("(?i)" + yearPattern.pattern())) {
-				MaryDomUtils.setTokenText(t, expandYearBCAD(MaryDomUtils.tokenText(t)));
-				// year as just 4 digits &rarr; this should always be checked BEFORE real number
-			} else if (MaryDomUtils.tokenText(t).matches("\\d{4}") && isYear == true) {
-				MaryDomUtils.setTokenText(t, expandYear(Double.parseDouble(MaryDomUtils.tokenText(t))));
-				// wordAndNumber &rarr; must come AFTER year
-			} else if (MaryDomUtils.tokenText(t).matches(numberWordPattern.pattern())) {
-				MaryDomUtils.setTokenText(t, expandWordNumber(MaryDomUtils.tokenText(t)));
+				break;
+			case REAL_NUMBER:
 				// real number & currency
-			} else if (MaryDomUtils.tokenText(t).matches(realNumPattern.pattern())) {
 				if (!whichCurrency.equals("")) {
-					MaryDomUtils.setTokenText(t, expandMoney(MaryDomUtils.tokenText(t), whichCurrency));
+					MaryDomUtils.setTokenText(t, expansion(TokenType.MONEY, text, whichCurrency));
 					whichCurrency = "";
 				} else {
-					MaryDomUtils.setTokenText(t, expandRealNumber(MaryDomUtils.tokenText(t)));
+					MaryDomUtils.setTokenText(t, expansion(TokenType.REAL_NUMBER, text, ""));
 				}
-				// contractions
-			} else if (MaryDomUtils.tokenText(t).matches(contractPattern.pattern())) {
+				break;
+			case CONTRACTION:
 				// first check lexicon
-				if (MaryRuntimeUtils.checkLexicon("en_US", MaryDomUtils.tokenText(t)).length == 0) {
-					Matcher contractionMatch = contractPattern.matcher(MaryDomUtils.tokenText(t));
+				if (MaryRuntimeUtils.checkLexicon("en_US", text).length == 0) {
+					Matcher contractionMatch = contractPattern.matcher(text);
 					contractionMatch.find();
 					// if no contraction we allow g2p rules to handle
 					if (!contractions.containsKey(contractionMatch.group(1))) {
-						MaryDomUtils.setTokenText(t, MaryDomUtils.tokenText(t).replaceAll("'", ""));
+						MaryDomUtils.setTokenText(t, text.replace("'", ""));
 					}
 
 					// FIXME: we do not want to have to phonological word => for now we do not split !
@@ -312,60 +334,49 @@ public class Preprocess extends InternalModule {
 					// MaryDomUtils.setTokenText(t, splitContraction(MaryDomUtils.tokenText(t)));
 					// }
 				}
-				// acronym
-			} else if (MaryDomUtils.tokenText(t).matches(acronymPattern.pattern())) {
-				MaryDomUtils.setTokenText(t, expandAcronym(MaryDomUtils.tokenText(t)));
-				// abbreviation
-			} else if ((MaryDomUtils.tokenText(t).matches(abbrevPattern.pattern()) || this.abbrevMap.containsKey(MaryDomUtils
-					.tokenText(t).toLowerCase())) && !isURL) {
+				break;
+			case ABBREVIATION:
 				Element testAbbNode = MaryDomUtils.getNextSiblingElement((Element) t);
 				boolean nextTokenIsCapital = false;
 				if (testAbbNode != null && Character.isUpperCase(MaryDomUtils.tokenText(testAbbNode).charAt(0))) {
 					nextTokenIsCapital = true;
 				}
-				MaryDomUtils.setTokenText(t, expandAbbreviation(MaryDomUtils.tokenText(t), nextTokenIsCapital));
-				// time
-			} else if (MaryDomUtils.tokenText(t).matches("(?i)" + timePattern.pattern())) {
+				MaryDomUtils.setTokenText(t, expansion(TokenType.ABBREVIATION, text, String.valueOf(nextTokenIsCapital)));
+				break;
+			case TIME:
 				Element testTimeNode = MaryDomUtils.getNextSiblingElement((Element) t);
 				boolean nextTokenIsTime = false;
-				if (testTimeNode != null && MaryDomUtils.tokenText(testTimeNode).matches("a\\.m\\.|AM|PM|am|pm|p\\.m\\.")) {
+				if (testTimeNode != null && meridiemPattern.matcher(MaryDomUtils.tokenText(testTimeNode)).matches()) {
 					nextTokenIsTime = true;
 				}
-				MaryDomUtils.setTokenText(t, expandTime(MaryDomUtils.tokenText(t), nextTokenIsTime));
-				// duration
-			} else if (MaryDomUtils.tokenText(t).matches(durationPattern.pattern())) {
-				MaryDomUtils.setTokenText(t, expandDuration(MaryDomUtils.tokenText(t)));
-				// hashtags
-			} else if (MaryDomUtils.tokenText(t).matches(hashtagPattern.pattern())) {
-				MaryDomUtils.setTokenText(t, expandHashtag(MaryDomUtils.tokenText(t)));
-				// URLs
-			} else if (MaryDomUtils.tokenText(t).matches(URLPattern.pattern())) {
+				MaryDomUtils.setTokenText(t, expansion(TokenType.TIME, text, String.valueOf(nextTokenIsTime)));
+				break;
+			case URL:
 				// matching group 2 contains the chunk we want
-				Matcher urlMatcher = URLPattern.matcher(MaryDomUtils.tokenText(t));
+				Matcher urlMatcher = URLPattern.matcher(text);
 				urlMatcher.find();
-				webEmailTemp = MaryDomUtils.tokenText(t);
+				webEmailTemp = text;
 				isURL = true;
 				MaryDomUtils.setTokenText(t, expandURL(urlMatcher.group(2)));
+				break;
+			case URL_DOT:
 				// dot . for web and email addresses
-			} else if (MaryDomUtils.tokenText(t).equals(".") && isURL) {
 				MaryDomUtils.setTokenText(t, "dot");
 				webEmailTemp = webEmailTemp.replaceFirst("\\.", "dot");
 				if (!webEmailTemp.contains(".")) {
 					isURL = false;
 				}
-				// symbols
-			} else if (MaryDomUtils.tokenText(t).matches(symbolsPattern.pattern())) {
-				MaryDomUtils.setTokenText(t, symbols.get(MaryDomUtils.tokenText(t)));
-				// number ranges &rarr; before checking for dashes
-			} else if (MaryDomUtils.tokenText(t).matches(rangePattern.pattern())) {
-				MaryDomUtils.setTokenText(t, expandRange(MaryDomUtils.tokenText(t)));
+				break;
+			case SYMBOL:
+				MaryDomUtils.setTokenText(t, symbols.get(text));
+				break;
+			case DASH:
 				// dashes and underscores
-			} else if (MaryDomUtils.tokenText(t).contains("-") || MaryDomUtils.tokenText(t).contains("_")) {
 				dashSplit = true;
-				String[] tokens = MaryDomUtils.tokenText(t).split("[-_]");
+				String[] tokens = dashPattern.split(text);
 				int i = 0;
 				for (String tok : tokens) {
-					if (tok.matches("\\d+")) {
+					if (digitsPattern.matcher(tok).matches()) {
 						String newTok = "";
 						for (char c : tok.toCharArray()) {
 							newTok += expandNumber(Double.parseDouble(String.valueOf(c))) + " ";
@@ -374,35 +385,41 @@ public class Preprocess extends InternalModule {
 					}
 					i++;
 				}
-				MaryDomUtils.setTokenText(t, Arrays.toString(tokens).replaceAll("[,\\]\\[]", ""));
-				// words containing only consonants
-			} else if (MaryDomUtils.tokenText(t).matches("(?i)" + consonantPattern.pattern())) {
+				MaryDomUtils.setTokenText(t, arrayPunctPattern.matcher(Arrays.toString(tokens)).replaceAll(""));
+				break;
+			case CONSONANTS:
 				// first check lexicon
-				if (MaryRuntimeUtils.checkLexicon("en_US", MaryDomUtils.tokenText(t)).length == 0) {
-					MaryDomUtils.setTokenText(t, expandConsonants(MaryDomUtils.tokenText(t)));
+				if (MaryRuntimeUtils.checkLexicon("en_US", text).length == 0) {
+					MaryDomUtils.setTokenText(t, expandConsonants(text));
 				}
+				break;
+			case PUNCTUATION_SPLIT:
 				// a final attempt to split by punctuation
-			} else if (punctuationPattern.matcher(MaryDomUtils.tokenText(t)).find() && MaryDomUtils.tokenText(t).length() > 1) {
 				puncSplit = true;
-				String[] puncTokens = MaryDomUtils.tokenText(t).split("((?<=\\p{Punct})|(?=\\p{Punct}))");
-				MaryDomUtils.setTokenText(t, Arrays.toString(puncTokens).replaceAll("[,\\]\\[]", ""));
+				String[] puncTokens = punctSplitPattern.split(text);
+				MaryDomUtils.setTokenText(t, arrayPunctPattern.matcher(Arrays.toString(puncTokens)).replaceAll(""));
+				break;
+			case QUOTE:
 				// FIXME: skip quotes for now as we don't have any clever management of the POS for the prosodic feature
-			} else if (MaryDomUtils.tokenText(t).equals("\"")) {
-			} else if (MaryDomUtils.tokenText(t).matches(punctuationPattern.pattern())) {
+				break;
+			case PUNCTUATION:
 				t.setAttribute("pos", ".");
+				break;
+			default:
+				break;
 			}
 			// if token isn't ignored but there is no handling rule don't add MTU
 			if (!origText.equals(MaryDomUtils.tokenText(t))) {
 				MaryDomUtils.encloseWithMTU(t, origText, null);
 				// finally, split new expanded token separated by spaces into separate tokens (also catch any leftover dashes)
-				String[] newTokens = MaryDomUtils.tokenText(t).replaceAll("-", " ").split("\\s+");
+				String[] newTokens = whitespacePattern.split(MaryDomUtils.tokenText(t).replace('-', ' '));
 				MaryDomUtils.setTokenText(t, newTokens[0]);
 				for (int i = 1; i < newTokens.length; i++) {
 					MaryDomUtils.appendToken(t, newTokens[i]);
 					t = MaryDomUtils.getNextSiblingElement((Element) t);
 					// if tokens are an expanded contraction
 					if (splitContraction && newTokens.length == 2) {
-						if (newTokens[0].substring(newTokens[0].length() - 1).matches("[cfkpt]")
+						if (voicelessPattern.matcher(newTokens[0].substring(newTokens[0].length() - 1)).matches()
 								&& contractions.get(newTokens[i]).length > 1) {
 							t.setAttribute("ph", contractions.get(newTokens[i])[1]);
 						} else {
@@ -426,6 +443,169 @@ public class Preprocess extends InternalModule {
 		}
 	}
 
+	/**
+	 * Determine how to handle a token. The rules are tested in a fixed order, and the first one that applies wins; rules that
+	 * cannot apply given the kinds of characters in the token are skipped without running their pattern.
+	 * 
+	 * @param text
+	 *            the token text
+	 * @param isYear
+	 *            whether a four-digit number may be a year
+	 * @param isURL
+	 *            whether we are inside a web or email address
+	 * @return the token type
+	 */
+	TokenType classify(String text, boolean isYear, boolean isURL) {
+		boolean hasDigit = false;
+		boolean hasLetter = false;
+		boolean onlyNumberChars = true;
+		for (int i = 0, len = text.length(); i < len; i++) {
+			char c = text.charAt(i);
+			if (c >= '0' && c <= '9') {
+				hasDigit = true;
+			} else {
+				if (Character.isLetter(c)) {
+					hasLetter = true;
+				}
+				if (c != '-' && c != '.' && c != '%') {
+					onlyNumberChars = false;
+				}
+			}
+		}
+		if (hasDigit) {
+			if (hasLetter && ordinalPattern.matcher(text).matches())
+				return TokenType.ORDINAL;
+		} else if (singleAPattern.matcher(text).matches()) {
+			return TokenType.SINGLE_A;
+		}
+		if (hasDigit) {
+			if (datePattern.matcher(text).matches())
+				return TokenType.DATE;
+			if (hasLetter && numberSPattern.matcher(text).matches())
+				return TokenType.NUMBER_S;
+			if (hasLetter && yearPattern.matcher(text).matches())
+				return TokenType.YEAR_BCAD;
+			if (isYear && fourDigitPattern.matcher(text).matches())
+				return TokenType.YEAR;
+			if (hasLetter && numberWordPattern.matcher(text).matches())
+				return TokenType.NUMBER_WORD;
+		}
+		if (onlyNumberChars && realNumPattern.matcher(text).matches())
+			return TokenType.REAL_NUMBER;
+		if (hasLetter) {
+			if (contractPattern.matcher(text).matches())
+				return TokenType.CONTRACTION;
+			if (acronymPattern.matcher(text).matches())
+				return TokenType.ACRONYM;
+		}
+		if (!isURL && (hasLetter && abbrevPattern.matcher(text).matches() || abbrevMap.containsKey(text.toLowerCase())))
+			return TokenType.ABBREVIATION;
+		if (hasDigit) {
+			if (timePattern.matcher(text).matches())
+				return TokenType.TIME;
+			if (durationPattern.matcher(text).matches())
+				return TokenType.DURATION;
+		}
+		if (text.indexOf('#') >= 0 && hashtagPattern.matcher(text).matches())
+			return TokenType.HASHTAG;
+		if (text.indexOf('.') >= 0 && URLPattern.matcher(text).matches())
+			return TokenType.URL;
+		if (isURL && text.equals("."))
+			return TokenType.URL_DOT;
+		if (symbolsPattern.matcher(text).matches())
+			return TokenType.SYMBOL;
+		if (hasDigit && rangePattern.matcher(text).matches())
+			return TokenType.RANGE;
+		if (text.contains("-") || text.contains("_"))
+			return TokenType.DASH;
+		if (hasLetter && consonantPattern.matcher(text).matches())
+			return TokenType.CONSONANTS;
+		if (text.length() > 1 && punctuationPattern.matcher(text).find())
+			return TokenType.PUNCTUATION_SPLIT;
+		if (text.equals("\""))
+			return TokenType.QUOTE;
+		if (punctuationPattern.matcher(text).matches())
+			return TokenType.PUNCTUATION;
+		return TokenType.OTHER;
+	}
+
+	/**
+	 * The expansion of a token whose expansion depends only on its type, its text and the given context, looked up in the
+	 * expansion cache if possible.
+	 * 
+	 * @param type
+	 *            the token type
+	 * @param text
+	 *            the token text
+	 * @param context
+	 *            the currency for money, whether the next token is capitalised for abbreviations, whether the next token is
+	 *            am/pm for times; empty otherwise
+	 * @return the expansion
+	 * @throws ParseException
+	 *             if a date cannot be parsed
+	 */
+	private String expansion(TokenType type, String text, String context) throws ParseException {
+		String key = null;
+		if (expansionCache != null) {
+			key = type.ordinal() + "|" + context + "|" + text;
+			String cached = expansionCache.get(key);
+			if (cached != null) {
+				return cached;
+			}
+		}
+		String result;
+		switch (type) {
+		case ORDINAL:
+			result = expandOrdinal(Double.parseDouble(ordinalSuffixPattern.split(text)[0]));
+			break;
+		case DATE:
+			result = expandDate(text);
+			break;
+		case NUMBER_S:
+			result = expandNumberS(text);
+			break;
+		case YEAR_BCAD:
+			result = expandYearBCAD(text);
+			break;
+		case YEAR:
+			result = expandYear(Double.parseDouble(text));
+			break;
+		case NUMBER_WORD:
+			result = expandWordNumber(text);
+			break;
+		case REAL_NUMBER:
+			result = expandRealNumber(text);
+			break;
+		case MONEY:
+			result = expandMoney(text, context);
+			break;
+		case ACRONYM:
+			result = expandAcronym(text);
+			break;
+		case ABBREVIATION:
+			result = expandAbbreviation(text, Boolean.parseBoolean(context));
+			break;
+		case TIME:
+			result = expandTime(text, Boolean.parseBoolean(context));
+			break;
+		case DURATION:
+			result = expandDuration(text);
+			break;
+		case HASHTAG:
+			result = expandHashtag(text);
+			break;
+		case RANGE:
+			result = expandRange(text);
+			break;
+		default:
+			throw new IllegalArgumentException("No context-free expansion for " + type);
+		}
+		if (key != null && result != null) {
+			expansionCache.put(key, result);
+		}
+		return result;
+	}
+
 	protected String expandNumber(double number) {
 		this.rbnf.setDefaultRuleSet(cardinalRule);
 		return this.rbnf.format(number);
@@ -0,0 +1,91 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package marytts.language.en;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import marytts.LocalMaryInterface;
+import marytts.MaryInterface;
+import marytts.datatypes.MaryDataType;
+import marytts.datatypes.MaryXML;
+import marytts.util.dom.MaryDomUtils;
+
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+/**
+ * Low-latency synthesis splits the first paragraph after its first sentence, as found by the tokeniser; abbreviations must not
+ * be taken for the end of the sentence.
+ */
+public class FirstSentenceSplitTest {
+	private MaryInterface mary;
+
+	@BeforeClass
+	public void setUp() throws Exception {
+		mary = new LocalMaryInterface();
+		mary.setLocale(Locale.US);
+		mary.setOutputType(MaryDataType.TOKENS.name());
+	}
+
+	private static List<String> tokens(Document doc) {
+		List<String> tokens = new ArrayList<String>();
+		NodeList ts = doc.getElementsByTagName(MaryXML.TOKEN);
+		for (int i = 0; i < ts.getLength(); i++) {
+			tokens.add(MaryDomUtils.tokenText((Element) ts.item(i)));
+		}
+		return tokens;
+	}
+
+	private Document[] split(String text) throws Exception {
+		Document[] parts = MaryDomUtils.splitAfterFirstSentence(mary.generateXML(text));
+		Assert.assertNotNull(parts, "not split: " + text);
+		return parts;
+	}
+
+	@Test
+	public void abbreviationsDoNotEndTheFirstSentence() throws Exception {
+		Document[] parts = split("Mrs. Smith met Prof. Miller at approx. 5 o'clock. They talked for an hour.");
+		List<String> first = tokens(parts[0]);
+		Assert.assertTrue(first.containsAll(Arrays.asList("Smith", "Miller", "o'clock")), first.toString());
+		Assert.assertEquals(tokens(parts[1]).get(0), "They");
+	}
+
+	@Test
+	public void restKeepsAllFollowingSentences() throws Exception {
+		Document[] parts = split("It costs approx. 5 dollars, i.e. too much. Dr. Brown said so. Really?");
+		List<String> rest = tokens(parts[1]);
+		Assert.assertEquals(rest.get(0), "Dr.");
+		Assert.assertTrue(rest.contains("Really"), rest.toString());
+		Assert.assertFalse(rest.contains("dollars"), rest.toString());
+	}
+
+	@Test
+	public void singleSentenceIsNotSplit() throws Exception {
+		Assert.assertNull(MaryDomUtils.splitAfterFirstSentence(mary.generateXML("Mrs. Smith met Prof. Miller.")));
+	}
+}
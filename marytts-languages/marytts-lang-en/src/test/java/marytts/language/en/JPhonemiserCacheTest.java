@@ -0,0 +1,162 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.language.en;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+import marytts.LocalMaryInterface;
+import marytts.MaryInterface;
+import marytts.datatypes.MaryData;
+import marytts.datatypes.MaryDataType;
+import marytts.exceptions.MaryConfigurationException;
+import marytts.modules.JPhonemiser;
+import marytts.util.cache.MemoCache;
+import marytts.util.dom.DomUtils;
+
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+import org.w3c.dom.Document;
+
+/**
+ * The pronunciation cache of the US English phonemiser must give the same transcriptions and g2p methods as
+ * {@link JPhonemiser#phonemise(String, String, StringBuilder)}, for words from the lexicon, words whose transcription depends on
+ * the part-of-speech, words with diacritics, words left to letter-to-sound rules, and for words pre-warmed into the cache at
+ * startup.
+ */
+public class JPhonemiserCacheTest {
+	private static final String[] WORDS = { "hello", "the", "record", "present", "café", "naïve", "Zürich", "blorfinator",
+			"xq", "Qwrtzbl" };
+
+	private static final String[] POS = { null, "NN", "VB" };
+
+	private static final String[] SENTENCES = { "Hello, the record shows a naïve blorfinator in a café.",
+			"Please record the present for the blorfinator.", "The café in Zürich was naïve." };
+
+	private Document[] partsOfSpeech;
+
+	@BeforeClass
+	public void setUp() throws Exception {
+		MaryInterface mary = new LocalMaryInterface();
+		mary.setLocale(Locale.US);
+		mary.setOutputType(MaryDataType.PARTSOFSPEECH.name());
+		partsOfSpeech = new Document[SENTENCES.length];
+		for (int i = 0; i < SENTENCES.length; i++) {
+			partsOfSpeech[i] = mary.generateXML(SENTENCES[i]);
+		}
+	}
+
+	/**
+	 * Gives access to the pronunciation cache.
+	 */
+	private static class Phonemiser extends JPhonemiser {
+		Phonemiser() throws IOException, MaryConfigurationException {
+			super("en_US.");
+		}
+
+		MemoCache<String, String[]> getPronunciationCache() {
+			return pronunciationCache;
+		}
+
+		void disablePronunciationCache() {
+			pronunciationCache = null;
+		}
+
+		void prewarm(String wordList) throws IOException {
+			prewarmPronunciationCache(new ByteArrayInputStream(wordList.getBytes("UTF-8")), 1000);
+		}
+	}
+
+	private static Phonemiser startPhonemiser() throws Exception {
+		Phonemiser phonemiser = new Phonemiser();
+		phonemiser.startup();
+		return phonemiser;
+	}
+
+	@Test
+	public void cachedPhonemisationIsUncachedPhonemisation() throws Exception {
+		Phonemiser phonemiser = startPhonemiser();
+		Set<String> methods = new HashSet<String>();
+		for (String word : WORDS) {
+			for (String pos : POS) {
+				StringBuilder expectedMethod = new StringBuilder();
+				String expected = phonemiser.phonemise(word, pos, expectedMethod);
+				methods.add(expectedMethod.toString());
+				for (int pass = 0; pass < 2; pass++) {
+					StringBuilder method = new StringBuilder();
+					Assert.assertEquals(phonemiser.phonemiseCached(word, pos, method), expected, word + " " + pos);
+					Assert.assertEquals(method.toString(), expectedMethod.toString(), word + " " + pos);
+				}
+			}
+		}
+		Assert.assertTrue(methods.contains("lexicon"), methods.toString());
+		Assert.assertTrue(methods.contains("rules"), methods.toString());
+		Assert.assertEquals(phonemiser.getPronunciationCache().getMisses(), POS.length * WORDS.length);
+		Assert.assertEquals(phonemiser.getPronunciationCache().getHits(), POS.length * WORDS.length);
+	}
+
+	@Test
+	public void prewarmedPhonemisationIsUncachedPhonemisation() throws Exception {
+		Phonemiser phonemiser = startPhonemiser();
+		StringBuilder wordList = new StringBuilder("# frequency word part-of-speech\n");
+		for (int i = 0; i < WORDS.length; i++) {
+			wordList.append(1000 - i).append(' ').append(WORDS[i]).append(i % 2 == 0 ? "\n" : " NN\n");
+		}
+		phonemiser.prewarm(wordList.toString());
+		MemoCache<String, String[]> cache = phonemiser.getPronunciationCache();
+		Assert.assertEquals(cache.size(), WORDS.length);
+		long misses = cache.getMisses();
+		Phonemiser uncached = startPhonemiser();
+		uncached.disablePronunciationCache();
+		for (int i = 0; i < WORDS.length; i++) {
+			String pos = i % 2 == 0 ? null : "NN";
+			StringBuilder expectedMethod = new StringBuilder();
+			String expected = uncached.phonemise(WORDS[i], pos, expectedMethod);
+			StringBuilder method = new StringBuilder();
+			Assert.assertEquals(phonemiser.phonemiseCached(WORDS[i], pos, method), expected, WORDS[i]);
+			Assert.assertEquals(method.toString(), expectedMethod.toString(), WORDS[i]);
+		}
+		Assert.assertEquals(cache.getMisses(), misses);
+		Assert.assertEquals(cache.getHits(), WORDS.length);
+	}
+
+	private static String phonemise(JPhonemiser phonemiser, Document partsOfSpeech) throws Exception {
+		MaryData in = new MaryData(MaryDataType.PARTSOFSPEECH, Locale.US);
+		in.setDocument((Document) partsOfSpeech.cloneNode(true));
+		return DomUtils.serializeToString(phonemiser.process(in).getDocument());
+	}
+
+	@Test
+	public void cachedProcessingIsUncachedProcessing() throws Exception {
+		Phonemiser cached = startPhonemiser();
+		Phonemiser uncached = startPhonemiser();
+		uncached.disablePronunciationCache();
+		for (int i = 0; i < SENTENCES.length; i++) {
+			String expected = phonemise(uncached, partsOfSpeech[i]);
+			Assert.assertEquals(phonemise(cached, partsOfSpeech[i]), expected, SENTENCES[i]);
+			Assert.assertEquals(phonemise(cached, partsOfSpeech[i]), expected, SENTENCES[i]);
+		}
+		Assert.assertTrue(cached.getPronunciationCache().getHits() > 0);
+	}
+}
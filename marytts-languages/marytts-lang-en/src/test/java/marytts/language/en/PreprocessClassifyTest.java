@@ -0,0 +1,146 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package marytts.language.en;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import marytts.language.en.Preprocess.TokenType;
+
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ * Compare the token classification of {@link Preprocess} with the chain of full pattern matches it replaced, on a sample of
+ * tokens covering all token types.
+ */
+public class PreprocessClassifyTest {
+
+	private static Preprocess module;
+	private static Map<Object, Object> abbrevMap;
+	private static List<String> tokens;
+
+	@BeforeClass
+	public static void setUpBeforeClass() throws IOException {
+		module = new Preprocess();
+		abbrevMap = Preprocess.loadAbbrevMap();
+		tokens = new ArrayList<String>();
+		BufferedReader in = new BufferedReader(new InputStreamReader(
+				PreprocessClassifyTest.class.getResourceAsStream("classify_tokens.txt"), "UTF-8"));
+		try {
+			String line;
+			while ((line = in.readLine()) != null) {
+				if (line.length() > 0) {
+					tokens.add(line);
+				}
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * The token classification as it was done before the prefilters were introduced: every rule runs its full pattern, in order.
+	 */
+	private static TokenType referenceClassify(String text, boolean isYear, boolean isURL) {
+		if (text.matches("(?i)\\d+(st|nd|rd|th)"))
+			return TokenType.ORDINAL;
+		if (text.matches("[aA]"))
+			return TokenType.SINGLE_A;
+		if (text.matches("(\\d{2})[\\/\\.](\\d{2})[\\/\\.]\\d{4}"))
+			return TokenType.DATE;
+		if (text.matches("([0-9]+)([sS])"))
+			return TokenType.NUMBER_S;
+		if (text.matches("(?i)(\\d+)(bc|ad|b\\.c\\.|b\\.c|a\\.d\\.|a\\.d)"))
+			return TokenType.YEAR_BCAD;
+		if (text.matches("\\d{4}") && isYear)
+			return TokenType.YEAR;
+		if (text.matches("([a-zA-Z]+[0-9]+|[0-9]+[a-zA-Z]+)\\w*"))
+			return TokenType.NUMBER_WORD;
+		if (text.matches("(-)?(\\d+)?(\\.(\\d+)(%)?)?"))
+			return TokenType.REAL_NUMBER;
+		if (text.matches("[a-zA-Z]+('[a-zA-Z]+)"))
+			return TokenType.CONTRACTION;
+		if (text.matches("([a-zA-Z]\\.[a-zA-Z](\\.)?)+([a-zA-Z](\\.)?)?"))
+			return TokenType.ACRONYM;
+		if ((text.matches("[a-zA-Z]{2,}\\.") || abbrevMap.containsKey(text.toLowerCase())) && !isURL)
+			return TokenType.ABBREVIATION;
+		if (text.matches("(?i)((0?[0-9])|(1[0-1])|(1[2-9])|(2[0-3])):([0-5][0-9])(a\\.m\\.|am|pm|p\\.m\\.|a\\.m|p\\.m)?"))
+			return TokenType.TIME;
+		if (text.matches("(\\d+):([0-5][0-9]):([0-5][0-9])(:([0-5][0-9]))?"))
+			return TokenType.DURATION;
+		if (text.matches("(#)(\\w+)"))
+			return TokenType.HASHTAG;
+		if (text.matches("(https?:\\/\\/)?((www\\.)?([-a-zA-Z0-9@:%._\\\\+~#=]{2,256}\\.[a-z]{2,6}\\b([-a-zA-Z0-9@:%_\\\\+.~#?&\\/=]*)))"))
+			return TokenType.URL;
+		if (text.equals(".") && isURL)
+			return TokenType.URL_DOT;
+		if (text.matches("[@%#\\/\\+=&><-]"))
+			return TokenType.SYMBOL;
+		if (text.matches("([0-9]+)-([0-9]+)"))
+			return TokenType.RANGE;
+		if (text.contains("-") || text.contains("_"))
+			return TokenType.DASH;
+		if (text.matches("(?i)[b-df-hj-np-tv-z]+"))
+			return TokenType.CONSONANTS;
+		if (Pattern.compile("\\p{Punct}").matcher(text).find() && text.length() > 1)
+			return TokenType.PUNCTUATION_SPLIT;
+		if (text.equals("\""))
+			return TokenType.QUOTE;
+		if (text.matches("\\p{Punct}"))
+			return TokenType.PUNCTUATION;
+		return TokenType.OTHER;
+	}
+
+	@Test
+	public void sameTypeAsPatternChain() {
+		for (String text : tokens) {
+			for (boolean isYear : new boolean[] { false, true }) {
+				for (boolean isURL : new boolean[] { false, true }) {
+					Assert.assertEquals(module.classify(text, isYear, isURL), referenceClassify(text, isYear, isURL), "token '"
+							+ text + "', isYear=" + isYear + ", isURL=" + isURL);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void sampleCoversAllTypes() {
+		// MONEY is not a classification result: it is told apart from REAL_NUMBER by the preceding currency symbol
+		Set<TokenType> missing = EnumSet.complementOf(EnumSet.of(TokenType.MONEY));
+		for (String text : tokens) {
+			for (boolean isYear : new boolean[] { false, true }) {
+				for (boolean isURL : new boolean[] { false, true }) {
+					missing.remove(referenceClassify(text, isYear, isURL));
+				}
+			}
+		}
+		Assert.assertTrue(missing.isEmpty(), "no sample token for " + missing);
+	}
+}
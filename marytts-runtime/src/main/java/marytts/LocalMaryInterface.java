@@ -19,9 +19,22 @@
  */
 package marytts;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Locale;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.sound.sampled.AudioFileFormat;
 import javax.sound.sampled.AudioFormat;
@@ -35,10 +48,15 @@ import marytts.config.MaryConfig;
 import marytts.datatypes.MaryData;
 import marytts.datatypes.MaryDataType;
 import marytts.exceptions.MaryConfigurationException;
+import marytts.exceptions.ServerBusyException;
 import marytts.exceptions.SynthesisException;
 import marytts.modules.synthesis.Voice;
+import marytts.server.MaryProperties;
 import marytts.server.Request;
+import marytts.server.SynthesisExecutor;
 import marytts.util.MaryRuntimeUtils;
+import marytts.util.MaryUtils;
+import marytts.util.data.audio.AppendableSequenceAudioInputStream;
 
 /**
  * This class and its subclasses are intended to grow into a simple-to-use, unified interface for both the local MARY server and a
@@ -48,6 +66,11 @@ import marytts.util.MaryRuntimeUtils;
  *
  */
 public class LocalMaryInterface implements MaryInterface {
+	private static int id = 0;
+
+	private static synchronized int getId() {
+		return id++;
+	}
 
 	private MaryDataType inputType;
 	private MaryDataType outputType;
@@ -87,12 +110,15 @@ public class LocalMaryInterface implements MaryInterface {
 	}
 
 	private void setAudioFileFormatForVoice() {
-		if (voice != null) {
-			AudioFormat af = voice.dbAudioFormat();
-			audioFileFormat = new AudioFileFormat(AudioFileFormat.Type.WAVE, af, AudioSystem.NOT_SPECIFIED);
-		} else {
-			audioFileFormat = null;
+		audioFileFormat = getAudioFileFormat(voice);
+	}
+
+	private static AudioFileFormat getAudioFileFormat(Voice aVoice) {
+		if (aVoice == null) {
+			return null;
 		}
+		AudioFormat af = aVoice.dbAudioFormat();
+		return new AudioFileFormat(AudioFileFormat.Type.WAVE, af, AudioSystem.NOT_SPECIFIED);
 	}
 
 	/*
@@ -364,6 +390,540 @@ public class LocalMaryInterface implements MaryInterface {
 		return out.getAudio();
 	}
 
+	/**
+	 * Generate audio for many texts, using the number of threads given by <code>synthesis.batch.threads</code> (0 = number of
+	 * available processors).
+	 * 
+	 * @param items
+	 *            the texts to synthesise
+	 * @param callback
+	 *            receives the result for each item
+	 * @throws InterruptedException
+	 *             if the calling thread is interrupted while waiting
+	 * @see #generateAudioBatch(Iterator, int, BatchCallback)
+	 */
+	public void generateAudioBatch(Iterator<BatchItem> items, BatchCallback callback) throws InterruptedException {
+		int numThreads = MaryProperties.getInteger("synthesis.batch.threads", 0);
+		if (numThreads <= 0) {
+			numThreads = Runtime.getRuntime().availableProcessors();
+		}
+		generateAudioBatch(items, numThreads, callback);
+	}
+
+	/**
+	 * Generate audio for many texts, processing up to <code>numThreads</code> of them in parallel. The input and output types,
+	 * and the voice, effects, style and output type parameters for items that do not set their own, are those of this interface
+	 * when the method is called.
+	 * <p>
+	 * Items are taken from the iterator only as fast as they are processed, so the iterator can produce them lazily from a
+	 * large source. The results are passed to the callback as each item is finished, which is not necessarily in the order of
+	 * the items, and from several threads at the same time. An item that fails is reported to the callback and does not stop
+	 * the batch. This method returns when all items are done.
+	 * 
+	 * @param items
+	 *            the texts to synthesise
+	 * @param numThreads
+	 *            the number of items to process in parallel
+	 * @param callback
+	 *            receives the result for each item
+	 * @throws InterruptedException
+	 *             if the calling thread is interrupted while waiting; items not yet started are then not processed
+	 */
+	public void generateAudioBatch(Iterator<BatchItem> items, int numThreads, final BatchCallback callback)
+			throws InterruptedException {
+		if (numThreads <= 0)
+			throw new IllegalArgumentException("Need at least one thread, got " + numThreads);
+		verifyInputTypeIsText();
+		verifyOutputTypeIsAudio();
+		verifyVoiceIsAvailableForLocale();
+		processBatch(items, numThreads, callback, new Settings());
+	}
+
+	/**
+	 * The loop of {@link #generateAudioBatch(Iterator, int, BatchCallback)}, with the processing of each item left to the given
+	 * processor.
+	 */
+	static void processBatch(Iterator<BatchItem> items, int numThreads, final BatchCallback callback,
+			final BatchProcessor processor) throws InterruptedException {
+		ExecutorService pool = Executors.newFixedThreadPool(numThreads, new BatchThreadFactory());
+		// bounds the items taken from the iterator but not yet finished:
+		final Semaphore inFlight = new Semaphore(2 * numThreads);
+		int numItems = 0;
+		try {
+			while (items.hasNext()) {
+				final BatchItem item = items.next();
+				final int itemId = ++numItems;
+				inFlight.acquire();
+				pool.execute(new Runnable() {
+					public void run() {
+						try {
+							AudioInputStream audio;
+							try {
+								audio = processor.process(item);
+							} catch (SynthesisException e) {
+								callback.onFailure(item, e);
+								return;
+							}
+							callback.onSuccess(item, audio);
+						} catch (RuntimeException e) {
+							MaryUtils.getLogger("LocalMaryInterface").warn("Batch callback failed for item " + itemId, e);
+						} finally {
+							inFlight.release();
+						}
+					}
+				});
+			}
+			pool.shutdown();
+			pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * Generates the audio for one item of a batch.
+	 */
+	interface BatchProcessor {
+		AudioInputStream process(BatchItem item) throws SynthesisException;
+	}
+
+	/**
+	 * One text of a batch, with optional per-item settings; settings left null are taken from the interface.
+	 * 
+	 * @see LocalMaryInterface#generateAudioBatch(Iterator, int, BatchCallback)
+	 */
+	public static class BatchItem {
+		private final String text;
+		private final String voiceName;
+		private final String audioEffects;
+		private final String style;
+		private final String outputTypeParams;
+		private final Object userData;
+
+		/**
+		 * @param text
+		 *            the text to synthesise
+		 * @param userData
+		 *            any object identifying the item for the callback, e.g. an output file name; may be null
+		 */
+		public BatchItem(String text, Object userData) {
+			this(text, null, null, null, null, userData);
+		}
+
+		/**
+		 * @param text
+		 *            the text to synthesise
+		 * @param voiceName
+		 *            the voice, or null
+		 * @param audioEffects
+		 *            the audio effects, or null
+		 * @param style
+		 *            the style, or null
+		 * @param outputTypeParams
+		 *            the output type parameters, or null
+		 * @param userData
+		 *            any object identifying the item for the callback, e.g. an output file name; may be null
+		 */
+		public BatchItem(String text, String voiceName, String audioEffects, String style, String outputTypeParams,
+				Object userData) {
+			if (text == null)
+				throw new NullPointerException("Null text");
+			this.text = text;
+			this.voiceName = voiceName;
+			this.audioEffects = audioEffects;
+			this.style = style;
+			this.outputTypeParams = outputTypeParams;
+			this.userData = userData;
+		}
+
+		public String getText() {
+			return text;
+		}
+
+		public String getVoiceName() {
+			return voiceName;
+		}
+
+		public String getAudioEffects() {
+			return audioEffects;
+		}
+
+		public String getStyle() {
+			return style;
+		}
+
+		public String getOutputTypeParams() {
+			return outputTypeParams;
+		}
+
+		public Object getUserData() {
+			return userData;
+		}
+	}
+
+	/**
+	 * Receives the results of a batch. The methods are called from the worker threads, and must be thread-safe.
+	 * 
+	 * @see LocalMaryInterface#generateAudioBatch(Iterator, int, BatchCallback)
+	 */
+	public interface BatchCallback {
+		/**
+		 * @param item
+		 *            the item
+		 * @param audio
+		 *            the audio generated for the item
+		 */
+		public void onSuccess(BatchItem item, AudioInputStream audio);
+
+		/**
+		 * @param item
+		 *            the item
+		 * @param e
+		 *            the reason why no audio could be generated
+		 */
+		public void onFailure(BatchItem item, SynthesisException e);
+	}
+
+	/**
+	 * Generate audio without blocking the caller. The request is processed by the server's synthesis worker pool (see
+	 * {@link SynthesisExecutor}), with the settings of this interface at the time of the call.
+	 * 
+	 * @param text
+	 *            the text to synthesise
+	 * @return a future providing the complete audio; if processing fails, its get() method throws an ExecutionException whose
+	 *         cause is a {@link SynthesisException}, or a {@link ServerBusyException} if the request waited too long for a
+	 *         worker
+	 * @throws SynthesisException
+	 *             if the request cannot be admitted because too many requests are waiting
+	 */
+	public Future<AudioInputStream> generateAudioAsync(final String text) throws SynthesisException {
+		verifyInputTypeIsText();
+		verifyOutputTypeIsAudio();
+		verifyVoiceIsAvailableForLocale();
+		final Settings settings = new Settings();
+		try {
+			return SynthesisExecutor.getExecutor().submit(new Callable<AudioInputStream>() {
+				public AudioInputStream call() throws SynthesisException {
+					return settings.process(new BatchItem(text, null));
+				}
+			}, "LocalMaryInterface async", null);
+		} catch (ServerBusyException e) {
+			throw new SynthesisException(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Generate audio without blocking the caller, and pass it on in chunks as soon as it is produced. The request is processed by
+	 * the server's synthesis worker pool (see {@link SynthesisExecutor}), with the settings of this interface at the time of the
+	 * call. No thread waits for the audio: the chunks are pushed to the listener by the thread which produces them, or by the
+	 * thread asking for more of them, and only as many as the listener has asked for (see {@link AudioChunkSubscription}). Audio
+	 * which is produced in the background, like that of HMM voices, is checked for again every few milliseconds while the
+	 * listener is asking for more.
+	 * 
+	 * @param text
+	 *            the text to synthesise
+	 * @param chunkSize
+	 *            the maximum size of each chunk, in bytes; rounded down to whole frames
+	 * @param listener
+	 *            receives the audio
+	 * @throws SynthesisException
+	 *             if the request cannot be admitted because too many requests are waiting; the listener is not called in this
+	 *             case
+	 */
+	public void generateAudioAsync(String text, int chunkSize, AudioChunkListener listener) throws SynthesisException {
+		verifyInputTypeIsText();
+		verifyOutputTypeIsAudio();
+		verifyVoiceIsAvailableForLocale();
+		final Request request = new Settings().newRequest(new BatchItem(text, null), true);
+		AppendableSequenceAudioInputStream audio = request.getAudio();
+		int frameSize = Math.max(audio.getFormat().getFrameSize(), 1);
+		final ChunkPublisher publisher = new ChunkPublisher(request, Math.max(chunkSize / frameSize, 1) * frameSize, listener);
+		audio.setAppendListener(publisher);
+		try {
+			SynthesisExecutor.getExecutor().submit(new Callable<Void>() {
+				public Void call() throws SynthesisException {
+					Throwable error = null;
+					try {
+						request.process();
+					} catch (Exception e) {
+						error = new SynthesisException("cannot process", e);
+					} finally {
+						request.getAudio().doneAppending();
+						publisher.finish(error);
+					}
+					return null;
+				}
+			}, "LocalMaryInterface async", new Runnable() {
+				public void run() {
+					publisher.finish(new ServerBusyException("Server busy: request timed out waiting for processing", 0));
+				}
+			});
+		} catch (ServerBusyException e) {
+			throw new SynthesisException(e.getMessage(), e);
+		}
+		publisher.start();
+	}
+
+	/**
+	 * Receives the audio of {@link LocalMaryInterface#generateAudioAsync(String, int, AudioChunkListener)} as it is produced.
+	 * onStart() is called first, from the thread starting the request; then onAudio() for each chunk asked for, and finally
+	 * either onComplete() or onError(). These calls may come from different threads, but never at the same time.
+	 */
+	public interface AudioChunkListener {
+		/**
+		 * @param format
+		 *            the format of the audio that follows
+		 * @param subscription
+		 *            the means to ask for audio; no chunks are delivered until the listener calls its request() method
+		 */
+		public void onStart(AudioFormat format, AudioChunkSubscription subscription);
+
+		/**
+		 * @param chunk
+		 *            the next chunk of audio data, a whole number of frames; the buffer belongs to the listener
+		 */
+		public void onAudio(ByteBuffer chunk);
+
+		/**
+		 * All audio has been delivered. This is called without being asked for.
+		 */
+		public void onComplete();
+
+		/**
+		 * Processing failed; the audio delivered so far is incomplete. This is called without being asked for.
+		 * 
+		 * @param t
+		 *            the reason
+		 */
+		public void onError(Throwable t);
+	}
+
+	/**
+	 * Lets an {@link AudioChunkListener} control how much audio is delivered to it. Its methods may be called from any thread,
+	 * including from within the listener's methods.
+	 */
+	public interface AudioChunkSubscription {
+		/**
+		 * Ask for more audio. Chunks are delivered as soon as they are produced, until as many as asked for have been delivered.
+		 * Audio produced in the meantime is kept until it is asked for.
+		 * 
+		 * @param n
+		 *            the number of additional chunks to deliver, a positive number; Long.MAX_VALUE asks for all of them
+		 */
+		public void request(long n);
+
+		/**
+		 * Stop processing the request. The listener may still receive a call already under way, but no others.
+		 */
+		public void cancel();
+	}
+
+	/**
+	 * Delivers the audio of a request to an {@link AudioChunkListener}. Delivery is attempted whenever audio is appended, more
+	 * audio is asked for, or processing ends, in the thread doing so; a counter of such attempts makes sure that only one thread
+	 * at a time delivers, and that the last attempt is not lost. Audio is only read as far as it is available without waiting;
+	 * if the listener asks for more than is available, another attempt is scheduled after RETRY_DELAY milliseconds.
+	 */
+	private static class ChunkPublisher implements Runnable, AudioChunkSubscription {
+		private static final long RETRY_DELAY = 10;
+
+		private final Request request;
+		private final AppendableSequenceAudioInputStream audio;
+		private final AudioChunkListener listener;
+		private final int frameSize;
+		private final AtomicLong demand = new AtomicLong();
+		private final AtomicInteger attempts = new AtomicInteger();
+		private final AtomicBoolean retryScheduled = new AtomicBoolean();
+		private volatile boolean started;
+		private volatile boolean cancelled;
+		private volatile boolean processed;
+		private volatile Throwable error;
+		// only accessed by the thread delivering:
+		private final byte[] buf;
+		private int buffered;
+		private boolean ended;
+		private boolean done;
+
+		ChunkPublisher(Request request, int bufferSize, AudioChunkListener listener) {
+			this.request = request;
+			this.audio = request.getAudio();
+			this.listener = listener;
+			this.frameSize = Math.max(audio.getFormat().getFrameSize(), 1);
+			this.buf = new byte[bufferSize];
+		}
+
+		void start() {
+			listener.onStart(audio.getFormat(), this);
+			started = true;
+			deliver();
+		}
+
+		void finish(Throwable t) {
+			if (t != null) {
+				error = t;
+			}
+			processed = true;
+			deliver();
+		}
+
+		/**
+		 * Called by the audio stream when audio was appended.
+		 */
+		public void run() {
+			deliver();
+		}
+
+		public void request(long n) {
+			if (n <= 0) {
+				error = new IllegalArgumentException("Must request a positive number of chunks, not " + n);
+				request.abort();
+				deliver();
+				return;
+			}
+			long current;
+			do {
+				current = demand.get();
+			} while (!demand.compareAndSet(current, current + n < 0 ? Long.MAX_VALUE : current + n));
+			deliver();
+		}
+
+		public void cancel() {
+			cancelled = true;
+			request.abort();
+		}
+
+		private void deliver() {
+			if (attempts.getAndIncrement() != 0) {
+				return; // another thread is delivering, and will try again
+			}
+			int missed = 1;
+			do {
+				if (started && !done) {
+					try {
+						deliverAvailable();
+					} catch (Throwable t) {
+						done = true;
+						request.abort();
+						listener.onError(t);
+					}
+				}
+				missed = attempts.addAndGet(-missed);
+			} while (missed != 0);
+		}
+
+		private void deliverAvailable() throws IOException {
+			while (!cancelled) {
+				if (error != null) {
+					done = true;
+					listener.onError(error);
+					return;
+				}
+				if (!ended && buffered < buf.length) {
+					int n = audio.readAvailable(buf, buffered, buf.length - buffered);
+					if (n == -1) {
+						ended = true;
+					} else if (n > 0) {
+						buffered += n;
+						continue; // fill the chunk if possible
+					}
+				}
+				// Deliver a full chunk, or what is available now:
+				int size = ended ? buffered : buffered - buffered % frameSize;
+				if (size == 0) {
+					if (ended && processed) {
+						done = true;
+						listener.onComplete();
+					} else if (!ended && demand.get() > 0) {
+						scheduleRetry(); // audio may be produced in the background
+					}
+					return;
+				}
+				if (demand.get() == 0) {
+					return;
+				}
+				demand.decrementAndGet();
+				ByteBuffer chunk = ByteBuffer.allocate(size);
+				chunk.put(buf, 0, size);
+				chunk.flip();
+				buffered -= size;
+				System.arraycopy(buf, size, buf, 0, buffered);
+				listener.onAudio(chunk);
+			}
+			done = true;
+		}
+
+		private void scheduleRetry() {
+			if (retryScheduled.compareAndSet(false, true)) {
+				SynthesisExecutor.getExecutor().scheduleHelper(new Runnable() {
+					public void run() {
+						retryScheduled.set(false);
+						deliver();
+					}
+				}, "LocalMaryInterface async " + request.getId(), RETRY_DELAY);
+			}
+		}
+	}
+
+	/**
+	 * The settings of the interface at a given time, so that later changes to the interface do not affect batches and
+	 * asynchronous requests already started.
+	 */
+	private class Settings implements BatchProcessor {
+		private final MaryDataType batchInputType = inputType;
+		private final MaryDataType batchOutputType = outputType;
+		private final Locale batchLocale = locale;
+		private final Voice batchVoice = voice;
+		private final AudioFileFormat batchAudioFileFormat = audioFileFormat;
+		private final String batchEffects = effects;
+		private final String batchStyle = style;
+		private final String batchOutputTypeParams = outputTypeParams;
+
+		public AudioInputStream process(BatchItem item) throws SynthesisException {
+			Request r = newRequest(item, false);
+			try {
+				r.process();
+			} catch (Exception e) {
+				throw new SynthesisException("cannot process", e);
+			}
+			return r.getOutputData().getAudio();
+		}
+
+		Request newRequest(BatchItem item, boolean streaming) throws SynthesisException {
+			Voice v = batchVoice;
+			Locale l = batchLocale;
+			AudioFileFormat aff = batchAudioFileFormat;
+			if (item.getVoiceName() != null) {
+				v = Voice.getVoice(item.getVoiceName());
+				if (v == null) {
+					throw new SynthesisException("No such voice: " + item.getVoiceName());
+				}
+				l = v.getLocale();
+				aff = getAudioFileFormat(v);
+			}
+			MaryData in = new MaryData(batchInputType, l);
+			try {
+				in.setData(item.getText());
+			} catch (Exception e) {
+				throw new SynthesisException(e);
+			}
+			Request r = new Request(batchInputType, batchOutputType, l, v, item.getAudioEffects() != null
+					? item.getAudioEffects() : batchEffects, item.getStyle() != null ? item.getStyle() : batchStyle, getId(), aff,
+					streaming, item.getOutputTypeParams() != null ? item.getOutputTypeParams() : batchOutputTypeParams);
+			r.setInputData(in);
+			return r;
+		}
+	}
+
+	private static class BatchThreadFactory implements ThreadFactory {
+		private static final AtomicInteger counter = new AtomicInteger();
+
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "batch-" + counter.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		}
+	}
+
 	private void verifyOutputTypeIsXML() {
 		if (!outputType.isXMLType()) {
 			throw new IllegalArgumentException("Cannot provide XML output for non-XML-based output type " + outputType);
@@ -431,7 +991,7 @@ public class LocalMaryInterface implements MaryInterface {
 	}
 
 	private MaryData process(MaryData in) throws SynthesisException {
-		Request r = new Request(inputType, outputType, locale, voice, effects, style, 1, audioFileFormat, isStreaming,
+		Request r = new Request(inputType, outputType, locale, voice, effects, style, getId(), audioFileFormat, isStreaming,
 				outputTypeParams);
 		r.setInputData(in);
 		try {
@@ -46,6 +46,9 @@ import marytts.unitselection.select.Target;
  */
 public class CART extends DirectedGraph {
 
+	/** array-encoded form of this tree, used for interpretation once the tree has been compiled */
+	private CompiledCART compiled;
+
 	/**
 	 * Build a new empty cart
 	 * 
@@ -115,6 +118,10 @@ public class CART extends DirectedGraph {
 	 * @return the Node
 	 */
 	public Node interpretToNode(FeatureVector featureVector, int minNumberOfData) {
+		CompiledCART c = compiled;
+		if (c != null) {
+			return c.interpretToNode(featureVector, minNumberOfData);
+		}
 		Node currentNode = rootNode;
 		Node prevNode = null;
 
@@ -142,6 +149,43 @@ public class CART extends DirectedGraph {
 
 	}
 
+	@Override
+	public Object interpret(FeatureVector fv) {
+		CompiledCART c = compiled;
+		if (c != null) {
+			LeafNode leaf = c.interpretToLeaf(fv);
+			return leaf == null ? null : leaf.getAllData();
+		}
+		return super.interpret(fv);
+	}
+
+	/**
+	 * Compile this tree into its array-encoded form, which is then used by {@link #interpretToNode(FeatureVector, int)},
+	 * {@link #interpret(Target, int)} and {@link #interpret(FeatureVector)}. This should be called once the tree is complete, as
+	 * later structural changes to the nodes are not seen by the compiled form; setting a new root node discards it.
+	 * 
+	 * @return the compiled form
+	 * @throws IllegalArgumentException
+	 *             if the tree contains nodes other than decision nodes and leaf nodes
+	 */
+	public CompiledCART compile() {
+		compiled = new CompiledCART(rootNode);
+		return compiled;
+	}
+
+	/**
+	 * @return the compiled form of this tree, or null if it has not been compiled
+	 */
+	public CompiledCART getCompiledCART() {
+		return compiled;
+	}
+
+	@Override
+	public void setRootNode(Node rNode) {
+		compiled = null;
+		super.setRootNode(rNode);
+	}
+
 	/**
 	 * Passes the given item through this CART and returns the interpretation.
 	 * 
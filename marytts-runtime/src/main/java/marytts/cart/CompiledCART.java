@@ -0,0 +1,229 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.cart;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import marytts.features.FeatureVector;
+
+/**
+ * Array-encoded form of a tree of {@link DecisionNode}s and {@link LeafNode}s, for fast interpretation. Nodes are numbered with
+ * the decision nodes first, in depth-first order, followed by the leaves; the decision criteria and child references are kept in
+ * parallel arrays, so that walking down the tree is a loop over array lookups with a switch on the node type, instead of
+ * following object references through virtual {@link DecisionNode#getNextNode(FeatureVector)} calls.
+ * <p>
+ * The original nodes are kept, so interpretation returns the same node objects as the object tree would. A compiled tree is a
+ * snapshot: structural changes to the object tree after compilation are not reflected.
+ *
+ * @see CART#compile()
+ */
+public class CompiledCART {
+
+	private static final byte BINARY_BYTE = 0;
+	private static final byte BINARY_SHORT = 1;
+	private static final byte BINARY_FLOAT = 2;
+	private static final byte BINARY_FLOAT_ON_BYTE = 3;
+	private static final byte BYTE = 4;
+	private static final byte SHORT = 5;
+
+	/** Node number used for an empty daughter */
+	private static final int NONE = -1;
+
+	private final int numDecisionNodes;
+	private final int root;
+
+	// per decision node:
+	private final byte[] nodeType;
+	private final int[] featureIndex;
+	private final int[] intCriterion;
+	private final float[] floatCriterion;
+	private final int[] firstChild;
+	private final int[] numChildren;
+
+	// child node numbers of all decision nodes, NONE for an empty daughter:
+	private final int[] children;
+
+	// per node:
+	private final int[] numData;
+	private final Node[] nodes;
+
+	/**
+	 * Compile the tree below the given root node.
+	 *
+	 * @param rootNode
+	 *            the root node, which may be null for an empty tree
+	 * @throws IllegalArgumentException
+	 *             if the tree contains nodes other than decision nodes and leaf nodes, or a node with several mothers
+	 */
+	public CompiledCART(Node rootNode) {
+		List<DecisionNode> decisionNodes = new ArrayList<DecisionNode>();
+		List<LeafNode> leaves = new ArrayList<LeafNode>();
+		collectNodes(rootNode, decisionNodes, leaves);
+
+		numDecisionNodes = decisionNodes.size();
+		int numNodes = numDecisionNodes + leaves.size();
+		nodes = new Node[numNodes];
+		numData = new int[numNodes];
+		Map<Node, Integer> numbers = new IdentityHashMap<Node, Integer>();
+		for (int n = 0; n < numNodes; n++) {
+			nodes[n] = n < numDecisionNodes ? decisionNodes.get(n) : leaves.get(n - numDecisionNodes);
+			numData[n] = nodes[n].getNumberOfData();
+			if (numbers.put(nodes[n], n) != null) {
+				throw new IllegalArgumentException("Node " + nodes[n] + " occurs more than once in the tree");
+			}
+		}
+		root = rootNode == null ? NONE : 0;
+
+		nodeType = new byte[numDecisionNodes];
+		featureIndex = new int[numDecisionNodes];
+		intCriterion = new int[numDecisionNodes];
+		floatCriterion = new float[numDecisionNodes];
+		firstChild = new int[numDecisionNodes];
+		numChildren = new int[numDecisionNodes];
+		int totalChildren = 0;
+		for (int n = 0; n < numDecisionNodes; n++) {
+			DecisionNode dn = decisionNodes.get(n);
+			featureIndex[n] = dn.getFeatureIndex();
+			switch (dn.getDecisionNodeType()) {
+			case BinaryByteDecisionNode:
+				nodeType[n] = BINARY_BYTE;
+				intCriterion[n] = ((DecisionNode.BinaryByteDecisionNode) dn).getCriterionValueAsByte();
+				break;
+			case BinaryShortDecisionNode:
+				nodeType[n] = BINARY_SHORT;
+				intCriterion[n] = ((DecisionNode.BinaryShortDecisionNode) dn).getCriterionValueAsShort();
+				break;
+			case BinaryFloatDecisionNode:
+				nodeType[n] = dn.getFeatureDefinition().isByteFeature(featureIndex[n]) ? BINARY_FLOAT_ON_BYTE : BINARY_FLOAT;
+				floatCriterion[n] = ((DecisionNode.BinaryFloatDecisionNode) dn).getCriterionValueAsFloat();
+				break;
+			case ByteDecisionNode:
+				nodeType[n] = BYTE;
+				break;
+			case ShortDecisionNode:
+				nodeType[n] = SHORT;
+				break;
+			}
+			firstChild[n] = totalChildren;
+			numChildren[n] = dn.getNumberOfDaugthers();
+			totalChildren += numChildren[n];
+		}
+		children = new int[totalChildren];
+		for (int n = 0; n < numDecisionNodes; n++) {
+			DecisionNode dn = decisionNodes.get(n);
+			for (int k = 0; k < numChildren[n]; k++) {
+				Node daughter = dn.getDaughter(k);
+				children[firstChild[n] + k] = daughter == null ? NONE : numbers.get(daughter);
+			}
+		}
+	}
+
+	private static void collectNodes(Node node, List<DecisionNode> decisionNodes, List<LeafNode> leaves) {
+		if (node == null) {
+			return;
+		}
+		if (node instanceof DecisionNode) {
+			DecisionNode dn = (DecisionNode) node;
+			decisionNodes.add(dn);
+			for (int k = 0, n = dn.getNumberOfDaugthers(); k < n; k++) {
+				collectNodes(dn.getDaughter(k), decisionNodes, leaves);
+			}
+		} else if (node instanceof LeafNode) {
+			leaves.add((LeafNode) node);
+		} else {
+			throw new IllegalArgumentException("Cannot compile node of type " + node.getClass());
+		}
+	}
+
+	/**
+	 * Equivalent of {@link CART#interpretToNode(FeatureVector, int)}.
+	 *
+	 * @param featureVector
+	 *            the feature vector to analyze
+	 * @param minNumberOfData
+	 *            the minimum number of data requested. If this is 0, walk down the CART until the leaf level.
+	 * @return the node
+	 */
+	public Node interpretToNode(FeatureVector featureVector, int minNumberOfData) {
+		int current = root;
+		int prev = NONE;
+		while (current != NONE && current < numDecisionNodes && numData[current] > minNumberOfData) {
+			prev = current;
+			current = nextNode(current, featureVector);
+		}
+		// Now usually we will have gone down one level too far
+		if (current == NONE || numData[current] < minNumberOfData && prev != NONE) {
+			current = prev;
+		}
+		return current == NONE ? null : nodes[current];
+	}
+
+	/**
+	 * Walk down the tree until a leaf is reached, as {@link DirectedGraph#interpret(FeatureVector)} does.
+	 *
+	 * @param featureVector
+	 *            the feature vector to analyze
+	 * @return the leaf, or null if the path ends in an empty daughter
+	 */
+	public LeafNode interpretToLeaf(FeatureVector featureVector) {
+		int current = root;
+		while (current != NONE && current < numDecisionNodes) {
+			current = nextNode(current, featureVector);
+		}
+		return current == NONE ? null : (LeafNode) nodes[current];
+	}
+
+	private int nextNode(int n, FeatureVector featureVector) {
+		int daughter;
+		switch (nodeType[n]) {
+		case BINARY_BYTE:
+			daughter = featureVector.getByteFeature(featureIndex[n]) == intCriterion[n] ? 0 : 1;
+			break;
+		case BINARY_SHORT:
+			daughter = featureVector.getShortFeature(featureIndex[n]) == intCriterion[n] ? 0 : 1;
+			break;
+		case BINARY_FLOAT:
+			daughter = featureVector.getContinuousFeature(featureIndex[n]) < floatCriterion[n] ? 0 : 1;
+			break;
+		case BINARY_FLOAT_ON_BYTE:
+			daughter = (float) featureVector.getByteFeature(featureIndex[n]) < floatCriterion[n] ? 0 : 1;
+			break;
+		case BYTE:
+			daughter = featureVector.getByteFeature(featureIndex[n]);
+			break;
+		default: // SHORT
+			daughter = featureVector.getShortFeature(featureIndex[n]);
+		}
+		if (daughter < 0 || daughter >= numChildren[n]) {
+			throw new ArrayIndexOutOfBoundsException(daughter);
+		}
+		return children[firstChild[n] + daughter];
+	}
+
+	/**
+	 * @return the number of decision and leaf nodes in the compiled tree
+	 */
+	public int getNumberOfNodes() {
+		return nodes.length;
+	}
+}
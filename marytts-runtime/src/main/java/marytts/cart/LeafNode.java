@@ -487,6 +487,28 @@ public abstract class LeafNode extends Node {
 
 		}
 
+		/**
+		 * Create a pdf leaf node from already separated mean and variance vectors.
+		 * 
+		 * @param idx
+		 *            , a unique index number
+		 * @param mean
+		 *            mean vector
+		 * @param variance
+		 *            diagonal covariance, of the same length as mean
+		 * @param voicedWeight
+		 *            voiced weight, only meaningful for lf0 trees
+		 */
+		public PdfLeafNode(int idx, double[] mean, double[] variance, double voicedWeight) {
+			super();
+			this.setUniqueLeafId(idx);
+			assert mean.length == variance.length;
+			this.vectorSize = mean.length;
+			this.mean = mean;
+			this.variance = variance;
+			this.voicedWeight = voicedWeight;
+		}
+
 		public int getDataLength() {
 			return mean.length;
 		}
@@ -176,6 +176,10 @@ public class HTSCARTReader {
 			throw new IOException("LoadTreeSet: error no trees loaded");
 		}
 
+		for (CART tree : treeSet) {
+			tree.compile();
+		}
+
 		return treeSet;
 
 	}
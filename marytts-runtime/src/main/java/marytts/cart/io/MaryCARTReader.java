@@ -226,7 +226,9 @@ public class MaryCARTReader {
 		}
 
 		// set the rootNode as the rootNode of cart
-		return new CART(rootNode, featureDefinition, props);
+		CART cart = new CART(rootNode, featureDefinition, props);
+		cart.compile();
+		return cart;
 	}
 
 	/**
@@ -395,6 +397,8 @@ public class MaryCARTReader {
 		}
 
 		// set the rootNode as the rootNode of cart
-		return new CART(rootNode, featureDefinition, props);
+		CART cart = new CART(rootNode, featureDefinition, props);
+		cart.compile();
+		return cart;
 	}
 }
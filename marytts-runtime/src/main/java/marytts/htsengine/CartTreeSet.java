@@ -64,8 +64,11 @@
 package marytts.htsengine;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.TreeSet;
 
 import marytts.cart.CART;
+import marytts.cart.DecisionNode;
 import marytts.cart.LeafNode.PdfLeafNode;
 import marytts.cart.io.HTSCARTReader;
 import marytts.exceptions.MaryConfigurationException;
@@ -73,6 +76,7 @@ import marytts.features.FeatureDefinition;
 import marytts.features.FeatureVector;
 import marytts.htsengine.HMMData.PdfFileFormat;
 import marytts.util.MaryUtils;
+import marytts.util.cache.MemoCache;
 
 import org.apache.log4j.Logger;
 
@@ -97,6 +101,9 @@ public class CartTreeSet {
 	private int strVsize; /* vector size for strengths modeling */
 	private int magVsize; /* vector size for Fourier magnitudes modeling */
 
+	/* optional memo of the leaves found per context, indexed by FeatureType ordinal; see enablePdfCache() */
+	private volatile PdfMemo[] pdfMemos;
+
 	public int getNumStates() {
 		return numStates;
 	}
@@ -130,6 +137,64 @@ public class CartTreeSet {
 		}
 	}
 
+	/**
+	 * The trees for the given stream, or null if the voice has no trees for it.
+	 * 
+	 * @param type
+	 *            type
+	 * @return one CART per state
+	 */
+	CART[] getTrees(HMMData.FeatureType type) {
+		switch (type) {
+		case DUR:
+			return durTree;
+		case LF0:
+			return lf0Tree;
+		case MGC:
+			return mgcTree;
+		case STR:
+			return strTree;
+		default:
+			return magTree;
+		}
+	}
+
+	/**
+	 * Installs already built trees for the given stream, as done by {@link HMMVoiceSnapshot}. For DUR, the vector size is the
+	 * number of states; for LF0 it is the number of lf0 streams.
+	 * 
+	 * @param type
+	 *            type
+	 * @param trees
+	 *            one CART per state
+	 * @param vsize
+	 *            vector size of the pdfs on the leaves
+	 */
+	void setTrees(HMMData.FeatureType type, CART[] trees, int vsize) {
+		pdfMemos = null;
+		switch (type) {
+		case DUR:
+			durTree = trees;
+			numStates = vsize;
+			break;
+		case LF0:
+			lf0Tree = trees;
+			lf0Stream = vsize;
+			break;
+		case MGC:
+			mgcTree = trees;
+			mcepVsize = vsize;
+			break;
+		case STR:
+			strTree = trees;
+			strVsize = vsize;
+			break;
+		default:
+			magTree = trees;
+			magVsize = vsize;
+		}
+	}
+
 	/**
 	 * Loads all the CART trees
 	 * 
@@ -214,7 +279,8 @@ public class CartTreeSet {
 		double durscale = htsData.getDurationScale();
 		double meanVector[], varVector[];
 		// the duration tree has only one state
-		PdfLeafNode node = (PdfLeafNode) durTree[0].interpretToNode(fv, 0);
+		PdfLeafNode[] leaves = findLeaves(HMMData.FeatureType.DUR, durTree, fv, 0);
+		PdfLeafNode node = leaves != null ? leaves[0] : (PdfLeafNode) durTree[0].interpretToNode(fv, 0);
 
 		meanVector = node.getMean();
 		varVector = node.getVariance();
@@ -257,8 +323,9 @@ public class CartTreeSet {
 	 *            uvthresh
 	 */
 	public void searchLf0InCartTree(HTSModel m, FeatureVector fv, FeatureDefinition featureDef, double uvthresh) {
+		PdfLeafNode[] leaves = findLeaves(HMMData.FeatureType.LF0, lf0Tree, fv, 1);
 		for (int s = 0; s < numStates; s++) {
-			PdfLeafNode node = (PdfLeafNode) lf0Tree[s].interpretToNode(fv, 1);
+			PdfLeafNode node = leaves != null ? leaves[s] : (PdfLeafNode) lf0Tree[s].interpretToNode(fv, 1);
 			m.setLf0Mean(s, node.getMean());
 			m.setLf0Variance(s, node.getVariance());
 			// set voiced or unvoiced
@@ -281,8 +348,9 @@ public class CartTreeSet {
 	 *            Feature definition
 	 */
 	public void searchMgcInCartTree(HTSModel m, FeatureVector fv, FeatureDefinition featureDef) {
+		PdfLeafNode[] leaves = findLeaves(HMMData.FeatureType.MGC, mgcTree, fv, 1);
 		for (int s = 0; s < numStates; s++) {
-			PdfLeafNode node = (PdfLeafNode) mgcTree[s].interpretToNode(fv, 1);
+			PdfLeafNode node = leaves != null ? leaves[s] : (PdfLeafNode) mgcTree[s].interpretToNode(fv, 1);
 			m.setMcepMean(s, node.getMean());
 			m.setMcepVariance(s, node.getVariance());
 		}
@@ -299,8 +367,9 @@ public class CartTreeSet {
 	 *            Feature definition
 	 */
 	public void searchStrInCartTree(HTSModel m, FeatureVector fv, FeatureDefinition featureDef) {
+		PdfLeafNode[] leaves = findLeaves(HMMData.FeatureType.STR, strTree, fv, 1);
 		for (int s = 0; s < numStates; s++) {
-			PdfLeafNode node = (PdfLeafNode) strTree[s].interpretToNode(fv, 1);
+			PdfLeafNode node = leaves != null ? leaves[s] : (PdfLeafNode) strTree[s].interpretToNode(fv, 1);
 			m.setStrMean(s, node.getMean());
 			m.setStrVariance(s, node.getVariance());
 		}
@@ -317,13 +386,145 @@ public class CartTreeSet {
 	 *            Feature definition
 	 */
 	public void searchMagInCartTree(HTSModel m, FeatureVector fv, FeatureDefinition featureDef) {
+		PdfLeafNode[] leaves = findLeaves(HMMData.FeatureType.MAG, magTree, fv, 1);
 		for (int s = 0; s < numStates; s++) {
-			PdfLeafNode node = (PdfLeafNode) magTree[s].interpretToNode(fv, 1);
+			PdfLeafNode node = leaves != null ? leaves[s] : (PdfLeafNode) magTree[s].interpretToNode(fv, 1);
 			m.setMagMean(s, node.getMean());
 			m.setMagVariance(s, node.getVariance());
 		}
 	}
 
+	/**
+	 * Enable memoisation of the pdf leaves found for a context, for all streams of this tree set. The key of a context is the
+	 * values, in the feature vector, of the features that the trees of the stream ask about, so contexts that only differ in
+	 * other features share an entry.
+	 * 
+	 * @param maxEntries
+	 *            maximum number of memoised contexts per stream
+	 */
+	public void enablePdfCache(int maxEntries) {
+		PdfMemo[] memos = new PdfMemo[HMMData.FeatureType.values().length];
+		for (HMMData.FeatureType type : HMMData.FeatureType.values()) {
+			CART[] trees = getTrees(type);
+			if (trees != null) {
+				memos[type.ordinal()] = new PdfMemo(trees, maxEntries);
+			}
+		}
+		pdfMemos = memos;
+		logger.debug("Enabled pdf cache with " + maxEntries + " entries per stream");
+	}
+
+	/**
+	 * The memo of pdf leaves for the given stream, to obtain its hit rate.
+	 * 
+	 * @param type
+	 *            type
+	 * @return the memo, or null if the pdf cache is not enabled or there are no trees for the stream.
+	 */
+	public MemoCache<?, PdfLeafNode[]> getPdfCache(HMMData.FeatureType type) {
+		PdfMemo[] memos = pdfMemos;
+		if (memos == null || memos[type.ordinal()] == null) {
+			return null;
+		}
+		return memos[type.ordinal()].cache;
+	}
+
+	/**
+	 * Look up the leaves for fv in the pdf cache of the given stream, interpreting the trees on a miss.
+	 * 
+	 * @return the leaf for each tree, or null if the pdf cache is not enabled
+	 */
+	private PdfLeafNode[] findLeaves(HMMData.FeatureType type, CART[] trees, FeatureVector fv, int minNumberOfData) {
+		PdfMemo[] memos = pdfMemos;
+		if (memos == null || memos[type.ordinal()] == null) {
+			return null;
+		}
+		PdfMemo memo = memos[type.ordinal()];
+		ContextKey key = memo.getKey(fv);
+		PdfLeafNode[] leaves = memo.cache.get(key);
+		if (leaves == null) {
+			leaves = new PdfLeafNode[trees.length];
+			for (int s = 0; s < trees.length; s++) {
+				leaves[s] = (PdfLeafNode) trees[s].interpretToNode(fv, minNumberOfData);
+			}
+			memo.cache.put(key, leaves);
+		}
+		return leaves;
+	}
+
+	/**
+	 * Memo of the leaves of one stream, with the features its trees depend on.
+	 */
+	private static class PdfMemo {
+		private final int[] byteFeatures;
+		private final int[] shortFeatures;
+		private final int[] continuousFeatures;
+		private final MemoCache<ContextKey, PdfLeafNode[]> cache;
+
+		PdfMemo(CART[] trees, int maxEntries) {
+			TreeSet<Integer> bytes = new TreeSet<Integer>();
+			TreeSet<Integer> shorts = new TreeSet<Integer>();
+			TreeSet<Integer> continuous = new TreeSet<Integer>();
+			for (CART tree : trees) {
+				for (DecisionNode dn : tree.getDecisionNodes()) {
+					// the trees of an HMM voice have no feature definition of their own:
+					FeatureDefinition featureDef = dn.getFeatureDefinition();
+					int index = dn.getFeatureIndex();
+					if (featureDef.isByteFeature(index))
+						bytes.add(index);
+					else if (featureDef.isShortFeature(index))
+						shorts.add(index);
+					else
+						continuous.add(index);
+				}
+			}
+			byteFeatures = toArray(bytes);
+			shortFeatures = toArray(shorts);
+			continuousFeatures = toArray(continuous);
+			cache = new MemoCache<ContextKey, PdfLeafNode[]>(maxEntries, 16);
+		}
+
+		ContextKey getKey(FeatureVector fv) {
+			int[] values = new int[byteFeatures.length + shortFeatures.length + continuousFeatures.length];
+			int i = 0;
+			for (int index : byteFeatures)
+				values[i++] = fv.getByteFeature(index);
+			for (int index : shortFeatures)
+				values[i++] = fv.getShortFeature(index);
+			for (int index : continuousFeatures)
+				values[i++] = Float.floatToIntBits(fv.getContinuousFeature(index));
+			return new ContextKey(values);
+		}
+
+		private static int[] toArray(TreeSet<Integer> set) {
+			int[] a = new int[set.size()];
+			int i = 0;
+			for (int index : set)
+				a[i++] = index;
+			return a;
+		}
+	}
+
+	private static final class ContextKey {
+		private final int[] values;
+		private final int hash;
+
+		ContextKey(int[] values) {
+			this.values = values;
+			this.hash = Arrays.hashCode(values);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof ContextKey && hash == ((ContextKey) o).hash && Arrays.equals(values, ((ContextKey) o).values);
+		}
+	}
+
 	/**
 	 * creates a HTSModel (pre-HMM optimization vector data for all parameter streams of a given phoneme) given a feature vector
 	 * compare with original code in the main loop of marytts.modules.HTSEngine#processTargetList()
@@ -140,6 +140,40 @@ public class GVModelSet {
 		return gvcovInvMag;
 	}
 
+	/**
+	 * Installs already loaded global mean and inverse covariance vectors for the given stream, as done by
+	 * {@link HMMVoiceSnapshot}.
+	 * 
+	 * @param type
+	 *            one of MGC, LF0, STR or MAG
+	 * @param mean
+	 *            mean, already multiplied by the GV weight
+	 * @param covInv
+	 *            covInv
+	 */
+	void setGV(HMMData.FeatureType type, double[] mean, double[] covInv) {
+		switch (type) {
+		case MGC:
+			gvmeanMgc = mean;
+			gvcovInvMgc = covInv;
+			break;
+		case LF0:
+			gvmeanLf0 = mean;
+			gvcovInvLf0 = covInv;
+			break;
+		case STR:
+			gvmeanStr = mean;
+			gvcovInvStr = covInv;
+			break;
+		case MAG:
+			gvmeanMag = mean;
+			gvcovInvMag = covInv;
+			break;
+		default:
+			throw new IllegalArgumentException("No GV model for " + type);
+		}
+	}
+
 	public void loadGVModelSet(HMMData htsData, FeatureDefinition featureDef) throws IOException {
 
 		/* allocate memory for the arrays and load the data from file */
@@ -64,6 +64,7 @@
 package marytts.htsengine;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
@@ -139,6 +140,7 @@ public class HMMData {
 	private boolean algnph = false; /* use phone level alignment for duration */
 	private boolean useMixExc = true; /* use Mixed Excitation */
 	private boolean useFourierMag = false; /* use Fourier magnitudes for pulse generation */
+	private boolean singlePrecisionVocoder = false; /* compute the MLSA/MGLSA filter in single precision */
 
 	/** Global variance (GV) settings */
 	private boolean useGV = false; /* use global variance in parameter generation */
@@ -332,6 +334,10 @@ public class HMMData {
 		return useFourierMag;
 	}
 
+	public boolean getUseSinglePrecisionVocoder() {
+		return singlePrecisionVocoder;
+	}
+
 	public boolean getUseGV() {
 		return useGV;
 	}
@@ -488,6 +494,10 @@ public class HMMData {
 		useFourierMag = bval;
 	}
 
+	public void setUseSinglePrecisionVocoder(boolean bval) {
+		singlePrecisionVocoder = bval;
+	}
+
 	public void setUseGV(boolean bval) {
 		useGV = bval;
 	}
@@ -571,6 +581,10 @@ public class HMMData {
 																		 */
 		useMixExc = p.getBoolean(prefix + ".useMixExc"); /* Use Mixed excitation */
 		useFourierMag = p.getBoolean(prefix + ".useFourierMag"); /* Use Fourier magnitudes for pulse generation */
+		/* Precision of the MLSA/MGLSA filter: double (default) or float */
+		String precision = p.getProperty(prefix + ".vocoderPrecision",
+				MaryProperties.getProperty("htsengine.vocoder.precision", "double"));
+		singlePrecisionVocoder = "float".equals(precision.trim());
 
 		useGV = p.getBoolean(prefix + ".useGV"); /* Use Global Variance in parameter generation */
 		if (useGV) {
@@ -622,17 +636,48 @@ public class HMMData {
 			readMixedExcitationFilters(mixFiltersStream);
 		}
 
-		/* Load TreeSet in CARTs. */
-		logger.debug("Loading Tree Set in CARTs:");
-		loadCartTreeSet();
+		/* Precompiled snapshot of trees, pdfs and GV models, if any; see HMMVoiceSnapshot */
+		String snapshot = p.getProperty(prefix + ".snapshotFile");
+		if (snapshot != null && !snapshot.startsWith("jar:") && !new File(snapshot).exists()) {
+			logger.warn("HMM voice snapshot " + snapshot + " not found, loading trees and pdfs instead");
+			snapshot = null;
+		}
 
-		/* Load GV ModelSet gv */
-		logger.debug("Loading GV Model Set:");
-		loadGVModelSet();
+		if (snapshot != null) {
+			logger.debug("Loading Tree Set and GV Model Set from snapshot:");
+			HMMVoiceSnapshot.load(this, snapshot);
+			// the model streams are only kept to tell which streams the voice has
+			closeModelStreams();
+		} else {
+			/* Load TreeSet in CARTs. */
+			logger.debug("Loading Tree Set in CARTs:");
+			loadCartTreeSet();
+
+			/* Load GV ModelSet gv */
+			logger.debug("Loading GV Model Set:");
+			loadGVModelSet();
+		}
+
+		/* Optional memo of pdf lookups per context */
+		int pdfCacheEntries = p.getInteger(prefix + ".pdfCacheEntries",
+				MaryProperties.getInteger("htsengine.pdfcache.entries", 0));
+		if (pdfCacheEntries > 0) {
+			cart.enablePdfCache(pdfCacheEntries);
+		}
 
 		logger.debug("InitHMMData complete");
 	}
 
+	private void closeModelStreams() throws IOException {
+		InputStream[] streams = { treeDurStream, treeLf0Stream, treeMgcStream, treeStrStream, treeMagStream, pdfDurStream,
+				pdfLf0Stream, pdfMgcStream, pdfStrStream, pdfMagStream, pdfLf0GVStream, pdfMgcGVStream, pdfStrGVStream,
+				pdfMagGVStream };
+		for (InputStream stream : streams) {
+			if (stream != null)
+				stream.close();
+		}
+	}
+
 	/**
 	 * Reads from configuration file all the data files in this class this method is used when running HTSengine stand alone.
 	 * 
@@ -71,7 +71,9 @@ import marytts.config.MaryConfig;
 import marytts.modules.synthesis.Voice;
 import marytts.modules.synthesis.WaveformSynthesizer;
 import marytts.server.MaryProperties;
+import marytts.server.metrics.Metrics;
 import marytts.util.MaryUtils;
+import marytts.util.cache.MemoCache;
 
 import org.apache.log4j.Logger;
 
@@ -95,6 +97,13 @@ public class HMMVoice extends Voice {
 
 		htsData.initHMMData(voiceName);
 
+		CartTreeSet cart = htsData.getCartTreeSet();
+		for (HMMData.FeatureType type : HMMData.FeatureType.values()) {
+			MemoCache<?, ?> pdfCache = cart.getPdfCache(type);
+			if (pdfCache != null) {
+				Metrics.get().getPdfCache(voiceName, type.name().toLowerCase(Locale.ENGLISH)).setCache(pdfCache);
+			}
+		}
 	}
 
 	public HMMData getHMMData() {
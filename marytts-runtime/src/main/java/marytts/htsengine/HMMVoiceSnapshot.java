@@ -0,0 +1,561 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.htsengine;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import marytts.cart.CART;
+import marytts.cart.DecisionNode;
+import marytts.cart.LeafNode;
+import marytts.cart.LeafNode.PdfLeafNode;
+import marytts.cart.Node;
+import marytts.exceptions.MaryConfigurationException;
+import marytts.features.FeatureDefinition;
+import marytts.htsengine.HMMData.FeatureType;
+import marytts.util.MaryUtils;
+import marytts.util.data.MaryHeader;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Binary snapshot of a fully loaded HMM voice: the CART trees of all streams together with their pdfs, and the GV models, in
+ * one versioned file. Trees are stored in flat array form (feature index, node type, criterion and child references per
+ * decision node; mean, variance and voiced weight per leaf), so that loading a voice is one memory map and a few bulk array
+ * reads instead of parsing the HTS tree text files and pdf files of every stream.
+ * <p>
+ * A snapshot is written from an installed voice with
+ *
+ * <pre>
+ * java marytts.htsengine.HMMVoiceSnapshot voiceName snapshotFile
+ * </pre>
+ *
+ * or, during voice building, from the voice config file with
+ *
+ * <pre>
+ * java marytts.htsengine.HMMVoiceSnapshot voiceName marybase configFile snapshotFile
+ * </pre>
+ *
+ * and is used by {@link HMMData#initHMMData(marytts.util.io.PropertiesAccessor, String)} when the voice config contains
+ * <code>voice.&lt;name&gt;.snapshotFile</code>. A snapshot is tied to the feature definition and GV settings it was written
+ * with; loading it with different ones fails, and it must be rebuilt.
+ */
+public class HMMVoiceSnapshot {
+
+	/** Version of the snapshot layout following the Mary header; increment whenever the layout changes. */
+	public static final int FORMAT_VERSION = 1;
+
+	private static final FeatureType[] TREE_STREAMS = { FeatureType.DUR, FeatureType.LF0, FeatureType.MGC, FeatureType.STR,
+			FeatureType.MAG };
+	private static final FeatureType[] GV_STREAMS = { FeatureType.MGC, FeatureType.LF0, FeatureType.STR, FeatureType.MAG };
+
+	private static Logger logger = MaryUtils.getLogger("HMMVoiceSnapshot");
+
+	private HMMVoiceSnapshot() {
+	}
+
+	/**
+	 * Write the trees, pdfs and GV models of the given, fully initialised, HMMData to a snapshot file.
+	 *
+	 * @param htsData
+	 *            htsData
+	 * @param fileName
+	 *            fileName
+	 * @throws IOException
+	 *             IOException
+	 */
+	public static void write(HMMData htsData, String fileName) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName)));
+		try {
+			new MaryHeader(MaryHeader.HMM_VOICE_SNAPSHOT).writeTo(out);
+			out.writeInt(FORMAT_VERSION);
+			htsData.getFeatureDefinition().writeBinaryTo(out);
+
+			CartTreeSet cart = htsData.getCartTreeSet();
+			for (FeatureType type : TREE_STREAMS) {
+				CART[] trees = cart.getTrees(type);
+				if (trees == null) {
+					out.writeInt(0);
+					continue;
+				}
+				out.writeInt(trees.length);
+				out.writeInt(getVectorSize(cart, type));
+				for (CART tree : trees) {
+					writeTree(tree.getRootNode(), out);
+				}
+			}
+
+			out.writeBoolean(htsData.getUseGV());
+			out.writeBoolean(htsData.getGvMethodGradient());
+			GVModelSet gv = htsData.getGVModelSet();
+			for (FeatureType type : GV_STREAMS) {
+				out.writeDouble(getGvWeight(htsData, type));
+				double[] mean = getGvMean(gv, type);
+				if (mean == null) {
+					out.writeInt(0);
+					continue;
+				}
+				double[] covInv = getGvCovInv(gv, type);
+				out.writeInt(mean.length);
+				writeDoubles(mean, mean.length, out);
+				writeDoubles(covInv, covInv.length, out);
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Load the trees, pdfs and GV models of a snapshot into the given HMMData. The feature definition and the GV settings of
+	 * htsData must already be set from the voice config.
+	 *
+	 * @param htsData
+	 *            htsData
+	 * @param location
+	 *            a file name, which is memory-mapped, or a classpath location prefixed with "jar:"
+	 * @throws IOException
+	 *             if the snapshot cannot be read
+	 * @throws MaryConfigurationException
+	 *             if the snapshot is ill-formed or does not match the voice config
+	 */
+	public static void load(HMMData htsData, String location) throws IOException, MaryConfigurationException {
+		ByteBuffer bb;
+		if (location.startsWith("jar:")) {
+			String classpathLocation = location.substring("jar:".length());
+			InputStream is = HMMVoiceSnapshot.class.getResourceAsStream(classpathLocation);
+			if (is == null) {
+				throw new MaryConfigurationException("No classpath resource available at '" + classpathLocation + "'");
+			}
+			try {
+				ByteArrayOutputStream baos = new ByteArrayOutputStream();
+				byte[] buf = new byte[65536];
+				int nRead;
+				while ((nRead = is.read(buf)) != -1) {
+					baos.write(buf, 0, nRead);
+				}
+				bb = ByteBuffer.wrap(baos.toByteArray());
+			} finally {
+				is.close();
+			}
+		} else {
+			FileInputStream fis = new FileInputStream(location);
+			try {
+				FileChannel fc = fis.getChannel();
+				bb = fc.map(FileChannel.MapMode.READ_ONLY, 0, fc.size());
+			} finally {
+				fis.close();
+			}
+		}
+		try {
+			load(htsData, bb);
+		} catch (BufferUnderflowException e) {
+			throw new MaryConfigurationException("Snapshot " + location + " is truncated", e);
+		}
+		logger.debug("Loaded HMM voice snapshot " + location);
+	}
+
+	private static void load(HMMData htsData, ByteBuffer bb) throws IOException, MaryConfigurationException {
+		MaryHeader hdr = new MaryHeader(bb);
+		if (hdr.getType() != MaryHeader.HMM_VOICE_SNAPSHOT) {
+			throw new MaryConfigurationException("No HMM voice snapshot");
+		}
+		int version = bb.getInt();
+		if (version != FORMAT_VERSION) {
+			throw new MaryConfigurationException("HMM voice snapshot has format version " + version + ", expected "
+					+ FORMAT_VERSION + "; please rebuild it");
+		}
+		FeatureDefinition featureDef = htsData.getFeatureDefinition();
+		if (!featureDef.featureEquals(new FeatureDefinition(bb))) {
+			throw new MaryConfigurationException("HMM voice snapshot was built with a different feature definition");
+		}
+
+		CartTreeSet cart = htsData.getCartTreeSet();
+		for (FeatureType type : TREE_STREAMS) {
+			int numTrees = bb.getInt();
+			if (numTrees == 0) {
+				continue;
+			}
+			int vsize = bb.getInt();
+			CART[] trees = new CART[numTrees];
+			for (int i = 0; i < numTrees; i++) {
+				trees[i] = new CART(readTree(bb, featureDef), featureDef);
+				trees[i].compile();
+			}
+			cart.setTrees(type, trees, vsize);
+		}
+
+		boolean useGV = bb.get() != 0;
+		boolean gvMethodGradient = bb.get() != 0;
+		if (useGV != htsData.getUseGV() || (useGV && gvMethodGradient != htsData.getGvMethodGradient())) {
+			throw new MaryConfigurationException("HMM voice snapshot was built with different GV settings");
+		}
+		GVModelSet gv = htsData.getGVModelSet();
+		for (FeatureType type : GV_STREAMS) {
+			double gvWeight = bb.getDouble();
+			int length = bb.getInt();
+			if (length == 0) {
+				continue;
+			}
+			if (gvWeight != getGvWeight(htsData, type)) {
+				throw new MaryConfigurationException("HMM voice snapshot was built with a different GV weight for " + type);
+			}
+			gv.setGV(type, getDoubles(bb, length), getDoubles(bb, length));
+		}
+	}
+
+	/**
+	 * Write one tree as flat arrays. Decision nodes and leaves are numbered in depth-first order; children are referenced as in
+	 * the MaryCART format: -(i+1) for decision node i, j+1 for leaf j, and 0 for an empty daughter.
+	 */
+	static void writeTree(Node rootNode, DataOutputStream out) throws IOException {
+		List<DecisionNode> decisionNodes = new ArrayList<DecisionNode>();
+		List<PdfLeafNode> leaves = new ArrayList<PdfLeafNode>();
+		Map<Node, Integer> refs = new IdentityHashMap<Node, Integer>();
+		collectNodes(rootNode, decisionNodes, leaves, refs);
+
+		int numDecisionNodes = decisionNodes.size();
+		int numLeaves = leaves.size();
+		int leafVectorSize = numLeaves > 0 ? leaves.get(0).getMean().length : 0;
+		out.writeInt(numDecisionNodes);
+		out.writeInt(numLeaves);
+		out.writeInt(leafVectorSize);
+
+		int numChildren = 0;
+		for (DecisionNode dn : decisionNodes) {
+			out.writeInt(dn.getFeatureIndex());
+			numChildren += dn.getNumberOfDaugthers();
+		}
+		for (DecisionNode dn : decisionNodes) {
+			out.writeInt(dn.getDecisionNodeType().ordinal());
+		}
+		for (DecisionNode dn : decisionNodes) {
+			switch (dn.getDecisionNodeType()) {
+			case BinaryByteDecisionNode:
+				out.writeInt(((DecisionNode.BinaryByteDecisionNode) dn).getCriterionValueAsByte());
+				break;
+			case BinaryShortDecisionNode:
+				out.writeInt(((DecisionNode.BinaryShortDecisionNode) dn).getCriterionValueAsShort());
+				break;
+			case BinaryFloatDecisionNode:
+				out.writeInt(Float.floatToIntBits(((DecisionNode.BinaryFloatDecisionNode) dn).getCriterionValueAsFloat()));
+				break;
+			default:
+				out.writeInt(0); // the number of daughters is given by the child offsets
+			}
+		}
+		out.writeInt(numChildren);
+		int offset = 0;
+		for (DecisionNode dn : decisionNodes) {
+			out.writeInt(offset);
+			offset += dn.getNumberOfDaugthers();
+		}
+		for (DecisionNode dn : decisionNodes) {
+			for (int k = 0, n = dn.getNumberOfDaugthers(); k < n; k++) {
+				Node daughter = dn.getDaughter(k);
+				out.writeInt(daughter == null ? 0 : refs.get(daughter));
+			}
+		}
+
+		for (PdfLeafNode leaf : leaves) {
+			out.writeInt(leaf.getUniqueLeafId());
+		}
+		for (PdfLeafNode leaf : leaves) {
+			if (leaf.getMean().length != leafVectorSize || leaf.getVariance().length != leafVectorSize) {
+				throw new IOException("Pdf leaves of one tree have different vector sizes");
+			}
+			writeDoubles(leaf.getMean(), leafVectorSize, out);
+		}
+		for (PdfLeafNode leaf : leaves) {
+			writeDoubles(leaf.getVariance(), leafVectorSize, out);
+		}
+		for (PdfLeafNode leaf : leaves) {
+			out.writeDouble(leaf.getVoicedWeight());
+		}
+	}
+
+	private static void collectNodes(Node node, List<DecisionNode> decisionNodes, List<PdfLeafNode> leaves,
+			Map<Node, Integer> refs) {
+		if (node == null || refs.containsKey(node)) {
+			return;
+		}
+		if (node instanceof DecisionNode) {
+			DecisionNode dn = (DecisionNode) node;
+			decisionNodes.add(dn);
+			refs.put(dn, -decisionNodes.size());
+			for (int k = 0, n = dn.getNumberOfDaugthers(); k < n; k++) {
+				collectNodes(dn.getDaughter(k), decisionNodes, leaves, refs);
+			}
+		} else if (node instanceof PdfLeafNode) {
+			leaves.add((PdfLeafNode) node);
+			refs.put(node, leaves.size());
+		} else {
+			throw new IllegalArgumentException("HMM voice snapshots can only contain pdf leaf nodes, found "
+					+ ((LeafNode) node).getLeafNodeType());
+		}
+	}
+
+	/**
+	 * Read one tree written by {@link #writeTree(Node, DataOutputStream)}. As a snapshot may be damaged or come from elsewhere, the
+	 * node types, feature indices and child references are checked, so that an ill-formed tree is reported instead of failing
+	 * later during synthesis.
+	 */
+	static Node readTree(ByteBuffer bb, FeatureDefinition featureDef) throws MaryConfigurationException {
+		int numDecisionNodes = bb.getInt();
+		int numLeaves = bb.getInt();
+		int leafVectorSize = bb.getInt();
+		if (leafVectorSize < 0 || numLeaves > 0 && leafVectorSize > bb.remaining() / numLeaves) {
+			throw new MaryConfigurationException("Tree has invalid leaf vector size " + leafVectorSize);
+		}
+		int[] featureIndexes = getInts(bb, numDecisionNodes);
+		int[] nodeTypes = getInts(bb, numDecisionNodes);
+		int[] criteria = getInts(bb, numDecisionNodes);
+		int numChildren = bb.getInt();
+		int[] childOffsets = getInts(bb, numDecisionNodes);
+		int[] children = getInts(bb, numChildren);
+		int[] leafIds = getInts(bb, numLeaves);
+		double[] means = getDoubles(bb, numLeaves * leafVectorSize);
+		double[] variances = getDoubles(bb, numLeaves * leafVectorSize);
+		double[] voicedWeights = getDoubles(bb, numLeaves);
+
+		LeafNode[] leaves = new LeafNode[numLeaves];
+		for (int j = 0, from = 0; j < numLeaves; j++, from += leafVectorSize) {
+			int to = from + leafVectorSize;
+			leaves[j] = new PdfLeafNode(leafIds[j], Arrays.copyOfRange(means, from, to), Arrays.copyOfRange(variances, from, to),
+					voicedWeights[j]);
+		}
+
+		DecisionNode.Type[] types = DecisionNode.Type.values();
+		DecisionNode[] decisionNodes = new DecisionNode[numDecisionNodes];
+		for (int i = 0; i < numDecisionNodes; i++) {
+			int start = i == 0 ? 0 : childOffsets[i];
+			int end = i + 1 < numDecisionNodes ? childOffsets[i + 1] : numChildren;
+			if (childOffsets[i] != start || end < start || end > numChildren) {
+				throw new MaryConfigurationException("Decision node " + i + " has invalid daughters from " + childOffsets[i]
+						+ " to " + end + " of " + numChildren);
+			}
+			int numDaughters = end - start;
+			int featureIndex = featureIndexes[i];
+			if (featureIndex < 0 || featureIndex >= featureDef.getNumberOfFeatures()) {
+				throw new MaryConfigurationException("Decision node " + i + " has invalid feature index " + featureIndex);
+			}
+			if (nodeTypes[i] < 0 || nodeTypes[i] >= types.length) {
+				throw new MaryConfigurationException("Decision node " + i + " has invalid node type " + nodeTypes[i]);
+			}
+			DecisionNode.Type type = types[nodeTypes[i]];
+			boolean validFeature;
+			switch (type) {
+			case BinaryByteDecisionNode:
+			case ByteDecisionNode:
+				validFeature = featureDef.isByteFeature(featureIndex);
+				break;
+			case BinaryShortDecisionNode:
+			case ShortDecisionNode:
+				validFeature = featureDef.isShortFeature(featureIndex);
+				break;
+			case BinaryFloatDecisionNode:
+				validFeature = featureDef.isContinuousFeature(featureIndex) || featureDef.isByteFeature(featureIndex);
+				break;
+			default:
+				throw new MaryConfigurationException("Unsupported decision node type " + type);
+			}
+			if (!validFeature) {
+				throw new MaryConfigurationException("Decision node " + i + " of type " + type + " cannot test feature "
+						+ featureDef.getFeatureName(featureIndex));
+			}
+			if (type != DecisionNode.Type.ByteDecisionNode && type != DecisionNode.Type.ShortDecisionNode && numDaughters != 2) {
+				throw new MaryConfigurationException("Binary decision node " + i + " has " + numDaughters + " daughters");
+			}
+			switch (type) {
+			case BinaryByteDecisionNode:
+				decisionNodes[i] = new DecisionNode.BinaryByteDecisionNode(featureIndex, (byte) criteria[i], featureDef);
+				break;
+			case BinaryShortDecisionNode:
+				decisionNodes[i] = new DecisionNode.BinaryShortDecisionNode(featureIndex, (short) criteria[i], featureDef);
+				break;
+			case BinaryFloatDecisionNode:
+				decisionNodes[i] = new DecisionNode.BinaryFloatDecisionNode(featureIndex, Float.intBitsToFloat(criteria[i]),
+						featureDef);
+				break;
+			case ByteDecisionNode:
+				decisionNodes[i] = new DecisionNode.ByteDecisionNode(featureIndex, numDaughters, featureDef);
+				break;
+			default: // ShortDecisionNode
+				decisionNodes[i] = new DecisionNode.ShortDecisionNode(featureIndex, numDaughters, featureDef);
+			}
+		}
+		// Nodes are numbered depth-first, so daughters come after their mother, and each node has one mother:
+		boolean[] isDaughter = new boolean[numDecisionNodes + numLeaves];
+		for (int i = 0; i < numDecisionNodes; i++) {
+			int end = i + 1 < numDecisionNodes ? childOffsets[i + 1] : numChildren;
+			for (int k = childOffsets[i]; k < end; k++) {
+				int ref = children[k];
+				int node;
+				if (ref < 0) {
+					node = -(ref + 1);
+					if (node <= i || node >= numDecisionNodes) {
+						throw new MaryConfigurationException("Decision node " + i + " has invalid daughter " + ref);
+					}
+				} else if (ref > 0) {
+					node = numDecisionNodes + ref - 1;
+					if (ref > numLeaves) {
+						throw new MaryConfigurationException("Decision node " + i + " has invalid daughter " + ref);
+					}
+				} else {
+					decisionNodes[i].addDaughter(null);
+					continue;
+				}
+				if (isDaughter[node]) {
+					throw new MaryConfigurationException("Decision node " + i + " shares daughter " + ref + " with another node");
+				}
+				isDaughter[node] = true;
+				decisionNodes[i].addDaughter(ref < 0 ? decisionNodes[-(ref + 1)] : leaves[ref - 1]);
+			}
+		}
+
+		Node rootNode;
+		if (numDecisionNodes > 0) {
+			rootNode = decisionNodes[0];
+			((DecisionNode) rootNode).countData();
+		} else if (numLeaves > 0) {
+			rootNode = leaves[0];
+		} else {
+			return null;
+		}
+		rootNode.setIsRoot(true);
+		return rootNode;
+	}
+
+	private static int getVectorSize(CartTreeSet cart, FeatureType type) {
+		switch (type) {
+		case DUR:
+			return cart.getNumStates();
+		case LF0:
+			return cart.getLf0Stream();
+		default:
+			return cart.getVsize(type);
+		}
+	}
+
+	private static double getGvWeight(HMMData htsData, FeatureType type) {
+		switch (type) {
+		case MGC:
+			return htsData.getGvWeightMgc();
+		case LF0:
+			return htsData.getGvWeightLf0();
+		case STR:
+			return htsData.getGvWeightStr();
+		default:
+			return htsData.getGvWeightMag();
+		}
+	}
+
+	private static double[] getGvMean(GVModelSet gv, FeatureType type) {
+		switch (type) {
+		case MGC:
+			return gv.getGVmeanMgc();
+		case LF0:
+			return gv.getGVmeanLf0();
+		case STR:
+			return gv.getGVmeanStr();
+		default:
+			return gv.getGVmeanMag();
+		}
+	}
+
+	private static double[] getGvCovInv(GVModelSet gv, FeatureType type) {
+		switch (type) {
+		case MGC:
+			return gv.getGVcovInvMgc();
+		case LF0:
+			return gv.getGVcovInvLf0();
+		case STR:
+			return gv.getGVcovInvStr();
+		default:
+			return gv.getGVcovInvMag();
+		}
+	}
+
+	private static void writeDoubles(double[] a, int n, DataOutputStream out) throws IOException {
+		for (int i = 0; i < n; i++) {
+			out.writeDouble(a[i]);
+		}
+	}
+
+	private static int[] getInts(ByteBuffer bb, int n) throws MaryConfigurationException {
+		if (n < 0 || n > bb.remaining() / 4) {
+			throw new MaryConfigurationException("Invalid array length " + n + " with " + bb.remaining() + " bytes left");
+		}
+		int[] a = new int[n];
+		bb.asIntBuffer().get(a);
+		bb.position(bb.position() + 4 * n);
+		return a;
+	}
+
+	private static double[] getDoubles(ByteBuffer bb, int n) throws MaryConfigurationException {
+		if (n < 0 || n > bb.remaining() / 8) {
+			throw new MaryConfigurationException("Invalid array length " + n + " with " + bb.remaining() + " bytes left");
+		}
+		double[] a = new double[n];
+		bb.asDoubleBuffer().get(a);
+		bb.position(bb.position() + 8 * n);
+		return a;
+	}
+
+	/**
+	 * Write a snapshot for a voice.
+	 *
+	 * @param args
+	 *            either voiceName snapshotFile, for an installed voice, or voiceName marybase configFile snapshotFile, for a voice
+	 *            given by its config file
+	 * @throws Exception
+	 *             Exception
+	 */
+	public static void main(String[] args) throws Exception {
+		HMMData htsData = new HMMData();
+		String snapshotFile;
+		if (args.length == 2) {
+			htsData.initHMMData(args[0]);
+			snapshotFile = args[1];
+		} else if (args.length == 4) {
+			htsData.initHMMData(args[0], args[1], args[2]);
+			snapshotFile = args[3];
+		} else {
+			System.err.println("Usage: java " + HMMVoiceSnapshot.class.getName()
+					+ " voiceName [marybase configFile] snapshotFile");
+			System.exit(1);
+			return;
+		}
+		write(htsData, snapshotFile);
+		System.out.println("Wrote " + snapshotFile);
+	}
+}
@@ -64,7 +64,12 @@
 package marytts.htsengine;
 
 import marytts.util.MaryUtils;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 
 import org.apache.log4j.Logger;
 
@@ -109,6 +114,9 @@ public class HTSPStream {
 	private double wuw[][];
 	/** W' U^-1 mu */
 	private double wum[];
+	/** copies of wuw and wum for the LDL factorization */
+	private double ldlwuw[][];
+	private double ldlwum[];
 
 	/* ____________________Dynamic window ____________________ */
 	// private final HTSDWin dw; /* Windows used to calculate dynamic features, delta and delta-delta */
@@ -188,6 +196,28 @@ public class HTSPStream {
 
 	}
 
+	/**
+	 * A worker for generating one dimension of the given stream in parallel with the others: it shares the pdfs and the output
+	 * parameters with the stream, but has its own work space.
+	 */
+	private HTSPStream(HTSPStream shared) {
+		feaType = shared.feaType;
+		vSize = shared.vSize;
+		order = shared.order;
+		nT = shared.nT;
+		maxGVIter = shared.maxGVIter;
+		par = shared.par;
+		mseq = shared.mseq;
+		ivseq = shared.ivseq;
+		gvSwitch = shared.gvSwitch;
+		gvLength = shared.gvLength;
+		gvmean = shared.gvmean;
+		gvcovInv = shared.gvcovInv;
+		g = new double[nT];
+		wuw = new double[nT][WIDTH];
+		wum = new double[nT];
+	}
+
 	public int getVsize() {
 		return vSize;
 	}
@@ -266,38 +296,138 @@ public class HTSPStream {
 	 * mlpg: generate sequence of speech parameter vector maximizing its output probability for given pdf sequence
 	 */
 	public void mlpg(HMMData htsData, boolean useGV) {
+		mlpg(htsData, useGV, null);
+	}
+
+	/**
+	 * Generate the sequence of speech parameter vectors; the dimensions of the parameter vectors are independent of each other,
+	 * so that they can be generated in parallel. The result does not depend on whether a pool is used.
+	 * 
+	 * @param htsData
+	 *            htsData
+	 * @param useGV
+	 *            whether to apply global variance optimisation
+	 * @param pool
+	 *            the pool in which to generate the dimensions in parallel, or null to generate them one after the other
+	 */
+	public void mlpg(final HMMData htsData, final boolean useGV, ForkJoinPool pool) {
 
 		if (htsData.getUseContextDependentGV())
 			logger.info("Context-dependent global variance optimization: gvLength = " + gvLength);
 		else
 			logger.info("Global variance optimization");
 
-		for (int m = 0; m < order; m++) {
-			calcWUWandWUM(m);
-			double[][] mywuw = new double[nT][];
-			for (int x = 0; x < wuw.length; x++) {
-				mywuw[x] = Arrays.copyOf(wuw[x], wuw[x].length);
-			}
-			double[] mywum = Arrays.copyOf(wum, wum.length);
-			ldlFactorization(mywuw); /* LDL factorization */
-			forwardSubstitution(mywum, mywuw); /* forward substitution in Cholesky decomposition */
-			backwardSubstitution(m, mywuw); /* backward substitution in Cholesky decomposition */
-
-			/* Global variance optimisation for MCP and LF0 */
-			if (useGV && gvLength > 0) {
-				if (htsData.getGvMethodGradient())
-					gvParmGenGradient(m, false); // this is the previous method we have in MARY, using the Gradient as in the
-													// Paper of Toda et. al. IEICE 2007
-													// if using this method the variances have to be inverse (see note in GVModel
-													// set: case NEWTON in gv optimization)
-													// this method seems to give a better result
-				else
-					gvParmGenDerivative(m, false); // this is the method in the hts_engine 1.04 the variances are not inverse
-
+		if (pool == null || order == 1) {
+			for (int m = 0; m < order; m++) {
+				mlpg(htsData, useGV, m);
 			}
+			return;
 		}
+		List<RecursiveAction> tasks = new ArrayList<RecursiveAction>(order);
+		for (int m = 0; m < order; m++) {
+			final int dimension = m;
+			tasks.add(new RecursiveAction() {
+				@Override
+				protected void compute() {
+					new HTSPStream(HTSPStream.this).mlpg(htsData, useGV, dimension);
+				}
+			});
+		}
+		invokeAll(pool, tasks);
 	} /* method mlpg */
 
+	/**
+	 * Run the given tasks in the pool and wait for them to finish; if the current thread is already a worker of a fork-join pool,
+	 * the tasks are forked in that pool.
+	 * 
+	 * @param pool
+	 *            pool
+	 * @param tasks
+	 *            tasks
+	 */
+	static void invokeAll(ForkJoinPool pool, final List<? extends ForkJoinTask<?>> tasks) {
+		if (ForkJoinTask.inForkJoinPool()) {
+			ForkJoinTask.invokeAll(tasks);
+		} else {
+			pool.invoke(new RecursiveAction() {
+				@Override
+				protected void compute() {
+					invokeAll(tasks);
+				}
+			});
+		}
+	}
+
+	/* mlpg for dimension m of the parameter vectors */
+	private void mlpg(HMMData htsData, boolean useGV, int m) {
+		calcWUWandWUM(m);
+		if (ldlwuw == null) {
+			ldlwuw = new double[nT][WIDTH];
+			ldlwum = new double[nT];
+		}
+		double[][] mywuw = ldlwuw;
+		for (int x = 0; x < wuw.length; x++) {
+			System.arraycopy(wuw[x], 0, mywuw[x], 0, WIDTH);
+		}
+		double[] mywum = ldlwum;
+		System.arraycopy(wum, 0, mywum, 0, nT);
+		ldlFactorization(mywuw); /* LDL factorization */
+		forwardSubstitution(mywum, mywuw); /* forward substitution in Cholesky decomposition */
+		backwardSubstitution(m, mywuw); /* backward substitution in Cholesky decomposition */
+
+		/* Global variance optimisation for MCP and LF0 */
+		if (useGV && gvLength > 0) {
+			if (htsData.getGvMethodGradient())
+				gvParmGenGradient(m, false); // this is the previous method we have in MARY, using the Gradient as in the
+												// Paper of Toda et. al. IEICE 2007
+												// if using this method the variances have to be inverse (see note in GVModel
+												// set: case NEWTON in gv optimization)
+												// this method seems to give a better result
+			else
+				gvParmGenDerivative(m, false); // this is the method in the hts_engine 1.04 the variances are not inverse
+
+		}
+	}
+
+	/**
+	 * Generate the parameters of the frames keepFrom to keepTo-1 only, by solving the parameter generation problem for the window
+	 * of frames from to to-1 around them. With a few dozen frames of context on each side of the kept frames, the result is very
+	 * close to that of generating the whole utterance; global variance, if used, is computed over the window.
+	 * 
+	 * @param htsData
+	 *            htsData
+	 * @param useGV
+	 *            whether to apply global variance optimisation
+	 * @param pool
+	 *            the pool in which to generate the dimensions in parallel, or null
+	 * @param from
+	 *            first frame of the window
+	 * @param to
+	 *            end of the window (exclusive)
+	 * @param keepFrom
+	 *            first frame whose parameters are set, at least from
+	 * @param keepTo
+	 *            end of the frames whose parameters are set (exclusive), at most to
+	 * @throws Exception
+	 *             Exception
+	 */
+	public void mlpg(HMMData htsData, boolean useGV, ForkJoinPool pool, int from, int to, int keepFrom, int keepTo)
+			throws Exception {
+		assert 0 <= from && from <= keepFrom && keepFrom <= keepTo && keepTo <= to && to <= nT;
+		HTSPStream window = new HTSPStream(vSize, to - from, feaType, maxGVIter);
+		for (int t = from; t < to; t++) {
+			window.mseq[t - from] = mseq[t];
+			window.ivseq[t - from] = ivseq[t];
+			if (!gvSwitch[t])
+				window.setGvSwitch(t - from, false);
+		}
+		window.setGvMeanVar(gvmean, gvcovInv);
+		window.mlpg(htsData, useGV, pool);
+		for (int t = keepFrom; t < keepTo; t++) {
+			System.arraycopy(window.par[t - from], 0, par[t], 0, order);
+		}
+	}
+
 	/*----------------- HTS parameter generation fuctions  -----------------------------*/
 
 	/*------ HTS parameter generation fuctions                  */
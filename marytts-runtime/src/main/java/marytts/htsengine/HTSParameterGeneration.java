@@ -69,13 +69,17 @@ import java.io.EOFException;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.Vector;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -109,6 +113,17 @@ public class HTSParameterGeneration {
 	private int totalUttFrame; // total number of frames in a mcep, str or mag Pst
 	private int totalLf0Frame; // total number of f0 voiced frames in a lf0 Pst
 
+	/* for streaming generation: whether GV is used for mcep, str and mag, the window and overlap sizes in frames */
+	private boolean mcepUseGV;
+	private boolean strUseGV;
+	private boolean magUseGV;
+	private boolean streaming = false;
+	private int windowSize;
+	private int windowOverlap;
+	private int generatedFrames; // number of frames for which mcep, str and mag have been generated
+
+	private ForkJoinPool pool = null; // for generating streams and dimensions in parallel
+
 	private Logger logger = MaryUtils.getLogger("ParameterGeneration");
 
 	public HTSPStream getMcepPst() {
@@ -151,6 +166,17 @@ public class HTSParameterGeneration {
 		voiced = var;
 	} // only used in HTSEngineTest
 
+	/**
+	 * Generate the parameter streams, and the dimensions of each stream, in parallel in the given pool. The generated parameters
+	 * are the same as when generating them one after the other.
+	 *
+	 * @param pool
+	 *            the pool to use, or null (the default) for generating everything in the calling thread
+	 */
+	public void setForkJoinPool(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
 	/* Inverse of a given double */
 	/* We actually need the inverse of the matrix of covariance, but since this matrix */
 	/* is a diagonal matrix, then we just need to calculate the inverse of each of the */
@@ -180,7 +206,146 @@ public class HTSParameterGeneration {
 	 * @throws Exception
 	 *             Exception
 	 */
-	public void htsMaximumLikelihoodParameterGeneration(HTSUttModel um, final HMMData htsData) throws Exception {
+	public void htsMaximumLikelihoodParameterGeneration(final HTSUttModel um, final HMMData htsData) throws Exception {
+		initParameterStreams(um, htsData);
+
+		// Step 3: optimize individual parameter streams
+		List<StreamGeneration> streams = new ArrayList<StreamGeneration>();
+
+		/* parameter generation for mcep */
+		if (mcepPst != null) {
+			streams.add(new StreamGeneration() {
+				void generate() {
+					logger.info("Parameter generation for MGC: ");
+					mcepPst.mlpg(htsData, mcepUseGV, pool);
+				}
+			});
+		}
+
+		// parameter generation for lf0 */
+		streams.add(new StreamGeneration() {
+			void generate() throws Exception {
+				generateLf0(um, htsData);
+			}
+		});
+
+		/* parameter generation for str */
+		if (strPst != null) {
+			streams.add(new StreamGeneration() {
+				void generate() {
+					logger.debug("Parameter generation for STR ");
+					strPst.mlpg(htsData, strUseGV, pool);
+				}
+			});
+		}
+
+		/* parameter generation for mag */
+		if (magPst != null) {
+			streams.add(new StreamGeneration() {
+				void generate() {
+					logger.info("Parameter generation for MAG ");
+					magPst.mlpg(htsData, magUseGV, pool);
+				}
+			});
+		}
+
+		if (pool == null) {
+			for (StreamGeneration stream : streams) {
+				stream.generate();
+			}
+		} else {
+			HTSPStream.invokeAll(pool, streams);
+		}
+		streaming = false;
+		generatedFrames = um.getTotalFrame();
+
+	} /* method htsMaximumLikelihoodParameterGeneration */
+
+	/**
+	 * HTS maximum likelihood parameter generation for streaming synthesis: only log f0 is generated for the whole utterance
+	 * here, so that the realised f0 is available immediately. The mcep, str and mag parameters are generated window by window
+	 * through {@link #generateNextWindow(HMMData)}, normally called by the vocoder as it needs them. Global variance, if used, is
+	 * optimised for each window rather than for the whole utterance, so that the parameters can then differ noticeably from those
+	 * of {@link #htsMaximumLikelihoodParameterGeneration(HTSUttModel, HMMData)}.
+	 *
+	 * @param um
+	 *            : utterance model sequence after processing Mary context features
+	 * @param htsData
+	 *            : HMM pdfs model set.
+	 * @param windowSize
+	 *            : number of frames to generate per window
+	 * @param windowOverlap
+	 *            : number of additional frames on each side of a window taken into account when generating it
+	 * @throws Exception
+	 *             Exception
+	 */
+	public void htsStreamingParameterGeneration(HTSUttModel um, final HMMData htsData, int windowSize, int windowOverlap)
+			throws Exception {
+		if (windowSize <= 0 || windowOverlap < 0)
+			throw new IllegalArgumentException("Invalid window size " + windowSize + " or overlap " + windowOverlap);
+		initParameterStreams(um, htsData);
+		generateLf0(um, htsData);
+		this.windowSize = windowSize;
+		this.windowOverlap = windowOverlap;
+		streaming = true;
+		generatedFrames = 0;
+	}
+
+	/**
+	 * Whether the mcep, str and mag parameters are being generated window by window.
+	 *
+	 * @return true after {@link #htsStreamingParameterGeneration(HTSUttModel, HMMData, int, int)}
+	 */
+	public boolean isStreaming() {
+		return streaming;
+	}
+
+	/**
+	 * Generate the mcep, str and mag parameters for the next window of frames, after
+	 * {@link #htsStreamingParameterGeneration(HTSUttModel, HMMData, int, int)}.
+	 *
+	 * @param htsData
+	 *            : HMM pdfs model set.
+	 * @return the number of frames for which parameters are now available.
+	 * @throws Exception
+	 *             Exception
+	 */
+	public int generateNextWindow(HMMData htsData) throws Exception {
+		int totalFrames = voiced.length;
+		if (generatedFrames >= totalFrames)
+			return generatedFrames;
+		int keepFrom = generatedFrames;
+		int keepTo = Math.min(totalFrames, keepFrom + windowSize);
+		// don't leave a last window too short to be generated well on its own:
+		if (totalFrames - keepTo < windowOverlap)
+			keepTo = totalFrames;
+		int from = Math.max(0, keepFrom - windowOverlap);
+		int to = Math.min(totalFrames, keepTo + windowOverlap);
+		logger.debug("Parameter generation for frames " + keepFrom + " to " + keepTo + " of " + totalFrames);
+		if (mcepPst != null)
+			mcepPst.mlpg(htsData, mcepUseGV, pool, from, to, keepFrom, keepTo);
+		if (strPst != null)
+			strPst.mlpg(htsData, strUseGV, pool, from, to, keepFrom, keepTo);
+		if (magPst != null)
+			magPst.mlpg(htsData, magUseGV, pool, from, to, keepFrom, keepTo);
+		generatedFrames = keepTo;
+		return generatedFrames;
+	}
+
+	/**
+	 * The number of frames for which the mcep, str and mag parameters have been generated so far.
+	 *
+	 * @return generatedFrames
+	 */
+	public int getGeneratedFrames() {
+		return generatedFrames;
+	}
+
+	/**
+	 * Initialise the parameter streams with the pdfs of the utterance model (steps 1 and 2 of parameter generation), and set the
+	 * global variance of the mcep, str and mag streams.
+	 */
+	private void initParameterStreams(HTSUttModel um, final HMMData htsData) throws Exception {
 		CartTreeSet ms = htsData.getCartTreeSet();
 
 		/* Initialisation of PStream objects */
@@ -302,51 +467,55 @@ public class HTSParameterGeneration {
 		if (magPst != null)
 			magPst.fixDynFeatOnBoundaries();
 
-		// Step 3: optimize individual parameter streams
-
-		/* parameter generation for mcep */
+		/* global variance for mcep, str and mag */
 		if (mcepPst != null) {
-			logger.info("Parameter generation for MGC: ");
 			if (htsData.getUseGV() && (htsData.getPdfMgcGVStream() != null))
 				mcepPst.setGvMeanVar(gvms.getGVmeanMgc(), gvms.getGVcovInvMgc());
-			mcepPst.mlpg(htsData, htsData.getUseGV());
+			mcepUseGV = htsData.getUseGV();
 		}
+		strUseGV = false;
+		if (strPst != null && htsData.getUseGV() && (htsData.getPdfStrGVStream() != null)) {
+			strUseGV = true;
+			strPst.setGvMeanVar(gvms.getGVmeanStr(), gvms.getGVcovInvStr());
+		}
+		magUseGV = false;
+		if (magPst != null && htsData.getUseGV() && (htsData.getPdfMagGVStream() != null)) {
+			magUseGV = true;
+			magPst.setGvMeanVar(gvms.getGVmeanMag(), gvms.getGVcovInvMag());
+		}
+	}
 
-		// parameter generation for lf0 */
+	/**
+	 * The generation of one parameter stream, as a task that can be run in a fork-join pool.
+	 */
+	private abstract static class StreamGeneration extends RecursiveAction {
+		abstract void generate() throws Exception;
+
+		@Override
+		protected void compute() {
+			try {
+				generate();
+			} catch (RuntimeException e) {
+				throw e;
+			} catch (Exception e) {
+				throw new RuntimeException("Parameter generation failed", e);
+			}
+		}
+	}
+
+	/* parameter generation for lf0, for the whole utterance */
+	private void generateLf0(HTSUttModel um, final HMMData htsData) throws Exception {
 		if (htsData.getUseAcousticModels())
 			loadMaryXmlF0(um, htsData);
 		else if (lf0Pst != null) {
 			logger.info("Parameter generation for LF0: ");
 			if (htsData.getUseGV() && (htsData.getPdfLf0GVStream() != null))
-				lf0Pst.setGvMeanVar(gvms.getGVmeanLf0(), gvms.getGVcovInvLf0());
+				lf0Pst.setGvMeanVar(htsData.getGVModelSet().getGVmeanLf0(), htsData.getGVModelSet().getGVcovInvLf0());
 			lf0Pst.mlpg(htsData, htsData.getUseGV());
 			// here we need set realisedF0
-			setRealisedF0(lf0Pst, um, msNumStates);
+			setRealisedF0(lf0Pst, um, htsData.getCartTreeSet().getNumStates());
 		}
-
-		/* parameter generation for str */
-		boolean useGV = false;
-		if (strPst != null) {
-			logger.debug("Parameter generation for STR ");
-			if (htsData.getUseGV() && (htsData.getPdfStrGVStream() != null)) {
-				useGV = true;
-				strPst.setGvMeanVar(gvms.getGVmeanStr(), gvms.getGVcovInvStr());
-			}
-			strPst.mlpg(htsData, useGV);
-		}
-
-		/* parameter generation for mag */
-		useGV = false;
-		if (magPst != null) {
-			logger.info("Parameter generation for MAG ");
-			if (htsData.getUseGV() && (htsData.getPdfMagGVStream() != null)) {
-				useGV = true;
-				magPst.setGvMeanVar(gvms.getGVmeanMag(), gvms.getGVcovInvMag());
-			}
-			magPst.mlpg(htsData, useGV);
-		}
-
-	} /* method htsMaximumLikelihoodParameterGeneration */
+	}
 
 	/* Save generated parameters in a binary file */
 	public void saveParamMaryFormat(String fileName, HTSPStream par, HMMData.FeatureType type) {
@@ -69,7 +69,12 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
 import java.util.Random;
+import java.util.WeakHashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
 import javax.sound.sampled.AudioFileFormat;
 import javax.sound.sampled.AudioFormat;
@@ -127,11 +132,9 @@ public class HTSVocoder {
 	private double C[]; /* used in the MLSA/MGLSA filter */
 	private double CC[]; /* used in the MLSA/MGLSA filter */
 	private double CINC[]; /* used in the MLSA/MGLSA filter */
-	private double D1[]; /* used in the MLSA/MGLSA filter */
+	private MLSAFilter filter; /* the MLSA/MGLSA filter, with its delay lines */
 
 	private double rate;
-	int pt2; /* used in mlsadf2 */
-	private final int pt3[] = new int[PADEORDER + 1]; /* used in mlsadf2 */
 
 	/* mixed excitation variables */
 	private int numM; /* Number of bandpass filters for mixed excitation */
@@ -142,6 +145,58 @@ public class HTSVocoder {
 	private boolean mixedExcitation = false;
 	private boolean fourierMagnitudes = false;
 
+	/* work buffers, allocated for the first utterance and reused for every frame of the following ones */
+	private double mc[]; /* feature vector for a particular frame */
+	private WorkBuffers work; /* used in the postfilter and in the LSP conversion */
+	private double magVector[]; /* Fourier magnitudes of a particular frame */
+	private double magPulseBuff[][], magRealBuff[][], magImagBuff[][]; /* used in genPulseFromFourierMag, for T=512 and T=1024 */
+
+	/* idle vocoders for each voice, see getPooledVocoder(); weak keys, so that the pools of unloaded voices are dropped */
+	private static final Map<HMMData, BlockingQueue<HTSVocoder>> idleVocoders = Collections
+			.synchronizedMap(new WeakHashMap<HMMData, BlockingQueue<HTSVocoder>>());
+	/* the maximum number of idle vocoders kept for each voice */
+	static final int MAX_IDLE_VOCODERS = Math.max(2, Runtime.getRuntime().availableProcessors());
+	private BlockingQueue<HTSVocoder> pool = null; /* the pool this vocoder belongs to, if any */
+
+	/**
+	 * Get an idle vocoder for the given voice from the pool, or a new one if there is none. Reusing vocoders means reusing their
+	 * work buffers, so that synthesis with a voice produces hardly any garbage once a few requests have been processed.
+	 * <p>
+	 * A pooled vocoder returns to the pool by itself when the audio stream from {@link #htsMLSAVocoder(HTSParameterGeneration,
+	 * HMMData)} has been produced; otherwise, call {@link #release()} when done with it. At most {@link #MAX_IDLE_VOCODERS} idle
+	 * vocoders are kept for each voice.
+	 * 
+	 * @param htsData
+	 *            the voice's data
+	 * @return a vocoder that no other thread is using
+	 */
+	public static HTSVocoder getPooledVocoder(HMMData htsData) {
+		BlockingQueue<HTSVocoder> idle;
+		synchronized (idleVocoders) {
+			idle = idleVocoders.get(htsData);
+			if (idle == null) {
+				idle = new ArrayBlockingQueue<HTSVocoder>(MAX_IDLE_VOCODERS);
+				idleVocoders.put(htsData, idle);
+			}
+		}
+		HTSVocoder vocoder = idle.poll();
+		if (vocoder == null) {
+			vocoder = new HTSVocoder();
+			vocoder.pool = idle;
+		}
+		return vocoder;
+	}
+
+	/**
+	 * Return a vocoder obtained from {@link #getPooledVocoder(HMMData)} to the pool; it must not be used any more afterwards. If
+	 * the pool is full, the vocoder is left to the garbage collector. Does nothing for vocoders that are not pooled.
+	 */
+	public void release() {
+		if (pool != null) {
+			pool.offer(this);
+		}
+	}
+
 	/**
 	 * The initialisation of VocoderSetup should be done when there is already information about the number of feature vectors to
 	 * be processed, size of the mcep vector file, etc.
@@ -162,27 +217,24 @@ public class HTSVocoder {
 		fprd = htsData.getFperiod();
 		rate = htsData.getRate();
 
-		rand = new Random(SEED);
-
-		C = new double[mcep_order];
-		CC = new double[mcep_order];
-		CINC = new double[mcep_order];
-
-		if (stage == 0) { /* for MGC */
-
-			/* mcep_order=74 and pd=PADEORDER=5 (if no HTS_EMBEDDED is used) */
-			int vector_size = (mcep_vsize * (3 + PADEORDER) + 5 * PADEORDER + 6) - (3 * (mcep_order));
-			D1 = new double[vector_size];
-
-			pt2 = (2 * (PADEORDER + 1)) + (PADEORDER * (mcep_order + 1));
-
-			for (int i = PADEORDER; i >= 1; i--)
-				pt3[i] = (2 * (PADEORDER + 1)) + ((i - 1) * (mcep_order + 1));
-
-		} else { /* for LSP */
-			int vector_size = ((mcep_vsize + 1) * (stage + 3)) - (3 * (mcep_order));
-			D1 = new double[vector_size];
-		}
+		if (rand == null)
+			rand = new Random(SEED);
+		else
+			rand.setSeed(SEED); /* same sequence as a new Random(SEED) */
+
+		C = zeros(C, mcep_order);
+		CC = zeros(CC, mcep_order);
+		CINC = zeros(CINC, mcep_order);
+		mc = zeros(mc, mcep_order);
+		if (work == null || work.m != mcep_order)
+			work = new WorkBuffers(mcep_order);
+
+		/* MLSA filter for MGC (stage 0), MGLSA filter for LSP */
+		boolean singlePrecision = htsData.getUseSinglePrecisionVocoder();
+		if (filter == null || !filter.matches(stage, mcep_order, singlePrecision))
+			filter = MLSAFilter.newInstance(stage, mcep_order, singlePrecision);
+		else
+			filter.reset();
 
 		/* excitation initialisation */
 		p1 = -1;
@@ -190,6 +242,14 @@ public class HTSVocoder {
 
 	} /* method initVocoder */
 
+	/* an array of the given length filled with 0, reusing the given array if it has the right length */
+	private static double[] zeros(double[] array, int length) {
+		if (array == null || array.length != length)
+			return new double[length];
+		Arrays.fill(array, 0.0);
+		return array;
+	}
+
 	/**
 	 * HTS_MLSA_Vocoder: Synthesis of speech out of mel-cepstral coefficients. This procedure uses the parameters generated in
 	 * pdf2par stored in: PStream mceppst: Mel-cepstral coefficients PStream strpst : Filter bank stregths for mixed excitation
@@ -246,6 +306,17 @@ public class HTSVocoder {
 
 	public double[] htsMLSAVocoder(HTSPStream lf0Pst, HTSPStream mcepPst, HTSPStream strPst, HTSPStream magPst, boolean[] voiced,
 			HMMData htsData, HTSVocoderDataProducer audioProducer) throws Exception {
+		return htsMLSAVocoder(lf0Pst, mcepPst, strPst, magPst, voiced, htsData, audioProducer, null);
+	}
+
+	/**
+	 * Vocode the given parameter streams; if streamingPdf2par is not null, its mcep, str and mag parameters are generated window
+	 * by window as the frames are needed. The audio is returned only if there is no audioProducer to pass it on to, otherwise
+	 * null is returned.
+	 */
+	private double[] htsMLSAVocoder(HTSPStream lf0Pst, HTSPStream mcepPst, HTSPStream strPst, HTSPStream magPst,
+			boolean[] voiced, HMMData htsData, HTSVocoderDataProducer audioProducer, HTSParameterGeneration streamingPdf2par)
+			throws Exception {
 
 		double inc, x, MaxSample;
 		double xp = 0.0, xn = 0.0, fxp, fxn, mix; /* samples for pulse and for noise and the filtered ones */
@@ -277,9 +348,9 @@ public class HTSVocoder {
 			numM = htsData.getNumFilters();
 			orderM = htsData.getOrderFilters();
 
-			xpulseSignal = new double[orderM];
-			xnoiseSignal = new double[orderM];
-			/* initialise xp_sig and xn_sig */// -> automatically initialized to 0.0
+			xpulseSignal = zeros(xpulseSignal, orderM);
+			xnoiseSignal = zeros(xnoiseSignal, orderM);
+			/* initialise xp_sig and xn_sig */// -> initialized to 0.0
 
 			h = htsData.getMixFilters();
 			hp = new double[orderM];
@@ -327,14 +398,17 @@ public class HTSVocoder {
 		int s = 0; /* number of samples */
 		int s_double = 0;
 		int audio_size = computeAudioSize(mcepPst, htsData); /* audio size in samples, calculated as num frames * frame period */
-		double[] audio_double = new double[audio_size]; /* initialise buffer for audio */
+		/* initialise buffer for audio, unless the audio is passed on to the producer */
+		double[] audio_double = (audioProducer == null) ? new double[audio_size] : null;
 
 		magSample = 1;
 		magPulseSize = 0;
 		for (mcepframe = 0, lf0frame = 0; mcepframe < mcepPst.getT(); mcepframe++) { /* for each mcep frame */
 
-			/** feature vector for a particular frame */
-			double mc[] = new double[m]; /* feature vector for a particular frame */
+			/* streaming generation: generate the parameters of the next window once they are needed */
+			if (streamingPdf2par != null && mcepframe >= streamingPdf2par.getGeneratedFrames())
+				streamingPdf2par.generateNextWindow(htsData);
+
 			/* get current feature vector mgc */
 			for (int i = 0; i < m; i++)
 				mc[i] = mcepPst.getPar(mcepframe, i);
@@ -392,7 +466,7 @@ public class HTSVocoder {
 
 			if (stage == 0) {
 				/* postfiltering, this is done if beta>0.0 */
-				postfilter_mgc(mc, (m - 1), alpha, beta);
+				postfilter_mgc(mc, (m - 1), alpha, beta, work);
 				/* mc2b: transform mel-cepstrum to MLSA digital filter coefficients */
 				mc2b(mc, CC, (m - 1), alpha);
 				for (int i = 0; i < m; i++)
@@ -427,6 +501,8 @@ public class HTSVocoder {
 			/* Here i need to generate both xp:pulse and xn:noise signals separately */
 			// gauss = false; /* Mixed excitation works better with nomal noise */
 
+			filter.setCoefficients(C, CINC);
+
 			/* Generate fperiod samples per feature vector, normally 80 samples per frame */
 			// p1=0.0;
 			for (int j = fprd - 1, i = (IPERIOD + 1) / 2; j >= 0; j--) {
@@ -441,7 +517,7 @@ public class HTSVocoder {
 				} else {
 					if ((pc += 1.0) >= p1) {
 						if (fourierMagnitudes) {
-							magPulse = genPulseFromFourierMag(magPst, mcepframe, p1);
+							magPulse = pulseFromFourierMag(magPst, mcepframe, p1);
 							magSample = 0;
 							magPulseSize = magPulse.length;
 							x = magPulse[magSample];
@@ -499,26 +575,25 @@ public class HTSVocoder {
 				if (stage == 0) {
 					if (x != 0.0)
 						x *= Math.exp(C[0]);
-					x = mlsadf(x, C, m, alpha, D1, pt2, pt3);
-
 				} else {
 					x *= C[0];
-					x = mglsadf(x, C, (m - 1), alpha, stage, D1);
 				}
+				x = filter.filter(x, alpha);
 
 				// System.out.format("%f ", x);
-				audio_double[s_double] = x;
 				if (audioProducer != null) {
 					audioProducer.putOneDataPoint(x);
+				} else {
+					audio_double[s_double] = x;
 				}
 
 				s_double++;
 
 				if ((--i) == 0) {
 					p1 += inc;
-					for (k = 0; k < m; k++) {
-						C[k] += CINC[k];
-					}
+					/* the filter interpolates its own copy of the other coefficients */
+					C[0] += CINC[0];
+					filter.interpolate();
 					i = IPERIOD;
 				}
 
@@ -768,9 +843,14 @@ public class HTSVocoder {
 	 *            a
 	 */
 	public static void freqt(double c1[], int m1, double c2[], int m2, double a) {
+		freqt(c1, m1, c2, m2, a, new double[(m2 + m2 + 2)]);
+	}
+
+	/* freqt, using the given buffer of at least m2 + m2 + 2 elements */
+	private static void freqt(double c1[], int m1, double c2[], int m2, double a, double freqt_buff[]) {
 		double b = 1 - a * a;
 
-		double freqt_buff[] = new double[(m2 + m2 + 2)]; /* used in freqt */
+		Arrays.fill(freqt_buff, 0, m2 + m2 + 2, 0.0);
 		int g = m2 + 1; /* offset of freqt_buff */
 
 		for (int i = -m1; i <= 0; i++) {
@@ -824,15 +904,18 @@ public class HTSVocoder {
 	 * @return en
 	 */
 	public static double b2en(double b[], int m, double a) {
-		double cep[], ir[];
-		int arrayLength = (m + 1) + 2 * IRLENG;
-		double[] spectrum2en_buff = new double[arrayLength];
-		cep = new double[arrayLength]; /* CHECK! these sizes!!! */
-		ir = new double[arrayLength];
+		return b2en(b, m, a, new WorkBuffers(m));
+	}
+
+	/* b2en, using the given work buffers for order m or higher */
+	private static double b2en(double b[], int m, double a, WorkBuffers work) {
+		double[] spectrum2en_buff = work.spectrum2en;
+		double[] cep = work.cep; /* CHECK! these sizes!!! */
+		double[] ir = work.ir;
 
 		b2mc(b, spectrum2en_buff, m, a);
 		/* freqt(vs->mc, m, vs->cep, vs->irleng - 1, -a); */
-		freqt(spectrum2en_buff, m, cep, IRLENG - 1, -a);
+		freqt(spectrum2en_buff, m, cep, IRLENG - 1, -a, work.freqt);
 		/* HTS_c2ir(vs->cep, vs->irleng, vs->ir, vs->irleng); */
 		c2ir(cep, IRLENG, ir, IRLENG);
 		double en = 0.0;
@@ -905,6 +988,11 @@ public class HTSVocoder {
 	 *            m
 	 */
 	public static void lsp2lpc(double lsp[], double a[], int m) {
+		lsp2lpc(lsp, a, m, new double[(5 * m + 6)]);
+	}
+
+	/* lsp2lpc, using the given buffer of at least 5 * m + 6 elements */
+	private static void lsp2lpc(double lsp[], double a[], int m, double lsp2lpc_buff[]) {
 		int i, k, mh1, mh2, flag_odd;
 		double xx, xf, xff;
 		int p, q; /* offsets of lsp2lpc_buff */
@@ -919,7 +1007,6 @@ public class HTSVocoder {
 			flag_odd = 1;
 		}
 
-		double[] lsp2lpc_buff = new double[(5 * m + 6)];
 		int lsp2lpc_size = m;
 
 		/* offsets of lsp2lpcbuff */
@@ -1012,7 +1099,12 @@ public class HTSVocoder {
 	 *            g2
 	 */
 	public static void gc2gc(double c1[], int m1, double g1, double c2[], int m2, double g2) {
-		double[] gc2gc_buff = Arrays.copyOf(c1, m1 + 1);
+		gc2gc(c1, m1, g1, c2, m2, g2, new double[m1 + 1]);
+	}
+
+	/* gc2gc, using the given buffer of at least m1 + 1 elements */
+	private static void gc2gc(double c1[], int m1, double g1, double c2[], int m2, double g2, double gc2gc_buff[]) {
+		System.arraycopy(c1, 0, gc2gc_buff, 0, m1 + 1);
 		c2[0] = gc2gc_buff[0];
 
 		for (int i = 1; i <= m2; i++) {
@@ -1054,16 +1146,22 @@ public class HTSVocoder {
 	 *            g2
 	 */
 	public static void mgc2mgc(double c1[], int m1, double a1, double g1, double c2[], int m2, double a2, double g2) {
+		mgc2mgc(c1, m1, a1, g1, c2, m2, a2, g2, new double[Math.max(m1 + 1, m2 + m2 + 2)]);
+	}
+
+	/* mgc2mgc, using the given buffer of at least max(m1 + 1, m2 + m2 + 2) elements */
+	private static void mgc2mgc(double c1[], int m1, double a1, double g1, double c2[], int m2, double a2, double g2,
+			double buff[]) {
 
 		if (a1 == a2) {
 			gnorm(c1, c1, m1, g1);
-			gc2gc(c1, m1, g1, c2, m2, g2);
+			gc2gc(c1, m1, g1, c2, m2, g2, buff);
 			ignorm(c2, c2, m2, g2);
 		} else {
 			double a = (a2 - a1) / (1 - a1 * a2);
-			freqt(c1, m1, c2, m2, a);
+			freqt(c1, m1, c2, m2, a, buff);
 			gnorm(c2, c2, m2, g1);
-			gc2gc(c2, m2, g1, c2, m2, g2);
+			gc2gc(c2, m2, g1, c2, m2, g2, buff);
 			ignorm(c2, c2, m2, g2);
 
 		}
@@ -1083,8 +1181,14 @@ public class HTSVocoder {
 	 *            alpha
 	 */
 	public void lsp2mgc(double lsp[], double mgc[], int m, double alpha) {
+		/* the work buffers are allocated by initVocoder(), unless this is called from outside the vocoder */
+		WorkBuffers work = this.work;
+		if (work == null || work.m < m) {
+			work = new WorkBuffers(m);
+			this.work = work;
+		}
 		/* lsp2lpc */
-		lsp2lpc(lsp, mgc, m); /* lsp starts in 1! lsp[1..m] --> mgc[0..m] */
+		lsp2lpc(lsp, mgc, m, work.lsp2lpc); /* lsp starts in 1! lsp[1..m] --> mgc[0..m] */
 		if (use_log_gain)
 			mgc[0] = Math.exp(lsp[0]);
 		else
@@ -1094,7 +1198,7 @@ public class HTSVocoder {
 		ignorm(mgc, mgc, m, gamma);
 		for (int i = m; i >= 1; i--)
 			mgc[i] *= -stage;
-		mgc2mgc(mgc, m, alpha, gamma, mgc, m, alpha, gamma); /* input and output is in mgc=C */
+		mgc2mgc(mgc, m, alpha, gamma, mgc, m, alpha, gamma, work.freqt); /* input and output is in mgc=C */
 	}
 
 	/**
@@ -1168,14 +1272,21 @@ public class HTSVocoder {
 	 */
 	public static void postfilter_mgc(double mgc[], int m, double alpha, double beta) {
 		if (beta > 0.0 && m > 1) {
-			double[] postfilter_buff = new double[m + 1];
+			postfilter_mgc(mgc, m, alpha, beta, new WorkBuffers(m));
+		}
+	}
+
+	/* postfilter_mgc, using the given work buffers for order m or higher */
+	private static void postfilter_mgc(double mgc[], int m, double alpha, double beta, WorkBuffers work) {
+		if (beta > 0.0 && m > 1) {
+			double[] postfilter_buff = work.postfilter;
 			mc2b(mgc, postfilter_buff, m, alpha);
-			double e1 = b2en(postfilter_buff, m, alpha);
+			double e1 = b2en(postfilter_buff, m, alpha, work);
 
 			postfilter_buff[1] -= beta * alpha * mgc[2];
 			for (int k = 2; k < m; k++)
 				postfilter_buff[k] *= (1.0 + beta);
-			double e2 = b2en(postfilter_buff, m, alpha);
+			double e2 = b2en(postfilter_buff, m, alpha, work);
 			postfilter_buff[0] += Math.log(e1 / e2) / 2;
 			b2mc(postfilter_buff, mgc, m, alpha);
 
@@ -1196,25 +1307,55 @@ public class HTSVocoder {
 	 * @return pulse
 	 */
 	public static double[] genPulseFromFourierMag(double[] mag, double f0) {
+		int T = pulseLength(f0);
+		return genPulseFromFourierMag(mag, f0, new double[T], new double[2 * T], new double[2 * T]);
+	}
 
-		int numHarm = mag.length;
+	/* the length of the pulse generated for f0 */
+	private static int pulseLength(double f0) {
 		int currentF0 = (int) Math.round(f0);
-		int T;
 		if (currentF0 < 512)
-			T = 512;
+			return 512;
 		else
-			T = 1024;
+			return 1024;
+	}
+
+	/**
+	 * Generate one pitch period from the Fourier magnitudes of the given frame, reusing this vocoder's buffers; the pulse returned
+	 * is valid until the next call.
+	 */
+	private double[] pulseFromFourierMag(HTSPStream mag, int n, double f0) {
+		if (magVector == null || magVector.length != mag.getOrder()) {
+			magVector = new double[mag.getOrder()];
+			magPulseBuff = new double[2][];
+			magRealBuff = new double[2][];
+			magImagBuff = new double[2][];
+		}
+		for (int i = 0; i < magVector.length; i++)
+			magVector[i] = mag.getPar(n, i);
+		int T = pulseLength(f0);
+		int k = (T == 512) ? 0 : 1;
+		if (magPulseBuff[k] == null) {
+			magPulseBuff[k] = new double[T];
+			magRealBuff[k] = new double[2 * T];
+			magImagBuff[k] = new double[2 * T];
+		}
+		return genPulseFromFourierMag(magVector, f0, magPulseBuff[k], magRealBuff[k], magImagBuff[k]);
+	}
+
+	/* genPulseFromFourierMag, into the given arrays of length T, 2T and 2T */
+	private static double[] genPulseFromFourierMag(double[] mag, double f0, double[] pulse, double[] real, double[] imag) {
+
+		int numHarm = mag.length;
+		int currentF0 = (int) Math.round(f0);
+		int T = pulse.length;
 		int T2 = 2 * T;
 
 		/* since is FFT2 no aperiodicFlag or jitter of 25% is applied */
 
-		/* get the pulse */
-		double[] pulse = new double[T];
-		double[] real = new double[T2];
-		double[] imag = new double[T2];
-
 		/* copy Fourier magnitudes (Wai C. Chu "Speech Coding algorithms foundation and evolution of standardized coders" pg. 460) */
 		real[0] = real[T] = 0.0; /* DC component set to zero */
+		imag[0] = imag[T] = 0.0;
 		for (int i = 1; i <= numHarm; i++) {
 			real[i] = real[T - i] = real[T + i] = real[T2 - i] = mag[i - 1]; /* Symetric extension */
 			imag[i] = imag[T - i] = imag[T + i] = imag[T2 - i] = 0.0;
@@ -1855,6 +1996,28 @@ public class HTSVocoder {
 
 	}
 
+	/**
+	 * Work buffers for the postfilter and the LSP conversion, for mel-cepstra of a given order.
+	 */
+	private static final class WorkBuffers {
+		final int m;
+		final double[] postfilter; /* used in postfilter_mgc */
+		final double[] spectrum2en, cep, ir; /* used in b2en */
+		final double[] freqt; /* used in freqt, gc2gc and mgc2mgc */
+		final double[] lsp2lpc; /* used in lsp2lpc */
+
+		WorkBuffers(int m) {
+			this.m = m;
+			postfilter = new double[m + 1];
+			int arrayLength = (m + 1) + 2 * IRLENG;
+			spectrum2en = new double[arrayLength];
+			cep = new double[arrayLength];
+			ir = new double[arrayLength];
+			freqt = new double[Math.max(IRLENG + IRLENG, m + m + 2)];
+			lsp2lpc = new double[5 * m + 6];
+		}
+	}
+
 	protected class HTSVocoderDataProducer extends ProducingDoubleDataSource {
 		private static final double INITIAL_MAX_AMPLITUDE = 17000.;
 
@@ -1865,6 +2028,7 @@ public class HTSVocoder {
 		private HTSPStream magPst;
 		private boolean[] voiced;
 		private HMMData htsData;
+		private HTSParameterGeneration streamingPdf2par;
 
 		public HTSVocoderDataProducer(int audioSize, HTSParameterGeneration pdf2par, HMMData htsData) {
 			super(audioSize, new AmplitudeNormalizer(INITIAL_MAX_AMPLITUDE));
@@ -1874,15 +2038,20 @@ public class HTSVocoder {
 			magPst = pdf2par.getMagPst();
 			voiced = pdf2par.getVoicedArray();
 			this.htsData = htsData;
+			// parameters not generated yet will be generated while vocoding:
+			if (pdf2par.isStreaming())
+				streamingPdf2par = pdf2par;
 
 		}
 
 		public void run() {
 			try {
-				htsMLSAVocoder(lf0Pst, mcepPst, strPst, magPst, voiced, htsData, this);
+				htsMLSAVocoder(lf0Pst, mcepPst, strPst, magPst, voiced, htsData, this, streamingPdf2par);
 				putEndOfStream();
 			} catch (Exception e) {
 				logger.error("Cannot vocode", e);
+			} finally {
+				HTSVocoder.this.release();
 			}
 		}
 
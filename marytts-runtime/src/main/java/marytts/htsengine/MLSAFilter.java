@@ -0,0 +1,363 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.htsengine;
+
+import java.util.Arrays;
+
+/**
+ * The MLSA (stage 0) and MGLSA (stage &gt; 0) synthesis filters of {@link HTSVocoder}, with their own delay lines.
+ * <p>
+ * These compute the same as {@link HTSVocoder#mlsadf(double, double[], int, double, double[], int, int[])} and
+ * {@link HTSVocoder#mglsadf(double, double[], int, double, int, double[])}, but each delay line is a window sliding down a
+ * longer array: instead of moving all elements of the line by one position for every sample, the start of the window moves,
+ * and the line is copied back to the end of the array only once every {@value #SLACK} samples. The update of the line and the
+ * filter output are computed in one pass. The filter keeps its own copy of the coefficients, set once per frame and
+ * interpolated in place, so that the single precision filter converts them only once per frame. The double precision filter
+ * gives exactly the results of the original functions; the single precision filter, selected per voice, trades accuracy for
+ * speed.
+ */
+public abstract class MLSAFilter {
+
+	/** number of samples after which a delay line is copied back to the end of its array */
+	static final int SLACK = 512;
+
+	private static final int PD = HTSVocoder.PADEORDER;
+	private static final int PPADE = HTSVocoder.ppade;
+
+	protected final int stage;
+	protected final int m;
+
+	/**
+	 * Create a filter.
+	 *
+	 * @param stage
+	 *            0 for the MLSA filter, or the number of MGLSA stages (gamma = -1/stage)
+	 * @param m
+	 *            number of filter coefficients (the mcep order)
+	 * @param singlePrecision
+	 *            whether to compute in single precision
+	 * @return the filter
+	 */
+	public static MLSAFilter newInstance(int stage, int m, boolean singlePrecision) {
+		return singlePrecision ? new SinglePrecision(stage, m) : new DoublePrecision(stage, m);
+	}
+
+	protected MLSAFilter(int stage, int m) {
+		this.stage = stage;
+		this.m = m;
+	}
+
+	/**
+	 * @param otherStage
+	 *            otherStage
+	 * @param otherM
+	 *            otherM
+	 * @param singlePrecision
+	 *            singlePrecision
+	 * @return whether this filter was created with the given parameters
+	 */
+	public boolean matches(int otherStage, int otherM, boolean singlePrecision) {
+		return stage == otherStage && m == otherM && singlePrecision == (this instanceof SinglePrecision);
+	}
+
+	/**
+	 * Clear the delay lines.
+	 */
+	public abstract void reset();
+
+	/**
+	 * Set the filter coefficients at the start of a frame.
+	 *
+	 * @param c
+	 *            filter coefficients, of length m
+	 * @param cinc
+	 *            increment added to the coefficients by each call of {@link #interpolate()}, of length m
+	 */
+	public abstract void setCoefficients(double[] c, double[] cinc);
+
+	/**
+	 * Add the increment to the filter coefficients, once per interpolation period.
+	 */
+	public abstract void interpolate();
+
+	/**
+	 * Filter one sample with the current coefficients. The gain, c[0], must already have been applied to x.
+	 *
+	 * @param x
+	 *            excitation sample
+	 * @param alpha
+	 *            frequency warping parameter
+	 * @return the output sample
+	 */
+	public abstract double filter(double x, double alpha);
+
+	/* number of used elements of each delay line */
+	protected int lineLength() {
+		return stage == 0 ? m + 1 : m;
+	}
+
+	/* number of delay lines */
+	protected int numLines() {
+		return stage == 0 ? PD : stage;
+	}
+
+	private static final class DoublePrecision extends MLSAFilter {
+		private final double[] d1 = new double[2 * (PD + 1)]; // as d[0..2*PD+1] in mlsadf1
+		private final double[] d2 = new double[PD + 1]; // as d[pt2+0..pt2+PD] in mlsadf2
+		private final double[][] lines;
+		private final int[] base;
+		private final double[] b;
+		private final double[] binc;
+
+		DoublePrecision(int stage, int m) {
+			super(stage, m);
+			lines = new double[numLines()][SLACK + lineLength()];
+			base = new int[numLines()];
+			b = new double[m];
+			binc = new double[m];
+			reset();
+		}
+
+		public void reset() {
+			Arrays.fill(d1, 0.0);
+			Arrays.fill(d2, 0.0);
+			for (int k = 0; k < lines.length; k++) {
+				Arrays.fill(lines[k], 0.0);
+				base[k] = SLACK;
+			}
+		}
+
+		public void setCoefficients(double[] c, double[] cinc) {
+			System.arraycopy(c, 0, b, 0, m);
+			System.arraycopy(cinc, 0, binc, 0, m);
+		}
+
+		public void interpolate() {
+			for (int i = 0; i < m; i++)
+				b[i] += binc[i];
+		}
+
+		public double filter(double x, double alpha) {
+			double a = alpha;
+			double aa = 1 - a * a;
+			if (stage != 0) {
+				for (int k = 0; k < stage; k++)
+					x = mglsadff(k, x, m - 1, a, aa);
+				return x;
+			}
+
+			/* mlsadf1 */
+			double out = 0.0;
+			for (int i = PD; i > 0; i--) {
+				d1[i] = aa * d1[PD + i] + a * d1[i];
+				d1[PD + 1 + i] = d1[i] * b[1];
+				double v = d1[PD + 1 + i] * HTSVocoder.pade[PPADE + i];
+				x += ((1 & i) == 1) ? v : -v;
+				out += v;
+			}
+			d1[PD + 1] = x;
+			out += x;
+			x = out;
+
+			/* mlsadf2 */
+			out = 0.0;
+			for (int i = PD; i > 0; i--) {
+				d2[i] = mlsafir(i - 1, d2[i - 1], m - 1, a, aa);
+				double v = d2[i] * HTSVocoder.pade[PPADE + i];
+				x += ((1 & i) == 1) ? v : -v;
+				out += v;
+			}
+			d2[0] = x;
+			out += x;
+			return out;
+		}
+
+		/* delay line positions 0..mm+1 are at line[p..p+mm+1] */
+		private double mlsafir(int k, double x, int mm, double a, double aa) {
+			double[] line = lines[k];
+			int p = base[k];
+			if (p == 0) {
+				System.arraycopy(line, 0, line, SLACK, mm + 2);
+				p = SLACK;
+			}
+			double d = aa * x + a * line[p + 1];
+			line[p + 1] = d;
+			double prev = d;
+			double y = 0.0;
+			for (int i = 2; i <= mm; i++) {
+				double v = line[p + i] + a * (line[p + i + 1] - prev);
+				line[p + i] = v;
+				y += v * b[i];
+				prev = v;
+			}
+			// shift by one position; position 1 keeps its value
+			line[p] = d;
+			base[k] = p - 1;
+			return y;
+		}
+
+		/* delay line positions 0..mm are at line[p..p+mm] */
+		private double mglsadff(int k, double x, int mm, double a, double aa) {
+			double[] line = lines[k];
+			int p = base[k];
+			if (p == 0) {
+				System.arraycopy(line, 0, line, SLACK, mm + 1);
+				p = SLACK;
+			}
+			double prev = line[p];
+			double y = prev * b[1];
+			for (int i = 1; i < mm; i++) {
+				double v = line[p + i] + a * (line[p + i + 1] - prev);
+				line[p + i] = v;
+				y += v * b[i + 1];
+				prev = v;
+			}
+			x -= y;
+			// shift by one position, and compute the new position 0
+			line[p - 1] = a * line[p] + aa * x;
+			base[k] = p - 1;
+			return x;
+		}
+	}
+
+	private static final class SinglePrecision extends MLSAFilter {
+		private static final float[] PADE = new float[PD + 1];
+		static {
+			for (int i = 0; i <= PD; i++)
+				PADE[i] = (float) HTSVocoder.pade[PPADE + i];
+		}
+
+		private final float[] d1 = new float[2 * (PD + 1)];
+		private final float[] d2 = new float[PD + 1];
+		private final float[][] lines;
+		private final int[] base;
+		private final float[] b;
+		private final float[] binc;
+
+		SinglePrecision(int stage, int m) {
+			super(stage, m);
+			lines = new float[numLines()][SLACK + lineLength()];
+			base = new int[numLines()];
+			b = new float[m];
+			binc = new float[m];
+			reset();
+		}
+
+		public void reset() {
+			Arrays.fill(d1, 0f);
+			Arrays.fill(d2, 0f);
+			for (int k = 0; k < lines.length; k++) {
+				Arrays.fill(lines[k], 0f);
+				base[k] = SLACK;
+			}
+		}
+
+		public void setCoefficients(double[] c, double[] cinc) {
+			for (int i = 0; i < m; i++) {
+				b[i] = (float) c[i];
+				binc[i] = (float) cinc[i];
+			}
+		}
+
+		public void interpolate() {
+			for (int i = 0; i < m; i++)
+				b[i] += binc[i];
+		}
+
+		public double filter(double input, double alpha) {
+			float a = (float) alpha;
+			float aa = 1 - a * a;
+			float x = (float) input;
+			if (stage != 0) {
+				for (int k = 0; k < stage; k++)
+					x = mglsadff(k, x, m - 1, a, aa);
+				return x;
+			}
+
+			/* mlsadf1 */
+			float out = 0f;
+			for (int i = PD; i > 0; i--) {
+				d1[i] = aa * d1[PD + i] + a * d1[i];
+				d1[PD + 1 + i] = d1[i] * b[1];
+				float v = d1[PD + 1 + i] * PADE[i];
+				x += ((1 & i) == 1) ? v : -v;
+				out += v;
+			}
+			d1[PD + 1] = x;
+			out += x;
+			x = out;
+
+			/* mlsadf2 */
+			out = 0f;
+			for (int i = PD; i > 0; i--) {
+				d2[i] = mlsafir(i - 1, d2[i - 1], m - 1, a, aa);
+				float v = d2[i] * PADE[i];
+				x += ((1 & i) == 1) ? v : -v;
+				out += v;
+			}
+			d2[0] = x;
+			out += x;
+			return out;
+		}
+
+		private float mlsafir(int k, float x, int mm, float a, float aa) {
+			float[] line = lines[k];
+			int p = base[k];
+			if (p == 0) {
+				System.arraycopy(line, 0, line, SLACK, mm + 2);
+				p = SLACK;
+			}
+			float d = aa * x + a * line[p + 1];
+			line[p + 1] = d;
+			float prev = d;
+			float y = 0f;
+			for (int i = 2; i <= mm; i++) {
+				float v = line[p + i] + a * (line[p + i + 1] - prev);
+				line[p + i] = v;
+				y += v * b[i];
+				prev = v;
+			}
+			line[p] = d;
+			base[k] = p - 1;
+			return y;
+		}
+
+		private float mglsadff(int k, float x, int mm, float a, float aa) {
+			float[] line = lines[k];
+			int p = base[k];
+			if (p == 0) {
+				System.arraycopy(line, 0, line, SLACK, mm + 1);
+				p = SLACK;
+			}
+			float prev = line[p];
+			float y = prev * b[1];
+			for (int i = 1; i < mm; i++) {
+				float v = line[p + i] + a * (line[p + i + 1] - prev);
+				line[p + i] = v;
+				y += v * b[i + 1];
+				prev = v;
+			}
+			x -= y;
+			line[p - 1] = a * line[p] + aa * x;
+			base[k] = p - 1;
+			return x;
+		}
+	}
+}
@@ -73,6 +73,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Scanner;
 import java.util.Vector;
+import java.util.concurrent.ForkJoinPool;
 
 import javax.sound.sampled.AudioFileFormat;
 import javax.sound.sampled.AudioInputStream;
@@ -93,6 +94,7 @@ import marytts.htsengine.HTSUttModel;
 import marytts.htsengine.HTSVocoder;
 import marytts.htsengine.HTSEngineTest.PhonemeDuration;
 import marytts.modules.synthesis.Voice;
+import marytts.server.MaryProperties;
 import marytts.unitselection.select.Target;
 import marytts.util.MaryUtils;
 import marytts.util.data.audio.AppendableSequenceAudioInputStream;
@@ -120,6 +122,7 @@ public class HTSEngine extends InternalModule {
 	private Vector<PhonemeDuration> alignDur = null; // list of external duration per phone for alignment
 	// this are durations loaded from a external file
 	private double newStateDurationFactor = 0.5; // this is a factor that extends or shrinks the duration of a state
+	private static ForkJoinPool parameterGenerationPool = null; // shared by all requests, see getParameterGenerationPool()
 	// it can be used to try to syncronise the duration specified in a external
 	// file
 	// and the number of frames in a external lf0 file
@@ -171,6 +174,23 @@ public class HTSEngine extends InternalModule {
 		alignDur = null;
 	}
 
+	/**
+	 * The pool in which speech parameters are generated in parallel if <code>htsengine.parallel</code> is set. Its size is given
+	 * by <code>htsengine.parallel.threads</code> (0 = number of available processors).
+	 * 
+	 * @return the pool
+	 */
+	private static synchronized ForkJoinPool getParameterGenerationPool() {
+		if (parameterGenerationPool == null) {
+			int n = MaryProperties.getInteger("htsengine.parallel.threads", 0);
+			if (n <= 0) {
+				n = Runtime.getRuntime().availableProcessors();
+			}
+			parameterGenerationPool = new ForkJoinPool(n);
+		}
+		return parameterGenerationPool;
+	}
+
 	/**
 	 * This module is actually tested as part of the HMMSynthesizer test, for which reason this method does nothing.
 	 *
@@ -213,15 +233,25 @@ public class HTSEngine extends InternalModule {
 
 		/* Process UttModel */
 		HTSParameterGeneration pdf2par = new HTSParameterGeneration();
+		if (MaryProperties.getBoolean("htsengine.parallel", false)) {
+			pdf2par.setForkJoinPool(getParameterGenerationPool());
+		}
 
 		/* Generate sequence of speech parameter vectors, generate parameters out of sequence of pdf's */
-		pdf2par.htsMaximumLikelihoodParameterGeneration(um, hmmv.getHMMData());
+		if (MaryProperties.getBoolean("htsengine.streaming", false)) {
+			/* only lf0 is generated now, the rest window by window while the vocoder produces the audio */
+			pdf2par.htsStreamingParameterGeneration(um, hmmv.getHMMData(),
+					MaryProperties.getInteger("htsengine.streaming.window", 200),
+					MaryProperties.getInteger("htsengine.streaming.overlap", 40));
+		} else {
+			pdf2par.htsMaximumLikelihoodParameterGeneration(um, hmmv.getHMMData());
+		}
 
 		/* set parameters for generation: f0Std, f0Mean and length, default values 1.0, 0.0 and 0.0 */
 		/* These values are fixed in HMMVoice */
 
-		/* Process generated parameters */
-		HTSVocoder par2speech = new HTSVocoder();
+		/* Process generated parameters; the vocoder returns to the pool when it has produced the audio */
+		HTSVocoder par2speech = HTSVocoder.getPooledVocoder(hmmv.getHMMData());
 
 		/* Synthesize speech waveform, generate speech out of sequence of parameters */
 		AudioInputStream ais = par2speech.htsMLSAVocoder(pdf2par, hmmv.getHMMData());
@@ -41,8 +41,11 @@ import marytts.fst.FSTLookup;
 import marytts.modules.phonemiser.AllophoneSet;
 import marytts.modules.phonemiser.TrainedLTS;
 import marytts.server.MaryProperties;
+import marytts.server.metrics.Metrics;
+import marytts.server.metrics.PhonemiserMetrics;
 import marytts.util.MaryRuntimeUtils;
 import marytts.util.MaryUtils;
+import marytts.util.cache.MemoCache;
 import marytts.util.dom.MaryDomUtils;
 
 import org.w3c.dom.DOMException;
@@ -58,6 +61,10 @@ import org.w3c.dom.traversal.NodeIterator;
  */
 
 public class JPhonemiser extends InternalModule {
+	/** default maximum number of words in the pronunciation cache */
+	public static final int DEFAULT_CACHE_SIZE = 20000;
+	// cache value of words for which phonemise() returned null:
+	private static final String[] NOT_PHONEMISED = new String[0];
 
 	protected Map<String, List<String>> userdict;
 	protected FSTLookup lexicon;
@@ -69,6 +76,10 @@ public class JPhonemiser extends InternalModule {
 	protected Pattern punctuationPosRegex;
 	protected Pattern unpronounceablePosRegex;
 
+	// (text, pos) -> (transcription, g2pMethod), or NOT_PHONEMISED; null if caching is disabled:
+	protected MemoCache<String, String[]> pronunciationCache;
+	protected PhonemiserMetrics metrics;
+
 	public JPhonemiser(String propertyPrefix) throws IOException, MaryConfigurationException {
 		this("JPhonemiser", MaryDataType.PARTSOFSPEECH, MaryDataType.PHONEMES, propertyPrefix + "allophoneset", propertyPrefix
 				+ "userdict", propertyPrefix + "lexicon", propertyPrefix + "lettertosound", propertyPrefix
@@ -141,8 +152,7 @@ public class JPhonemiser extends InternalModule {
 						+ "' does not exist. Ignoring.");
 			}
 		}
-		InputStream lexiconStream = MaryProperties.needStream(lexiconProperty);
-		lexicon = new FSTLookup(lexiconStream, lexiconProperty);
+		lexicon = MaryRuntimeUtils.needFSTLookup(lexiconProperty);
 		InputStream ltsStream = MaryProperties.needStream(ltsProperty);
 		if (removetrailingonefromphonesProperty != null) {
 			this.removeTrailingOneFromPhones = MaryProperties.getBoolean(removetrailingonefromphonesProperty, true);
@@ -154,6 +164,78 @@ public class JPhonemiser extends InternalModule {
 		super.startup();
 		setPunctuationPosRegex();
 		setUnpronounceablePosRegex();
+		setupPronunciationCache();
+	}
+
+	/**
+	 * Create the pronunciation cache used by {@link #phonemiseCached(String, String, StringBuilder)}, and pre-warm it from a word
+	 * list if one is configured. The maximum number of words is given by the property <code>&lt;locale&gt;.phonemiser.cache</code>
+	 * (0 disables the cache), and the word list by <code>&lt;locale&gt;.phonemiser.cache.prewarm</code>.
+	 * <p>
+	 * Pre-warming calls {@link #phonemise(String, String, StringBuilder)}, so subclasses must be ready to phonemise when they call
+	 * {@link #startup()}.
+	 */
+	protected void setupPronunciationCache() {
+		metrics = Metrics.get().getPhonemiser(getLocale());
+		String propertyName = getLocale() + ".phonemiser.cache";
+		int cacheSize = MaryProperties.getInteger(propertyName, DEFAULT_CACHE_SIZE);
+		pronunciationCache = cacheSize > 0 ? new MemoCache<String, String[]>(cacheSize, 16) : null;
+		metrics.setCache(pronunciationCache);
+		if (pronunciationCache != null && MaryProperties.getProperty(propertyName + ".prewarm") != null) {
+			try {
+				InputStream wordList = MaryProperties.getStream(propertyName + ".prewarm");
+				try {
+					prewarmPronunciationCache(wordList, cacheSize);
+				} finally {
+					wordList.close();
+				}
+			} catch (Exception e) {
+				logger.warn("Cannot pre-warm pronunciation cache from " + MaryProperties.getProperty(propertyName + ".prewarm"), e);
+			}
+		}
+	}
+
+	/**
+	 * Phonemise the words of a word list, such as a word frequency list, into the pronunciation cache. Each line holds a word,
+	 * optionally followed by its part-of-speech; numeric fields such as frequencies or line numbers are ignored. Lines starting
+	 * with # are comments. As the list is expected to be sorted by decreasing frequency, reading stops after maxWords words.
+	 *
+	 * @param wordList
+	 *            the word list, in UTF-8
+	 * @param maxWords
+	 *            the maximum number of words to read
+	 * @throws IOException
+	 *             IOException
+	 */
+	protected void prewarmPronunciationCache(InputStream wordList, int maxWords) throws IOException {
+		long start = System.currentTimeMillis();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(wordList, "UTF-8"));
+		int numWords = 0;
+		String line;
+		while (numWords < maxWords && (line = reader.readLine()) != null) {
+			if (line.startsWith("#"))
+				continue;
+			String word = null;
+			String pos = null;
+			StringTokenizer st = new StringTokenizer(line);
+			while (st.hasMoreTokens() && pos == null) {
+				String field = st.nextToken();
+				if (field.matches("[0-9]+")) {
+					continue;
+				}
+				if (word == null) {
+					word = field;
+				} else {
+					pos = field;
+				}
+			}
+			if (word != null) {
+				phonemiseAndCache(cacheKey(word, pos), word, pos, new StringBuilder());
+				numWords++;
+			}
+		}
+		logger.info(String.format("Pre-warmed pronunciation cache for locale '%s' with %d words in %d ms", getLocale(), numWords,
+				System.currentTimeMillis() - start));
 	}
 
 	public MaryData process(MaryData d) throws Exception {
@@ -190,7 +272,7 @@ public class JPhonemiser extends InternalModule {
 				while (st.hasMoreTokens()) {
 					String graph = st.nextToken();
 					StringBuilder helper = new StringBuilder();
-					String phon = phonemise(graph, pos, helper);
+					String phon = phonemiseCached(graph, pos, helper);
 					// null result should not be processed
 					if (phon == null) {
 						continue;
@@ -279,6 +361,69 @@ public class JPhonemiser extends InternalModule {
 		return null;
 	}
 
+	/**
+	 * Phonemise the word text like {@link #phonemise(String, String, StringBuilder)}, but through the pronunciation cache: the
+	 * results for a text and part-of-speech are kept in a bounded cache shared by all requests to this module, so that frequent
+	 * words are looked up or predicted by letter-to-sound rules only once. Since each module serves one locale, the locale is
+	 * implicitly part of the cache key.
+	 *
+	 * @param text
+	 *            the textual (graphemic) form of a word.
+	 * @param pos
+	 *            the part-of-speech of the word
+	 * @param g2pMethod
+	 *            filled with the method of phonemisation, as in {@link #phonemise(String, String, StringBuilder)}
+	 * @return a phonemisation of the text if one can be generated, or null if no phonemisation method was successful.
+	 */
+	public String phonemiseCached(String text, String pos, StringBuilder g2pMethod) {
+		if (pronunciationCache == null) {
+			return phonemiseAndCache(null, text, pos, g2pMethod);
+		}
+		String key = cacheKey(text, pos);
+		String[] cached = pronunciationCache.get(key);
+		if (cached == null) {
+			return phonemiseAndCache(key, text, pos, g2pMethod);
+		}
+		if (cached == NOT_PHONEMISED) {
+			return null;
+		}
+		g2pMethod.append(cached[1]);
+		phonemisedFromCache(text, cached[0], cached[1]);
+		return cached[0];
+	}
+
+	/**
+	 * Called when {@link #phonemiseCached(String, String, StringBuilder)} takes the phonemisation of a word from the cache instead
+	 * of calling {@link #phonemise(String, String, StringBuilder)}. Subclasses keeping statistics in phonemise() can update them
+	 * here; this implementation does nothing.
+	 *
+	 * @param text
+	 *            the word
+	 * @param transcription
+	 *            its phonemisation
+	 * @param g2pMethod
+	 *            the method of phonemisation
+	 */
+	protected void phonemisedFromCache(String text, String transcription, String g2pMethod) {
+	}
+
+	private String phonemiseAndCache(String key, String text, String pos, StringBuilder g2pMethod) {
+		StringBuilder method = new StringBuilder();
+		String result = phonemise(text, pos, method);
+		if (result != null && metrics != null && "rules".equals(method.toString())) {
+			metrics.recordLtsFallback();
+		}
+		if (key != null) {
+			pronunciationCache.put(key, result != null ? new String[] { result, method.toString() } : NOT_PHONEMISED);
+		}
+		g2pMethod.append(method);
+		return result;
+	}
+
+	private static String cacheKey(String text, String pos) {
+		return pos != null ? text + '\u0000' + pos : text;
+	}
+
 	/**
 	 * Look a given text up in the (standard) lexicon. part-of-speech is used in case of ambiguity.
 	 *
@@ -19,13 +19,13 @@
  */
 package marytts.modules;
 
-import java.io.InputStream;
 
 import marytts.datatypes.MaryData;
 import marytts.datatypes.MaryDataType;
 import marytts.datatypes.MaryXML;
 import marytts.fst.FSTLookup;
 import marytts.server.MaryProperties;
+import marytts.util.MaryRuntimeUtils;
 import marytts.util.MaryUtils;
 import marytts.util.dom.MaryDomUtils;
 
@@ -66,9 +66,8 @@ public class MinimalisticPosTagger extends InternalModule {
 
 	public void startup() throws Exception {
 		super.startup();
-		InputStream posFSTStream = MaryProperties.getStream(propertyPrefix + "fst");
-		if (posFSTStream != null) {
-			posFST = new FSTLookup(posFSTStream, MaryProperties.getProperty(propertyPrefix + "fst"));
+		if (MaryProperties.getProperty(propertyPrefix + "fst") != null) {
+			posFST = MaryRuntimeUtils.needFSTLookup(propertyPrefix + "fst");
 		}
 		punctuationList = MaryProperties.getProperty(propertyPrefix + "punctuation", ",.?!;");
 	}
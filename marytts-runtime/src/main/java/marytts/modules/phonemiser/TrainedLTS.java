@@ -24,10 +24,9 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.util.Arrays;
 import java.util.Properties;
 
-import org.hsqldb.error.Error;
-
 import marytts.cart.CART;
 import marytts.cart.LeafNode.StringAndFloatLeafNode;
 import marytts.cart.io.MaryCARTReader;
@@ -53,6 +52,13 @@ public class TrainedLTS {
 	private boolean convertToLowercase;
 	protected boolean removeTrailingOneFromPhones = true;
 
+	// for each context position, the byte value of each grapheme below graphemeValues[pos].length:
+	private byte[][] graphemeValues;
+	// for each context position, the byte value of "null", used outside the word and for unknown graphemes:
+	private byte[] nullValues;
+	// for each value of the predicted feature, the phones it stands for:
+	private String[] predictedPhones;
+
 	/**
 	 * 
 	 * Initializes letter to sound system with a phoneSet, and load the decision tree from the given file.
@@ -102,6 +108,7 @@ public class TrainedLTS {
 			throw new IllegalArgumentException("Prediction tree does not contain properties");
 		convertToLowercase = Boolean.parseBoolean(props.getProperty("lowercase"));
 		context = Integer.parseInt(props.getProperty("context"));
+		buildLookupTables();
 	}
 
 	/**
@@ -126,43 +133,109 @@ public class TrainedLTS {
 			throw new IllegalArgumentException("Prediction tree does not contain properties");
 		convertToLowercase = Boolean.parseBoolean(props.getProperty("lowercase"));
 		context = Integer.parseInt(props.getProperty("context"));
+		buildLookupTables();
 	}
 
+	/**
+	 * Translate the feature definition of the tree into plain arrays, so that prediction needs no string lookups: the byte value of
+	 * every grapheme for each context position, and the phones for every value of the predicted feature.
+	 */
+	private void buildLookupTables() {
+		int width = 2 * context + 1;
+		// graphemes are single characters; everything else is unknown, i.e. "null":
+		int tableSize = 1;
+		for (int fnr = 0; fnr < width; fnr++) {
+			for (String value : featureDefinition.getPossibleValues(fnr)) {
+				if (value.length() == 1) {
+					tableSize = Math.max(tableSize, value.charAt(0) + 1);
+				}
+			}
+		}
+		graphemeValues = new byte[width][tableSize];
+		nullValues = new byte[width];
+		for (int fnr = 0; fnr < width; fnr++) {
+			nullValues[fnr] = featureDefinition.getFeatureValueAsByte(fnr, "null");
+			Arrays.fill(graphemeValues[fnr], nullValues[fnr]);
+			for (String value : featureDefinition.getPossibleValues(fnr)) {
+				if (value.length() == 1) {
+					graphemeValues[fnr][value.charAt(0)] = featureDefinition.getFeatureValueAsByte(fnr, value);
+				}
+			}
+		}
+		predictedPhones = new String[featureDefinition.getNumberOfValues(indexPredictedFeature)];
+		for (int i = 0; i < predictedPhones.length; i++) {
+			// predicted values are enclosed in brackets:
+			String prediction = featureDefinition.getFeatureValueAsString(indexPredictedFeature, i);
+			predictedPhones[i] = prediction.length() >= 2 ? prediction.substring(1, prediction.length() - 1) : "";
+		}
+	}
+
+	/**
+	 * Predict the pronunciation of a word.
+	 * 
+	 * @param graphemes
+	 *            the word
+	 * @return the predicted phones, unsyllabified, with stress marking attached to vowels
+	 */
 	public String predictPronunciation(String graphemes) {
-		if (convertToLowercase)
-			graphemes = graphemes.toLowerCase(allophoneSet.getLocale());
+		return predictPronunciation(graphemes, newContextWindow(), new StringBuilder());
+	}
 
-		String returnStr = "";
+	/**
+	 * Predict the pronunciations of many words, such as all unknown words of a text, reusing the working memory of the prediction
+	 * across words.
+	 * 
+	 * @param words
+	 *            the words
+	 * @return for each word, the result of {@link #predictPronunciation(String)}
+	 */
+	public String[] predictPronunciations(String[] words) {
+		FeatureVector window = newContextWindow();
+		StringBuilder phones = new StringBuilder();
+		String[] pronunciations = new String[words.length];
+		for (int i = 0; i < words.length; i++) {
+			pronunciations[i] = predictPronunciation(words[i], window, phones);
+		}
+		return pronunciations;
+	}
 
-		for (int i = 0; i < graphemes.length(); i++) {
+	private FeatureVector newContextWindow() {
+		return new FeatureVector(new byte[2 * context + 1], new short[0], new float[0], 0);
+	}
 
-			byte[] byteFeatures = new byte[2 * this.context + 1];
+	/**
+	 * Predict the phones of each grapheme from the graphemes around it.
+	 * 
+	 * @param graphemes
+	 *            the word
+	 * @param window
+	 *            the context window, whose byte features are overwritten for each grapheme
+	 * @param phones
+	 *            a buffer for the result, which is cleared first
+	 * @return the predicted phones
+	 */
+	private String predictPronunciation(String graphemes, FeatureVector window, StringBuilder phones) {
+		if (convertToLowercase)
+			graphemes = graphemes.toLowerCase(allophoneSet.getLocale());
 
-			for (int fnr = 0; fnr < 2 * this.context + 1; fnr++) {
+		byte[] byteFeatures = window.byteValuedDiscreteFeatures;
+		int length = graphemes.length();
+		phones.setLength(0);
+		for (int i = 0; i < length; i++) {
+			for (int fnr = 0; fnr < byteFeatures.length; fnr++) {
 				int pos = i - context + fnr;
-
-				String grAtPos = (pos < 0 || pos >= graphemes.length()) ? "null" : graphemes.substring(pos, pos + 1);
-
-				try {
-					byteFeatures[fnr] = this.tree.getFeatureDefinition().getFeatureValueAsByte(fnr, grAtPos);
-					// ... can also try to call explicit:
-					// features[fnr] = this.fd.getFeatureValueAsByte("att"+fnr, cg.substr(pos)
-				} catch (IllegalArgumentException iae) {
-					// Silently ignore unknown characters
-					byteFeatures[fnr] = this.tree.getFeatureDefinition().getFeatureValueAsByte(fnr, "null");
+				if (pos < 0 || pos >= length) {
+					byteFeatures[fnr] = nullValues[fnr];
+				} else {
+					// unknown characters are silently treated as "null":
+					char c = graphemes.charAt(pos);
+					byteFeatures[fnr] = c < graphemeValues[fnr].length ? graphemeValues[fnr][c] : nullValues[fnr];
 				}
 			}
-
-			FeatureVector fv = new FeatureVector(byteFeatures, new short[] {}, new float[] {}, 0);
-
-			StringAndFloatLeafNode leaf = (StringAndFloatLeafNode) tree.interpretToNode(fv, 0);
-			String prediction = leaf.mostProbableString(featureDefinition, indexPredictedFeature);
-			returnStr += prediction.substring(1, prediction.length() - 1);
-
+			StringAndFloatLeafNode leaf = (StringAndFloatLeafNode) tree.interpretToNode(window, 0);
+			phones.append(predictedPhones[leaf.mostProbableInt()]);
 		}
-
-		return returnStr;
-
+		return phones.toString();
 	}
 
 	/**
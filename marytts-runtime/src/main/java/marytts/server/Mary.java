@@ -31,7 +31,6 @@ import java.lang.reflect.Method;
 import java.net.ServerSocket;
 import java.net.URL;
 import java.net.URLClassLoader;
-import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
@@ -57,10 +56,11 @@ import marytts.modules.MaryModule;
 import marytts.modules.ModuleRegistry;
 import marytts.modules.Synthesis;
 import marytts.modules.synthesis.Voice;
-import marytts.util.MaryCache;
 import marytts.util.MaryRuntimeUtils;
 import marytts.util.MaryUtils;
 import marytts.util.Pair;
+import marytts.util.cache.ResultCache;
+import marytts.util.cache.ResultCaches;
 import marytts.util.data.audio.MaryAudioUtils;
 import marytts.util.io.FileUtils;
 
@@ -377,11 +377,11 @@ public class Mary {
 				m.shutdown();
 		}
 
-		if (MaryCache.haveCache()) {
-			MaryCache cache = MaryCache.getCache();
+		if (ResultCaches.haveCache()) {
+			ResultCache cache = ResultCaches.getCache();
 			try {
 				cache.shutdown();
-			} catch (SQLException e) {
+			} catch (Exception e) {
 				logger.warn("Cannot shutdown cache: ", e);
 			}
 		}
@@ -35,8 +35,11 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.StringTokenizer;
+import java.util.concurrent.Callable;
 import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import javax.sound.sampled.AudioFileFormat;
 import javax.sound.sampled.AudioFormat;
@@ -47,6 +50,7 @@ import marytts.Version;
 import marytts.config.LanguageConfig;
 import marytts.config.MaryConfig;
 import marytts.datatypes.MaryDataType;
+import marytts.exceptions.ServerBusyException;
 import marytts.htsengine.HMMVoice;
 import marytts.modules.synthesis.Voice;
 import marytts.signalproc.effects.AudioEffect;
@@ -148,10 +152,14 @@ public class MaryServer implements Runnable {
 	private Logger logger;
 	private int runningNumber = 1;
 	private Map<Integer, Object[]> clientMap = Collections.synchronizedMap(new HashMap<Integer, Object[]>());
-	private Executor clients = Executors.newCachedThreadPool();
+	private Executor clients;
 
 	public MaryServer() {
 		logger = MaryUtils.getLogger("server");
+		// If all client threads are busy, the accepting thread handles the next client itself,
+		// so that no new connections are accepted until a client thread becomes free:
+		clients = new ThreadPoolExecutor(0, MaryProperties.getInteger("server.socket.clientthreads", 50), 60L,
+				TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), new ThreadPoolExecutor.CallerRunsPolicy());
 	}
 
 	public void run() {
@@ -507,8 +515,21 @@ public class MaryServer implements Runnable {
 				logger.info("Cannot remove clientMap entry", e);
 			}
 			// -- send off to new request
-			RequestHandler rh = new RequestHandler(request, infoSocket, client, reader);
-			rh.start();
+			final RequestHandler rh = new RequestHandler(request, infoSocket, client, reader);
+			try {
+				SynthesisExecutor.getExecutor().submit(new Callable<Void>() {
+					public Void call() {
+						rh.run();
+						return null;
+					}
+				}, rh.getName(), new Runnable() {
+					public void run() {
+						rh.reject("Server busy: request timed out waiting for processing");
+					}
+				});
+			} catch (ServerBusyException e) {
+				rh.reject(e.getMessage());
+			}
 			return true;
 		}
 
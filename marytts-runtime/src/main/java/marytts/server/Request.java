@@ -25,7 +25,8 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.Reader;
-import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
@@ -34,11 +35,13 @@ import java.util.Map;
 import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import javax.sound.sampled.AudioFileFormat;
 import javax.sound.sampled.AudioInputStream;
 import javax.sound.sampled.AudioSystem;
-import javax.sound.sampled.UnsupportedAudioFileException;
 import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerException;
 
@@ -48,15 +51,22 @@ import marytts.datatypes.MaryXML;
 import marytts.modules.MaryModule;
 import marytts.modules.ModuleRegistry;
 import marytts.modules.synthesis.Voice;
-import marytts.util.MaryCache;
+import marytts.server.metrics.Metrics;
+import marytts.server.metrics.StageMetrics;
 import marytts.util.MaryRuntimeUtils;
 import marytts.util.MaryUtils;
+import marytts.util.cache.CacheKey;
+import marytts.util.cache.CachedAudio;
+import marytts.util.cache.ResultCache;
+import marytts.util.cache.ResultCaches;
 import marytts.util.data.audio.AppendableSequenceAudioInputStream;
 import marytts.util.dom.DomUtils;
 import marytts.util.dom.MaryDomUtils;
 import marytts.util.dom.NameNodeFilter;
 import marytts.util.io.FileUtils;
 
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.commons.io.output.NullOutputStream;
 import org.apache.log4j.Level;
 import org.apache.log4j.Logger;
 import org.w3c.dom.Document;
@@ -93,7 +103,17 @@ public class Request {
 	protected MaryData inputData;
 	protected MaryData outputData;
 	protected boolean streamAudio = false;;
-	protected boolean abortRequested = false;
+	protected volatile boolean abortRequested = false;
+	protected boolean parallelChunks = false;
+	protected boolean lowLatency = false;
+	// For measuring the time to first audio:
+	protected long creationTime;
+	protected volatile long firstAudioTime = 0;
+	// In low latency mode, the first paragraph, already tokenised and split after its first sentence:
+	protected Map<Element, MaryData> tokenisedChunks = null;
+	// The number of chunks processed into audio, and the last one found in the cache:
+	protected int numAudioChunks = 0;
+	protected CachedAudio lastCachedAudio = null;
 
 	// Keep track of timing info for each module
 	// (map MaryModule onto Long)
@@ -149,8 +169,12 @@ public class Request {
 
 		// Keep track of timing info for each module
 		// (map MaryModule onto Long)
-		usedModules = new LinkedHashSet<MaryModule>();
-		timingInfo = new HashMap<MaryModule, Long>();
+		// (synchronized, because chunks may be processed in parallel)
+		usedModules = Collections.synchronizedSet(new LinkedHashSet<MaryModule>());
+		timingInfo = Collections.synchronizedMap(new HashMap<MaryModule, Long>());
+		parallelChunks = MaryProperties.getBoolean("synthesis.parallelchunks", false);
+		lowLatency = MaryProperties.getBoolean("synthesis.lowlatency", false);
+		creationTime = System.currentTimeMillis();
 	}
 
 	public MaryDataType getInputType() {
@@ -193,6 +217,77 @@ public class Request {
 		return streamAudio;
 	}
 
+	/**
+	 * If the audio output of this request was taken from the cache as a whole, provide direct access to the cached audio. This
+	 * allows the caller to send the cached samples to the client without reading them through {@link #getAudio()}.
+	 * 
+	 * @return the cached audio, or null if the audio output was (partly) synthesised or is not yet available.
+	 */
+	public synchronized CachedAudio getCachedAudio() {
+		if (numAudioChunks == 1 && lastCachedAudio != null) {
+			return lastCachedAudio;
+		}
+		return null;
+	}
+
+	private synchronized void countAudioChunk(CachedAudio cachedAudio) {
+		numAudioChunks++;
+		if (cachedAudio != null) {
+			lastCachedAudio = cachedAudio;
+		}
+	}
+
+	/**
+	 * Whether to process the paragraphs of this request in parallel. The results are still merged in document order; with
+	 * streaming audio, the audio of each paragraph is passed on as soon as it and all paragraphs before it are done. The default
+	 * is given by the property <code>synthesis.parallelchunks</code>.
+	 * 
+	 * @param parallelChunks
+	 *            true to process paragraphs in parallel, false to process them one after the other.
+	 */
+	public void setParallelChunks(boolean parallelChunks) {
+		this.parallelChunks = parallelChunks;
+	}
+
+	public boolean getParallelChunks() {
+		return parallelChunks;
+	}
+
+	/**
+	 * Whether to optimise streaming audio for a low time to first audio: the first sentence of the input (up to the first
+	 * sentence-final punctuation or boundary element) is processed as a chunk of its own, and with parallel chunks, it is
+	 * processed before any other waiting chunks. The default is given by the property <code>synthesis.lowlatency</code>.
+	 * <p>
+	 * As the first sentence becomes a paragraph of its own, prosody across the split may differ slightly from normal processing.
+	 * 
+	 * @param lowLatency
+	 *            true to optimise for time to first audio.
+	 */
+	public void setLowLatency(boolean lowLatency) {
+		this.lowLatency = lowLatency;
+	}
+
+	public boolean getLowLatency() {
+		return lowLatency;
+	}
+
+	/**
+	 * The time from the creation of this request until the first audio data was passed on to the audio stream, including any
+	 * time spent waiting for processing.
+	 * 
+	 * @return the time to first audio in milliseconds, or -1 if no audio has been produced yet.
+	 */
+	public long getTimeToFirstAudio() {
+		long t = firstAudioTime;
+		return t > 0 ? t - creationTime : -1;
+	}
+
+	private void noteAudioAppended() {
+		if (firstAudioTime == 0) {
+			firstAudioTime = System.currentTimeMillis();
+		}
+	}
+
 	/**
 	 * Inform this request that any further processing does not make sense.
 	 */
@@ -269,6 +364,31 @@ public class Request {
 	 * @see #writeOutputData for writing the output data to a stream
 	 */
 	public void process() throws Exception {
+		long start = System.nanoTime();
+		boolean ok = false;
+		try {
+			processRequest();
+			ok = true;
+		} finally {
+			StageMetrics metrics = Metrics.get().getStage(Metrics.REQUEST, defaultLocale,
+					defaultVoice != null ? defaultVoice.getName() : null);
+			metrics.record(System.nanoTime() - start, ok);
+			if (inputData != null && inputType.isTextType() && !inputType.isXMLType() && inputData.getPlainText() != null) {
+				metrics.addInputChars(inputData.getPlainText().length());
+			}
+			if (ok && firstAudioTime > 0) {
+				metrics.recordTimeToFirstAudio(getTimeToFirstAudio() * 1000000L);
+			}
+			if (ok && appendableAudioStream != null) {
+				long frames = appendableAudioStream.getFrameLength();
+				if (frames != AudioSystem.NOT_SPECIFIED) {
+					metrics.addOutputAudioBytes(frames * appendableAudioStream.getFormat().getFrameSize());
+				}
+			}
+		}
+	}
+
+	private void processRequest() throws Exception {
 		assert Mary.currentState() == Mary.STATE_RUNNING;
 		long startTime = System.currentTimeMillis();
 		if (inputData == null)
@@ -301,6 +421,7 @@ public class Request {
 			if (outputType == MaryDataType.AUDIO) {
 				assert appendableAudioStream != null;
 				appendableAudioStream.append(outputData.getAudio());
+				noteAudioAppended();
 				appendableAudioStream.doneAppending();
 			}
 			return;
@@ -323,18 +444,115 @@ public class Request {
 			outputData.setAudio(appendableAudioStream);
 			outputData.setAudioFileFormat(audioFileFormat);
 		}
+		if (lowLatency && streamAudio && outputType.equals(MaryDataType.get("AUDIO"))) {
+			// Make the first chunk as short as possible, so that audio starts early:
+			for (int i = 0; i < inputDataList.getLength(); i++) {
+				Element paragraph = (Element) inputDataList.item(i);
+				if (!MaryDomUtils.getPlainTextBelow(paragraph).trim().equals("")) {
+					if (splitOffFirstSentence(rawmaryxml, paragraph)) {
+						logger.debug("Split off first sentence as a chunk of its own");
+					}
+					break;
+				}
+			}
+		}
 		int len = inputDataList.getLength();
-		for (int i = 0; i < len && !abortRequested; i++) {
-			Element currentInputParagraph = (Element) inputDataList.item(i);
+		List<Element> paragraphs = new ArrayList<Element>(len);
+		for (int i = 0; i < len; i++) {
+			paragraphs.add((Element) inputDataList.item(i));
+		}
+		// In parallel mode, all chunks are started right away; below, they are collected in order.
+		List<Future<MaryData>> chunkResults = null;
+		if (parallelChunks && len > 1) {
+			chunkResults = submitChunks(rawmaryxml, paragraphs);
+		}
+		try {
+			processChunks(rawmaryxml, paragraphs, chunkResults);
+		} finally {
+			if (chunkResults != null) {
+				// in case of an error or an abort, don't start any chunks still waiting:
+				for (Future<MaryData> f : chunkResults) {
+					if (f != null) {
+						f.cancel(false);
+					}
+				}
+			}
+		}
+		long stopTime = System.currentTimeMillis();
+		logger.info("Request processed in " + (stopTime - startTime) + " ms.");
+		if (firstAudioTime > 0) {
+			logger.info("Time to first audio: " + getTimeToFirstAudio() + " ms.");
+		}
+		synchronized (usedModules) {
+			for (MaryModule m : usedModules) {
+				logger.info("   " + m.name() + " took " + timingInfo.get(m) + " ms");
+			}
+		}
+		if (appendableAudioStream != null)
+			appendableAudioStream.doneAppending();
+	}
+
+	/**
+	 * Start processing all paragraphs that contain text, each as a separate chunk, on the shared chunk pool.
+	 * 
+	 * @param rawmaryxml
+	 *            the document containing the paragraphs
+	 * @param paragraphs
+	 *            the paragraphs
+	 * @return for each paragraph, the future result of processing it, or null if the paragraph does not need processing
+	 */
+	private List<Future<MaryData>> submitChunks(MaryData rawmaryxml, List<Element> paragraphs) {
+		SynthesisExecutor executor = SynthesisExecutor.getExecutor();
+		List<Future<MaryData>> results = new ArrayList<Future<MaryData>>(paragraphs.size());
+		boolean first = true;
+		for (Element paragraph : paragraphs) {
+			if (!needsProcessing(paragraph)) {
+				results.add(null);
+				continue;
+			}
+			// The DOM is not thread-safe, so extract the chunks here, before handing them to other threads:
+			final MaryData oneInputData = getChunkInput(rawmaryxml, paragraph);
+			results.add(executor.submitChunk(new Callable<MaryData>() {
+				public MaryData call() throws Exception {
+					return processOrLookupOneChunk(oneInputData, outputType, outputTypeParams);
+				}
+			}, first && lowLatency));
+			first = false;
+		}
+		return results;
+	}
+
+	/**
+	 * Process the paragraphs one by one, in document order, and merge the results into the output data.
+	 * 
+	 * @param rawmaryxml
+	 *            the document containing the paragraphs
+	 * @param paragraphs
+	 *            the paragraphs
+	 * @param chunkResults
+	 *            if not null, the results of processing the paragraphs in parallel, as returned by
+	 *            {@link #submitChunks(MaryData, List)}; if null, each paragraph is processed here.
+	 * @throws Exception
+	 *             if processing one of the paragraphs fails
+	 */
+	private void processChunks(MaryData rawmaryxml, List<Element> paragraphs, List<Future<MaryData>> chunkResults)
+			throws Exception {
+		for (int i = 0; i < paragraphs.size() && !abortRequested; i++) {
+			Element currentInputParagraph = paragraphs.get(i);
 			assert currentInputParagraph.getTagName().equals(MaryXML.PARAGRAPH);
 			NodeList outputNodeList = null;
 			// Only process paragraph if there is any text below it:
-			if (MaryDomUtils.getPlainTextBelow(currentInputParagraph).trim().equals("")) {
+			if (!needsProcessing(currentInputParagraph)) {
 				outputNodeList = currentInputParagraph.getChildNodes();
 			} else { // process "real" data:
-				MaryData oneInputData = extractParagraphAsMaryData(rawmaryxml, currentInputParagraph);
-				// assert oneInputData.getDefaultVoice() != null;
-				MaryData oneOutputData = processOrLookupOneChunk(oneInputData, outputType, outputTypeParams);
+				MaryData oneOutputData;
+				if (chunkResults != null) {
+					oneOutputData = getChunkResult(chunkResults.get(i));
+				} else {
+					MaryData oneInputData = getChunkInput(rawmaryxml, currentInputParagraph);
+					// assert oneInputData.getDefaultVoice() != null;
+					oneOutputData = processOrLookupOneChunk(oneInputData, outputType, outputTypeParams);
+				}
 				// assert oneOutputData.getDefaultVoice() != null;
 				if (outputType.isMaryXML()) {
 					NodeList outParagraphList = oneOutputData.getDocument().getDocumentElement()
@@ -345,6 +563,9 @@ public class Request {
 				} else { // output is not MaryXML, e.g. text or audio
 					assert outputData != null;
 					outputData.append(oneOutputData);
+					if (outputType.equals(MaryDataType.get("AUDIO"))) {
+						noteAudioAppended();
+					}
 				}
 			}
 			if (outputType.isMaryXML()) {
@@ -353,13 +574,44 @@ public class Request {
 				MaryDomUtils.replaceElement(currentInputParagraph, outputNodeList);
 			}
 		}
-		long stopTime = System.currentTimeMillis();
-		logger.info("Request processed in " + (stopTime - startTime) + " ms.");
-		for (MaryModule m : usedModules) {
-			logger.info("   " + m.name() + " took " + timingInfo.get(m) + " ms");
+	}
+
+	/**
+	 * @param paragraph
+	 *            a paragraph of the input document
+	 * @return whether the paragraph is a chunk to process, i.e. contains text
+	 */
+	private boolean needsProcessing(Element paragraph) {
+		if (tokenisedChunks != null && tokenisedChunks.containsKey(paragraph)) {
+			return true;
+		}
+		return !MaryDomUtils.getPlainTextBelow(paragraph).trim().equals("");
+	}
+
+	/**
+	 * @param rawmaryxml
+	 *            the document containing the paragraph
+	 * @param paragraph
+	 *            a paragraph which needs processing
+	 * @return the data to process for the paragraph: the paragraph as RAWMARYXML, or the chunk already tokenised for it
+	 */
+	private MaryData getChunkInput(MaryData rawmaryxml, Element paragraph) {
+		if (tokenisedChunks != null && tokenisedChunks.containsKey(paragraph)) {
+			return tokenisedChunks.get(paragraph);
+		}
+		return extractParagraphAsMaryData(rawmaryxml, paragraph);
+	}
+
+	private MaryData getChunkResult(Future<MaryData> chunkResult) throws Exception {
+		try {
+			return chunkResult.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof Exception) {
+				throw (Exception) cause;
+			}
+			throw e;
 		}
-		if (appendableAudioStream != null)
-			appendableAudioStream.doneAppending();
 	}
 
 	/**
@@ -394,37 +646,32 @@ public class Request {
 		Locale locale = determineLocale(oneInputData);
 		assert locale != null;
 
-		MaryCache cache = null;
+		ResultCache cache = null;
 		if (MaryProperties.getBoolean("cache")) {
-			cache = MaryCache.getCache();
+			cache = ResultCaches.getCache();
 		}
 
 		if (cache == null) {
 			return processOneChunk(oneInputData, oneOutputType, outputParams, locale);
 		}
 
-		String inputtype = null;
-		String outputtype = null;
-		String localeString = null;
-		String voice = null;
-		String inputtext = null;
-
 		// try to look up the requested result in the cache:
-		inputtype = oneInputData.getType().name();
-		outputtype = oneOutputType.name();
-		ByteArrayOutputStream sw = new ByteArrayOutputStream();
-		oneInputData.writeTo(sw);
-		inputtext = new String(sw.toByteArray(), "UTF-8");
-		voice = defaultVoice != null ? defaultVoice.getName() : null;
-		localeString = locale.toString();
+		String inputtype = oneInputData.getType().name();
+		String outputtype = oneOutputType.name();
+		String voice = defaultVoice != null ? defaultVoice.getName() : null;
+		String localeString = locale.toString();
+		// serialise the input only once, no matter how many results we look up or insert:
+		CacheKey inputHash = CacheKey.hashOf(oneInputData);
+		CacheKey key = CacheKey.create(inputtype, outputtype, localeString, voice, outputParams, defaultStyle, defaultEffects,
+				inputHash);
 
 		if (oneOutputType.isTextType()) {
 			try {
-				String outputtext = cache.lookupText(inputtype, outputtype, localeString, voice, outputParams, defaultStyle,
-						defaultEffects, inputtext);
+				String outputtext = cache.lookupText(key);
+				Metrics.get().recordCacheLookup(false, outputtext != null);
 				if (outputtext != null) {
 					MaryData outData = new MaryData(oneOutputType, locale);
-					ByteArrayInputStream sr = new ByteArrayInputStream(outputtext.getBytes());
+					ByteArrayInputStream sr = new ByteArrayInputStream(outputtext.getBytes("UTF-8"));
 					outData.readFrom(sr);
 					sr.close();
 					outData.setDefaultVoice(defaultVoice);
@@ -437,12 +684,12 @@ public class Request {
 			}
 		} else if (outputtype.equals("AUDIO")) {
 			try {
-				byte[] wavFileData = cache.lookupAudio(inputtype, localeString, voice, outputParams, defaultStyle,
-						defaultEffects, inputtext);
-				if (wavFileData != null) {
-					AudioInputStream ais = AudioSystem.getAudioInputStream(new ByteArrayInputStream(wavFileData));
+				CachedAudio cachedAudio = cache.lookupAudio(key);
+				Metrics.get().recordCacheLookup(true, cachedAudio != null);
+				countAudioChunk(cachedAudio);
+				if (cachedAudio != null) {
 					MaryData outData = new MaryData(oneOutputType, locale);
-					outData.setAudio(ais);
+					outData.setAudio(cachedAudio.getAudioInputStream());
 					outData.setAudioFileFormat(audioFileFormat);
 					return outData;
 				}
@@ -461,11 +708,12 @@ public class Request {
 			MaryData audioData = processOneChunk(oneInputData, MaryDataType.AUDIO, outputParams, locale);
 			MaryData realisedAcoustparams = processOneChunk(audioData, MaryDataType.REALISED_ACOUSTPARAMS, outputParams, locale);
 			MaryData realisedDurations = processOneChunk(audioData, MaryDataType.REALISED_DURATIONS, outputParams, locale);
-			insertAudioIntoCache(cache, inputtype, localeString, voice, outputParams, inputtext, audioData);
-			insertTextIntoCache(cache, inputtype, MaryDataType.REALISED_ACOUSTPARAMS.name(), localeString, voice, outputParams,
-					inputtext, realisedAcoustparams);
-			insertTextIntoCache(cache, inputtype, MaryDataType.REALISED_DURATIONS.name(), localeString, voice, outputParams,
-					inputtext, realisedDurations);
+			insertAudioIntoCache(cache, CacheKey.create(inputtype, MaryDataType.AUDIO.name(), localeString, voice, outputParams,
+					defaultStyle, defaultEffects, inputHash), audioData);
+			insertTextIntoCache(cache, CacheKey.create(inputtype, MaryDataType.REALISED_ACOUSTPARAMS.name(), localeString, voice,
+					outputParams, defaultStyle, defaultEffects, inputHash), realisedAcoustparams);
+			insertTextIntoCache(cache, CacheKey.create(inputtype, MaryDataType.REALISED_DURATIONS.name(), localeString, voice,
+					outputParams, defaultStyle, defaultEffects, inputHash), realisedDurations);
 			if (oneOutputType.equals(MaryDataType.AUDIO))
 				return audioData;
 			else if (oneOutputType.equals(MaryDataType.REALISED_ACOUSTPARAMS))
@@ -475,7 +723,7 @@ public class Request {
 			MaryData oneOutputData = processOneChunk(oneInputData, oneOutputType, outputParams, locale);
 			// Remember the processing result in the cache
 			if (oneOutputType.isTextType()) {
-				insertTextIntoCache(cache, inputtype, outputtype, localeString, voice, outputParams, inputtext, oneOutputData);
+				insertTextIntoCache(cache, key, oneOutputData);
 			} else {
 				logger.debug("Don't know how to cache data of type '" + outputtype + "'");
 			}
@@ -483,27 +731,21 @@ public class Request {
 		}
 	}
 
-	private void insertAudioIntoCache(MaryCache cache, String inputtype, String localeString, String voice, String outputParams,
-			String inputtext, MaryData currentData) throws IOException, SQLException, UnsupportedAudioFileException {
+	private void insertAudioIntoCache(ResultCache cache, CacheKey key, MaryData currentData) throws Exception {
 		AppendableSequenceAudioInputStream as = (AppendableSequenceAudioInputStream) currentData.getAudio();
 		assert as != appendableAudioStream;
 		as.doneAppending();
-		ByteArrayOutputStream baos = new ByteArrayOutputStream(2 * (int) as.getFrameLength() + 100);
-		AudioSystem.write(as, AudioFileFormat.Type.WAVE, baos);
-		byte[] wavFileData = baos.toByteArray();
-		cache.insertAudio(inputtype, localeString, voice, outputParams, defaultStyle, defaultEffects, inputtext, wavFileData);
-		AudioInputStream ais = AudioSystem.getAudioInputStream(new ByteArrayInputStream(wavFileData));
-		currentData.setAudio(ais);
+		CachedAudio cachedAudio = CachedAudio.fromAudioInputStream(as);
+		cache.insertAudio(key, cachedAudio);
+		currentData.setAudio(cachedAudio.getAudioInputStream());
 	}
 
-	private void insertTextIntoCache(MaryCache cache, String inputtype, String outputtype, String localeString, String voice,
-			String outputParams, String inputtext, MaryData currentData) {
+	private void insertTextIntoCache(ResultCache cache, CacheKey key, MaryData currentData) {
 		try {
 			ByteArrayOutputStream sw = new ByteArrayOutputStream();
 			currentData.writeTo(sw);
 			String outputtext = new String(sw.toByteArray(), "UTF-8");
-			cache.insertText(inputtype, outputtype, localeString, voice, outputParams, defaultStyle, defaultEffects, inputtext,
-					outputtext);
+			cache.insertText(key, outputtext);
 		} catch (Exception e) {
 			logger.warn("Problem inserting text into cache", e);
 		}
@@ -529,6 +771,8 @@ public class Request {
 			logger.info("- " + m.name() + " (" + m.getClass().getName() + ")");
 		}
 		MaryData currentData = oneInputData;
+		boolean recordOutputSize = MaryProperties.getBoolean("server.metrics.moduleoutput", true);
+		StageMetrics moduleMetrics = null;
 		for (MaryModule m : neededModules) {
 			if (abortRequested)
 				break;
@@ -540,6 +784,7 @@ public class Request {
 				assert m.getState() == MaryModule.MODULE_RUNNING;
 			}
 			long moduleStartTime = System.currentTimeMillis();
+			long moduleStartNanos = System.nanoTime();
 			// Let synthesis know which audio format to produce:
 			// (this isn't nice -- instead, we could add a reference
 			// to the Request to each MaryData, and look up request-specific
@@ -562,10 +807,16 @@ public class Request {
 			}
 			logger.info("Next module: " + m.name());
 			MaryData outData = null;
+			boolean moduleOK = false;
 			try {
 				outData = m.process(currentData);
+				moduleOK = true;
 			} catch (Exception e) {
 				throw new Exception("Module " + m.name() + ": Problem processing the data.", e);
+			} finally {
+				Voice v = currentData.getDefaultVoice();
+				moduleMetrics = Metrics.get().getStage(m.name(), locale, v != null ? v.getName() : null);
+				moduleMetrics.record(System.nanoTime() - moduleStartNanos, moduleOK);
 			}
 
 			if (outData == null) {
@@ -576,13 +827,18 @@ public class Request {
 			outData.setDefaultEffects(defaultEffects);
 
 			currentData = outData;
+			if (recordOutputSize && outData.getType().isTextType()) {
+				moduleMetrics.addOutputBytes(textSize(outData));
+			}
 			long moduleStopTime = System.currentTimeMillis();
 			long delta = moduleStopTime - moduleStartTime;
-			Long soFar = timingInfo.get(m);
-			if (soFar != null)
-				timingInfo.put(m, new Long(soFar.longValue() + delta));
-			else
-				timingInfo.put(m, new Long(delta));
+			synchronized (timingInfo) {
+				Long soFar = timingInfo.get(m);
+				if (soFar != null)
+					timingInfo.put(m, new Long(soFar.longValue() + delta));
+				else
+					timingInfo.put(m, new Long(delta));
+			}
 			if (MaryRuntimeUtils.veryLowMemoryCondition()) {
 				logger.info("Very low memory condition detected (only " + MaryUtils.availableMemory()
 						+ " bytes left). Triggering garbage collection.");
@@ -595,10 +851,32 @@ public class Request {
 			assert ais != null;
 			assert ais instanceof AppendableSequenceAudioInputStream;
 			((AppendableSequenceAudioInputStream) ais).doneAppending();
+			// the audio is only complete now, so count it for the module which produced it:
+			long frames = ais.getFrameLength();
+			if (recordOutputSize && moduleMetrics != null && frames != AudioSystem.NOT_SPECIFIED) {
+				moduleMetrics.addOutputBytes(frames * ais.getFormat().getFrameSize());
+			}
 		}
 		return currentData;
 	}
 
+	/**
+	 * The size of text or XML data, as written by {@link MaryData#writeTo(OutputStream)} in UTF-8.
+	 * 
+	 * @param data
+	 *            text or XML data
+	 * @return the number of bytes, or 0 if the data cannot be written
+	 */
+	private long textSize(MaryData data) {
+		CountingOutputStream out = new CountingOutputStream(NullOutputStream.NULL_OUTPUT_STREAM);
+		try {
+			data.writeTo(out);
+		} catch (Exception e) {
+			logger.debug("Cannot determine size of " + data.getType().name() + " data", e);
+		}
+		return out.getByteCount();
+	}
+
 	/**
 	 * Split the entire rawmaryxml document into individual paragraph elements. Any text not enclosed by a paragraph in the input
 	 * will be enclosed by a new paragraph element, which is then included in the return.
@@ -700,6 +978,45 @@ public class Request {
 		 */
 	}
 
+	/**
+	 * Split a paragraph after its first sentence into two chunks. The paragraph is tokenised, and split before the second
+	 * sentence found by the tokeniser, so that abbreviations and ordinals are not mistaken for the end of a sentence. The two
+	 * tokenised chunks are kept in {@link #tokenisedChunks}: one for the paragraph, and one for an empty paragraph inserted after
+	 * it, standing for the rest.
+	 * 
+	 * @param rawmaryxml
+	 *            the document containing the paragraph
+	 * @param paragraph
+	 *            the paragraph to split
+	 * @return true if the paragraph was split, false if it has only one sentence.
+	 * @throws Exception
+	 *             if the paragraph cannot be tokenised
+	 */
+	private boolean splitOffFirstSentence(MaryData rawmaryxml, Element paragraph) throws Exception {
+		MaryData tokens = processOrLookupOneChunk(extractParagraphAsMaryData(rawmaryxml, paragraph), MaryDataType.TOKENS, null);
+		tokenisedChunks = new HashMap<Element, MaryData>();
+		Document[] parts = MaryDomUtils.splitAfterFirstSentence(tokens.getDocument());
+		if (parts == null) {
+			// no need to tokenise the paragraph again
+			tokenisedChunks.put(paragraph, tokens);
+			return false;
+		}
+		Element rest = (Element) paragraph.cloneNode(false);
+		paragraph.getParentNode().insertBefore(rest, paragraph.getNextSibling());
+		tokenisedChunks.put(paragraph, tokensChunk(tokens, parts[0]));
+		tokenisedChunks.put(rest, tokensChunk(tokens, parts[1]));
+		return true;
+	}
+
+	private static MaryData tokensChunk(MaryData tokens, Document part) {
+		MaryData md = new MaryData(tokens.getType(), tokens.getLocale());
+		md.setDefaultVoice(tokens.getDefaultVoice());
+		md.setDefaultStyle(tokens.getDefaultStyle());
+		md.setDefaultEffects(tokens.getDefaultEffects());
+		md.setDocument(part);
+		return md;
+	}
+
 	/**
 	 * Move all the boundary elements outside of paragraphs into paragraphs.
 	 * 
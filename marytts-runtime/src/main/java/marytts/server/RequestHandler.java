@@ -48,7 +48,8 @@ import org.apache.log4j.WriterAppender;
 import org.xml.sax.SAXParseException;
 
 /**
- * A lightweight process handling one Request in a thread of its own. This is to be used when running as a socket server.
+ * A lightweight process handling one Request. This is to be used when running as a socket server, which runs it on the shared
+ * {@link SynthesisExecutor}.
  * 
  * @author Marc Schr&ouml;der
  */
@@ -215,6 +216,32 @@ public class RequestHandler extends Thread {
 
 	} // run()
 
+	/**
+	 * Reject the request without processing it, e.g. because the server is busy: report the reason to the client and close both
+	 * sockets.
+	 * 
+	 * @param message
+	 *            the reason for rejecting the request
+	 */
+	public void reject(String message) {
+		logger.info("Request rejected: " + message);
+		if (clientLogger != null) {
+			clientLogger.error(message);
+			clientLogger.removeAllAppenders();
+			clientLogger = null;
+		}
+		try {
+			infoSocket.close();
+		} catch (IOException e) {
+			logger.warn("Couldn't close info socket properly.", e);
+		}
+		try {
+			dataSocket.close();
+		} catch (IOException e) {
+			logger.warn("Couldn't close data socket properly.", e);
+		}
+	}
+
 	public static class StreamingOutputWriter extends Thread {
 		private Request request;
 		private OutputStream output;
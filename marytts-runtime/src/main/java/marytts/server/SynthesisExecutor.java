@@ -0,0 +1,498 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.server;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import marytts.exceptions.ServerBusyException;
+import marytts.server.metrics.Metrics;
+import marytts.util.MaryUtils;
+
+import org.apache.log4j.Logger;
+
+/**
+ * A bounded worker pool with admission control, shared by all server front-ends (http and socket) for processing synthesis
+ * requests.
+ * <p>
+ * At most <code>server.synthesis.threads</code> requests are processed in parallel. Up to
+ * <code>server.synthesis.queue.maxdepth</code> further requests may wait for a free worker; any request beyond that is
+ * rejected immediately with a {@link ServerBusyException}. A request that has been waiting for longer than
+ * <code>server.synthesis.queue.timeout</code> milliseconds when a worker becomes free is rejected as well, instead of being
+ * processed long after the client has given up.
+ * <p>
+ * If <code>server.synthesis.virtualthreads</code> is true and the JVM supports virtual threads, each request runs in its own
+ * virtual thread; the number of requests processed in parallel is still bounded as described above.
+ */
+public class SynthesisExecutor {
+	private static SynthesisExecutor executor;
+
+	/**
+	 * Get the executor shared by all server front-ends, creating it from the server properties if necessary.
+	 * 
+	 * @return the shared executor
+	 */
+	public static synchronized SynthesisExecutor getExecutor() {
+		if (executor == null) {
+			int numThreads = MaryProperties.getInteger("server.synthesis.threads", 0);
+			if (numThreads <= 0) {
+				numThreads = Runtime.getRuntime().availableProcessors();
+			}
+			executor = new SynthesisExecutor(numThreads, MaryProperties.getInteger("server.synthesis.queue.maxdepth", 100),
+					MaryProperties.getInteger("server.synthesis.queue.timeout", 30000), MaryProperties.getInteger(
+							"server.synthesis.retryafter", 5), MaryProperties.getBoolean("server.synthesis.virtualthreads",
+							false));
+			Metrics.get().setExecutor(executor);
+		}
+		return executor;
+	}
+
+	private Logger logger;
+	private int numThreads;
+	private int maxQueueDepth;
+	private long queueTimeout;
+	private int retryAfter;
+	private boolean virtualThreads;
+	private ExecutorService workers;
+	private ExecutorService helpers;
+	private Semaphore admission;
+	// Only needed with virtual threads, where the pool itself does not limit parallelism:
+	private Semaphore running;
+	private ExecutorService chunkWorkers;
+	private ScheduledExecutorService timer;
+	private AtomicInteger numWaiting = new AtomicInteger();
+	private AtomicInteger numRunning = new AtomicInteger();
+	private AtomicInteger numRejected = new AtomicInteger();
+
+	/**
+	 * Create a new executor.
+	 * 
+	 * @param numThreads
+	 *            the number of requests to process in parallel
+	 * @param maxQueueDepth
+	 *            the number of requests that may wait for a free worker
+	 * @param queueTimeout
+	 *            the maximum time, in milliseconds, that a request may wait for a free worker, or 0 for no limit
+	 * @param retryAfter
+	 *            the number of seconds after which rejected clients should retry
+	 * @param useVirtualThreads
+	 *            whether to run requests in virtual threads if the JVM supports them
+	 */
+	public SynthesisExecutor(int numThreads, int maxQueueDepth, long queueTimeout, int retryAfter, boolean useVirtualThreads) {
+		if (numThreads <= 0)
+			throw new IllegalArgumentException("Need at least one worker thread, got " + numThreads);
+		if (maxQueueDepth < 0)
+			throw new IllegalArgumentException("Queue depth must not be negative, got " + maxQueueDepth);
+		this.logger = MaryUtils.getLogger("SynthesisExecutor");
+		this.numThreads = numThreads;
+		this.maxQueueDepth = maxQueueDepth;
+		this.queueTimeout = queueTimeout;
+		this.retryAfter = retryAfter;
+		this.admission = new Semaphore(numThreads + maxQueueDepth);
+		if (useVirtualThreads) {
+			workers = newVirtualThreadExecutor();
+			if (workers == null) {
+				logger.warn("Virtual threads requested but not supported by this JVM -- using platform threads");
+			}
+		}
+		if (workers != null) {
+			virtualThreads = true;
+			running = new Semaphore(numThreads, true);
+			helpers = workers;
+		} else {
+			workers = new ThreadPoolExecutor(numThreads, numThreads, 0L, TimeUnit.MILLISECONDS,
+					new LinkedBlockingQueue<Runnable>(), new NamedThreadFactory("synthesis"));
+			// Helper tasks are only started for admitted requests, so their number is bounded as well:
+			helpers = Executors.newCachedThreadPool(new NamedThreadFactory("synthesis-helper"));
+		}
+		logger.info("Processing up to " + numThreads + " requests in parallel, with up to " + maxQueueDepth
+				+ " requests waiting" + (virtualThreads ? " (using virtual threads)" : ""));
+	}
+
+	/**
+	 * Submit a task for processing, unless the server is saturated.
+	 * 
+	 * @param task
+	 *            the task to run
+	 * @param name
+	 *            the name of the worker thread while running the task, e.g. "RH 12"
+	 * @param onTimeout
+	 *            if not null, this is run instead of the task if the task waited longer than the queue timeout. Callers who do
+	 *            not wait for the returned future should use this to notify their client.
+	 * @param <T>
+	 *            the result type of the task
+	 * @return a future representing the result of the task
+	 * @throws ServerBusyException
+	 *             if the maximum number of waiting requests is already reached
+	 */
+	public <T> Future<T> submit(Callable<T> task, String name, Runnable onTimeout) throws ServerBusyException {
+		if (!admission.tryAcquire()) {
+			numRejected.incrementAndGet();
+			logger.warn("Rejecting request " + name + ": " + numRunning.get() + " requests running, " + numWaiting.get()
+					+ " waiting");
+			throw new ServerBusyException("Server busy: too many requests waiting", retryAfter);
+		}
+		numWaiting.incrementAndGet();
+		try {
+			return workers.submit(new AdmittedTask<T>(task, name, onTimeout));
+		} catch (RejectedExecutionException e) {
+			numWaiting.decrementAndGet();
+			admission.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * Submit a task for processing and wait for its result.
+	 * 
+	 * @param task
+	 *            the task to run
+	 * @param name
+	 *            the name of the worker thread while running the task
+	 * @param <T>
+	 *            the result type of the task
+	 * @return the result of the task
+	 * @throws ServerBusyException
+	 *             if the task was not admitted or waited longer than the queue timeout
+	 * @throws Exception
+	 *             any exception thrown by the task
+	 */
+	public <T> T invoke(Callable<T> task, String name) throws ServerBusyException, Exception {
+		Future<T> future = submit(task, name, null);
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof Exception) {
+				throw (Exception) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Run a helper task belonging to an already admitted request, such as the writer of a streaming audio response. Helper tasks
+	 * are not subject to admission control, because they must not wait behind the request they are helping.
+	 * 
+	 * @param task
+	 *            the task to run
+	 * @param name
+	 *            the name of the thread while running the task, e.g. "HTTPWriter 12"
+	 */
+	public void executeHelper(Runnable task, String name) {
+		helpers.execute(new NamedRunnable(task, name));
+	}
+
+	/**
+	 * Run a helper task belonging to an already admitted request after a delay, e.g. to check again for the output of a request
+	 * without waiting for it (see {@link #executeHelper(Runnable, String)}).
+	 * 
+	 * @param task
+	 *            the task to run
+	 * @param name
+	 *            the name of the thread while running the task
+	 * @param delayMillis
+	 *            the delay in milliseconds
+	 */
+	public void scheduleHelper(final Runnable task, final String name, long delayMillis) {
+		getTimer().schedule(new Runnable() {
+			public void run() {
+				executeHelper(task, name);
+			}
+		}, delayMillis, TimeUnit.MILLISECONDS);
+	}
+
+	private synchronized ScheduledExecutorService getTimer() {
+		if (timer == null) {
+			timer = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("synthesis-timer"));
+		}
+		return timer;
+	}
+
+	/**
+	 * Get the pool for processing the chunks of a single request in parallel (see {@link Request#setParallelChunks(boolean)}).
+	 * Its size is given by <code>synthesis.parallelchunks.threads</code> (0 = number of available processors).
+	 * <p>
+	 * This pool is separate from the request workers, so that a request waiting for its chunks never blocks the chunks of
+	 * another request.
+	 * 
+	 * @return the chunk pool
+	 */
+	public synchronized ExecutorService getChunkExecutor() {
+		if (chunkWorkers == null) {
+			int n = MaryProperties.getInteger("synthesis.parallelchunks.threads", 0);
+			if (n <= 0) {
+				n = Runtime.getRuntime().availableProcessors();
+			}
+			chunkWorkers = new ChunkPool(n);
+		}
+		return chunkWorkers;
+	}
+
+	/**
+	 * Submit one chunk of a request to the chunk pool (see {@link #getChunkExecutor()}). Urgent chunks, such as the first
+	 * sentence of a streaming request, are started before any waiting non-urgent chunks, even those of earlier requests.
+	 * 
+	 * @param chunk
+	 *            the processing of the chunk
+	 * @param urgent
+	 *            whether the chunk should jump the queue
+	 * @param <T>
+	 *            the result type of the chunk
+	 * @return a future representing the result of the chunk
+	 */
+	public <T> Future<T> submitChunk(Callable<T> chunk, boolean urgent) {
+		ChunkPool pool = (ChunkPool) getChunkExecutor();
+		PrioritizedTask<T> task = new PrioritizedTask<T>(chunk, urgent, pool.sequence.getAndIncrement());
+		pool.execute(task);
+		return task;
+	}
+
+	public int getNumThreads() {
+		return numThreads;
+	}
+
+	public int getMaxQueueDepth() {
+		return maxQueueDepth;
+	}
+
+	/**
+	 * @return the number of requests currently being processed
+	 */
+	public int getNumRunning() {
+		return numRunning.get();
+	}
+
+	/**
+	 * @return the number of admitted requests currently waiting for a worker
+	 */
+	public int getNumWaiting() {
+		return numWaiting.get();
+	}
+
+	/**
+	 * @return the number of requests rejected so far, either because the queue was full or because of the queue timeout
+	 */
+	public int getNumRejected() {
+		return numRejected.get();
+	}
+
+	/**
+	 * Stop accepting new requests; requests already admitted are still processed.
+	 */
+	public synchronized void shutdown() {
+		workers.shutdown();
+		helpers.shutdown();
+		if (chunkWorkers != null) {
+			chunkWorkers.shutdown();
+		}
+		if (timer != null) {
+			timer.shutdown();
+		}
+	}
+
+	/**
+	 * Use <code>Executors.newVirtualThreadPerTaskExecutor()</code> by reflection, so that we still run on JVMs without virtual
+	 * threads.
+	 * 
+	 * @return the executor, or null if virtual threads are not available.
+	 */
+	private static ExecutorService newVirtualThreadExecutor() {
+		try {
+			Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) m.invoke(null);
+		} catch (Exception e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Wraps an admitted task: enforces the queue timeout, limits parallelism with virtual threads, and releases the admission
+	 * permit when done.
+	 */
+	private class AdmittedTask<T> implements Callable<T> {
+		private Callable<T> task;
+		private String name;
+		private Runnable onTimeout;
+		private long submitTime;
+		private long submitNanos;
+
+		AdmittedTask(Callable<T> task, String name, Runnable onTimeout) {
+			this.task = task;
+			this.name = name;
+			this.onTimeout = onTimeout;
+			this.submitTime = System.currentTimeMillis();
+			this.submitNanos = System.nanoTime();
+		}
+
+		public T call() throws Exception {
+			boolean haveSlot = false;
+			boolean waiting = true;
+			try {
+				if (running != null) {
+					haveSlot = acquireSlot();
+				} else {
+					haveSlot = queueTimeout <= 0 || System.currentTimeMillis() - submitTime <= queueTimeout;
+				}
+				numWaiting.decrementAndGet();
+				waiting = false;
+				Metrics.get().recordQueueTime(System.nanoTime() - submitNanos);
+				if (!haveSlot) {
+					numRejected.incrementAndGet();
+					logger.warn("Request " + name + " waited more than " + queueTimeout + " ms for a worker -- rejecting");
+					if (onTimeout != null) {
+						onTimeout.run();
+					}
+					throw new ServerBusyException("Server busy: request timed out waiting for processing", retryAfter);
+				}
+				numRunning.incrementAndGet();
+				Thread current = Thread.currentThread();
+				String oldName = current.getName();
+				current.setName(name);
+				try {
+					return task.call();
+				} finally {
+					current.setName(oldName);
+					numRunning.decrementAndGet();
+				}
+			} finally {
+				// e.g. if interrupted while waiting for a slot:
+				if (waiting) {
+					numWaiting.decrementAndGet();
+				}
+				if (haveSlot && running != null) {
+					running.release();
+				}
+				admission.release();
+			}
+		}
+
+		private boolean acquireSlot() throws InterruptedException {
+			if (queueTimeout <= 0) {
+				running.acquire();
+				return true;
+			}
+			long remaining = queueTimeout - (System.currentTimeMillis() - submitTime);
+			return running.tryAcquire(Math.max(remaining, 0), TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * A fixed-size pool whose queue orders tasks by priority, and within the same priority, first come first served.
+	 */
+	private static class ChunkPool extends ThreadPoolExecutor {
+		private AtomicLong sequence = new AtomicLong();
+
+		ChunkPool(int numThreads) {
+			super(numThreads, numThreads, 0L, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<Runnable>(), new NamedThreadFactory(
+					"chunk"));
+		}
+
+		@Override
+		public void execute(Runnable command) {
+			if (!(command instanceof PrioritizedTask)) {
+				command = newTaskFor(command, null);
+			}
+			super.execute(command);
+		}
+
+		@Override
+		protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+			return new PrioritizedTask<T>(callable, false, sequence.getAndIncrement());
+		}
+
+		@Override
+		protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value) {
+			return new PrioritizedTask<T>(Executors.callable(runnable, value), false, sequence.getAndIncrement());
+		}
+	}
+
+	private static class PrioritizedTask<T> extends FutureTask<T> implements Comparable<PrioritizedTask<?>> {
+		private boolean urgent;
+		private long sequenceNumber;
+
+		PrioritizedTask(Callable<T> callable, boolean urgent, long sequenceNumber) {
+			super(callable);
+			this.urgent = urgent;
+			this.sequenceNumber = sequenceNumber;
+		}
+
+		public int compareTo(PrioritizedTask<?> other) {
+			if (urgent != other.urgent) {
+				return urgent ? -1 : 1;
+			}
+			return sequenceNumber < other.sequenceNumber ? -1 : (sequenceNumber == other.sequenceNumber ? 0 : 1);
+		}
+	}
+
+	private static class NamedRunnable implements Runnable {
+		private Runnable task;
+		private String name;
+
+		NamedRunnable(Runnable task, String name) {
+			this.task = task;
+			this.name = name;
+		}
+
+		public void run() {
+			Thread current = Thread.currentThread();
+			String oldName = current.getName();
+			current.setName(name);
+			try {
+				task.run();
+			} finally {
+				current.setName(oldName);
+			}
+		}
+	}
+
+	private static class NamedThreadFactory implements ThreadFactory {
+		private String prefix;
+		private AtomicInteger counter = new AtomicInteger();
+
+		NamedThreadFactory(String prefix) {
+			this.prefix = prefix;
+		}
+
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, prefix + "-" + counter.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		}
+	}
+}
@@ -0,0 +1,171 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.server.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+
+import marytts.util.cache.CachedAudio;
+
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.nio.ContentEncoder;
+import org.apache.http.nio.FileContentEncoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.entity.ProducingNHttpEntity;
+
+/**
+ * Sends cached audio to the client as a WAVE file without decoding or re-encoding it: a WAVE header is generated from the audio
+ * format, and the cached samples are written to the connection as they are. If the samples are stored in a file, they are
+ * transferred straight from the file channel when the connection supports it.
+ */
+public class CachedAudioNHttpEntity extends AbstractHttpEntity implements ProducingNHttpEntity {
+	private static final int WAVE_HEADER_LENGTH = 44;
+
+	private CachedAudio audio;
+	private ByteBuffer header;
+	private ByteBuffer samples;
+	private FileChannel fileChannel;
+	private long filePosition;
+	private long fileEnd;
+
+	/**
+	 * Check whether cached audio can be sent by this entity for a request asking for the given audio file format.
+	 * 
+	 * @param audio
+	 *            the cached audio
+	 * @param requested
+	 *            the audio file format requested by the client
+	 * @return true if the request is for a WAVE file in the format of the cached audio, and this format can be represented in a
+	 *         WAVE file.
+	 */
+	public static boolean canSend(CachedAudio audio, AudioFileFormat requested) {
+		if (audio == null || !AudioFileFormat.Type.WAVE.equals(requested.getType()) || !audio.matches(requested.getFormat())) {
+			return false;
+		}
+		AudioFormat format = audio.getFormat();
+		if (format.getSampleSizeInBits() == 8) {
+			return AudioFormat.Encoding.PCM_UNSIGNED.equals(format.getEncoding());
+		}
+		return AudioFormat.Encoding.PCM_SIGNED.equals(format.getEncoding()) && !format.isBigEndian();
+	}
+
+	public CachedAudioNHttpEntity(CachedAudio audio) {
+		this.audio = audio;
+		setContentType(MaryHttpServerUtils.getMimeType(AudioFileFormat.Type.WAVE));
+	}
+
+	public long getContentLength() {
+		return WAVE_HEADER_LENGTH + audio.getSize();
+	}
+
+	public boolean isRepeatable() {
+		return true;
+	}
+
+	public boolean isStreaming() {
+		return false;
+	}
+
+	public InputStream getContent() {
+		return new SequenceInputStream(new ByteArrayInputStream(waveHeader().array()), audio.getSamplesInputStream());
+	}
+
+	public void writeTo(OutputStream outstream) throws IOException {
+		outstream.write(waveHeader().array());
+		ByteBuffer buf = audio.getSamples();
+		byte[] chunk = new byte[8192];
+		while (buf.hasRemaining()) {
+			int n = Math.min(chunk.length, buf.remaining());
+			buf.get(chunk, 0, n);
+			outstream.write(chunk, 0, n);
+		}
+		outstream.flush();
+	}
+
+	public void produceContent(ContentEncoder encoder, IOControl ioctrl) throws IOException {
+		if (header == null) {
+			header = waveHeader();
+			if (audio.getFile() != null && encoder instanceof FileContentEncoder) {
+				fileChannel = new RandomAccessFile(audio.getFile(), "r").getChannel();
+				filePosition = audio.getSamplesOffset();
+				fileEnd = filePosition + audio.getSize();
+			} else {
+				samples = audio.getSamples();
+			}
+		}
+		if (header.hasRemaining()) {
+			encoder.write(header);
+			if (header.hasRemaining()) {
+				return; // try again when the channel is writable
+			}
+		}
+		if (fileChannel != null) {
+			filePosition += ((FileContentEncoder) encoder).transfer(fileChannel, filePosition, fileEnd - filePosition);
+			if (filePosition >= fileEnd) {
+				encoder.complete();
+			}
+		} else {
+			encoder.write(samples);
+			if (!samples.hasRemaining()) {
+				encoder.complete();
+			}
+		}
+	}
+
+	public void finish() throws IOException {
+		if (fileChannel != null) {
+			fileChannel.close();
+			fileChannel = null;
+		}
+		header = null;
+		samples = null;
+	}
+
+	private ByteBuffer waveHeader() {
+		AudioFormat format = audio.getFormat();
+		int dataLength = audio.getSize();
+		int bytesPerFrame = format.getChannels() * ((format.getSampleSizeInBits() + 7) / 8);
+		ByteBuffer h = ByteBuffer.allocate(WAVE_HEADER_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+		h.put(new byte[] { 'R', 'I', 'F', 'F' });
+		h.putInt(WAVE_HEADER_LENGTH - 8 + dataLength);
+		h.put(new byte[] { 'W', 'A', 'V', 'E', 'f', 'm', 't', ' ' });
+		h.putInt(16); // length of fmt chunk
+		h.putShort((short) 1); // PCM
+		h.putShort((short) format.getChannels());
+		h.putInt((int) format.getSampleRate());
+		h.putInt((int) format.getSampleRate() * bytesPerFrame);
+		h.putShort((short) bytesPerFrame);
+		h.putShort((short) format.getSampleSizeInBits());
+		h.put(new byte[] { 'd', 'a', 't', 'a' });
+		h.putInt(dataLength);
+		h.flip();
+		return h;
+	}
+}
@@ -27,6 +27,7 @@ import java.util.Map;
 import marytts.features.FeatureProcessorManager;
 import marytts.features.FeatureRegistry;
 import marytts.modules.synthesis.Voice;
+import marytts.server.metrics.Metrics;
 import marytts.util.MaryRuntimeUtils;
 import marytts.util.MaryUtils;
 import marytts.util.http.Address;
@@ -77,6 +78,8 @@ public class InfoRequestHandler extends BaseHttpRequestHandler {
 
 		if (request.equals("version"))
 			return MaryRuntimeUtils.getMaryVersion();
+		else if (request.equals("metrics"))
+			return Metrics.get().getPrometheusText();
 		else if (request.equals("datatypes"))
 			return MaryRuntimeUtils.getDataTypes();
 		else if (request.equals("locales"))
@@ -186,6 +186,7 @@ public class MaryHttpServer extends Thread {
 		registry.register("/process", new SynthesisRequestHandler());
 		InfoRequestHandler infoRH = new InfoRequestHandler();
 		registry.register("/version", infoRH);
+		registry.register("/metrics", infoRH);
 		registry.register("/datatypes", infoRH);
 		registry.register("/locales", infoRH);
 		registry.register("/voices", infoRH);
@@ -28,6 +28,7 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.Callable;
 
 import javax.sound.sampled.AudioFileFormat;
 import javax.sound.sampled.AudioFormat;
@@ -35,12 +36,15 @@ import javax.sound.sampled.AudioInputStream;
 import javax.sound.sampled.AudioSystem;
 
 import marytts.datatypes.MaryDataType;
+import marytts.exceptions.ServerBusyException;
 import marytts.modules.synthesis.Voice;
 import marytts.server.Request;
 import marytts.server.RequestHandler.StreamingOutputPiper;
 import marytts.server.RequestHandler.StreamingOutputWriter;
+import marytts.server.SynthesisExecutor;
 import marytts.util.MaryRuntimeUtils;
 import marytts.util.MaryUtils;
+import marytts.util.cache.CachedAudio;
 import marytts.util.data.audio.MaryAudioUtils;
 import marytts.util.http.Address;
 
@@ -226,31 +230,44 @@ public class SynthesisRequestHandler extends BaseHttpRequestHandler {
 			ok = false;
 		}
 		if (ok) {
+			SynthesisExecutor executor = SynthesisExecutor.getExecutor();
 			if (streamingAudio) {
-				// Start two separate threads:
-				// 1. one thread to process the request;
-				new Thread("RH " + maryRequest.getId()) {
-					public void run() {
-						Logger myLogger = MaryUtils.getLogger(this.getName());
-						try {
-							maryRequest.process();
-							myLogger.info("Streaming request processed successfully.");
-						} catch (Throwable t) {
-							myLogger.error("Processing failed.", t);
+				// Hand the request to two separate tasks:
+				// 1. one task to process the request, which may have to wait for a free synthesis worker;
+				try {
+					executor.submit(new Callable<Void>() {
+						public Void call() {
+							Logger myLogger = MaryUtils.getLogger(Thread.currentThread().getName());
+							try {
+								maryRequest.process();
+								myLogger.info("Streaming request processed successfully.");
+							} catch (Throwable t) {
+								myLogger.error("Processing failed.", t);
+							}
+							return null;
 						}
-					}
-				}.start();
+					}, "RH " + maryRequest.getId(), new Runnable() {
+						public void run() {
+							// we have already promised audio to the client, so close the stream:
+							maryRequest.abort();
+							maryRequest.getAudio().doneAppending();
+						}
+					});
+				} catch (ServerBusyException e) {
+					MaryHttpServerUtils.errorServiceUnavailable(response, e.getMessage(), e.getRetryAfterSeconds());
+					logger.info("Request rejected: " + e.getMessage());
+					return;
+				}
 
-				// 2. one thread to take the audio data as it becomes available
+				// 2. one task to take the audio data as it becomes available
 				// and write it into the ProducingNHttpEntity.
 				// The second one does not depend on the first one practically,
 				// because the AppendableSequenceAudioInputStream returned by
 				// maryRequest.getAudio() was already created in the constructor of Request.
 				AudioInputStream audio = maryRequest.getAudio();
 				assert audio != null : "Streaming audio but no audio stream -- very strange indeed! :-(";
-				AudioFileFormat.Type audioType = maryRequest.getAudioFileFormat().getType();
 				AudioStreamNHttpEntity entity = new AudioStreamNHttpEntity(maryRequest);
-				new Thread(entity, "HTTPWriter " + maryRequest.getId()).start();
+				executor.executeHelper(entity, "HTTPWriter " + maryRequest.getId());
 				// entity knows its contentType, no need to set explicitly here.
 				response.setEntity(entity);
 				response.setStatusCode(HttpStatus.SC_OK);
@@ -258,14 +275,28 @@ public class SynthesisRequestHandler extends BaseHttpRequestHandler {
 			} else { // not streaming audio
 				// Process input data to output data
 				try {
-					maryRequest.process(); // this may take some time
+					executor.invoke(new Callable<Void>() {
+						public Void call() throws Exception {
+							maryRequest.process(); // this may take some time
+							return null;
+						}
+					}, "RH " + maryRequest.getId());
+				} catch (ServerBusyException e) {
+					MaryHttpServerUtils.errorServiceUnavailable(response, e.getMessage(), e.getRetryAfterSeconds());
+					logger.info("Request rejected: " + e.getMessage());
+					return;
 				} catch (Throwable e) {
 					String message = "Processing failed.";
 					logger.error(message, e);
 					MaryHttpServerUtils.errorInternalServerError(response, message, e);
 					ok = false;
 				}
-				if (ok) {
+				CachedAudio cachedAudio = maryRequest.getCachedAudio();
+				if (ok && CachedAudioNHttpEntity.canSend(cachedAudio, maryRequest.getAudioFileFormat())) {
+					// Send the cached samples as they are, without going through the audio stream:
+					response.setEntity(new CachedAudioNHttpEntity(cachedAudio));
+					response.setStatusCode(HttpStatus.SC_OK);
+				} else if (ok) {
 					// Write output data to client
 					try {
 						ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
@@ -0,0 +1,78 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.server.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of durations, with fixed bucket bounds from 1 ms to 30 s.
+ */
+public class Histogram {
+	/** upper bounds of the buckets, in seconds; a last bucket takes all larger values */
+	static final double[] BOUNDS = { 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30 };
+	private static final long[] BOUNDS_NANOS = new long[BOUNDS.length];
+	static {
+		for (int i = 0; i < BOUNDS.length; i++) {
+			BOUNDS_NANOS[i] = (long) (BOUNDS[i] * 1e9);
+		}
+	}
+
+	private final AtomicLongArray counts = new AtomicLongArray(BOUNDS.length + 1);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong sumNanos = new AtomicLong();
+
+	/**
+	 * Record one duration.
+	 * 
+	 * @param nanos
+	 *            the duration in nanoseconds
+	 */
+	public void observe(long nanos) {
+		int i = 0;
+		while (i < BOUNDS_NANOS.length && nanos > BOUNDS_NANOS[i]) {
+			i++;
+		}
+		counts.incrementAndGet(i);
+		sumNanos.addAndGet(nanos);
+		count.incrementAndGet();
+	}
+
+	public long getCount() {
+		return count.get();
+	}
+
+	public long getSumNanos() {
+		return sumNanos.get();
+	}
+
+	/**
+	 * @return for each bound in {@link #BOUNDS}, and finally for infinity, the number of durations up to that bound
+	 */
+	long[] getCumulativeCounts() {
+		long[] result = new long[counts.length()];
+		long total = 0;
+		for (int i = 0; i < result.length; i++) {
+			total += counts.get(i);
+			result[i] = total;
+		}
+		return result;
+	}
+}
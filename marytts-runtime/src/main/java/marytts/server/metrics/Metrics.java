@@ -0,0 +1,395 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.server.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import marytts.server.MaryProperties;
+import marytts.server.SynthesisExecutor;
+import marytts.util.MaryUtils;
+
+/**
+ * Per-stage latency and throughput metrics of the server: for each module, and for whole requests, per locale and voice, the
+ * number of runs, errors and a latency histogram; the output volume of modules; the time to first audio, input and output
+ * volume of requests; result cache hits and misses; the time requests wait for a synthesis worker; per locale, pronunciation
+ * cache lookups and letter-to-sound fallbacks of the phonemiser; and, per HMM voice and stream, lookups in the pdf cache.
+ * <p>
+ * The metrics are available in the Prometheus text format (served by the http server as <code>/metrics</code>), and, if
+ * <code>server.metrics.jmx</code> is true, as MBeans in the <code>marytts</code> JMX domain.
+ */
+public class Metrics implements MetricsMBean {
+	/** name of the stage for whole requests */
+	public static final String REQUEST = "request";
+
+	private static Metrics instance;
+
+	/**
+	 * @return the metrics of this server
+	 */
+	public static synchronized Metrics get() {
+		if (instance == null) {
+			instance = new Metrics(MaryProperties.getBoolean("server.metrics.jmx", true));
+		}
+		return instance;
+	}
+
+	private final boolean useJMX;
+	private final ConcurrentMap<List<String>, StageMetrics> stages = new ConcurrentHashMap<List<String>, StageMetrics>();
+	private final ConcurrentMap<String, PhonemiserMetrics> phonemisers = new ConcurrentHashMap<String, PhonemiserMetrics>();
+	private final ConcurrentMap<List<String>, PdfCacheMetrics> pdfCaches = new ConcurrentHashMap<List<String>, PdfCacheMetrics>();
+	private final AtomicLong[] cacheHits = { new AtomicLong(), new AtomicLong() };
+	private final AtomicLong[] cacheMisses = { new AtomicLong(), new AtomicLong() };
+	private final Histogram queueTime = new Histogram();
+	private volatile SynthesisExecutor executor;
+
+	Metrics(boolean useJMX) {
+		this.useJMX = useJMX;
+		if (useJMX) {
+			register(this, "marytts:type=Metrics");
+		}
+	}
+
+	/**
+	 * Get the metrics of a stage, creating them if necessary.
+	 * 
+	 * @param stage
+	 *            the module name, or {@link #REQUEST}
+	 * @param locale
+	 *            the locale, or null
+	 * @param voice
+	 *            the voice name, or null
+	 * @return the metrics
+	 */
+	public StageMetrics getStage(String stage, Locale locale, String voice) {
+		String l = locale != null ? locale.toString() : "";
+		String v = voice != null ? voice : "";
+		List<String> key = new ArrayList<String>(3);
+		key.add(stage);
+		key.add(l);
+		key.add(v);
+		StageMetrics m = stages.get(key);
+		if (m == null) {
+			StageMetrics newMetrics = new StageMetrics(stage, l, v);
+			m = stages.putIfAbsent(key, newMetrics);
+			if (m == null) {
+				m = newMetrics;
+				if (useJMX) {
+					register(m, "marytts:type=Stage,stage=" + ObjectName.quote(stage) + ",locale=" + ObjectName.quote(l)
+							+ ",voice=" + ObjectName.quote(v));
+				}
+			}
+		}
+		return m;
+	}
+
+	/**
+	 * Get the metrics of the phonemiser for a locale, creating them if necessary.
+	 * 
+	 * @param locale
+	 *            the locale of the phonemiser
+	 * @return the metrics
+	 */
+	public PhonemiserMetrics getPhonemiser(Locale locale) {
+		String l = locale != null ? locale.toString() : "";
+		PhonemiserMetrics m = phonemisers.get(l);
+		if (m == null) {
+			PhonemiserMetrics newMetrics = new PhonemiserMetrics(l);
+			m = phonemisers.putIfAbsent(l, newMetrics);
+			if (m == null) {
+				m = newMetrics;
+				if (useJMX) {
+					register(m, "marytts:type=Phonemiser,locale=" + ObjectName.quote(l));
+				}
+			}
+		}
+		return m;
+	}
+
+	/**
+	 * Get the metrics of the pdf cache of one stream of an HMM voice, creating them if necessary.
+	 * 
+	 * @param voice
+	 *            the voice name
+	 * @param stream
+	 *            the stream, such as "mgc"
+	 * @return the metrics
+	 */
+	public PdfCacheMetrics getPdfCache(String voice, String stream) {
+		List<String> key = new ArrayList<String>(2);
+		key.add(voice);
+		key.add(stream);
+		PdfCacheMetrics m = pdfCaches.get(key);
+		if (m == null) {
+			PdfCacheMetrics newMetrics = new PdfCacheMetrics(voice, stream);
+			m = pdfCaches.putIfAbsent(key, newMetrics);
+			if (m == null) {
+				m = newMetrics;
+				if (useJMX) {
+					register(m, "marytts:type=PdfCache,voice=" + ObjectName.quote(voice) + ",stream=" + ObjectName.quote(stream));
+				}
+			}
+		}
+		return m;
+	}
+
+	/**
+	 * Record a lookup in the result cache.
+	 * 
+	 * @param audio
+	 *            true for audio, false for text results
+	 * @param hit
+	 *            whether the result was found
+	 */
+	public void recordCacheLookup(boolean audio, boolean hit) {
+		(hit ? cacheHits : cacheMisses)[audio ? 1 : 0].incrementAndGet();
+	}
+
+	/**
+	 * Record the time a request waited for a synthesis worker.
+	 * 
+	 * @param nanos
+	 *            the time waited
+	 */
+	public void recordQueueTime(long nanos) {
+		queueTime.observe(nanos);
+	}
+
+	/**
+	 * Report the state of this executor as part of the metrics.
+	 * 
+	 * @param synthesisExecutor
+	 *            the executor shared by the server front-ends
+	 */
+	public void setExecutor(SynthesisExecutor synthesisExecutor) {
+		this.executor = synthesisExecutor;
+	}
+
+	public long getCacheHits() {
+		return cacheHits[0].get() + cacheHits[1].get();
+	}
+
+	public long getCacheMisses() {
+		return cacheMisses[0].get() + cacheMisses[1].get();
+	}
+
+	public double getCacheHitRate() {
+		long hits = getCacheHits();
+		long total = hits + getCacheMisses();
+		return total == 0 ? 0 : (double) hits / total;
+	}
+
+	public long getQueuedRequests() {
+		return queueTime.getCount();
+	}
+
+	public double getMeanQueueTimeMillis() {
+		long n = queueTime.getCount();
+		return n == 0 ? 0 : queueTime.getSumNanos() / 1e6 / n;
+	}
+
+	public int getRunningRequests() {
+		SynthesisExecutor e = executor;
+		return e == null ? 0 : e.getNumRunning();
+	}
+
+	public int getWaitingRequests() {
+		SynthesisExecutor e = executor;
+		return e == null ? 0 : e.getNumWaiting();
+	}
+
+	public int getRejectedRequests() {
+		SynthesisExecutor e = executor;
+		return e == null ? 0 : e.getNumRejected();
+	}
+
+	public String getPrometheusText() {
+		StringBuilder out = new StringBuilder();
+		List<StageMetrics> all = new ArrayList<StageMetrics>(stages.values());
+		Collections.sort(all, new Comparator<StageMetrics>() {
+			public int compare(StageMetrics a, StageMetrics b) {
+				int c = a.stage.compareTo(b.stage);
+				if (c == 0)
+					c = a.locale.compareTo(b.locale);
+				if (c == 0)
+					c = a.voice.compareTo(b.voice);
+				return c;
+			}
+		});
+		List<StageMetrics> modules = new ArrayList<StageMetrics>();
+		List<StageMetrics> requests = new ArrayList<StageMetrics>();
+		for (StageMetrics m : all) {
+			(REQUEST.equals(m.stage) ? requests : modules).add(m);
+		}
+
+		header(out, "marytts_module_duration_seconds", "histogram", "Processing time per module, locale and voice.");
+		for (StageMetrics m : modules) {
+			histogram(out, "marytts_module_duration_seconds", labels(m, true), m.latency);
+		}
+		header(out, "marytts_module_errors_total", "counter", "Failed module runs.");
+		for (StageMetrics m : modules) {
+			sample(out, "marytts_module_errors_total", labels(m, true), m.getErrors());
+		}
+		header(out, "marytts_module_output_bytes_total", "counter", "Bytes of output data per module: text and XML in UTF-8, or audio.");
+		for (StageMetrics m : modules) {
+			sample(out, "marytts_module_output_bytes_total", labels(m, true), m.getOutputBytes());
+		}
+		header(out, "marytts_request_duration_seconds", "histogram", "Processing time of whole requests, per locale and voice.");
+		for (StageMetrics m : requests) {
+			histogram(out, "marytts_request_duration_seconds", labels(m, false), m.latency);
+		}
+		header(out, "marytts_request_time_to_first_audio_seconds", "histogram",
+				"Time from the creation of a request until its first audio was available, per locale and voice.");
+		for (StageMetrics m : requests) {
+			histogram(out, "marytts_request_time_to_first_audio_seconds", labels(m, false), m.timeToFirstAudio);
+		}
+		header(out, "marytts_request_errors_total", "counter", "Failed requests.");
+		for (StageMetrics m : requests) {
+			sample(out, "marytts_request_errors_total", labels(m, false), m.getErrors());
+		}
+		header(out, "marytts_request_input_chars_total", "counter", "Characters of request input.");
+		for (StageMetrics m : requests) {
+			sample(out, "marytts_request_input_chars_total", labels(m, false), m.getInputChars());
+		}
+		header(out, "marytts_request_output_audio_bytes_total", "counter", "Bytes of audio produced, where the length is known.");
+		for (StageMetrics m : requests) {
+			sample(out, "marytts_request_output_audio_bytes_total", labels(m, false), m.getOutputAudioBytes());
+		}
+		header(out, "marytts_cache_lookups_total", "counter", "Result cache lookups.");
+		String[] types = { "text", "audio" };
+		for (int i = 0; i < 2; i++) {
+			sample(out, "marytts_cache_lookups_total", "type=\"" + types[i] + "\",result=\"hit\"", cacheHits[i].get());
+			sample(out, "marytts_cache_lookups_total", "type=\"" + types[i] + "\",result=\"miss\"", cacheMisses[i].get());
+		}
+		List<PhonemiserMetrics> phons = new ArrayList<PhonemiserMetrics>(phonemisers.values());
+		Collections.sort(phons, new Comparator<PhonemiserMetrics>() {
+			public int compare(PhonemiserMetrics a, PhonemiserMetrics b) {
+				return a.locale.compareTo(b.locale);
+			}
+		});
+		header(out, "marytts_phonemiser_cache_lookups_total", "counter", "Pronunciation cache lookups of the phonemiser.");
+		for (PhonemiserMetrics m : phons) {
+			String l = "locale=\"" + escape(m.locale) + "\"";
+			sample(out, "marytts_phonemiser_cache_lookups_total", l + ",result=\"hit\"", m.getCacheHits());
+			sample(out, "marytts_phonemiser_cache_lookups_total", l + ",result=\"miss\"", m.getCacheMisses());
+		}
+		header(out, "marytts_phonemiser_cache_entries", "gauge", "Entries in the pronunciation cache of the phonemiser.");
+		for (PhonemiserMetrics m : phons) {
+			sample(out, "marytts_phonemiser_cache_entries", "locale=\"" + escape(m.locale) + "\"", m.getCacheEntries());
+		}
+		header(out, "marytts_phonemiser_lts_fallbacks_total", "counter", "Words the phonemiser had to transcribe by letter-to-sound rules.");
+		for (PhonemiserMetrics m : phons) {
+			sample(out, "marytts_phonemiser_lts_fallbacks_total", "locale=\"" + escape(m.locale) + "\"", m.getLtsFallbacks());
+		}
+		List<PdfCacheMetrics> pdfs = new ArrayList<PdfCacheMetrics>(pdfCaches.values());
+		Collections.sort(pdfs, new Comparator<PdfCacheMetrics>() {
+			public int compare(PdfCacheMetrics a, PdfCacheMetrics b) {
+				int c = a.voice.compareTo(b.voice);
+				return c != 0 ? c : a.stream.compareTo(b.stream);
+			}
+		});
+		header(out, "marytts_pdf_cache_lookups_total", "counter", "Pdf cache lookups of HMM voices, per stream.");
+		for (PdfCacheMetrics m : pdfs) {
+			String l = "voice=\"" + escape(m.voice) + "\",stream=\"" + escape(m.stream) + "\"";
+			sample(out, "marytts_pdf_cache_lookups_total", l + ",result=\"hit\"", m.getHits());
+			sample(out, "marytts_pdf_cache_lookups_total", l + ",result=\"miss\"", m.getMisses());
+		}
+		header(out, "marytts_pdf_cache_entries", "gauge", "Contexts memoised in the pdf cache of HMM voices, per stream.");
+		for (PdfCacheMetrics m : pdfs) {
+			sample(out, "marytts_pdf_cache_entries", "voice=\"" + escape(m.voice) + "\",stream=\"" + escape(m.stream) + "\"",
+					m.getEntries());
+		}
+		header(out, "marytts_queue_wait_seconds", "histogram", "Time requests waited for a synthesis worker.");
+		histogram(out, "marytts_queue_wait_seconds", "", queueTime);
+		header(out, "marytts_requests_running", "gauge", "Requests being processed.");
+		sample(out, "marytts_requests_running", "", getRunningRequests());
+		header(out, "marytts_requests_waiting", "gauge", "Requests waiting for a synthesis worker.");
+		sample(out, "marytts_requests_waiting", "", getWaitingRequests());
+		header(out, "marytts_requests_rejected_total", "counter", "Requests rejected because the server was busy.");
+		sample(out, "marytts_requests_rejected_total", "", getRejectedRequests());
+		return out.toString();
+	}
+
+	private static void header(StringBuilder out, String name, String type, String help) {
+		out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+		out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+	}
+
+	private static void sample(StringBuilder out, String name, String labels, double value) {
+		out.append(name);
+		if (labels.length() > 0) {
+			out.append('{').append(labels).append('}');
+		}
+		out.append(' ').append(format(value)).append('\n');
+	}
+
+	private static void histogram(StringBuilder out, String name, String labels, Histogram h) {
+		// read the total first, so that it is never smaller than the buckets:
+		long count = h.getCount();
+		long sum = h.getSumNanos();
+		long[] cumulative = h.getCumulativeCounts();
+		String prefix = labels.length() > 0 ? labels + "," : "";
+		for (int i = 0; i < Histogram.BOUNDS.length; i++) {
+			sample(out, name + "_bucket", prefix + "le=\"" + format(Histogram.BOUNDS[i]) + "\"", cumulative[i]);
+		}
+		sample(out, name + "_bucket", prefix + "le=\"+Inf\"", Math.max(count, cumulative[Histogram.BOUNDS.length]));
+		sample(out, name + "_sum", labels, sum / 1e9);
+		sample(out, name + "_count", labels, Math.max(count, cumulative[Histogram.BOUNDS.length]));
+	}
+
+	private static String labels(StageMetrics m, boolean withStage) {
+		StringBuilder b = new StringBuilder();
+		if (withStage) {
+			b.append("module=\"").append(escape(m.stage)).append("\",");
+		}
+		b.append("locale=\"").append(escape(m.locale)).append("\",voice=\"").append(escape(m.voice)).append('"');
+		return b.toString();
+	}
+
+	private static String escape(String value) {
+		return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+	}
+
+	private static String format(double value) {
+		if (value == Math.rint(value) && !Double.isInfinite(value) && Math.abs(value) < 1e15) {
+			return Long.toString((long) value);
+		}
+		return Double.toString(value);
+	}
+
+	private static void register(Object mbean, String name) {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			server.registerMBean(mbean, new ObjectName(name));
+		} catch (Exception e) {
+			MaryUtils.getLogger("Metrics").warn("Cannot register " + name + " with JMX", e);
+		}
+	}
+}
@@ -0,0 +1,46 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.server.metrics;
+
+/**
+ * JMX view of the server-wide metrics.
+ */
+public interface MetricsMBean {
+	public long getCacheHits();
+
+	public long getCacheMisses();
+
+	public double getCacheHitRate();
+
+	public long getQueuedRequests();
+
+	public double getMeanQueueTimeMillis();
+
+	public int getRunningRequests();
+
+	public int getWaitingRequests();
+
+	public int getRejectedRequests();
+
+	/**
+	 * @return all metrics in the Prometheus text format
+	 */
+	public String getPrometheusText();
+}
@@ -0,0 +1,67 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.server.metrics;
+
+import marytts.util.cache.MemoCache;
+
+/**
+ * The metrics of the pdf cache of one stream of an HMM voice: lookups of the leaves found for a context, and the number of
+ * memoised contexts.
+ */
+public class PdfCacheMetrics implements PdfCacheMetricsMBean {
+	final String voice;
+	final String stream;
+	private volatile MemoCache<?, ?> cache;
+
+	PdfCacheMetrics(String voice, String stream) {
+		this.voice = voice;
+		this.stream = stream;
+	}
+
+	/**
+	 * Report the hits, misses and size of this cache.
+	 * 
+	 * @param pdfCache
+	 *            the pdf cache of the stream, or null if it has none
+	 */
+	public void setCache(MemoCache<?, ?> pdfCache) {
+		this.cache = pdfCache;
+	}
+
+	public long getHits() {
+		MemoCache<?, ?> c = cache;
+		return c == null ? 0 : c.getHits();
+	}
+
+	public long getMisses() {
+		MemoCache<?, ?> c = cache;
+		return c == null ? 0 : c.getMisses();
+	}
+
+	public double getHitRate() {
+		MemoCache<?, ?> c = cache;
+		return c == null ? 0 : c.getHitRate();
+	}
+
+	public int getEntries() {
+		MemoCache<?, ?> c = cache;
+		return c == null ? 0 : c.size();
+	}
+}
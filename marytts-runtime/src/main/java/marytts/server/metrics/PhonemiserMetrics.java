@@ -0,0 +1,79 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.server.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import marytts.util.cache.MemoCache;
+
+/**
+ * The metrics of the phonemiser for one locale: lookups in its pronunciation cache, and the number of words for which it had
+ * to fall back to letter-to-sound rules.
+ */
+public class PhonemiserMetrics implements PhonemiserMetricsMBean {
+	final String locale;
+	private final AtomicLong ltsFallbacks = new AtomicLong();
+	private volatile MemoCache<?, ?> cache;
+
+	PhonemiserMetrics(String locale) {
+		this.locale = locale;
+	}
+
+	/**
+	 * Report the hits, misses and size of this cache.
+	 * 
+	 * @param pronunciationCache
+	 *            the pronunciation cache of the phonemiser, or null if it has none
+	 */
+	public void setCache(MemoCache<?, ?> pronunciationCache) {
+		this.cache = pronunciationCache;
+	}
+
+	/**
+	 * Record that a word was transcribed by letter-to-sound rules.
+	 */
+	public void recordLtsFallback() {
+		ltsFallbacks.incrementAndGet();
+	}
+
+	public long getCacheHits() {
+		MemoCache<?, ?> c = cache;
+		return c == null ? 0 : c.getHits();
+	}
+
+	public long getCacheMisses() {
+		MemoCache<?, ?> c = cache;
+		return c == null ? 0 : c.getMisses();
+	}
+
+	public double getCacheHitRate() {
+		MemoCache<?, ?> c = cache;
+		return c == null ? 0 : c.getHitRate();
+	}
+
+	public int getCacheEntries() {
+		MemoCache<?, ?> c = cache;
+		return c == null ? 0 : c.size();
+	}
+
+	public long getLtsFallbacks() {
+		return ltsFallbacks.get();
+	}
+}
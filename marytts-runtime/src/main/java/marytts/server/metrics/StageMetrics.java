@@ -0,0 +1,114 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.server.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The metrics of one processing stage, i.e. one module or whole requests, for one locale and voice.
+ */
+public class StageMetrics implements StageMetricsMBean {
+	final String stage;
+	final String locale;
+	final String voice;
+	final Histogram latency = new Histogram();
+	final Histogram timeToFirstAudio = new Histogram();
+	private final AtomicLong errors = new AtomicLong();
+	private final AtomicLong inputChars = new AtomicLong();
+	private final AtomicLong outputAudioBytes = new AtomicLong();
+	private final AtomicLong outputBytes = new AtomicLong();
+
+	StageMetrics(String stage, String locale, String voice) {
+		this.stage = stage;
+		this.locale = locale;
+		this.voice = voice;
+	}
+
+	/**
+	 * Record one run of the stage.
+	 * 
+	 * @param nanos
+	 *            the time it took
+	 * @param ok
+	 *            false if it failed
+	 */
+	public void record(long nanos, boolean ok) {
+		latency.observe(nanos);
+		if (!ok) {
+			errors.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Record the time from the creation of a request until its first audio was available.
+	 * 
+	 * @param nanos
+	 *            the time to first audio
+	 */
+	public void recordTimeToFirstAudio(long nanos) {
+		timeToFirstAudio.observe(nanos);
+	}
+
+	public void addInputChars(long n) {
+		inputChars.addAndGet(n);
+	}
+
+	public void addOutputAudioBytes(long n) {
+		outputAudioBytes.addAndGet(n);
+	}
+
+	public void addOutputBytes(long n) {
+		outputBytes.addAndGet(n);
+	}
+
+	public long getCount() {
+		return latency.getCount();
+	}
+
+	public long getErrors() {
+		return errors.get();
+	}
+
+	public double getTotalTimeMillis() {
+		return latency.getSumNanos() / 1e6;
+	}
+
+	public double getMeanTimeMillis() {
+		long n = latency.getCount();
+		return n == 0 ? 0 : latency.getSumNanos() / 1e6 / n;
+	}
+
+	public double getMeanTimeToFirstAudioMillis() {
+		long n = timeToFirstAudio.getCount();
+		return n == 0 ? 0 : timeToFirstAudio.getSumNanos() / 1e6 / n;
+	}
+
+	public long getInputChars() {
+		return inputChars.get();
+	}
+
+	public long getOutputAudioBytes() {
+		return outputAudioBytes.get();
+	}
+
+	public long getOutputBytes() {
+		return outputBytes.get();
+	}
+}
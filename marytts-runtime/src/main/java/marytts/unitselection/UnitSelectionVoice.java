@@ -186,6 +186,10 @@ public class UnitSelectionVoice extends Voice {
 				float sCostWeights = Float.parseFloat(MaryProperties.getProperty(header + ".viterbi.wSCosts", "0.33"));
 				unitSelector.load(database, targetCostWeights, sCostWeights, beamSize);
 			}
+			String beamWidth = MaryProperties.getProperty(header + ".viterbi.beamwidth");
+			if (beamWidth != null) {
+				unitSelector.setBeamWidth(Double.parseDouble(beamWidth));
+			}
 
 			// samplingRate -> bin, audioformat -> concatenator
 			// build Concatenator
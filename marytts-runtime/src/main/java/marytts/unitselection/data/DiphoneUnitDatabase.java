@@ -22,9 +22,9 @@ package marytts.unitselection.data;
 import gnu.trove.TIntHashSet;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
-import marytts.features.FeatureVector;
 import marytts.unitselection.select.DiphoneTarget;
 import marytts.unitselection.select.HalfPhoneTarget;
 import marytts.unitselection.select.Target;
@@ -78,7 +78,6 @@ public class DiphoneUnitDatabase extends UnitDatabase {
 		int iPhoneme = targetCostFunction.getFeatureDefinition().getFeatureIndex("phone");
 		byte bleftName = targetCostFunction.getFeatureDefinition().getFeatureValueAsByte(iPhoneme, leftName);
 		byte brightName = targetCostFunction.getFeatureDefinition().getFeatureValueAsByte(iPhoneme, rightName);
-		FeatureVector[] fvs = targetCostFunction.getFeatureVectors();
 
 		// HashSet<DiphoneUnit> candidateUnitSet = new HashSet<DiphoneUnit>();
 		TIntHashSet candidateUnitSet = new TIntHashSet();
@@ -91,16 +90,13 @@ public class DiphoneUnitDatabase extends UnitDatabase {
 		// Now, clist is an array of halfphone unit indexes.
 		for (int i = 0; i < clist.length; i++) {
 			Unit unit = unitReader.units[clist[i]];
-			FeatureVector fv = fvs != null ? fvs[unit.index] : targetCostFunction.getFeatureVector(unit);
-			byte bunitName = fv.byteValuedDiscreteFeatures[iPhoneme];
+			byte bunitName = targetCostFunction.getByteFeature(unit.index, iPhoneme);
 			// force correct phone symbol:
 			if (bunitName != bleftName)
 				continue;
 			int iRightNeighbour = clist[i] + 1;
 			if (iRightNeighbour < numUnits) {
-				Unit rightNeighbour = unitReader.units[iRightNeighbour];
-				FeatureVector rfv = fvs != null ? fvs[iRightNeighbour] : targetCostFunction.getFeatureVector(rightNeighbour);
-				byte brightUnitName = rfv.byteValuedDiscreteFeatures[iPhoneme];
+				byte brightUnitName = targetCostFunction.getByteFeature(iRightNeighbour, iPhoneme);
 				if (brightUnitName == brightName) {
 					// Found a diphone -- add it to candidates
 					// DiphoneUnit diphoneUnit = new DiphoneUnit(unit, rightNeighbour);
@@ -117,39 +113,44 @@ public class DiphoneUnitDatabase extends UnitDatabase {
 		// Now, clist is an array of halfphone unit indexes.
 		for (int i = 0; i < clist.length; i++) {
 			Unit unit = unitReader.units[clist[i]];
-			FeatureVector fv = fvs != null ? fvs[unit.index] : targetCostFunction.getFeatureVector(unit);
-			byte bunitName = fv.byteValuedDiscreteFeatures[iPhoneme];
+			byte bunitName = targetCostFunction.getByteFeature(unit.index, iPhoneme);
 			// force correct phone symbol:
 			if (bunitName != brightName)
 				continue;
 			int iLeftNeighbour = clist[i] - 1;
 			if (iLeftNeighbour >= 0) {
-				Unit leftNeighbour = unitReader.units[iLeftNeighbour];
-				FeatureVector lfv = fvs != null ? fvs[iLeftNeighbour] : targetCostFunction.getFeatureVector(leftNeighbour);
-				byte bleftUnitName = lfv.byteValuedDiscreteFeatures[iPhoneme];
+				byte bleftUnitName = targetCostFunction.getByteFeature(iLeftNeighbour, iPhoneme);
 				if (bleftUnitName == bleftName) {
 					// Found a diphone -- add it to candidates
 					// DiphoneUnit diphoneUnit = new DiphoneUnit(leftNeighbour, unit);
 					// candidateUnitSet.add(diphoneUnit);
-					candidateUnitSet.add(leftNeighbour.index);
+					candidateUnitSet.add(iLeftNeighbour);
 				}
 			}
 		}
 
 		// now create ArrayList of ViterbiCandidates from the candidateUnitSet, blacklisting along the way:
-		ArrayList<ViterbiCandidate> candidates = new ArrayList<ViterbiCandidate>(candidateUnitSet.size());
-		for (int leftIndex : candidateUnitSet.toArray()) {
+		int[] leftIndices = candidateUnitSet.toArray();
+		DiphoneUnit[] diphoneUnits = new DiphoneUnit[leftIndices.length];
+		int nRetained = 0;
+		for (int leftIndex : leftIndices) {
 			DiphoneUnit diphoneUnit = new DiphoneUnit(unitReader.units[leftIndex], unitReader.units[leftIndex + 1]);
-			ViterbiCandidate candidate = new ViterbiCandidate(diphoneTarget, diphoneUnit, targetCostFunction);
 			// Blacklisting:
-			if (blacklist.equals("")) { // no blacklist
-				candidates.add(candidate);
-			} else { // maybe exclude candidate
+			if (!blacklist.equals("")) { // maybe exclude candidate
 				unitBasename = getFilename(diphoneUnit);
-				if (!blacklist.contains(unitBasename)) {
-					candidates.add(candidate);
+				if (blacklist.contains(unitBasename)) {
+					continue;
 				}
 			}
+			leftIndices[nRetained] = leftIndex;
+			diphoneUnits[nRetained] = diphoneUnit;
+			nRetained++;
+		}
+		// Compute the target costs for all diphones in one go:
+		double[] targetCosts = targetCostFunction.cost(diphoneTarget, Arrays.copyOf(leftIndices, nRetained));
+		ArrayList<ViterbiCandidate> candidates = new ArrayList<ViterbiCandidate>(nRetained);
+		for (int i = 0; i < nRetained; i++) {
+			candidates.add(new ViterbiCandidate(diphoneTarget, diphoneUnits[i], targetCosts[i]));
 		}
 
 		logger.debug("Preselected " + candidateUnitSet.size() + " diphone candidates for target " + target);
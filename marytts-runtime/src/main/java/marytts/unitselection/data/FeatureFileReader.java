@@ -25,16 +25,36 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import marytts.exceptions.MaryConfigurationException;
 import marytts.features.FeatureDefinition;
 import marytts.features.FeatureVector;
 import marytts.util.data.MaryHeader;
 
+/**
+ * Provides access to the unit features in a feature file.
+ * <p>
+ * When the file is loaded from a byte buffer (the default), the feature values are read in place from the memory-mapped file:
+ * each unit occupies a fixed-size record of its byte, short and float features, so the values for a unit can be accessed with
+ * {@link #getByteFeature(int, int)}, {@link #getShortFeature(int, int)} and {@link #getContinuousFeature(int, int)} without
+ * creating any objects. {@link FeatureVector} objects are only created on demand, once per unit, for callers that need them.
+ */
 public class FeatureFileReader {
 	protected MaryHeader hdr;
 	protected FeatureDefinition featureDefinition;
-	protected FeatureVector[] featureVectors;
+	// Only set when loaded from a stream, or when all feature vectors have been requested;
+	// volatile because getFeatureVector() reads it without the lock taken by getFeatureVectors():
+	protected volatile FeatureVector[] featureVectors;
+	// The memory-mapped feature records, if loaded from a byte buffer:
+	protected ByteBuffer featureData;
+	// The feature vectors created so far from the feature records, so that each is created only once:
+	protected AtomicReferenceArray<FeatureVector> createdVectors;
+	protected int numberOfUnits;
+	protected int recordSize;
+	protected int numByteFeatures;
+	protected int shortFeaturesOffset;
+	protected int continuousFeaturesOffset;
 
 	/**
 	 * Get a feature file reader representing the given feature file.
@@ -68,6 +88,20 @@ public class FeatureFileReader {
 		load(fileName);
 	}
 
+	/**
+	 * Create a feature file reader for feature vectors held in memory rather than read from a file.
+	 * 
+	 * @param featureDefinition
+	 *            the feature definition of the feature vectors
+	 * @param featureVectors
+	 *            the feature vectors of all units, indexed by unit index
+	 */
+	public FeatureFileReader(FeatureDefinition featureDefinition, FeatureVector[] featureVectors) {
+		this.featureDefinition = featureDefinition;
+		this.featureVectors = featureVectors;
+		this.numberOfUnits = featureVectors.length;
+	}
+
 	public void load(String fileName) throws IOException, MaryConfigurationException {
 		loadFromByteBuffer(fileName);
 	}
@@ -83,7 +117,7 @@ public class FeatureFileReader {
 			throw new IOException("File [" + fileName + "] is not a valid Mary feature file.");
 		}
 		featureDefinition = new FeatureDefinition(dis);
-		int numberOfUnits = dis.readInt();
+		numberOfUnits = dis.readInt();
 		featureVectors = new FeatureVector[numberOfUnits];
 		for (int i = 0; i < numberOfUnits; i++) {
 			featureVectors[i] = featureDefinition.readFeatureVector(i, dis);
@@ -105,11 +139,101 @@ public class FeatureFileReader {
 		}
 		featureDefinition = new FeatureDefinition(bb);
 		int numberOfUnits = bb.getInt();
-		featureVectors = new FeatureVector[numberOfUnits];
-		for (int i = 0; i < numberOfUnits; i++) {
-			featureVectors[i] = featureDefinition.readFeatureVector(i, bb);
+		setFeatureData(bb, numberOfUnits);
+	}
+
+	/**
+	 * Use the feature records starting at the current position of the given buffer as the feature data of this reader. The
+	 * feature definition must already be set.
+	 * 
+	 * @param bb
+	 *            a buffer positioned at the start of the first unit's feature record
+	 * @param numberOfUnits
+	 *            the number of feature records
+	 * @throws MaryConfigurationException
+	 *             if the buffer does not contain enough data for the given number of units
+	 */
+	protected void setFeatureData(ByteBuffer bb, int numberOfUnits) throws MaryConfigurationException {
+		numByteFeatures = featureDefinition.getNumberOfByteFeatures();
+		shortFeaturesOffset = numByteFeatures;
+		continuousFeaturesOffset = shortFeaturesOffset + 2 * featureDefinition.getNumberOfShortFeatures();
+		recordSize = continuousFeaturesOffset + 4 * featureDefinition.getNumberOfContinuousFeatures();
+		if (numberOfUnits < 0 || (long) numberOfUnits * recordSize > bb.remaining()) {
+			throw new MaryConfigurationException("Feature file is too short for " + numberOfUnits + " units");
 		}
+		featureData = bb.slice();
+		featureData.limit(numberOfUnits * recordSize);
+		this.numberOfUnits = numberOfUnits;
+		this.createdVectors = new AtomicReferenceArray<FeatureVector>(numberOfUnits);
+		this.featureVectors = null;
+	}
 
+	/**
+	 * Get the value of a byte-valued feature for the given unit.
+	 * 
+	 * @param unitIndex
+	 *            the absolute index number of a unit in the database
+	 * @param featureIndex
+	 *            the index of a byte-valued feature
+	 * @return the byte value of the feature
+	 */
+	public byte getByteFeature(int unitIndex, int featureIndex) {
+		if (featureData == null) {
+			return featureVectors[unitIndex].getByteFeature(featureIndex);
+		}
+		assert featureIndex >= 0 && featureIndex < numByteFeatures;
+		return featureData.get(unitIndex * recordSize + featureIndex);
+	}
+
+	/**
+	 * Get the value of a short-valued feature for the given unit.
+	 * 
+	 * @param unitIndex
+	 *            the absolute index number of a unit in the database
+	 * @param featureIndex
+	 *            the index of a short-valued feature, i.e. counting the byte-valued features
+	 * @return the short value of the feature
+	 */
+	public short getShortFeature(int unitIndex, int featureIndex) {
+		if (featureData == null) {
+			return featureVectors[unitIndex].getShortFeature(featureIndex);
+		}
+		assert featureIndex >= numByteFeatures && featureIndex < numByteFeatures + featureDefinition.getNumberOfShortFeatures();
+		return featureData.getShort(unitIndex * recordSize + shortFeaturesOffset + 2 * (featureIndex - numByteFeatures));
+	}
+
+	/**
+	 * Get the value of a continuous feature for the given unit.
+	 * 
+	 * @param unitIndex
+	 *            the absolute index number of a unit in the database
+	 * @param featureIndex
+	 *            the index of a continuous feature, i.e. counting the byte- and short-valued features
+	 * @return the float value of the feature
+	 */
+	public float getContinuousFeature(int unitIndex, int featureIndex) {
+		if (featureData == null) {
+			return featureVectors[unitIndex].getContinuousFeature(featureIndex);
+		}
+		int nDiscrete = numByteFeatures + featureDefinition.getNumberOfShortFeatures();
+		assert featureIndex >= nDiscrete && featureIndex < featureDefinition.getNumberOfFeatures();
+		return featureData.getFloat(unitIndex * recordSize + continuousFeaturesOffset + 4 * (featureIndex - nDiscrete));
+	}
+
+	/**
+	 * Get the value of any discrete feature for the given unit as an int.
+	 * 
+	 * @param unitIndex
+	 *            the absolute index number of a unit in the database
+	 * @param featureIndex
+	 *            the index of a byte- or short-valued feature
+	 * @return the feature value
+	 */
+	public int getFeatureAsInt(int unitIndex, int featureIndex) {
+		if (featureIndex < featureDefinition.getNumberOfByteFeatures()) {
+			return getByteFeature(unitIndex, featureIndex);
+		}
+		return getShortFeature(unitIndex, featureIndex);
 	}
 
 	/**
@@ -120,7 +244,36 @@ public class FeatureFileReader {
 	 * @return the corresponding feature vector
 	 */
 	public FeatureVector getFeatureVector(int unitIndex) {
-		return featureVectors[unitIndex];
+		FeatureVector[] vectors = featureVectors;
+		if (vectors != null) {
+			return vectors[unitIndex];
+		}
+		if (unitIndex < 0 || unitIndex >= numberOfUnits) {
+			throw new IndexOutOfBoundsException(unitIndex + " is not between 0 and " + numberOfUnits);
+		}
+		FeatureVector fv = createdVectors.get(unitIndex);
+		if (fv == null) {
+			fv = readFeatureVector(unitIndex);
+			if (!createdVectors.compareAndSet(unitIndex, null, fv)) {
+				// another thread was faster; use its vector, so that all callers see the same object
+				fv = createdVectors.get(unitIndex);
+			}
+		}
+		return fv;
+	}
+
+	/**
+	 * Create a feature vector from the unit's record in the feature data.
+	 */
+	private FeatureVector readFeatureVector(int unitIndex) {
+		ByteBuffer record = featureData.duplicate();
+		record.position(unitIndex * recordSize);
+		try {
+			return featureDefinition.readFeatureVector(unitIndex, record);
+		} catch (IOException e) {
+			// cannot happen when reading from a byte buffer
+			throw new RuntimeException(e);
+		}
 	}
 
 	/**
@@ -129,15 +282,24 @@ public class FeatureFileReader {
 	 * @return a new array containing the internal feature vectors
 	 */
 	public FeatureVector[] getCopyOfFeatureVectors() {
-		return (FeatureVector[]) featureVectors.clone();
+		return (FeatureVector[]) getFeatureVectors().clone();
 	}
 
 	/**
-	 * Return the internal array of feature vectors.
+	 * Return the internal array of feature vectors. If the feature data is memory-mapped, this creates a feature vector for every
+	 * unit on the first call, which is expensive for large databases; where possible, use {@link #getFeatureVector(int)} or the
+	 * feature accessors instead.
 	 * 
 	 * @return the internal array of feature vectors.
 	 */
-	public FeatureVector[] getFeatureVectors() {
+	public synchronized FeatureVector[] getFeatureVectors() {
+		if (featureVectors == null) {
+			FeatureVector[] vectors = new FeatureVector[numberOfUnits];
+			for (int i = 0; i < numberOfUnits; i++) {
+				vectors[i] = getFeatureVector(i);
+			}
+			featureVectors = vectors;
+		}
 		return featureVectors;
 	}
 
@@ -184,11 +346,11 @@ public class FeatureFileReader {
 
 			for (int j = 0; j < featureIndexes.length; j++) {
 				if (newFeatureDefinition.isByteFeature(j)) {
-					byteFeatures[countByteFeatures++] = featureVectors[i].getByteFeature(featureIndexes[j]);
+					byteFeatures[countByteFeatures++] = getByteFeature(i, featureIndexes[j]);
 				} else if (newFeatureDefinition.isShortFeature(j)) {
-					shortFeatures[countShortFeatures++] = featureVectors[i].getShortFeature(featureIndexes[j]);
+					shortFeatures[countShortFeatures++] = getShortFeature(i, featureIndexes[j]);
 				} else if (newFeatureDefinition.isContinuousFeature(j)) {
-					continiousFeatures[countFloatFeatures++] = featureVectors[i].getContinuousFeature(featureIndexes[j]);
+					continiousFeatures[countFloatFeatures++] = getContinuousFeature(i, featureIndexes[j]);
 				}
 			}
 
@@ -206,7 +368,7 @@ public class FeatureFileReader {
 	 * @return the corresponding feature vector
 	 */
 	public FeatureVector getFeatureVector(Unit unit) {
-		return featureVectors[unit.index];
+		return getFeatureVector(unit.index);
 	}
 
 	public FeatureDefinition getFeatureDefinition() {
@@ -214,6 +376,6 @@ public class FeatureFileReader {
 	}
 
 	public int getNumberOfUnits() {
-		return (featureVectors.length);
+		return numberOfUnits;
 	}
 }
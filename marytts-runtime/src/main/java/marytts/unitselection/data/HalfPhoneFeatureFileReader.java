@@ -57,7 +57,7 @@ public class HalfPhoneFeatureFileReader extends FeatureFileReader {
 		rightWeights = new FeatureDefinition(dis);
 		assert leftWeights.featureEquals(rightWeights) : "Halfphone unit feature file contains incompatible feature definitions for left and right units -- this should not happen!";
 		featureDefinition = leftWeights; // one of them, for super class
-		int numberOfUnits = dis.readInt();
+		numberOfUnits = dis.readInt();
 		featureVectors = new FeatureVector[numberOfUnits];
 		for (int i = 0; i < numberOfUnits; i++) {
 			featureVectors[i] = featureDefinition.readFeatureVector(i, dis);
@@ -82,10 +82,7 @@ public class HalfPhoneFeatureFileReader extends FeatureFileReader {
 		assert leftWeights.featureEquals(rightWeights) : "Halfphone unit feature file contains incompatible feature definitions for left and right units -- this should not happen!";
 		featureDefinition = leftWeights; // one of them, for super class
 		int numberOfUnits = bb.getInt();
-		featureVectors = new FeatureVector[numberOfUnits];
-		for (int i = 0; i < numberOfUnits; i++) {
-			featureVectors[i] = featureDefinition.readFeatureVector(i, bb);
-		}
+		setFeatureData(bb, numberOfUnits);
 	}
 
 	public FeatureDefinition getLeftWeights() {
@@ -20,6 +20,7 @@
 package marytts.unitselection.data;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import marytts.cart.CART;
@@ -127,23 +128,28 @@ public class UnitDatabase {
 		logger.debug("For target " + target + ", selected " + clist.length + " units");
 
 		// Now, clist is an array of unit indexes.
-		List<ViterbiCandidate> candidates = new ArrayList<ViterbiCandidate>();
+		// Blacklisting without crazy performance drop:
+		// just drop units if their basenames are blacklisted
+		if (!blacklist.equals("")) {
+			int nRetained = 0;
+			int[] retained = new int[clist.length];
+			for (int i = 0; i < clist.length; i++) {
+				unitBasename = getFilename(unitReader.getUnit(clist[i]));
+				if (!blacklist.contains(unitBasename)) {
+					retained[nRetained++] = clist[i];
+				}
+			}
+			clist = Arrays.copyOf(retained, nRetained);
+		}
+
+		// Compute the target costs for all units in one go:
+		double[] targetCosts = targetCostFunction.cost(target, clist);
+		List<ViterbiCandidate> candidates = new ArrayList<ViterbiCandidate>(clist.length);
 		for (int i = 0; i < clist.length; i++) {
 			// The target is the same for all these candidates in the queue
 			// remember the actual unit:
 			Unit unit = unitReader.getUnit(clist[i]);
-			candidates.add(new ViterbiCandidate(target, unit, targetCostFunction));
-		}
-
-		// Blacklisting without crazy performance drop:
-		// just remove candidates again if their basenames are blacklisted
-		java.util.Iterator<ViterbiCandidate> candIt = candidates.iterator();
-		while (candIt.hasNext()) {
-			ViterbiCandidate candidate = candIt.next();
-			unitBasename = getFilename(candidate.getUnit());
-			if (blacklist.contains(unitBasename)) {
-				candIt.remove();
-			}
+			candidates.add(new ViterbiCandidate(target, unit, targetCosts[i]));
 		}
 
 		return candidates;
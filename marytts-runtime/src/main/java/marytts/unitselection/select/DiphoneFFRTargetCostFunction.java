@@ -93,7 +93,11 @@ public class DiphoneFFRTargetCostFunction implements TargetCostFunction {
 	}
 
 	public FeatureVector getFeatureVector(Unit unit) {
-		return tcfForHalfphones.featureVectors[unit.index];
+		return tcfForHalfphones.getFeatureVector(unit);
+	}
+
+	public byte getByteFeature(int unitIndex, int featureIndex) {
+		return tcfForHalfphones.getByteFeature(unitIndex, featureIndex);
 	}
 
 	/**
@@ -117,6 +121,31 @@ public class DiphoneFFRTargetCostFunction implements TargetCostFunction {
 		return tcfForHalfphones.cost(dt.left, du.left) + tcfForHalfphones.cost(dt.right, du.right);
 	}
 
+	/**
+	 * Compute the goodness-of-fit of a number of units for the same target.
+	 * 
+	 * @param target
+	 *            a diphone or half-phone target
+	 * @param unitIndices
+	 *            for a diphone target, the indices of the left halves of the diphone units; for a half-phone target, the indices of
+	 *            the half-phone units.
+	 * @return the costs for each of the units, in the same order.
+	 */
+	public double[] cost(Target target, int[] unitIndices) {
+		if (target instanceof HalfPhoneTarget)
+			return tcfForHalfphones.cost(target, unitIndices);
+		if (!(target instanceof DiphoneTarget))
+			throw new IllegalArgumentException("This target cost function can only be called for diphone and half-phone targets!");
+		DiphoneTarget dt = (DiphoneTarget) target;
+		double[] costs = tcfForHalfphones.cost(dt.left, unitIndices, 0);
+		// the right half of each diphone unit is the unit following its left half:
+		double[] rightCosts = tcfForHalfphones.cost(dt.right, unitIndices, 1);
+		for (int k = 0; k < costs.length; k++) {
+			costs[k] += rightCosts[k];
+		}
+		return costs;
+	}
+
 	/**
 	 * Compute the features for a given target, and store them in the target.
 	 * 
@@ -23,6 +23,7 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.util.Arrays;
 
 import marytts.exceptions.MaryConfigurationException;
 import marytts.features.FeatureDefinition;
@@ -40,7 +41,7 @@ import marytts.util.MaryUtils;
 public class FFRTargetCostFunction implements TargetCostFunction {
 	protected WeightFunc[] weightFunction;
 	protected TargetFeatureComputer targetFeatureComputer;
-	protected FeatureVector[] featureVectors;
+	protected FeatureFileReader unitFeatures;
 	protected FeatureDefinition featureDefinition;
 	protected boolean[] weightsNonZero;
 
@@ -68,13 +69,13 @@ public class FFRTargetCostFunction implements TargetCostFunction {
 		nCostComputations++; // for debug
 		FeatureVector targetFeatures = target.getFeatureVector();
 		assert targetFeatures != null : "Target " + target + " does not have pre-computed feature vector";
-		FeatureVector unitFeatures = featureVectors[unit.index];
+		int u = unit.index;
 		int nBytes = targetFeatures.byteValuedDiscreteFeatures.length;
 		int nShorts = targetFeatures.shortValuedDiscreteFeatures.length;
 		int nFloats = targetFeatures.continuousFeatures.length;
-		assert nBytes == unitFeatures.byteValuedDiscreteFeatures.length;
-		assert nShorts == unitFeatures.shortValuedDiscreteFeatures.length;
-		assert nFloats == unitFeatures.continuousFeatures.length;
+		assert nBytes == featureDefinition.getNumberOfByteFeatures();
+		assert nShorts == featureDefinition.getNumberOfShortFeatures();
+		assert nFloats == featureDefinition.getNumberOfContinuousFeatures();
 
 		float[] weightVector = weights.getFeatureWeights();
 		// Now the actual computation
@@ -86,12 +87,12 @@ public class FFRTargetCostFunction implements TargetCostFunction {
 					float weight = weightVector[i];
 					if (featureDefinition.hasSimilarityMatrix(i)) {
 						byte targetFeatValueIndex = targetFeatures.byteValuedDiscreteFeatures[i];
-						byte unitFeatValueIndex = unitFeatures.byteValuedDiscreteFeatures[i];
+						byte unitFeatValueIndex = unitFeatures.getByteFeature(u, i);
 						float similarity = featureDefinition.getSimilarity(i, unitFeatValueIndex, targetFeatValueIndex);
 						cost += similarity * weight;
 						if (debugShowCostGraph)
 							cumulWeightedCosts[i] += similarity * weight;
-					} else if (targetFeatures.byteValuedDiscreteFeatures[i] != unitFeatures.byteValuedDiscreteFeatures[i]) {
+					} else if (targetFeatures.byteValuedDiscreteFeatures[i] != unitFeatures.getByteFeature(u, i)) {
 						cost += weight;
 						if (debugShowCostGraph)
 							cumulWeightedCosts[i] += weight;
@@ -105,8 +106,7 @@ public class FFRTargetCostFunction implements TargetCostFunction {
 				if (weightsNonZero[i]) {
 					float weight = weightVector[i];
 					// if (targetFeatures.getShortFeature(i) != unitFeatures.getShortFeature(i)) {
-					if (targetFeatures.shortValuedDiscreteFeatures[i - nBytes] != unitFeatures.shortValuedDiscreteFeatures[i
-							- nBytes]) {
+					if (targetFeatures.shortValuedDiscreteFeatures[i - nBytes] != unitFeatures.getShortFeature(u, i)) {
 						cost += weight;
 						if (debugShowCostGraph)
 							cumulWeightedCosts[i] += weight;
@@ -123,7 +123,7 @@ public class FFRTargetCostFunction implements TargetCostFunction {
 					// float a = targetFeatures.getContinuousFeature(i);
 					float a = targetFeatures.continuousFeatures[i - nDiscrete];
 					// float b = unitFeatures.getContinuousFeature(i);
-					float b = unitFeatures.continuousFeatures[i - nDiscrete];
+					float b = unitFeatures.getContinuousFeature(u, i);
 					// if (!Float.isNaN(a) && !Float.isNaN(b)) {
 					// Implementation of isNaN() is: (v != v).
 					if (!(a != a) && !(b != b)) {
@@ -139,6 +139,169 @@ public class FFRTargetCostFunction implements TargetCostFunction {
 		return cost;
 	}
 
+	/**
+	 * Compute the goodness-of-fit of a number of units for the same target. The result is identical to calling
+	 * {@link #cost(Target, Unit)} for each of the units, but the feature weights and the costs of the target's discrete feature
+	 * values are resolved only once for all units.
+	 * 
+	 * @param target
+	 *            target
+	 * @param unitIndices
+	 *            the indices of the units in the database
+	 * @return the costs for each of the units, in the same order.
+	 */
+	public double[] cost(Target target, int[] unitIndices) {
+		return cost(target, unitIndices, 0);
+	}
+
+	/**
+	 * Compute the goodness-of-fit of a number of units for the same target.
+	 * 
+	 * @param target
+	 *            target
+	 * @param unitIndices
+	 *            the indices of the units in the database
+	 * @param indexOffset
+	 *            a number to add to each of the unit indices
+	 * @return the costs for each of the units, in the same order.
+	 */
+	protected double[] cost(Target target, int[] unitIndices, int indexOffset) {
+		double[] costs = new double[unitIndices.length];
+		cost(target, unitIndices, indexOffset, featureDefinition, weightFunction, costs);
+		return costs;
+	}
+
+	/**
+	 * Compute the costs of a number of units for the same target, using the given weights.
+	 * 
+	 * @param target
+	 *            target
+	 * @param unitIndices
+	 *            the indices of the units in the database
+	 * @param indexOffset
+	 *            a number to add to each of the unit indices, e.g. 1 to compute costs for the right halves of diphone units given
+	 *            by their left halves
+	 * @param weights
+	 *            weights
+	 * @param weightFunctions
+	 *            weight functions for the continuous features
+	 * @param costs
+	 *            the array in which to store the costs, in the same order as the unit indices.
+	 */
+	protected void cost(Target target, int[] unitIndices, int indexOffset, FeatureDefinition weights,
+			WeightFunc[] weightFunctions, double[] costs) {
+		int nUnits = unitIndices.length;
+		nCostComputations += nUnits; // for debug
+		FeatureVector targetFeatures = target.getFeatureVector();
+		assert targetFeatures != null : "Target " + target + " does not have pre-computed feature vector";
+		byte[] targetBytes = targetFeatures.byteValuedDiscreteFeatures;
+		short[] targetShorts = targetFeatures.shortValuedDiscreteFeatures;
+		float[] targetFloats = targetFeatures.continuousFeatures;
+		int nBytes = targetBytes.length;
+		int nShorts = targetShorts.length;
+		int nFloats = targetFloats.length;
+		int nDiscrete = nBytes + nShorts;
+		float[] weightVector = weights.getFeatureWeights();
+
+		// Resolve the features with non-zero weights once for all units.
+		// For byte-valued features with a similarity matrix, tabulate the weighted similarity of each unit value to the target value:
+		int[] byteIndex = new int[nBytes];
+		float[] byteWeight = new float[nBytes];
+		float[][] byteSimilarity = new float[nBytes][];
+		int nb = 0;
+		for (int i = 0; i < nBytes; i++) {
+			if (weightsNonZero[i]) {
+				byteIndex[nb] = i;
+				byteWeight[nb] = weightVector[i];
+				if (featureDefinition.hasSimilarityMatrix(i)) {
+					byteSimilarity[nb] = similarityTable(i, targetBytes[i], weightVector[i]);
+				}
+				nb++;
+			}
+		}
+		int[] shortIndex = new int[nShorts];
+		int ns = 0;
+		for (int i = nBytes; i < nDiscrete; i++) {
+			if (weightsNonZero[i]) {
+				shortIndex[ns++] = i;
+			}
+		}
+		int[] floatIndex = new int[nFloats];
+		int nf = 0;
+		for (int i = nDiscrete; i < nDiscrete + nFloats; i++) {
+			if (weightsNonZero[i]) {
+				floatIndex[nf++] = i;
+			}
+		}
+
+		for (int k = 0; k < nUnits; k++) {
+			int u = unitIndices[k] + indexOffset;
+			double cost = 0;
+			// byte-valued features:
+			for (int f = 0; f < nb; f++) {
+				int i = byteIndex[f];
+				byte unitValue = unitFeatures.getByteFeature(u, i);
+				float[] similarity = byteSimilarity[f];
+				float featureCost;
+				if (similarity != null) {
+					featureCost = unitValue >= 0 && unitValue < similarity.length ? similarity[unitValue] : featureDefinition
+							.getSimilarity(i, unitValue, targetBytes[i]) * byteWeight[f];
+				} else if (unitValue != targetBytes[i]) {
+					featureCost = byteWeight[f];
+				} else {
+					continue;
+				}
+				cost += featureCost;
+				if (debugShowCostGraph)
+					cumulWeightedCosts[i] += featureCost;
+			}
+			// short-valued features:
+			for (int f = 0; f < ns; f++) {
+				int i = shortIndex[f];
+				if (targetShorts[i - nBytes] != unitFeatures.getShortFeature(u, i)) {
+					float weight = weightVector[i];
+					cost += weight;
+					if (debugShowCostGraph)
+						cumulWeightedCosts[i] += weight;
+				}
+			}
+			// continuous features:
+			for (int f = 0; f < nf; f++) {
+				int i = floatIndex[f];
+				float a = targetFloats[i - nDiscrete];
+				float b = unitFeatures.getContinuousFeature(u, i);
+				if (!(a != a) && !(b != b)) {
+					double myCost = weightFunctions[i - nDiscrete].cost(a, b);
+					cost += weightVector[i] * myCost;
+					if (debugShowCostGraph) {
+						cumulWeightedCosts[i] += weightVector[i] * myCost;
+					}
+				} // and if it is NaN, simply compute no cost
+			}
+			costs[k] = cost;
+		}
+	}
+
+	/**
+	 * For a byte-valued feature with a similarity matrix, tabulate the weighted similarity of all unit values to the given target
+	 * value.
+	 * 
+	 * @return the weighted similarities, indexed by unit value, for as many values as the similarity matrix covers.
+	 */
+	private float[] similarityTable(int featureIndex, byte targetValue, float weight) {
+		int nValues = featureDefinition.getNumberOfValues(featureIndex);
+		float[] table = new float[nValues];
+		int v = 0;
+		try {
+			for (; v < nValues && v <= Byte.MAX_VALUE; v++) {
+				table[v] = featureDefinition.getSimilarity(featureIndex, (byte) v, targetValue) * weight;
+			}
+		} catch (ArrayIndexOutOfBoundsException e) {
+			// the matrix does not cover all values; the remaining ones are looked up directly, as in cost()
+		}
+		return v == nValues ? table : Arrays.copyOf(table, v);
+	}
+
 	/**
 	 * Compute the goodness-of-fit between given unit and given target for a given feature
 	 * 
@@ -164,13 +327,13 @@ public class FFRTargetCostFunction implements TargetCostFunction {
 
 		FeatureVector targetFeatures = target.getFeatureVector();
 		assert targetFeatures != null : "Target " + target + " does not have pre-computed feature vector";
-		FeatureVector unitFeatures = featureVectors[unit.index];
+		int u = unit.index;
 		int nBytes = targetFeatures.byteValuedDiscreteFeatures.length;
 		int nShorts = targetFeatures.shortValuedDiscreteFeatures.length;
 		int nFloats = targetFeatures.continuousFeatures.length;
-		assert nBytes == unitFeatures.byteValuedDiscreteFeatures.length;
-		assert nShorts == unitFeatures.shortValuedDiscreteFeatures.length;
-		assert nFloats == unitFeatures.continuousFeatures.length;
+		assert nBytes == featureDefinition.getNumberOfByteFeatures();
+		assert nShorts == featureDefinition.getNumberOfShortFeatures();
+		assert nFloats == featureDefinition.getNumberOfContinuousFeatures();
 
 		int featureIndex = this.featureDefinition.getFeatureIndex(featureName);
 		float[] weightVector = weights.getFeatureWeights();
@@ -181,12 +344,12 @@ public class FFRTargetCostFunction implements TargetCostFunction {
 				float weight = weightVector[featureIndex];
 				if (featureDefinition.hasSimilarityMatrix(featureIndex)) {
 					byte targetFeatValueIndex = targetFeatures.byteValuedDiscreteFeatures[featureIndex];
-					byte unitFeatValueIndex = unitFeatures.byteValuedDiscreteFeatures[featureIndex];
+					byte unitFeatValueIndex = unitFeatures.getByteFeature(u, featureIndex);
 					float similarity = featureDefinition.getSimilarity(featureIndex, unitFeatValueIndex, targetFeatValueIndex);
 					cost = similarity * weight;
 					if (debugShowCostGraph)
 						cumulWeightedCosts[featureIndex] += similarity * weight;
-				} else if (targetFeatures.byteValuedDiscreteFeatures[featureIndex] != unitFeatures.byteValuedDiscreteFeatures[featureIndex]) {
+				} else if (targetFeatures.byteValuedDiscreteFeatures[featureIndex] != unitFeatures.getByteFeature(u, featureIndex)) {
 					cost = weight;
 					if (debugShowCostGraph)
 						cumulWeightedCosts[featureIndex] += weight;
@@ -196,8 +359,8 @@ public class FFRTargetCostFunction implements TargetCostFunction {
 			if (weightsNonZero[featureIndex]) {
 				float weight = weightVector[featureIndex];
 				// if (targetFeatures.getShortFeature(i) != unitFeatures.getShortFeature(i)) {
-				if (targetFeatures.shortValuedDiscreteFeatures[featureIndex - nBytes] != unitFeatures.shortValuedDiscreteFeatures[featureIndex
-						- nBytes]) {
+				if (targetFeatures.shortValuedDiscreteFeatures[featureIndex - nBytes] != unitFeatures.getShortFeature(u,
+						featureIndex)) {
 					cost = weight;
 					if (debugShowCostGraph)
 						cumulWeightedCosts[featureIndex] += weight;
@@ -210,7 +373,7 @@ public class FFRTargetCostFunction implements TargetCostFunction {
 				// float a = targetFeatures.getContinuousFeature(i);
 				float a = targetFeatures.continuousFeatures[featureIndex - nDiscrete];
 				// float b = unitFeatures.getContinuousFeature(i);
-				float b = unitFeatures.continuousFeatures[featureIndex - nDiscrete];
+				float b = unitFeatures.getContinuousFeature(u, featureIndex);
 				// if (!Float.isNaN(a) && !Float.isNaN(b)) {
 				// Implementation of isNaN() is: (v != v).
 				if (!(a != a) && !(b != b)) {
@@ -251,7 +414,7 @@ public class FFRTargetCostFunction implements TargetCostFunction {
 	@Override
 	public void load(FeatureFileReader ffr, InputStream weightsStream, FeatureProcessorManager featProc) throws IOException {
 		this.featureDefinition = ffr.getFeatureDefinition();
-		this.featureVectors = ffr.getFeatureVectors();
+		this.unitFeatures = ffr;
 		if (weightsStream != null) {
 			MaryUtils.getLogger("TargetCostFeatures").debug("Overwriting target cost weights from file");
 			// overwrite weights from file
@@ -315,7 +478,20 @@ public class FFRTargetCostFunction implements TargetCostFunction {
 	 * @return the FeatureVector for target cost computation associated to this unit
 	 */
 	public FeatureVector getFeatureVector(Unit unit) {
-		return featureVectors[unit.index];
+		return unitFeatures.getFeatureVector(unit.index);
+	}
+
+	/**
+	 * Look up the value of a byte-valued feature for a given unit.
+	 * 
+	 * @param unitIndex
+	 *            the index of a unit in the database
+	 * @param featureIndex
+	 *            the index of a byte-valued feature
+	 * @return the feature value
+	 */
+	public byte getByteFeature(int unitIndex, int featureIndex) {
+		return unitFeatures.getByteFeature(unitIndex, featureIndex);
 	}
 
 	/**
@@ -332,13 +508,13 @@ public class FFRTargetCostFunction implements TargetCostFunction {
 	public String getFeature(Unit unit, String featureName) {
 		int featureIndex = featureDefinition.getFeatureIndex(featureName);
 		if (featureDefinition.isByteFeature(featureIndex)) {
-			byte value = featureVectors[unit.index].getByteFeature(featureIndex);
+			byte value = unitFeatures.getByteFeature(unit.index, featureIndex);
 			return featureDefinition.getFeatureValueAsString(featureIndex, value);
 		} else if (featureDefinition.isShortFeature(featureIndex)) {
-			short value = featureVectors[unit.index].getShortFeature(featureIndex);
+			short value = unitFeatures.getShortFeature(unit.index, featureIndex);
 			return featureDefinition.getFeatureValueAsString(featureIndex, value);
 		} else { // continuous -- return float as string
-			float value = featureVectors[unit.index].getContinuousFeature(featureIndex);
+			float value = unitFeatures.getContinuousFeature(unit.index, featureIndex);
 			return String.valueOf(value);
 		}
 	}
@@ -384,7 +560,7 @@ public class FFRTargetCostFunction implements TargetCostFunction {
 	}
 
 	public FeatureVector[] getFeatureVectors() {
-		return featureVectors;
+		return unitFeatures.getFeatureVectors();
 	}
 
 }
@@ -67,6 +67,19 @@ public class HalfPhoneFFRTargetCostFunction extends FFRTargetCostFunction {
 		return cost(target, unit, weights, weightFunctions);
 	}
 
+	@Override
+	protected double[] cost(Target target, int[] unitIndices, int indexOffset) {
+		if (!(target instanceof HalfPhoneTarget))
+			throw new IllegalArgumentException("This target cost function can only be called for half-phone targets!");
+		HalfPhoneTarget hpTarget = (HalfPhoneTarget) target;
+		boolean isLeftHalf = hpTarget.isLeftHalf();
+		FeatureDefinition weights = isLeftHalf ? leftWeights : rightWeights;
+		WeightFunc[] weightFunctions = isLeftHalf ? leftWeightFunction : rightWeightFunction;
+		double[] costs = new double[unitIndices.length];
+		cost(target, unitIndices, indexOffset, weights, weightFunctions, costs);
+		return costs;
+	}
+
 	/**
 	 * Initialise the data needed to do a target cost computation.
 	 * 
@@ -98,7 +111,7 @@ public class HalfPhoneFFRTargetCostFunction extends FFRTargetCostFunction {
 		this.leftWeights = ffr.getLeftWeights();
 		this.featureDefinition = this.leftWeights;
 		this.rightWeights = ffr.getRightWeights();
-		this.featureVectors = ffr.getFeatureVectors();
+		this.unitFeatures = ffr;
 
 		if (weightsFile != null) {
 			MaryUtils.getLogger("TargetCostFeatures").debug("Overwriting target cost weights from file " + weightsFile);
@@ -182,7 +195,7 @@ public class HalfPhoneFFRTargetCostFunction extends FFRTargetCostFunction {
 	 * @return the FeatureVector for target cost computation associated to this unit
 	 */
 	public FeatureVector getUnitFeatures(Unit unit) {
-		return featureVectors[unit.index];
+		return unitFeatures.getFeatureVector(unit.index);
 	}
 
 	/**
@@ -199,13 +212,13 @@ public class HalfPhoneFFRTargetCostFunction extends FFRTargetCostFunction {
 	public String getFeature(Unit unit, String featureName) {
 		int featureIndex = featureDefinition.getFeatureIndex(featureName);
 		if (featureDefinition.isByteFeature(featureIndex)) {
-			byte value = featureVectors[unit.index].getByteFeature(featureIndex);
+			byte value = unitFeatures.getByteFeature(unit.index, featureIndex);
 			return featureDefinition.getFeatureValueAsString(featureIndex, value);
 		} else if (featureDefinition.isShortFeature(featureIndex)) {
-			short value = featureVectors[unit.index].getShortFeature(featureIndex);
+			short value = unitFeatures.getShortFeature(unit.index, featureIndex);
 			return featureDefinition.getFeatureValueAsString(featureIndex, value);
 		} else { // continuous -- return float as string
-			float value = featureVectors[unit.index].getContinuousFeature(featureIndex);
+			float value = unitFeatures.getContinuousFeature(unit.index, featureIndex);
 			return String.valueOf(value);
 		}
 	}
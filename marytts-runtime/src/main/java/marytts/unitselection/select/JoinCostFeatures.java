@@ -34,6 +34,7 @@ import java.io.InputStreamReader;
 import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
 import java.nio.channels.FileChannel;
+import java.util.Arrays;
 import java.util.Vector;
 
 import marytts.exceptions.MaryConfigurationException;
@@ -72,8 +73,12 @@ public class JoinCostFeatures implements JoinCostFunction {
 	private WeightFunc[] weightFunction = null;
 	private boolean[] isLinear = null; // wether the i'th weight function is a linear function
 
-	private float[][] leftJCF = null;
-	private float[][] rightJCF = null;
+	// The join cost features of all units, one row of numberOfFeatures values per unit, stored contiguously
+	// so that the rows of successive candidates can be scanned without chasing a pointer per unit:
+	private int numberOfUnits = 0;
+	private int numberOfFeatures = 0;
+	private float[] leftJCF = null;
+	private float[] rightJCF = null;
 
 	/****************/
 	/* CONSTRUCTORS */
@@ -177,7 +182,7 @@ public class JoinCostFeatures implements JoinCostFunction {
 		}
 		try {
 			/* Read the feature weights and feature processors */
-			int numberOfFeatures = bb.getInt();
+			numberOfFeatures = bb.getInt();
 			featureWeight = new float[numberOfFeatures];
 			weightFunction = new WeightFunc[numberOfFeatures];
 			isLinear = new boolean[numberOfFeatures];
@@ -209,16 +214,14 @@ public class JoinCostFeatures implements JoinCostFunction {
 			}
 
 			/* Read the left and right Join Cost Features */
-			int numberOfUnits = bb.getInt();
+			numberOfUnits = bb.getInt();
 			FloatBuffer fb = bb.asFloatBuffer();
-			leftJCF = new float[numberOfUnits][];
-			rightJCF = new float[numberOfUnits][];
+			leftJCF = new float[numberOfUnits * numberOfFeatures];
+			rightJCF = new float[numberOfUnits * numberOfFeatures];
 			for (int i = 0; i < numberOfUnits; i++) {
 				// System.out.println("Reading join features for unit "+i+" out of "+numberOfUnits);
-				leftJCF[i] = new float[numberOfFeatures];
-				fb.get(leftJCF[i]);
-				rightJCF[i] = new float[numberOfFeatures];
-				fb.get(rightJCF[i]);
+				fb.get(leftJCF, i * numberOfFeatures, numberOfFeatures);
+				fb.get(rightJCF, i * numberOfFeatures, numberOfFeatures);
 			}
 		} catch (EOFException e) {
 			IOException ioe = new IOException("The currently read Join Cost File has prematurely reached EOF.");
@@ -269,7 +272,7 @@ public class JoinCostFeatures implements JoinCostFunction {
 		}
 		try {
 			/* Read the feature weights and feature processors */
-			int numberOfFeatures = raf.readInt();
+			numberOfFeatures = raf.readInt();
 			featureWeight = new float[numberOfFeatures];
 			weightFunction = new WeightFunc[numberOfFeatures];
 			isLinear = new boolean[numberOfFeatures];
@@ -301,18 +304,17 @@ public class JoinCostFeatures implements JoinCostFunction {
 			}
 
 			/* Read the left and right Join Cost Features */
-			int numberOfUnits = raf.readInt();
-			leftJCF = new float[numberOfUnits][];
-			rightJCF = new float[numberOfUnits][];
+			numberOfUnits = raf.readInt();
+			leftJCF = new float[numberOfUnits * numberOfFeatures];
+			rightJCF = new float[numberOfUnits * numberOfFeatures];
 			for (int i = 0; i < numberOfUnits; i++) {
 				// System.out.println("Reading join features for unit "+i+" out of "+numberOfUnits);
-				leftJCF[i] = new float[numberOfFeatures];
+				int offset = i * numberOfFeatures;
 				for (int j = 0; j < numberOfFeatures; j++) {
-					leftJCF[i][j] = raf.readFloat();
+					leftJCF[offset + j] = raf.readFloat();
 				}
-				rightJCF[i] = new float[numberOfFeatures];
 				for (int j = 0; j < numberOfFeatures; j++) {
-					rightJCF[i][j] = raf.readFloat();
+					rightJCF[offset + j] = raf.readFloat();
 				}
 			}
 		} catch (EOFException e) {
@@ -413,10 +415,10 @@ public class JoinCostFeatures implements JoinCostFunction {
 	/**
 	 * Get the number of units.
 	 * 
-	 * @return (leftJCF.length)
+	 * @return the number of units for which join cost features are stored
 	 */
 	public int getNumberOfUnits() {
-		return (leftJCF.length);
+		return numberOfUnits;
 	}
 
 	/**
@@ -425,17 +427,17 @@ public class JoinCostFeatures implements JoinCostFunction {
 	 * @param u
 	 *            The index of the considered unit.
 	 * 
-	 * @return The array of left join cost features for the given unit.
+	 * @return a copy of the left join cost features for the given unit.
 	 */
 	public float[] getLeftJCF(int u) {
 		if (u < 0) {
 			throw new RuntimeException("The unit index [" + u + "] is out of range: a unit index can't be negative.");
 		}
-		if (u > getNumberOfUnits()) {
+		if (u >= getNumberOfUnits()) {
 			throw new RuntimeException("The unit index [" + u + "] is out of range: this file contains [" + getNumberOfUnits()
 					+ "] units.");
 		}
-		return (leftJCF[u]);
+		return Arrays.copyOfRange(leftJCF, u * numberOfFeatures, (u + 1) * numberOfFeatures);
 	}
 
 	/**
@@ -444,17 +446,17 @@ public class JoinCostFeatures implements JoinCostFunction {
 	 * @param u
 	 *            The index of the considered unit.
 	 * 
-	 * @return The array of right join cost features for the given unit.
+	 * @return a copy of the right join cost features for the given unit.
 	 */
 	public float[] getRightJCF(int u) {
 		if (u < 0) {
 			throw new RuntimeException("The unit index [" + u + "] is out of range: a unit index can't be negative.");
 		}
-		if (u > getNumberOfUnits()) {
+		if (u >= getNumberOfUnits()) {
 			throw new RuntimeException("The unit index [" + u + "] is out of range: this file contains [" + getNumberOfUnits()
 					+ "] units.");
 		}
-		return (rightJCF[u]);
+		return Arrays.copyOfRange(rightJCF, u * numberOfFeatures, (u + 1) * numberOfFeatures);
 	}
 
 	/*****************/
@@ -477,30 +479,65 @@ public class JoinCostFeatures implements JoinCostFunction {
 		if (u1 < 0) {
 			throw new RuntimeException("The left unit index [" + u1 + "] is out of range: a unit index can't be negative.");
 		}
-		// if ( u1 > getNumberOfUnits() ) {
-		if (u1 > leftJCF.length) {
+		if (u1 >= numberOfUnits) {
 			throw new RuntimeException("The left unit index [" + u1 + "] is out of range: this file contains ["
 					+ getNumberOfUnits() + "] units.");
 		}
 		if (u2 < 0) {
 			throw new RuntimeException("The right unit index [" + u2 + "] is out of range: a unit index can't be negative.");
 		}
-		// if ( u2 > getNumberOfUnits() ) {
-		if (u2 > leftJCF.length) {
+		if (u2 >= numberOfUnits) {
 			throw new RuntimeException("The right unit index [" + u2 + "] is out of range: this file contains ["
 					+ getNumberOfUnits() + "] units.");
 		}
+		return signalCost(u1 * numberOfFeatures, u2 * numberOfFeatures);
+	}
+
+	/**
+	 * Deliver the join costs between one left unit and a number of right units, all described by their index. This gives the same
+	 * values as calling {@link #cost(int, int)} for each right unit, but walks the left unit's features and the right units' rows
+	 * in the flat feature arrays without per-pair range checks.
+	 * 
+	 * @param u1
+	 *            the left unit
+	 * @param u2
+	 *            the right units
+	 * @param costs
+	 *            an array of at least u2.length entries, in which the cost of joining u1 with u2[j] is stored at position j.
+	 */
+	public void cost(int u1, int[] u2, double[] costs) {
+		if (u1 < 0 || u1 >= numberOfUnits) {
+			throw new RuntimeException("The left unit index [" + u1 + "] is out of range: this file contains [" + numberOfUnits
+					+ "] units.");
+		}
+		int offset1 = u1 * numberOfFeatures;
+		for (int j = 0; j < u2.length; j++) {
+			if (u2[j] < 0 || u2[j] >= numberOfUnits) {
+				throw new RuntimeException("The right unit index [" + u2[j] + "] is out of range: this file contains ["
+						+ numberOfUnits + "] units.");
+			}
+			costs[j] = signalCost(offset1, u2[j] * numberOfFeatures);
+		}
+	}
+
+	/**
+	 * Cumulate the weighted join costs for each feature between the right features of one unit and the left features of another.
+	 * 
+	 * @param offset1
+	 *            the position of the left unit's row in rightJCF
+	 * @param offset2
+	 *            the position of the right unit's row in leftJCF
+	 * @return the signal-based join cost
+	 */
+	private double signalCost(int offset1, int offset2) {
 		if (debugShowCostGraph) {
 			jcr.tick();
 		}
-		/* Cumulate the join costs for each feature */
 		double res = 0.0;
-		float[] v1 = rightJCF[u1];
-		float[] v2 = leftJCF[u2];
-		for (int i = 0; i < v1.length; i++) {
-			float a = v1[i];
-			float b = v2[i];
-			// if (!Float.isNaN(v1[i]) && !Float.isNaN(v2[i])) {
+		for (int i = 0; i < numberOfFeatures; i++) {
+			float a = rightJCF[offset1 + i];
+			float b = leftJCF[offset2 + i];
+			// if (!Float.isNaN(a) && !Float.isNaN(b)) {
 			if (!(a != a) && !(b != b)) {
 				double c;
 				if (isLinear[i]) {
@@ -561,6 +598,55 @@ public class JoinCostFeatures implements JoinCostFunction {
 		return cost;
 	}
 
+	/**
+	 * Batch version of {@link #cost(Target, Unit, Target, Unit)}: the join costs of one left unit with each of a number of
+	 * candidate right units are computed in one pass. The pairs needing a signal-based cost are collected first and evaluated
+	 * together by {@link #cost(int, int[], double[])}.
+	 */
+	public void cost(Target t1, Unit u1, Target t2, Unit[] u2, double[] costs) {
+		if (u1.duration == 0) {
+			Arrays.fill(costs, 0, u2.length, Double.POSITIVE_INFINITY);
+			return;
+		}
+		boolean leftIsDiphone = u1 instanceof DiphoneUnit;
+		if (leftIsDiphone) {
+			u1 = ((DiphoneUnit) u1).right;
+		}
+		int[] signalPairs = new int[u2.length];
+		int[] signalUnits = new int[u2.length];
+		int nSignal = 0;
+		for (int j = 0; j < u2.length; j++) {
+			Unit right = u2[j];
+			if (right.duration == 0) {
+				costs[j] = Double.POSITIVE_INFINITY;
+				continue;
+			}
+			boolean bothDiphones = leftIsDiphone;
+			if (right instanceof DiphoneUnit) {
+				right = ((DiphoneUnit) right).left;
+			} else {
+				bothDiphones = false;
+			}
+			if (u1.index + 1 == right.index) {
+				costs[j] = 0;
+			} else if (bothDiphones && precompiledCosts != null) {
+				costs[j] = 1 + precompiledCosts.cost(t1, u1, t2, right);
+			} else {
+				signalPairs[nSignal] = j;
+				signalUnits[nSignal] = right.index;
+				nSignal++;
+			}
+		}
+		if (nSignal == 0) {
+			return;
+		}
+		double[] signalCosts = new double[nSignal];
+		cost(u1.index, nSignal == u2.length ? signalUnits : Arrays.copyOf(signalUnits, nSignal), signalCosts);
+		for (int k = 0; k < nSignal; k++) {
+			costs[signalPairs[k]] = 1 + signalCosts[k];
+		}
+	}
+
 	/**
 	 * A phonetic join cost, computed solely from the target.
 	 * 
@@ -47,6 +47,24 @@ public interface JoinCostFunction {
 	 */
 	public double cost(Target t1, Unit u1, Target t2, Unit u2);
 
+	/**
+	 * Compute the goodness-of-fit of joining one left unit to each of a number of right units, all of which are candidates for
+	 * the same right target. The result must be the same as calling {@link #cost(Target, Unit, Target, Unit)} for each right unit
+	 * in turn; implementations can use this to share the work that depends only on the left unit.
+	 * 
+	 * @param t1
+	 *            the left target
+	 * @param u1
+	 *            the proposed left unit
+	 * @param t2
+	 *            the right target
+	 * @param u2
+	 *            the proposed right units
+	 * @param costs
+	 *            an array of at least u2.length entries, in which the cost of joining u1 with u2[j] is stored at position j.
+	 */
+	public void cost(Target t1, Unit u1, Target t2, Unit[] u2, double[] costs);
+
 	/**
 	 * Initialise this join cost function by reading the appropriate settings from the MaryProperties using the given
 	 * configPrefix.
@@ -43,7 +43,7 @@ public class JoinModelCost implements JoinCostFunction {
 	/****************/
 	/* DATA FIELDS */
 	/****************/
-	private JoinCostFeatures jcf = null;
+	JoinCostFeatures jcf = null;
 
 	CART[] joinTree = null; // an array of carts, one per HMM state.
 
@@ -222,4 +222,10 @@ public class JoinModelCost implements JoinCostFunction {
 		return cost;
 	}
 
+	public void cost(Target t1, Unit u1, Target t2, Unit[] u2, double[] costs) {
+		for (int j = 0; j < u2.length; j++) {
+			costs[j] = cost(t1, u1, t2, u2[j]);
+		}
+	}
+
 }
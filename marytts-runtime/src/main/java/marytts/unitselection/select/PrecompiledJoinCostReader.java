@@ -36,8 +36,11 @@ import java.io.DataInputStream;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.HashMap;
-import java.util.Map;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
 
 import marytts.exceptions.MaryConfigurationException;
 import marytts.server.MaryProperties;
@@ -46,17 +49,30 @@ import marytts.util.data.MaryHeader;
 
 /**
  * Loads a precompiled join cost file and provides access to the join cost.
+ * <p>
+ * The costs are held in a compressed sparse row table: for each left unit index, <code>rowOffsets</code> gives the range of
+ * entries in <code>rightUnits</code> and <code>costs</code> belonging to it; within a row, the right unit indices are sorted, so
+ * that a cost can be looked up by binary search. Files of type {@link MaryHeader#PRECOMPUTED_JOINCOSTS_TABLE} contain this table
+ * as is and are memory-mapped; the older {@link MaryHeader#PRECOMPUTED_JOINCOSTS} files are converted into the table on loading.
+ * <p>
+ * The format of a join cost table file, after the Mary header, is:
  * 
+ * <pre>
+ * int numberOfUnits
+ * int numberOfEntries
+ * int[numberOfUnits + 1] rowOffsets
+ * int[numberOfEntries] rightUnits
+ * float[numberOfEntries] costs
+ * </pre>
  */
 public class PrecompiledJoinCostReader implements JoinCostFunction {
 
 	private MaryHeader hdr = null;
 
-	// keys = Integers representing left unit index;
-	// values = maps containing
-	// - keys = Integers representing right unit index;
-	// - values = Floats representing the jost of joining them.
-	protected Map left;
+	private int numberOfUnits;
+	private IntBuffer rowOffsets;
+	private IntBuffer rightUnits;
+	private FloatBuffer costs;
 
 	/**
 	 * Empty constructor; need to call load() separately.
@@ -117,32 +133,130 @@ public class PrecompiledJoinCostReader implements JoinCostFunction {
 	@Override
 	public void load(String fileName, InputStream dummy, String dummy2, float dummy3) throws IOException,
 			MaryConfigurationException {
-		/* Open the file */
-		DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(fileName)));
-		hdr = new MaryHeader(dis);
-		if (hdr.getType() != MaryHeader.PRECOMPUTED_JOINCOSTS) {
+		int type = MaryHeader.peekFileType(fileName);
+		if (type == MaryHeader.PRECOMPUTED_JOINCOSTS_TABLE) {
+			loadTable(fileName);
+		} else if (type == MaryHeader.PRECOMPUTED_JOINCOSTS) {
+			loadLists(fileName);
+		} else {
 			throw new MaryConfigurationException("File [" + fileName + "] is not a valid Mary precompiled join costs file.");
 		}
-		/* Read the number of units */
-		int numberOfLeftUnits = dis.readInt();
-		if (numberOfLeftUnits < 0) {
-			throw new MaryConfigurationException("File [" + fileName + "] has a negative number of units. Aborting.");
-		}
+	}
 
-		left = new HashMap();
-		/* Read the start times and durations */
-		for (int i = 0; i < numberOfLeftUnits; i++) {
-			int leftIndex = dis.readInt();
-			int numberOfRightUnits = dis.readInt();
-			Map right = new HashMap();
-			left.put(new Integer(leftIndex), right);
-			for (int j = 0; j < numberOfRightUnits; j++) {
-				int rightIndex = dis.readInt();
-				float cost = dis.readFloat();
-				right.put(new Integer(rightIndex), new Float(cost));
+	/**
+	 * Memory-map a join cost table file.
+	 */
+	private void loadTable(String fileName) throws IOException, MaryConfigurationException {
+		FileInputStream fis = new FileInputStream(fileName);
+		ByteBuffer bb;
+		try {
+			FileChannel fc = fis.getChannel();
+			bb = fc.map(FileChannel.MapMode.READ_ONLY, 0, fc.size());
+		} finally {
+			fis.close();
+		}
+		hdr = new MaryHeader(bb);
+		int nUnits = bb.getInt();
+		int nEntries = bb.getInt();
+		if (nUnits < 0 || nEntries < 0 || bb.remaining() != 4L * (nUnits + 1) + 8L * nEntries) {
+			throw new MaryConfigurationException("File [" + fileName + "] has an inconsistent join cost table size. Aborting.");
+		}
+		numberOfUnits = nUnits;
+		rowOffsets = slice(bb, 4 * (nUnits + 1)).asIntBuffer();
+		rightUnits = slice(bb, 4 * nEntries).asIntBuffer();
+		costs = slice(bb, 4 * nEntries).asFloatBuffer();
+		if (rowOffsets.get(0) != 0 || rowOffsets.get(nUnits) != nEntries) {
+			throw new MaryConfigurationException("File [" + fileName + "] has inconsistent join cost row offsets. Aborting.");
+		}
+		for (int i = 0; i < nUnits; i++) {
+			if (rowOffsets.get(i) > rowOffsets.get(i + 1)) {
+				throw new MaryConfigurationException("File [" + fileName + "] has decreasing join cost row offsets. Aborting.");
 			}
 		}
+	}
+
+	private static ByteBuffer slice(ByteBuffer bb, int length) {
+		ByteBuffer part = bb.slice();
+		part.limit(length);
+		bb.position(bb.position() + length);
+		return part;
+	}
 
+	/**
+	 * Read a join cost file in the older format, which lists the right units and costs per left unit, and convert it into a
+	 * table.
+	 */
+	private void loadLists(String fileName) throws IOException, MaryConfigurationException {
+		/* Open the file */
+		DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(fileName)));
+		try {
+			hdr = new MaryHeader(dis);
+			/* Read the number of units */
+			int numberOfLeftUnits = dis.readInt();
+			if (numberOfLeftUnits < 0) {
+				throw new MaryConfigurationException("File [" + fileName + "] has a negative number of units. Aborting.");
+			}
+			// Each row as a sorted array of (right index, cost bits) pairs packed into longs:
+			long[][] rows = new long[0][];
+			int nEntries = 0;
+			for (int i = 0; i < numberOfLeftUnits; i++) {
+				int leftIndex = dis.readInt();
+				int numberOfRightUnits = dis.readInt();
+				if (leftIndex < 0 || numberOfRightUnits < 0) {
+					throw new MaryConfigurationException("File [" + fileName + "] has a negative unit index or count. Aborting.");
+				}
+				long[] row = new long[numberOfRightUnits];
+				for (int j = 0; j < numberOfRightUnits; j++) {
+					int rightIndex = dis.readInt();
+					float cost = dis.readFloat();
+					if (rightIndex < 0) {
+						throw new MaryConfigurationException("File [" + fileName + "] has a negative right unit index for left unit "
+								+ leftIndex + ". Aborting.");
+					}
+					row[j] = ((long) rightIndex << 32) | (Float.floatToRawIntBits(cost) & 0xffffffffL);
+				}
+				Arrays.sort(row);
+				for (int j = 1; j < numberOfRightUnits; j++) {
+					if ((row[j] >>> 32) == (row[j - 1] >>> 32)) {
+						throw new MaryConfigurationException("File [" + fileName + "] lists right unit " + (row[j] >>> 32)
+								+ " twice for left unit " + leftIndex + ". Aborting.");
+					}
+				}
+				if (leftIndex >= rows.length) {
+					rows = Arrays.copyOf(rows, Math.max(leftIndex + 1, 2 * rows.length));
+				}
+				if (rows[leftIndex] != null) {
+					throw new MaryConfigurationException("File [" + fileName + "] lists left unit " + leftIndex + " twice. Aborting.");
+				}
+				rows[leftIndex] = row;
+				nEntries += row.length;
+			}
+			int nUnits = rows.length;
+			while (nUnits > 0 && rows[nUnits - 1] == null) {
+				nUnits--;
+			}
+			int[] offsets = new int[nUnits + 1];
+			int[] rights = new int[nEntries];
+			float[] values = new float[nEntries];
+			int k = 0;
+			for (int i = 0; i < nUnits; i++) {
+				offsets[i] = k;
+				if (rows[i] != null) {
+					for (long entry : rows[i]) {
+						rights[k] = (int) (entry >>> 32);
+						values[k] = Float.intBitsToFloat((int) entry);
+						k++;
+					}
+				}
+			}
+			offsets[nUnits] = k;
+			numberOfUnits = nUnits;
+			rowOffsets = IntBuffer.wrap(offsets);
+			rightUnits = IntBuffer.wrap(rights);
+			costs = FloatBuffer.wrap(values);
+		} finally {
+			dis.close();
+		}
 	}
 
 	/**
@@ -159,15 +273,42 @@ public class PrecompiledJoinCostReader implements JoinCostFunction {
 	 *            uright
 	 */
 	public double cost(Target t1, Unit uleft, Target t2, Unit uright) {
-		Integer leftIndex = new Integer(uleft.index);
-		Map rightUnitsMap = (Map) left.get(leftIndex);
-		if (rightUnitsMap == null)
-			return Double.POSITIVE_INFINITY;
-		Integer rightIndex = new Integer(uright.index);
-		Float cost = (Float) rightUnitsMap.get(rightIndex);
-		if (cost == null)
+		return cost(uleft.index, uright.index);
+	}
+
+	public void cost(Target t1, Unit u1, Target t2, Unit[] u2, double[] costs) {
+		for (int j = 0; j < u2.length; j++) {
+			costs[j] = cost(t1, u1, t2, u2[j]);
+		}
+	}
+
+	/**
+	 * Return the (precomputed) cost of joining the two units with the given indices.
+	 * 
+	 * @param leftIndex
+	 *            index of the left unit
+	 * @param rightIndex
+	 *            index of the right unit
+	 * @return the cost, or Double.POSITIVE_INFINITY if there is no precomputed cost.
+	 */
+	public double cost(int leftIndex, int rightIndex) {
+		if (leftIndex < 0 || leftIndex >= numberOfUnits)
 			return Double.POSITIVE_INFINITY;
-		return cost.doubleValue();
+		// binary search for rightIndex in the row of leftIndex:
+		int low = rowOffsets.get(leftIndex);
+		int high = rowOffsets.get(leftIndex + 1) - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int midIndex = rightUnits.get(mid);
+			if (midIndex < rightIndex) {
+				low = mid + 1;
+			} else if (midIndex > rightIndex) {
+				high = mid - 1;
+			} else {
+				return costs.get(mid);
+			}
+		}
+		return Double.POSITIVE_INFINITY;
 	}
 
 }
@@ -83,6 +83,19 @@ public interface TargetCostFunction {
 	 */
 	public double cost(Target target, Unit unit);
 
+	/**
+	 * Compute the goodness-of-fit of a number of units for the same target. This gives the same results as calling
+	 * {@link #cost(Target, Unit)} for each unit, but can be implemented more efficiently.
+	 * 
+	 * @param target
+	 *            target
+	 * @param unitIndices
+	 *            the indices of the units in the database; for a diphone target, the indices of the left halves of the diphone
+	 *            units.
+	 * @return the costs for each of the units, in the same order.
+	 */
+	public double[] cost(Target target, int[] unitIndices);
+
 	/**
 	 * Compute the features for a given target, and store them in the target.
 	 * 
@@ -121,6 +134,17 @@ public interface TargetCostFunction {
 	 */
 	public FeatureVector getFeatureVector(Unit unit);
 
+	/**
+	 * Get the value of a byte-valued target cost feature for the given unit, without creating a feature vector.
+	 * 
+	 * @param unitIndex
+	 *            the index of a unit in the database
+	 * @param featureIndex
+	 *            the index of a byte-valued feature
+	 * @return the feature value
+	 */
+	public byte getByteFeature(int unitIndex, int featureIndex);
+
 	/**
 	 * Get all feature vectors. This is useful for more efficient access.
 	 * 
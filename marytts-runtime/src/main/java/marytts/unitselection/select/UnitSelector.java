@@ -44,6 +44,7 @@ public class UnitSelector {
 	protected float targetCostWeight;
 	protected float sCostWeight = -1;
 	protected int beamSize;
+	protected double beamWidth = Double.POSITIVE_INFINITY;
 
 	/**
 	 * Initialise the unit selector. Need to call load() separately.
@@ -69,6 +70,18 @@ public class UnitSelector {
 		this.beamSize = beamSize;
 	}
 
+	/**
+	 * Set the beam width for the Viterbi search, i.e. the maximum difference in score between the best path and any path retained
+	 * at each step.
+	 * 
+	 * @param beamWidth
+	 *            the beam width, or {@link Double#POSITIVE_INFINITY} for no pruning by score.
+	 * @see Viterbi#setBeamWidth(double)
+	 */
+	public void setBeamWidth(double beamWidth) {
+		this.beamWidth = beamWidth;
+	}
+
 	/**
 	 * Select the units for the targets in the given list of tokens and boundaries. Collect them in a list and return it.
 	 * 
@@ -111,6 +124,7 @@ public class UnitSelector {
 		} else {
 			viterbi = new Viterbi(targets, database, targetCostWeight, sCostWeight, beamSize);
 		}
+		viterbi.setBeamWidth(beamWidth);
 
 		viterbi.apply();
 		List<SelectedUnit> selectedUnits = viterbi.getSelectedUnits();
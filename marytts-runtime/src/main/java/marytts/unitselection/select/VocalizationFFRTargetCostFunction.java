@@ -21,6 +21,7 @@ package marytts.unitselection.select;
 
 import marytts.features.FeatureDefinition;
 import marytts.features.FeatureVector;
+import marytts.unitselection.data.FeatureFileReader;
 import marytts.unitselection.data.Unit;
 import marytts.unitselection.weightingfunctions.WeightFunc;
 import marytts.unitselection.weightingfunctions.WeightFunctionManager;
@@ -53,7 +54,8 @@ public class VocalizationFFRTargetCostFunction extends FFRTargetCostFunction {
 	 *            feature definition
 	 */
 	private void load(VocalizationFeatureFileReader ffr, FeatureDefinition fDef) {
-		this.featureVectors = ffr.featureVectorMapping(fDef);
+		// the unit features, mapped to the feature definition of this cost function:
+		this.unitFeatures = new FeatureFileReader(fDef, ffr.featureVectorMapping(fDef));
 		this.featureDefinition = fDef;
 
 		weightFunction = new WeightFunc[featureDefinition.getNumberOfContinuousFeatures()];
@@ -87,9 +89,16 @@ public class VocalizationFFRTargetCostFunction extends FFRTargetCostFunction {
 	 */
 	protected double cost(Target target, Unit unit, FeatureDefinition weights, WeightFunc[] weightFunctions) {
 		nCostComputations++; // for debug
+		return cost(target, unit.index, weights, weightFunctions);
+	}
+
+	/**
+	 * Compute the goodness-of-fit of the unit with the given index for a given target.
+	 */
+	private double cost(Target target, int unitIndex, FeatureDefinition weights, WeightFunc[] weightFunctions) {
 		FeatureVector targetFeatures = target.getFeatureVector();
 		assert targetFeatures != null : "Target " + target + " does not have pre-computed feature vector";
-		FeatureVector unitFeatures = featureVectors[unit.index];
+		FeatureVector unitFeatures = this.unitFeatures.getFeatureVector(unitIndex);
 		int nBytes = targetFeatures.byteValuedDiscreteFeatures.length;
 		int nShorts = targetFeatures.shortValuedDiscreteFeatures.length;
 		int nFloats = targetFeatures.continuousFeatures.length;
@@ -192,7 +201,7 @@ public class VocalizationFFRTargetCostFunction extends FFRTargetCostFunction {
 
 		FeatureVector targetFeatures = target.getFeatureVector();
 		assert targetFeatures != null : "Target " + target + " does not have pre-computed feature vector";
-		FeatureVector unitFeatures = featureVectors[unit.index];
+		FeatureVector unitFeatures = this.unitFeatures.getFeatureVector(unit.index);
 		int nBytes = targetFeatures.byteValuedDiscreteFeatures.length;
 		int nShorts = targetFeatures.shortValuedDiscreteFeatures.length;
 		int nFloats = targetFeatures.continuousFeatures.length;
@@ -259,4 +268,16 @@ public class VocalizationFFRTargetCostFunction extends FFRTargetCostFunction {
 		}
 		return cost;
 	}
+
+	/**
+	 * Missing unit values are costed differently from the base class, so compute the costs unit by unit.
+	 */
+	@Override
+	protected void cost(Target target, int[] unitIndices, int indexOffset, FeatureDefinition weights,
+			WeightFunc[] weightFunctions, double[] costs) {
+		nCostComputations += unitIndices.length; // for debug
+		for (int k = 0; k < unitIndices.length; k++) {
+			costs[k] = cost(target, unitIndices[k] + indexOffset, weights, weightFunctions);
+		}
+	}
 }
@@ -34,7 +34,8 @@ package marytts.unitselection.select.viterbi;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.text.DecimalFormat;
-import java.util.Collections;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -73,13 +74,21 @@ import org.apache.log4j.Logger;
  * <p>
  * 
  * Move to the next unit and repeat the process.
+ * <p>
+ * 
+ * The paths are not represented as objects: each ViterbiPoint holds, for each of its candidates, the score of the best path
+ * leading to it and the index of the previous point's candidate on that path. Replacing a path by a better one is therefore a
+ * constant-time update of the candidate's slot.
  */
 public class Viterbi {
 	// a general flag indicating which type of viterbi search
 	// to use:
 	// -1: unlimited search
-	// n>0: beam search, retain only the n best paths at each step.
+	// 0: general beam search, retain only the paths within beamWidth of the best path at each step.
+	// n>0: beam search, retain only the n best paths at each step, and look only at the n best candidates.
 	protected int beamSize;
+	// the maximum difference in score between the best path and any retained path at each step
+	protected double beamWidth = Double.POSITIVE_INFINITY;
 	protected final float wTargetCosts;
 	protected final float wJoinCosts;
 	protected final float wSCosts;
@@ -100,6 +109,10 @@ public class Viterbi {
 	// Keep track of average costs for each voice: map UnitDatabase->DebugStats
 	private static Map<UnitDatabase, DebugStats> debugStats = new HashMap<UnitDatabase, DebugStats>();
 
+	// back pointer values for candidates that no path leads to, and for paths starting at a candidate:
+	static final int NO_PATH = -2;
+	static final int START = -1;
+
 	/**
 	 * Creates a Viterbi class to process the given utterance. A queue of ViterbiPoints corresponding to the Items in the Relation
 	 * segs is built up.
@@ -136,17 +149,12 @@ public class Viterbi {
 				last.setNext(nextPoint);
 			} else { // firstPoint is the start of the queue
 				firstPoint = nextPoint;
-				// dummy start path:
-				firstPoint.getPaths().add(new ViterbiPath(null, null, 0));
 			}
 			last = nextPoint;
 		}
 		// And add one point where the paths from the last candidate can end:
 		lastPoint = new ViterbiPoint(null);
 		last.setNext(lastPoint);
-		if (beamSize == 0) {
-			throw new IllegalStateException("General beam search not implemented");
-		}
 	}
 
 	/**
@@ -187,17 +195,27 @@ public class Viterbi {
 				last.setNext(nextPoint);
 			} else { // firstPoint is the start of the queue
 				firstPoint = nextPoint;
-				// dummy start path:
-				firstPoint.getPaths().add(new ViterbiPath(null, null, 0));
 			}
 			last = nextPoint;
 		}
 		// And add one point where the paths from the last candidate can end:
 		lastPoint = new ViterbiPoint(null);
 		last.setNext(lastPoint);
-		if (beamSize == 0) {
-			throw new IllegalStateException("General beam search not implemented");
+	}
+
+	/**
+	 * Set the beam width for pruning paths: at each step, only the paths whose score differs from the best path's score by at
+	 * most this amount are extended. This is the only pruning done for beam size 0, and is applied in addition to the n-best
+	 * pruning for beam sizes n&gt;0.
+	 * 
+	 * @param beamWidth
+	 *            the beam width; {@link Double#POSITIVE_INFINITY} (the default) means no pruning by score.
+	 */
+	public void setBeamWidth(double beamWidth) {
+		if (!(beamWidth >= 0)) {
+			throw new IllegalArgumentException("Beam width must be non-negative, got " + beamWidth);
 		}
+		this.beamWidth = beamWidth;
 	}
 
 	/**
@@ -207,22 +225,23 @@ public class Viterbi {
 	 * Candidate, and a Score. This Score is a quality measure of the Path; it is calculated as the sum of the previous Path's
 	 * score, the Candidate's score, and the Cost of joining the Candidate to the previous Path's Candidate. At each step, only
 	 * one Path leading to each Candidate is retained, viz. the Path with the best Score. All that is left to do is to call
-	 * result() to get the best-rated path from among the paths associated with the last Point, and to associate the resulting
-	 * Candidates with the segment items they will realise.
+	 * getSelectedUnits() to get the best-rated path from among the paths associated with the last Point, and to associate the
+	 * resulting Candidates with the segment items they will realise.
 	 * 
 	 * @throws SynthesisException
 	 *             if for any part of the target chain, no candidates can be found
 	 */
 	public void apply() throws SynthesisException {
-		logger.debug("Viterbi running with beam size " + beamSize);
+		logger.debug("Viterbi running with beam size " + beamSize + ", beam width " + beamWidth);
+		ViterbiPoint previous = null;
 		// go through all but the last point
 		// (since last point has no item)
 		for (ViterbiPoint point = firstPoint; point.next != null; point = point.next) {
 			// The candidates for the current item:
 			// candidate selection is carried out by UnitSelector
 			Target target = point.target;
-			List<ViterbiCandidate> candidates = database.getCandidates(target);
-			if (candidates.size() == 0) {
+			List<ViterbiCandidate> candidateList = database.getCandidates(target);
+			if (candidateList.size() == 0) {
 				if (target instanceof DiphoneTarget) {
 					logger.debug("No diphone '" + target.getName() + "' -- will build from halfphones");
 					DiphoneTarget dt = (DiphoneTarget) target;
@@ -231,92 +250,131 @@ public class Viterbi {
 					Target right = dt.right;
 					point.setTarget(left);
 					ViterbiPoint newP = new ViterbiPoint(right);
-					newP.next = point.next;
-					point.next = newP;
-					candidates = database.getCandidates(left);
-					if (candidates.size() == 0)
+					newP.setNext(point.next);
+					point.setNext(newP);
+					candidateList = database.getCandidates(left);
+					if (candidateList.size() == 0)
 						throw new SynthesisException("Cannot even find any halfphone unit for target " + left);
 				} else {
 					throw new SynthesisException("Cannot find any units for target " + target);
 				}
 			}
-			assert candidates.size() > 0;
-
-			// absolutely critical since candidates is no longer a SortedSet:
-			Collections.sort(candidates);
+			assert candidateList.size() > 0;
 
+			ViterbiCandidate[] candidates = candidateList.toArray(new ViterbiCandidate[candidateList.size()]);
+			// absolutely critical since candidates are not a SortedSet;
+			// the sort is stable, so candidates with equal target costs remain in database order:
+			Arrays.sort(candidates);
+			if (beamSize > 0 && beamSize < candidates.length) {
+				// beam search, look only at the n candidates with the lowest target costs:
+				candidates = Arrays.copyOf(candidates, beamSize);
+			}
+			int nCandidates = candidates.length;
+			double[] scores = new double[nCandidates];
+			int[] backPointers = new int[nCandidates];
+			Arrays.fill(backPointers, NO_PATH);
+			for (int j = 0; j < nCandidates; j++) {
+				candidates[j].point = point;
+				candidates[j].index = j;
+			}
 			point.candidates = candidates;
-			assert beamSize != 0; // general beam search not implemented
+			point.scores = scores;
+			point.backPointers = backPointers;
 
-			// Now go through all existing paths and all candidates
-			// for the current item;
-			// tentatively extend each existing path to each of
-			// the candidates, but only retain the best one
-			List<ViterbiPath> paths = point.paths;
-			int nPaths = paths.size();
-			if (beamSize != -1 && beamSize < nPaths) {
-				// beam search, look only at the best n paths:
-				nPaths = beamSize;
-			}
-			// for searchStrategy == -1, no beam -- look at all candidates.
-			int i = 0;
-			int iMax = nPaths;
-			for (ViterbiPath pp : paths) {
-				assert pp != null;
-				// We are at the very beginning of the search,
-				// or have a usable path to extend
-				candidates = point.candidates;
-				assert candidates != null;
-				int j = 0;
-				int jMax = beamSize;
-				// Go through the candidates as returned by the iterator of the sorted set,
-				// i.e. sorted according to increasing target cost.
-				for (ViterbiCandidate c : candidates) {
-					// For the candidate c, create a path extending the
-					// previous path pp to that candidate, taking into
-					// account the target and join costs:
-					ViterbiPath np = getPath(pp, c);
-					// Compare this path to the existing best path
-					// (if any) leading to candidate c; only retain
-					// the one with the better score.
-					addPath(point.next, np);
-					if (++j == jMax)
-						break;
+			if (previous == null) {
+				// We are at the very beginning of the search: each candidate starts a path
+				for (int j = 0; j < nCandidates; j++) {
+					scores[j] = getCost(null, candidates[j], 0);
+					backPointers[j] = START;
+				}
+			} else {
+				// Now go through the retained paths leading to the previous point's candidates
+				// and all candidates for the current item;
+				// tentatively extend each existing path to each of
+				// the candidates, but only retain the best one
+				int[] paths = selectPaths(previous);
+				ViterbiCandidate[] prevCandidates = previous.candidates;
+				double[] prevScores = previous.scores;
+				Unit[] units = new Unit[nCandidates];
+				for (int j = 0; j < nCandidates; j++) {
+					units[j] = candidates[j].unit;
+				}
+				double[] joinCosts = new double[nCandidates];
+				for (int p = 0; p < paths.length; p++) {
+					int i = paths[p];
+					ViterbiCandidate prevCandidate = prevCandidates[i];
+					double prevScore = prevScores[i];
+					// the join costs from the previous candidate to all current candidates, in one go:
+					joinCostFunction.cost(prevCandidate.target, prevCandidate.unit, candidates[0].target, units, joinCosts);
+					for (int j = 0; j < nCandidates; j++) {
+						// The score of the path extending the previous path to candidate j,
+						// taking into account the target and join costs:
+						double score = prevScore + getCost(prevCandidate, candidates[j], joinCosts[j]);
+						// Compare this path to the existing best path
+						// (if any) leading to candidate j; only retain
+						// the one with the better score.
+						if (backPointers[j] == NO_PATH || score < scores[j]) {
+							scores[j] = score;
+							backPointers[j] = i;
+						}
+					}
 				}
-				if (++i == iMax)
-					break;
 			}
+			previous = point;
 		}
 	}
 
 	/**
-	 * Add the new path to the state path if it is better than the current path. In this, state means the position of the
-	 * candidate associated with this path in the candidate queue for the corresponding segment item. In other words, this method
-	 * uses newPath as the one path leading to the candidate newPath.candidate, if it has a better score than the previously best
-	 * path leading to that candidate.
-	 *
+	 * Determine which of the paths leading to the candidates of the given point are to be extended, according to the beam size
+	 * and beam width.
+	 * 
 	 * @param point
-	 *            where the path is added
-	 * @param newPath
-	 *            the path to add if its score is best
+	 *            a point for which apply() has computed the paths
+	 * @return the indices of the candidates whose paths are retained, in increasing order.
 	 */
-	void addPath(ViterbiPoint point, ViterbiPath newPath) {
-		// get the position of newPath's candidate
-		// in path array statePath of point
-		ViterbiCandidate candidate = newPath.candidate;
-		assert candidate != null;
-		ViterbiPath bestPathSoFar = candidate.bestPath;
-		List<ViterbiPath> paths = point.getPaths();
-		if (bestPathSoFar == null) {
-			// we don't have a path for the candidate yet, so this is best
-			paths.add(newPath);
-			candidate.setBestPath(newPath);
-		} else if (newPath.score < bestPathSoFar.score) {
-			// newPath is a better path for the candidate
-			paths.remove(bestPathSoFar);
-			paths.add(newPath);
-			candidate.setBestPath(newPath);
+	private int[] selectPaths(ViterbiPoint point) {
+		double[] scores = point.scores;
+		int[] backPointers = point.backPointers;
+		int n = scores.length;
+		double best = Double.POSITIVE_INFINITY;
+		for (int i = 0; i < n; i++) {
+			if (backPointers[i] != NO_PATH && scores[i] < best) {
+				best = scores[i];
+			}
+		}
+		// for beamWidth == infinity, this retains all paths:
+		double threshold = best + beamWidth;
+		int[] paths = new int[n];
+		int nPaths = 0;
+		for (int i = 0; i < n; i++) {
+			if (backPointers[i] != NO_PATH && scores[i] <= threshold) {
+				paths[nPaths++] = i;
+			}
 		}
+		if (beamSize > 0 && beamSize < nPaths) {
+			// beam search, retain only the n best paths:
+			double[] sorted = new double[nPaths];
+			for (int p = 0; p < nPaths; p++) {
+				sorted[p] = scores[paths[p]];
+			}
+			Arrays.sort(sorted);
+			double nthBest = sorted[beamSize - 1];
+			// paths scoring exactly nthBest are retained in candidate order, as long as there is room for them:
+			int tiesAllowed = beamSize;
+			while (tiesAllowed > 0 && sorted[beamSize - tiesAllowed] < nthBest) {
+				tiesAllowed--;
+			}
+			int nRetained = 0;
+			for (int p = 0; p < nPaths; p++) {
+				double score = scores[paths[p]];
+				if (score < nthBest || score == nthBest && tiesAllowed-- > 0) {
+					paths[nRetained++] = paths[p];
+				}
+			}
+			assert nRetained == beamSize;
+			nPaths = nRetained;
+		}
+		return nPaths == n ? paths : Arrays.copyOf(paths, nPaths);
 	}
 
 	/**
@@ -329,26 +387,36 @@ public class Viterbi {
 		if (firstPoint == null || firstPoint.getNext() == null) {
 			return selectedUnits; // null case
 		}
-		ViterbiPath best = findBestPath();
-		if (best == null) {
+		List<ViterbiPoint> points = new ArrayList<ViterbiPoint>();
+		for (ViterbiPoint point = firstPoint; point.next != null; point = point.next) {
+			points.add(point);
+		}
+		ViterbiPoint finalPoint = points.get(points.size() - 1);
+		int best = findBestPath(finalPoint);
+		if (best == NO_PATH) {
 			// System.out.println("No best path found");
 			return null;
 		}
-		for (ViterbiPath path = best; path != null; path = path.getPrevious()) {
-			if (path.candidate != null) {
-				Unit u = path.candidate.unit;
-				Target t = path.candidate.target;
-				if (u instanceof DiphoneUnit) {
-					assert t instanceof DiphoneTarget;
-					DiphoneUnit du = (DiphoneUnit) u;
-					DiphoneTarget dt = (DiphoneTarget) t;
-					selectedUnits.addFirst(new SelectedUnit(du.right, dt.right));
-					selectedUnits.addFirst(new SelectedUnit(du.left, dt.left));
-				} else {
-					selectedUnits.addFirst(new SelectedUnit(u, t));
-				}
+		// Follow the back pointers from the best path's final candidate to the start:
+		int c = best;
+		for (int k = points.size() - 1; k >= 0; k--) {
+			ViterbiPoint point = points.get(k);
+			assert c >= 0;
+			ViterbiCandidate candidate = point.candidates[c];
+			Unit u = candidate.unit;
+			Target t = candidate.target;
+			if (u instanceof DiphoneUnit) {
+				assert t instanceof DiphoneTarget;
+				DiphoneUnit du = (DiphoneUnit) u;
+				DiphoneTarget dt = (DiphoneTarget) t;
+				selectedUnits.addFirst(new SelectedUnit(du.right, dt.right));
+				selectedUnits.addFirst(new SelectedUnit(du.left, dt.left));
+			} else {
+				selectedUnits.addFirst(new SelectedUnit(u, t));
 			}
+			c = point.backPointers[c];
 		}
+		assert c == START;
 		if (logger.getEffectiveLevel().equals(Level.DEBUG)) {
 			StringWriter sw = new StringWriter();
 			PrintWriter pw = new PrintWriter(sw);
@@ -417,7 +485,7 @@ public class Viterbi {
 			DecimalFormat df = new DecimalFormat("0.000");
 			logger.debug("Avg. consecutive length: " + df.format(avgLength) + " units");
 			// Cost of best path
-			double totalCost = best.score;
+			double totalCost = finalPoint.scores[best];
 			int elements = selectedUnits.size();
 			double avgCostBestPath = totalCost / (elements - 1);
 			double avgTargetCost = cumulTargetCosts / nTargetCosts;
@@ -447,40 +515,35 @@ public class Viterbi {
 	}
 
 	/**
-	 * Construct a new path element linking a previous path to the given candidate. The (penalty) score associated with the new
-	 * path is calculated as the sum of the score of the old path plus the score of the candidate itself plus the join cost of
-	 * appending the candidate to the nearest candidate in the given path. This join cost takes into account optimal coupling if
-	 * the database has OPTIMAL_COUPLING set to 1. The join position is saved in the new path, as the features "unit_prev_move"
-	 * and "unit_this_move".
+	 * Compute the cost of extending a path ending in the given previous candidate to the given candidate. The (penalty) score
+	 * associated with the extended path is the sum of the score of the old path plus this cost, which consists of the score of
+	 * the candidate itself plus the join cost of appending the candidate to the previous candidate. This join cost takes into
+	 * account optimal coupling if the database has OPTIMAL_COUPLING set to 1.
 	 *
-	 * @param path
-	 *            the previous path, or null if this candidate starts a new path
-	 * @param candiate
+	 * @param prevCandidate
+	 *            the last candidate on the previous path, or null if this candidate starts a new path
+	 * @param candidate
 	 *            the candidate to add to the path
+	 * @param joinCost
+	 *            the unweighted join cost of appending the candidate to the previous candidate, as computed by the join cost
+	 *            function; ignored if prevCandidate is null
 	 *
-	 * @return a new path, consisting of this candidate appended to the previous path, and with the cumulative (penalty) score
-	 *         calculated.
+	 * @return the weighted sum of target, join and statistical costs.
 	 */
-	private ViterbiPath getPath(ViterbiPath path, ViterbiCandidate candidate) {
+	private double getCost(ViterbiCandidate prevCandidate, ViterbiCandidate candidate, double joinCost) {
 		double cost;
 
-		Target candidateTarget = candidate.target;
 		Unit candidateUnit = candidate.unit;
 
-		double joinCost;
 		double sCost = 0;
 		double targetCost;
 		// Target costs:
 		targetCost = candidate.targetCost;
 
-		if (path == null || path.candidate == null) {
+		if (prevCandidate == null) {
 			joinCost = 0;
 		} else {
-			// Join costs:
-			ViterbiCandidate prevCandidate = path.candidate;
-			Target prevTarget = prevCandidate.target;
 			Unit prevUnit = prevCandidate.unit;
-			joinCost = joinCostFunction.cost(prevTarget, prevUnit, candidateTarget, candidateUnit);
 			if (sCostFunction != null)
 				sCost = sCostFunction.cost(prevUnit, candidateUnit);
 		}
@@ -498,43 +561,26 @@ public class Viterbi {
 		nTargetCosts++;
 		// logger.debug(candidateUnit+": target cost "+targetCost+", join cost "+joinCost);
 
-		if (path != null) {
-			cost += path.score;
-		}
-
-		return new ViterbiPath(candidate, path, cost);
+		return cost;
 	}
 
 	/**
-	 * Find the best path. This requires apply() to have been run. For this best path, we set the pointers to the *next* path
-	 * elements correctly.
+	 * Find the best path. This requires apply() to have been run. All paths end in the final point, and take into account the
+	 * previous path segments' scores. Therefore, it is sufficient to find the best path from among the paths leading to the
+	 * final point's candidates.
 	 *
-	 * @return the best path, or null if no best path could be found.
+	 * @param finalPoint
+	 *            the last point with a target
+	 * @return the index of the final candidate on the best path, or NO_PATH if no best path could be found.
 	 */
-	private ViterbiPath findBestPath() {
-		assert beamSize != 0;
-		// All paths end in lastPoint, and take into account
-		// previous path segment's scores. Therefore, it is
-		// sufficient to find the best path from among the
-		// paths for lastPoint.
-		List<ViterbiPath> paths = lastPoint.getPaths();
-		if (paths.isEmpty()) // no path, we failed
-			return null;
-
-		// as paths is no longer a SortedSet, they must be explicitly sorted:
-		Collections.sort(paths);
-		ViterbiPath best = paths.get(0);
-
-		// Set *next* pointers correctly:
-		ViterbiPath path = best;
-		double totalCost = best.score;
-		int elements = 0;
-		while (path != null) {
-			elements++;
-			ViterbiPath prev = path.previous;
-			if (prev != null)
-				prev.setNext(path);
-			path = prev;
+	private int findBestPath(ViterbiPoint finalPoint) {
+		if (finalPoint.backPointers == null) // apply() has not run or failed
+			return NO_PATH;
+		int best = NO_PATH;
+		for (int j = 0; j < finalPoint.candidates.length; j++) {
+			if (finalPoint.backPointers[j] != NO_PATH && (best == NO_PATH || finalPoint.scores[j] < finalPoint.scores[best])) {
+				best = j;
+			}
 		}
 		return best;
 	}
@@ -42,8 +42,11 @@ public class ViterbiCandidate implements Comparable<ViterbiCandidate> {
 	final Target target;
 	final Unit unit;
 	final double targetCost;
-	ViterbiPath bestPath = null;
 	ViterbiCandidate next = null;
+	// the point whose candidates include this one, and the index among them, once the search has considered this candidate:
+	ViterbiPoint point = null;
+	int index = -1;
+	ViterbiPath bestPath = null;
 
 	public ViterbiCandidate(Target target, Unit unit, TargetCostFunction tcf) {
 		this.target = target;
@@ -51,6 +54,23 @@ public class ViterbiCandidate implements Comparable<ViterbiCandidate> {
 		this.targetCost = tcf.cost(target, unit);
 	}
 
+	/**
+	 * Create a candidate whose target cost has already been computed.
+	 * 
+	 * @param target
+	 *            target
+	 * @param unit
+	 *            unit
+	 * @param targetCost
+	 *            the cost of the unit for the target
+	 * @see TargetCostFunction#cost(Target, int[])
+	 */
+	public ViterbiCandidate(Target target, Unit unit, double targetCost) {
+		this.target = target;
+		this.unit = unit;
+		this.targetCost = targetCost;
+	}
+
 	/**
 	 * Calculates and returns the target cost for this candidate
 	 * 
@@ -98,12 +118,13 @@ public class ViterbiCandidate implements Comparable<ViterbiCandidate> {
 	}
 
 	/**
-	 * Sets the currently best path leading to this candidate. Each path leads to exactly one candidate; in the candidate, we only
-	 * remember the best path leading to it.
+	 * Sets the currently best path leading to this candidate.
 	 * 
 	 * @param bestPath
 	 *            bestPath
+	 * @deprecated the search no longer uses path objects; a path set here is only returned by {@link #getBestPath()}.
 	 */
+	@Deprecated
 	public void setBestPath(ViterbiPath bestPath) {
 		this.bestPath = bestPath;
 	}
@@ -111,10 +132,19 @@ public class ViterbiCandidate implements Comparable<ViterbiCandidate> {
 	/**
 	 * Gets the best path leading to this candidate
 	 * 
-	 * @return the best path, or null
+	 * @return the path set by {@link #setBestPath(ViterbiPath)}, if any; else the best path found by the search, or null
+	 * @deprecated the search no longer represents paths as objects, so this builds the path from the back pointers on each call.
+	 *             Use {@link ViterbiPoint#getScore(int)} instead.
 	 */
+	@Deprecated
 	public ViterbiPath getBestPath() {
-		return bestPath;
+		if (bestPath != null) {
+			return bestPath;
+		}
+		if (point == null) {
+			return null;
+		}
+		return point.getPath(index);
 	}
 
 	/**
@@ -123,8 +153,7 @@ public class ViterbiCandidate implements Comparable<ViterbiCandidate> {
 	 * @return the string form of this object
 	 */
 	public String toString() {
-		return "ViterbiCandidate: target " + target + ", unit " + unit
-				+ (bestPath != null ? ", best path score " + bestPath.score : ", no best path");
+		return "ViterbiCandidate: target " + target + ", unit " + unit + ", target cost " + targetCost;
 	}
 
 	/**
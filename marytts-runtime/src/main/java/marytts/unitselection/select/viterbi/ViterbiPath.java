@@ -33,7 +33,11 @@ package marytts.unitselection.select.viterbi;
 
 /**
  * Describes a Viterbi path.
+ * 
+ * @deprecated {@link Viterbi} no longer represents paths as objects; instances are only built on demand by
+ *             {@link ViterbiPoint#getPaths()} and {@link ViterbiCandidate#getBestPath()}.
  */
+@Deprecated
 public class ViterbiPath implements Comparable<ViterbiPath> {
 	final double score;
 	final ViterbiCandidate candidate;
@@ -32,6 +32,7 @@
 package marytts.unitselection.select.viterbi;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import marytts.unitselection.select.Target;
@@ -39,12 +40,17 @@ import marytts.unitselection.select.Target;
 /**
  * Represents a point in the Viterbi path. A point corresponds to an item, e.g. a Segment. Each ViterbiPoint knows about its next
  * ViterbiPoint, i.e. they can form a queue.
+ * <p>
+ * The paths leading to the candidates of this point are kept in two arrays parallel to the candidates array: for each candidate,
+ * the score of the best path leading to it, and the index of the candidate in the previous point through which that path passes.
  */
 public class ViterbiPoint {
 	Target target = null;
-	List<ViterbiCandidate> candidates = null;
-	List<ViterbiPath> paths = new ArrayList<ViterbiPath>();
+	ViterbiCandidate[] candidates = null;
+	double[] scores = null;
+	int[] backPointers = null;
 	ViterbiPoint next = null;
+	ViterbiPoint previous = null;
 
 	/**
 	 * Creates a ViterbiPoint for the given target.
@@ -76,34 +82,83 @@ public class ViterbiPoint {
 	}
 
 	/**
-	 * Gets the candidates of this point
+	 * Gets the candidates of this point, sorted by target cost.
 	 * 
-	 * @return the candidates
+	 * @return the candidates, or null if none have been set.
 	 */
 	public List<ViterbiCandidate> getCandidates() {
-		return candidates;
+		if (candidates == null) {
+			return null;
+		}
+		return Arrays.asList(candidates);
 	}
 
 	/**
-	 * Sets the candidates of this point
+	 * Sets the candidates of this point. This discards any paths leading to the previous candidates.
 	 * 
 	 * @param candidates
 	 *            the candidates
 	 */
-	public void setCandidates(ArrayList<ViterbiCandidate> candidates) {
-		this.candidates = candidates;
+	public void setCandidates(List<ViterbiCandidate> candidates) {
+		this.candidates = candidates.toArray(new ViterbiCandidate[candidates.size()]);
+		this.scores = null;
+		this.backPointers = null;
 	}
 
 	/**
-	 * Gets the sorted set containting the paths of the candidates of this point, sorted by score. getPaths().first() will return
-	 * the path with the lowest score, i.e. the best path.
+	 * Gets the score of the best path leading to the given candidate.
 	 * 
-	 * @return a sorted set.
+	 * @param candidateIndex
+	 *            the index of the candidate in {@link #getCandidates()}
+	 * @return the score of the best path, or {@link Double#NaN} if no path leads to this candidate.
 	 */
+	public double getScore(int candidateIndex) {
+		if (backPointers == null || backPointers[candidateIndex] == Viterbi.NO_PATH) {
+			return Double.NaN;
+		}
+		return scores[candidateIndex];
+	}
+
+	/**
+	 * Gets the paths leading to the candidates of the previous point, i.e. the paths that are extended to the candidates of this
+	 * point. For the final point, which has no target, these are the complete paths.
+	 * 
+	 * @return a new list containing the paths in the order of the previous point's candidates; for the first point, a list
+	 *         containing only the empty start path.
+	 * @deprecated the search no longer represents paths as objects, so this builds them from the back pointers on each call, and
+	 *             changes to the list do not affect the search. Use {@link #getScore(int)} of the previous point instead.
+	 */
+	@Deprecated
 	public List<ViterbiPath> getPaths() {
+		List<ViterbiPath> paths = new ArrayList<ViterbiPath>();
+		if (previous == null) {
+			paths.add(new ViterbiPath(null, null, 0));
+		} else if (previous.backPointers != null) {
+			for (int i = 0; i < previous.candidates.length; i++) {
+				if (previous.backPointers[i] != Viterbi.NO_PATH) {
+					paths.add(previous.getPath(i));
+				}
+			}
+		}
 		return paths;
 	}
 
+	/**
+	 * Build the best path leading to the given candidate from the back pointers.
+	 * 
+	 * @param candidateIndex
+	 *            the index of the candidate
+	 * @return the path, or null if no path leads to this candidate.
+	 */
+	ViterbiPath getPath(int candidateIndex) {
+		if (backPointers == null || backPointers[candidateIndex] == Viterbi.NO_PATH) {
+			return null;
+		}
+		int back = backPointers[candidateIndex];
+		ViterbiPath previousPath = back == Viterbi.START ? new ViterbiPath(null, null, 0) : previous.getPath(back);
+		return new ViterbiPath(candidates[candidateIndex], previousPath, scores[candidateIndex]);
+	}
+
 	/**
 	 * Gets the next point in the queue
 	 * 
@@ -121,9 +176,12 @@ public class ViterbiPoint {
 	 */
 	public void setNext(ViterbiPoint next) {
 		this.next = next;
+		if (next != null) {
+			next.previous = this;
+		}
 	}
 
 	public String toString() {
-		return "ViterbiPoint: target " + target + "; " + paths.size() + " paths";
+		return "ViterbiPoint: target " + target + "; " + (candidates != null ? candidates.length : 0) + " candidates";
 	}
 }
@@ -21,6 +21,7 @@
 package marytts.util;
 
 import java.io.File;
+import java.io.IOException;
 import java.net.MalformedURLException;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
@@ -31,12 +32,20 @@ import java.sql.SQLException;
 import java.sql.Statement;
 
 import marytts.server.MaryProperties;
+import marytts.util.cache.CacheKey;
+import marytts.util.cache.CachedAudio;
+import marytts.util.cache.ResultCache;
 
 /**
+ * A persistent cache of synthesis results, stored in an HSQL database.
+ * <p>
+ * Entries can be looked up either by the full set of request parameters, or, as a {@link ResultCache}, by a compact
+ * {@link CacheKey}; the two kinds of entries are stored in separate tables.
+ * 
  * @author marc
  * 
  */
-public class MaryCache {
+public class MaryCache implements ResultCache {
 	private static MaryCache maryCache;
 
 	/**
@@ -100,6 +109,7 @@ public class MaryCache {
 		if (clearCache) {
 			Statement st = connection.createStatement();
 			st.executeUpdate("DROP TABLE MARYCACHE IF EXISTS");
+			st.executeUpdate("DROP TABLE MARYRESULTS IF EXISTS");
 			st.close();
 			mustCreateTable = true;
 		} else { // don't clear -- check if table exists
@@ -111,6 +121,12 @@ public class MaryCache {
 				mustCreateTable = true;
 			}
 		}
+		DatabaseMetaData dbInfo = connection.getMetaData();
+		ResultSet rs = dbInfo.getTables(null, null, "MARYRESULTS", new String[] { "TABLE" });
+		if (!rs.next()) {
+			update("CREATE CACHED TABLE MARYRESULTS (keyhigh BIGINT, keylow BIGINT, outputtext LONGVARCHAR, "
+					+ "outputaudio LONGVARBINARY, PRIMARY KEY(keyhigh, keylow))");
+		}
 		if (mustCreateTable) {
 			String query = "CREATE CACHED TABLE MARYCACHE (id INTEGER IDENTITY, " + "inputtype VARCHAR(50), "
 					+ "outputtype VARCHAR(50), " + "locale VARCHAR(10), " + "voice VARCHAR(100), "
@@ -440,6 +456,116 @@ public class MaryCache {
 		return audio;
 	}
 
+	/**
+	 * Look up the output text stored under the given key.
+	 * 
+	 * @param key
+	 *            the lookup key. Must not be null.
+	 * @return the output text, or null if the cache does not contain a text record with this key.
+	 * @throws SQLException
+	 *             if there is a problem querying the cache.
+	 */
+	public synchronized String lookupText(CacheKey key) throws SQLException {
+		PreparedStatement st = connection.prepareStatement("SELECT outputtext FROM maryresults WHERE keyhigh = ? AND keylow = ?");
+		try {
+			st.setLong(1, key.getHigh());
+			st.setLong(2, key.getLow());
+			ResultSet results = st.executeQuery();
+			return results.next() ? results.getString(1) : null;
+		} finally {
+			st.close();
+		}
+	}
+
+	/**
+	 * Look up the audio stored under the given key.
+	 * 
+	 * @param key
+	 *            the lookup key. Must not be null.
+	 * @return the audio, or null if the cache does not contain an audio record with this key.
+	 * @throws SQLException
+	 *             if there is a problem querying the cache.
+	 * @throws IOException
+	 *             if the stored record is not valid cached audio.
+	 */
+	public CachedAudio lookupAudio(CacheKey key) throws SQLException, IOException {
+		byte[] data;
+		synchronized (this) {
+			PreparedStatement st = connection
+					.prepareStatement("SELECT outputaudio FROM maryresults WHERE keyhigh = ? AND keylow = ?");
+			try {
+				st.setLong(1, key.getHigh());
+				st.setLong(2, key.getLow());
+				ResultSet results = st.executeQuery();
+				data = results.next() ? results.getBytes(1) : null;
+			} finally {
+				st.close();
+			}
+		}
+		return data != null ? CachedAudio.fromByteArray(data) : null;
+	}
+
+	/**
+	 * Store the output text under the given key. If a record with this key exists already, this call does nothing.
+	 * 
+	 * @param key
+	 *            the lookup key. Must not be null.
+	 * @param outputtext
+	 *            the output text. Must not be null.
+	 * @throws SQLException
+	 *             if the record could not be entered into the cache.
+	 */
+	public synchronized void insertText(CacheKey key, String outputtext) throws SQLException {
+		if (outputtext == null) {
+			throw new NullPointerException("Null argument");
+		}
+		insertResult(key, outputtext, null);
+	}
+
+	/**
+	 * Store the audio under the given key. If a record with this key exists already, this call does nothing.
+	 * 
+	 * @param key
+	 *            the lookup key. Must not be null.
+	 * @param audio
+	 *            the audio. Must not be null.
+	 * @throws SQLException
+	 *             if the record could not be entered into the cache.
+	 */
+	public void insertAudio(CacheKey key, CachedAudio audio) throws SQLException {
+		if (audio == null) {
+			throw new NullPointerException("Null argument");
+		}
+		byte[] data = audio.toByteArray();
+		synchronized (this) {
+			insertResult(key, null, data);
+		}
+	}
+
+	private void insertResult(CacheKey key, String outputtext, byte[] audio) throws SQLException {
+		PreparedStatement st = connection.prepareStatement("SELECT COUNT(*) FROM maryresults WHERE keyhigh = ? AND keylow = ?");
+		try {
+			st.setLong(1, key.getHigh());
+			st.setLong(2, key.getLow());
+			ResultSet results = st.executeQuery();
+			if (results.next() && results.getInt(1) > 0) {
+				return;
+			}
+		} finally {
+			st.close();
+		}
+		st = connection.prepareStatement("INSERT INTO maryresults (keyhigh, keylow, outputtext, outputaudio) VALUES (?,?,?,?)");
+		try {
+			st.setLong(1, key.getHigh());
+			st.setLong(2, key.getLow());
+			st.setString(3, outputtext);
+			st.setBytes(4, audio);
+			st.executeUpdate();
+		} finally {
+			st.close();
+		}
+	}
+
 	/**
 	 * Shut down the cache. After this has been called, any further calls to the object will throw exceptions.
 	 * 
@@ -20,11 +20,14 @@
 
 package marytts.util;
 
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.net.URISyntaxException;
+import java.net.URL;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
@@ -327,10 +330,50 @@ public class MaryRuntimeUtils {
 		return AllophoneSet.getAllophoneSet(alloStream, propertyValue);
 	}
 
+	/**
+	 * Convenience method to access the FST, such as a lexicon, referenced in the MARY property with the given name. An FST in a
+	 * file, or in a classpath resource which is a file, is memory-mapped rather than read onto the heap. All modules using the
+	 * same FST file or resource share one copy of it, whatever the name of the property.
+	 * 
+	 * @param propertyName
+	 *            name of the property referring to the FST
+	 * @throws IOException
+	 *             if the FST cannot be read
+	 * @throws MaryConfigurationException
+	 *             if the property is not defined, or refers to a classpath resource which does not exist
+	 * @return a lookup of the FST. This method will never return null.
+	 */
+	public static FSTLookup needFSTLookup(String propertyName) throws IOException, MaryConfigurationException {
+		String propertyValue = MaryProperties.getProperty(propertyName);
+		if (propertyValue == null) {
+			throw new MaryConfigurationException("No such property: " + propertyName);
+		}
+		if (!propertyValue.startsWith("jar:")) {
+			return FSTLookup.mapFile(MaryProperties.needFilename(propertyName));
+		}
+		String classpathLocation = propertyValue.substring("jar:".length());
+		URL url = MaryProperties.class.getResource(classpathLocation);
+		if (url == null) {
+			throw new MaryConfigurationException("For property '" + propertyName + "', no classpath resource available at '"
+					+ classpathLocation + "'");
+		}
+		if ("file".equals(url.getProtocol())) {
+			try {
+				return FSTLookup.mapFile(new File(url.toURI()).getPath());
+			} catch (URISyntaxException e) {
+				// cannot map it, so read it below
+			}
+		}
+		InputStream stream = url.openStream();
+		try {
+			return new FSTLookup(stream, propertyValue);
+		} finally {
+			stream.close();
+		}
+	}
+
 	public static String[] checkLexicon(String propertyName, String token) throws IOException, MaryConfigurationException {
-		String lexiconProperty = propertyName + ".lexicon";
-		InputStream lexiconStream = MaryProperties.needStream(lexiconProperty);
-		FSTLookup lexicon = new FSTLookup(lexiconStream, lexiconProperty);
+		FSTLookup lexicon = needFSTLookup(propertyName + ".lexicon");
 		return lexicon.lookup(token.toLowerCase());
 	}
 
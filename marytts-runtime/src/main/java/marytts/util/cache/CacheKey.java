@@ -0,0 +1,192 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.util.cache;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import marytts.datatypes.MaryData;
+
+/**
+ * A compact, fixed-size lookup key for the {@link ResultCache}: a 128-bit hash over the input type, output type, locale, voice,
+ * output parameters, style, effects and the input data of a request.
+ * <p>
+ * The input data is hashed while it is being serialised, so that no string representation of the (possibly large) input
+ * document needs to be built.
+ */
+public final class CacheKey {
+	private final long high;
+	private final long low;
+
+	/**
+	 * Compute the hash of the given input data alone. Use this with
+	 * {@link #create(String, String, String, String, String, String, String, CacheKey)} to compute keys for several output types
+	 * while serialising the input data only once.
+	 * 
+	 * @param input
+	 *            the input data of a request. Must not be null.
+	 * @return the hash of the input data
+	 * @throws Exception
+	 *             if the input data cannot be serialised
+	 */
+	public static CacheKey hashOf(MaryData input) throws Exception {
+		MessageDigest digest = newDigest();
+		OutputStream out = new DigestOutputStream(new NullOutputStream(), digest);
+		input.writeTo(out);
+		out.flush();
+		return new CacheKey(digest.digest());
+	}
+
+	/**
+	 * Compute the hash of the given input text alone.
+	 * 
+	 * @param inputText
+	 *            the input text of a request, as serialised by {@link MaryData#writeTo(OutputStream)}. Must not be null.
+	 * @return the hash of the input text
+	 */
+	public static CacheKey hashOf(String inputText) {
+		try {
+			return new CacheKey(newDigest().digest(inputText.getBytes("UTF-8")));
+		} catch (UnsupportedEncodingException e) {
+			throw new AssertionError("UTF-8 is always a supported encoding.");
+		}
+	}
+
+	/**
+	 * Compute the key for the given request parameters and input data.
+	 * 
+	 * @param inputType
+	 *            the request's input type. Must not be null.
+	 * @param outputType
+	 *            the request's output type. Must not be null.
+	 * @param locale
+	 *            the locale of the request. Must not be null.
+	 * @param voice
+	 *            the voice of the request. Can be null.
+	 * @param outputParams
+	 *            optionally, any output parameters. Can be null.
+	 * @param style
+	 *            optionally, any style. Can be null.
+	 * @param effects
+	 *            optionally, any effects. Can be null.
+	 * @param inputHash
+	 *            the hash of the input data, as computed by one of the <code>hashOf()</code> methods. Must not be null.
+	 * @return the key
+	 */
+	public static CacheKey create(String inputType, String outputType, String locale, String voice, String outputParams,
+			String style, String effects, CacheKey inputHash) {
+		MessageDigest digest = newDigest();
+		DataOutputStream out = new DataOutputStream(new DigestOutputStream(new NullOutputStream(), digest));
+		try {
+			writeFields(out, inputType, outputType, locale, voice, outputParams, style, effects);
+			out.writeLong(inputHash.high);
+			out.writeLong(inputHash.low);
+			out.flush();
+		} catch (IOException e) {
+			throw new AssertionError("Cannot fail to write to a digest");
+		}
+		return new CacheKey(digest.digest());
+	}
+
+	private static void writeFields(DataOutputStream out, String inputType, String outputType, String locale, String voice,
+			String outputParams, String style, String effects) throws IOException {
+		if (inputType == null || outputType == null || locale == null) {
+			throw new NullPointerException("Null argument");
+		}
+		for (String field : new String[] { inputType, outputType, locale, voice, outputParams, style, effects }) {
+			// distinguish null from the empty string, and "ab"+"c" from "a"+"bc":
+			if (field == null) {
+				out.writeInt(-1);
+			} else {
+				byte[] bytes = field.getBytes("UTF-8");
+				out.writeInt(bytes.length);
+				out.write(bytes);
+			}
+		}
+	}
+
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("MD5");
+		} catch (NoSuchAlgorithmException e) {
+			throw new AssertionError("MD5 is always supported");
+		}
+	}
+
+	public CacheKey(long high, long low) {
+		this.high = high;
+		this.low = low;
+	}
+
+	private CacheKey(byte[] hash) {
+		assert hash.length == 16;
+		long h = 0;
+		long l = 0;
+		for (int i = 0; i < 8; i++) {
+			h = (h << 8) | (hash[i] & 0xff);
+			l = (l << 8) | (hash[i + 8] & 0xff);
+		}
+		this.high = h;
+		this.low = l;
+	}
+
+	public long getHigh() {
+		return high;
+	}
+
+	public long getLow() {
+		return low;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof CacheKey)) {
+			return false;
+		}
+		CacheKey other = (CacheKey) obj;
+		return high == other.high && low == other.low;
+	}
+
+	@Override
+	public int hashCode() {
+		// the bits are uniformly distributed already
+		return (int) low;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%016x%016x", high, low);
+	}
+
+	private static class NullOutputStream extends OutputStream {
+		@Override
+		public void write(int b) {
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+		}
+	}
+}
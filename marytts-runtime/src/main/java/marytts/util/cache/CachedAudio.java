@@ -0,0 +1,358 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.util.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+
+/**
+ * Audio data as stored in a {@link ResultCache}: the raw sample bytes plus a description of their format. Unlike an audio file,
+ * this can be turned back into an {@link AudioInputStream} without any parsing or copying, and its sample bytes can be sent to a
+ * client directly.
+ * <p>
+ * The serialised form, used by persistent caches, is a small header describing the audio format, followed by the sample bytes.
+ */
+public class CachedAudio {
+	private static final int MAGIC = 0x4d504341; // "MPCA"
+	private static final int VERSION = 1;
+
+	private AudioFormat format;
+	private ByteBuffer samples;
+	private File file;
+	private long samplesOffset;
+
+	/**
+	 * Create cached audio from sample bytes in memory.
+	 * 
+	 * @param format
+	 *            the format of the samples
+	 * @param samples
+	 *            the sample bytes, from the buffer's position to its limit
+	 */
+	public CachedAudio(AudioFormat format, ByteBuffer samples) {
+		this(format, samples, null, -1);
+	}
+
+	/**
+	 * Create cached audio whose sample bytes are (also) available in a file.
+	 * 
+	 * @param format
+	 *            the format of the samples
+	 * @param samples
+	 *            the sample bytes, from the buffer's position to its limit, typically mapped from the file
+	 * @param file
+	 *            the file containing the samples
+	 * @param samplesOffset
+	 *            the position of the first sample byte in the file
+	 */
+	public CachedAudio(AudioFormat format, ByteBuffer samples, File file, long samplesOffset) {
+		if (samples.remaining() % format.getFrameSize() != 0 && format.getFrameSize() > 0)
+			throw new IllegalArgumentException("Got " + samples.remaining() + " bytes, not a multiple of the frame size "
+					+ format.getFrameSize());
+		this.format = format;
+		this.samples = samples.slice();
+		this.file = file;
+		this.samplesOffset = samplesOffset;
+	}
+
+	/**
+	 * Read all audio data from the given stream.
+	 * 
+	 * @param ais
+	 *            the audio to read; will be read to the end, but not closed.
+	 * @return the cached audio
+	 * @throws IOException
+	 *             if the audio cannot be read
+	 */
+	public static CachedAudio fromAudioInputStream(AudioInputStream ais) throws IOException {
+		AudioFormat format = ais.getFormat();
+		long frameLength = ais.getFrameLength();
+		int initialSize = frameLength > 0 && format.getFrameSize() > 0 ? (int) frameLength * format.getFrameSize() : 65536;
+		ByteArrayOutputStream baos = new ByteArrayOutputStream(initialSize);
+		byte[] buf = new byte[8192];
+		int nRead;
+		while ((nRead = ais.read(buf)) != -1) {
+			baos.write(buf, 0, nRead);
+		}
+		return new CachedAudio(format, ByteBuffer.wrap(baos.toByteArray()));
+	}
+
+	/**
+	 * Recreate cached audio from its serialised form, as produced by {@link #toByteArray()}. The sample bytes are not copied.
+	 * 
+	 * @param data
+	 *            the serialised form
+	 * @return the cached audio
+	 * @throws IOException
+	 *             if data is not in the expected format
+	 */
+	public static CachedAudio fromByteArray(byte[] data) throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+		AudioFormat format = readHeader(in);
+		int headerLength = data.length - in.available();
+		return new CachedAudio(format, ByteBuffer.wrap(data, headerLength, data.length - headerLength));
+	}
+
+	/**
+	 * Map cached audio from a file written by {@link #writeTo(File)}. The sample bytes are not read into the heap.
+	 * 
+	 * @param file
+	 *            the file to map
+	 * @return the cached audio
+	 * @throws IOException
+	 *             if the file cannot be read or is not in the expected format
+	 */
+	public static CachedAudio fromFile(File file) throws IOException {
+		DataInputStream in = new DataInputStream(new FileInputStream(file));
+		AudioFormat format;
+		long headerLength;
+		try {
+			format = readHeader(in);
+			headerLength = file.length() - in.available();
+		} finally {
+			in.close();
+		}
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel fc = raf.getChannel();
+			MappedByteBuffer mapped = fc.map(FileChannel.MapMode.READ_ONLY, headerLength, fc.size() - headerLength);
+			return new CachedAudio(format, mapped, file, headerLength);
+		} finally {
+			// the mapping stays valid after closing the file
+			raf.close();
+		}
+	}
+
+	public AudioFormat getFormat() {
+		return format;
+	}
+
+	/**
+	 * Get the sample bytes. The returned buffer is independent of other buffers returned by this method, but shares their
+	 * content.
+	 * 
+	 * @return a read-only buffer containing the sample bytes.
+	 */
+	public ByteBuffer getSamples() {
+		return samples.asReadOnlyBuffer();
+	}
+
+	/**
+	 * @return the file containing the sample bytes, or null if they are only available in memory.
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * @return the position of the first sample byte in {@link #getFile()}.
+	 */
+	public long getSamplesOffset() {
+		return samplesOffset;
+	}
+
+	/**
+	 * @return the number of sample bytes
+	 */
+	public int getSize() {
+		return samples.remaining();
+	}
+
+	public long getFrameLength() {
+		return format.getFrameSize() > 0 ? samples.remaining() / format.getFrameSize() : AudioSystem.NOT_SPECIFIED;
+	}
+
+	/**
+	 * Get a new stream reading the cached audio. No data is decoded or copied.
+	 * 
+	 * @return an audio input stream positioned at the first sample.
+	 */
+	public AudioInputStream getAudioInputStream() {
+		return new AudioInputStream(getSamplesInputStream(), format, getFrameLength());
+	}
+
+	/**
+	 * Get a new stream reading the sample bytes. Unlike the stream returned by {@link #getAudioInputStream()}, it can be read
+	 * byte by byte. No data is copied.
+	 * 
+	 * @return an input stream positioned at the first sample byte.
+	 */
+	public InputStream getSamplesInputStream() {
+		return new ByteBufferInputStream(samples.duplicate());
+	}
+
+	/**
+	 * Check whether the cached samples can be delivered as they are for the given format.
+	 * 
+	 * @param requested
+	 *            the requested audio format
+	 * @return true if requested has the same encoding, sample rate, sample size, number of channels and byte order as the cached
+	 *         samples
+	 */
+	public boolean matches(AudioFormat requested) {
+		return requested.getEncoding().toString().equals(format.getEncoding().toString())
+				&& requested.getSampleRate() == format.getSampleRate()
+				&& requested.getSampleSizeInBits() == format.getSampleSizeInBits()
+				&& requested.getChannels() == format.getChannels()
+				&& (format.getSampleSizeInBits() <= 8 || requested.isBigEndian() == format.isBigEndian());
+	}
+
+	/**
+	 * Serialise the cached audio.
+	 * 
+	 * @return header and sample bytes in a new byte array.
+	 */
+	public byte[] toByteArray() {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream(getSize() + 64);
+		try {
+			DataOutputStream out = new DataOutputStream(baos);
+			writeHeader(out);
+			ByteBuffer buf = samples.duplicate();
+			byte[] bytes = new byte[buf.remaining()];
+			buf.get(bytes);
+			out.write(bytes);
+			out.flush();
+		} catch (IOException e) {
+			throw new AssertionError("Cannot fail to write to a byte array");
+		}
+		return baos.toByteArray();
+	}
+
+	/**
+	 * Serialise the cached audio into a file, which can be read back with {@link #fromFile(File)}.
+	 * 
+	 * @param target
+	 *            the file to write
+	 * @throws IOException
+	 *             if the file cannot be written
+	 */
+	public void writeTo(File target) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(target, "rw");
+		try {
+			raf.setLength(0);
+			ByteArrayOutputStream header = new ByteArrayOutputStream(64);
+			writeHeader(new DataOutputStream(header));
+			FileChannel fc = raf.getChannel();
+			fc.write(ByteBuffer.wrap(header.toByteArray()));
+			ByteBuffer buf = samples.duplicate();
+			while (buf.hasRemaining()) {
+				fc.write(buf);
+			}
+		} finally {
+			raf.close();
+		}
+	}
+
+	private void writeHeader(DataOutputStream out) throws IOException {
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeUTF(format.getEncoding().toString());
+		out.writeFloat(format.getSampleRate());
+		out.writeInt(format.getSampleSizeInBits());
+		out.writeInt(format.getChannels());
+		out.writeInt(format.getFrameSize());
+		out.writeFloat(format.getFrameRate());
+		out.writeBoolean(format.isBigEndian());
+		out.flush();
+	}
+
+	private static AudioFormat readHeader(DataInputStream in) throws IOException {
+		if (in.readInt() != MAGIC) {
+			throw new IOException("Not a cached audio record");
+		}
+		int version = in.readInt();
+		if (version != VERSION) {
+			throw new IOException("Unsupported cached audio version " + version);
+		}
+		String encodingName = in.readUTF();
+		AudioFormat.Encoding encoding = null;
+		for (AudioFormat.Encoding e : new AudioFormat.Encoding[] { AudioFormat.Encoding.PCM_SIGNED,
+				AudioFormat.Encoding.PCM_UNSIGNED, AudioFormat.Encoding.ULAW, AudioFormat.Encoding.ALAW }) {
+			if (e.toString().equals(encodingName)) {
+				encoding = e;
+			}
+		}
+		if (encoding == null) {
+			encoding = new AudioFormat.Encoding(encodingName);
+		}
+		float sampleRate = in.readFloat();
+		int sampleSizeInBits = in.readInt();
+		int channels = in.readInt();
+		int frameSize = in.readInt();
+		float frameRate = in.readFloat();
+		boolean bigEndian = in.readBoolean();
+		return new AudioFormat(encoding, sampleRate, sampleSizeInBits, channels, frameSize, frameRate, bigEndian);
+	}
+
+	/**
+	 * An input stream reading from a byte buffer.
+	 */
+	private static class ByteBufferInputStream extends InputStream {
+		private ByteBuffer buf;
+
+		ByteBufferInputStream(ByteBuffer buf) {
+			this.buf = buf;
+		}
+
+		@Override
+		public int read() {
+			return buf.hasRemaining() ? buf.get() & 0xff : -1;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) {
+			if (len == 0) {
+				return 0;
+			}
+			if (!buf.hasRemaining()) {
+				return -1;
+			}
+			int n = Math.min(len, buf.remaining());
+			buf.get(b, off, n);
+			return n;
+		}
+
+		@Override
+		public int available() {
+			return buf.remaining();
+		}
+
+		@Override
+		public long skip(long n) {
+			int k = (int) Math.min(Math.max(n, 0), buf.remaining());
+			buf.position(buf.position() + k);
+			return k;
+		}
+	}
+}
@@ -0,0 +1,252 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.util.cache;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import marytts.util.io.FileUtils;
+
+/**
+ * A persistent {@link ResultCache} keeping one file per entry in a directory. Cached audio is memory-mapped when it is looked
+ * up, so that it is not copied into the heap and can be sent to clients straight from the file.
+ * <p>
+ * Entries are written to a temporary file which is then renamed, so concurrent lookups never see partially written entries and
+ * no locking is needed.
+ * <p>
+ * The total size of the entries is limited: a lookup marks its entry as used by updating the file's modification time, and when
+ * an insertion exceeds the limit, the least recently used entries are removed until the cache is 10% below the limit.
+ */
+public class FileResultCache implements ResultCache {
+	private static final FileFilter ENTRIES = new FileFilter() {
+		public boolean accept(File f) {
+			return f.getName().endsWith(".txt") || f.getName().endsWith(".pcm");
+		}
+	};
+
+	private File directory;
+	private long maxBytes;
+	private final AtomicLong size = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+	private final ReentrantLock evictionLock = new ReentrantLock();
+
+	/**
+	 * Create a file cache of unlimited size in the given directory.
+	 * 
+	 * @param directory
+	 *            the directory in which to store entries; will be created if necessary.
+	 * @param clearCache
+	 *            if true, remove all existing entries.
+	 * @throws IOException
+	 *             if the directory cannot be created
+	 */
+	public FileResultCache(File directory, boolean clearCache) throws IOException {
+		this(directory, clearCache, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Create a file cache in the given directory.
+	 * 
+	 * @param directory
+	 *            the directory in which to store entries; will be created if necessary.
+	 * @param clearCache
+	 *            if true, remove all existing entries.
+	 * @param maxBytes
+	 *            the maximum total size of the entries, in bytes
+	 * @throws IOException
+	 *             if the directory cannot be created
+	 */
+	public FileResultCache(File directory, boolean clearCache, long maxBytes) throws IOException {
+		if (maxBytes <= 0)
+			throw new IllegalArgumentException("Cache size must be positive, got " + maxBytes);
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Cannot create cache directory " + directory.getAbsolutePath());
+		}
+		this.directory = directory;
+		this.maxBytes = maxBytes;
+		File[] files = directory.listFiles();
+		if (files != null) {
+			for (File f : files) {
+				if (clearCache && (ENTRIES.accept(f) || f.getName().endsWith(".tmp"))) {
+					f.delete();
+				} else if (ENTRIES.accept(f)) {
+					size.addAndGet(f.length());
+				}
+			}
+		}
+		if (size.get() > maxBytes) {
+			evict();
+		}
+	}
+
+	public String lookupText(CacheKey key) throws IOException {
+		File f = fileFor(key, ".txt");
+		if (!f.exists()) {
+			return null;
+		}
+		touch(f);
+		try {
+			return FileUtils.getFileAsString(f, "UTF-8");
+		} catch (FileNotFoundException e) {
+			return null; // evicted in the meantime
+		}
+	}
+
+	public CachedAudio lookupAudio(CacheKey key) throws IOException {
+		File f = fileFor(key, ".pcm");
+		if (!f.exists()) {
+			return null;
+		}
+		touch(f);
+		try {
+			return CachedAudio.fromFile(f);
+		} catch (FileNotFoundException e) {
+			return null; // evicted in the meantime
+		}
+	}
+
+	public void insertText(CacheKey key, String outputText) throws IOException {
+		if (outputText == null)
+			throw new NullPointerException("Null argument");
+		File target = fileFor(key, ".txt");
+		if (target.exists()) {
+			return;
+		}
+		File tmp = File.createTempFile(key.toString(), ".tmp", directory);
+		Writer w = new OutputStreamWriter(new FileOutputStream(tmp), "UTF-8");
+		try {
+			w.write(outputText);
+		} finally {
+			w.close();
+		}
+		if (commit(tmp, target)) {
+			added(target.length());
+		}
+	}
+
+	public void insertAudio(CacheKey key, CachedAudio audio) throws IOException {
+		if (audio == null)
+			throw new NullPointerException("Null argument");
+		File target = fileFor(key, ".pcm");
+		if (target.exists()) {
+			return;
+		}
+		File tmp = File.createTempFile(key.toString(), ".tmp", directory);
+		audio.writeTo(tmp);
+		if (commit(tmp, target)) {
+			added(target.length());
+		}
+	}
+
+	public void shutdown() {
+		// nothing to release
+	}
+
+	/**
+	 * @return the current total size of the entries, in bytes
+	 */
+	public long getSizeInBytes() {
+		return size.get();
+	}
+
+	/**
+	 * @return the number of entries removed so far to stay within the size limit
+	 */
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	private File fileFor(CacheKey key, String suffix) {
+		return new File(directory, key.toString() + suffix);
+	}
+
+	/**
+	 * Rename the temporary file to the entry file.
+	 * 
+	 * @return true if the entry was created, false if another request created it in the meantime
+	 */
+	private boolean commit(File tmp, File target) throws IOException {
+		if (!tmp.renameTo(target)) {
+			tmp.delete();
+			// Another request may have inserted the same entry in the meantime:
+			if (!target.exists()) {
+				throw new IOException("Cannot create cache entry " + target.getAbsolutePath());
+			}
+			return false;
+		}
+		return true;
+	}
+
+	private static void touch(File f) {
+		f.setLastModified(System.currentTimeMillis());
+	}
+
+	private void added(long bytes) {
+		// if another request is evicting already, it will make room for this entry too:
+		if (size.addAndGet(bytes) > maxBytes && evictionLock.tryLock()) {
+			try {
+				evict();
+			} finally {
+				evictionLock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Remove the least recently used entries until the total size is 10% below the limit, so that the directory is not listed on
+	 * every insertion. On systems where mapped files cannot be deleted, entries in use are kept.
+	 */
+	private void evict() {
+		File[] files = directory.listFiles(ENTRIES);
+		if (files == null) {
+			return;
+		}
+		// the modification times may change while sorting, so sort a snapshot of them:
+		final long[] lastUsed = new long[files.length];
+		Integer[] order = new Integer[files.length];
+		for (int i = 0; i < files.length; i++) {
+			lastUsed[i] = files[i].lastModified();
+			order[i] = i;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return lastUsed[a] < lastUsed[b] ? -1 : lastUsed[a] > lastUsed[b] ? 1 : 0;
+			}
+		});
+		long target = maxBytes - maxBytes / 10;
+		for (int i = 0; i < order.length && size.get() > target; i++) {
+			File f = files[order[i]];
+			long length = f.length();
+			if (f.delete()) {
+				size.addAndGet(-length);
+				evictions.incrementAndGet();
+			}
+		}
+	}
+}
@@ -0,0 +1,268 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.util.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded, thread-safe memo table for the results of pure computations, with hit, miss and eviction counters.
+ * <p>
+ * Entries are spread over independently locked segments selected by the key's hash, so that concurrent lookups rarely contend
+ * for the same lock. Each entry has a weight, by default 1; each segment evicts its least recently used entries once their total
+ * weight exceeds its share of the maximum weight. With the default weight, the maximum weight is the maximum number of entries.
+ *
+ * @param <K>
+ *            key type, which must implement hashCode() and equals()
+ * @param <V>
+ *            value type
+ */
+public class MemoCache<K, V> {
+	private final Segment<K, V>[] segments;
+	private final int segmentMask;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * Create a memo cache.
+	 *
+	 * @param maxWeight
+	 *            the approximate maximum total weight of the entries, i.e. the maximum number of entries if they all have the
+	 *            default weight
+	 * @param numSegments
+	 *            the number of independently locked segments; rounded up to a power of two
+	 */
+	@SuppressWarnings("unchecked")
+	public MemoCache(long maxWeight, int numSegments) {
+		if (maxWeight <= 0)
+			throw new IllegalArgumentException("Cache size must be positive, got " + maxWeight);
+		int n = 1;
+		while (n < numSegments) {
+			n <<= 1;
+		}
+		segments = new Segment[n];
+		for (int i = 0; i < n; i++) {
+			segments[i] = new Segment<K, V>(Math.max(maxWeight / n, 1), evictions);
+		}
+		segmentMask = n - 1;
+	}
+
+	/**
+	 * Look up the value memoised for the given key.
+	 *
+	 * @param key
+	 *            key
+	 * @return the value, or null if there is none
+	 */
+	public V get(K key) {
+		V value = segmentFor(key).get(key);
+		if (value != null) {
+			hits.incrementAndGet();
+		} else {
+			misses.incrementAndGet();
+		}
+		return value;
+	}
+
+	/**
+	 * Memoise the value for the given key, with weight 1.
+	 *
+	 * @param key
+	 *            key
+	 * @param value
+	 *            value, not null
+	 */
+	public void put(K key, V value) {
+		put(key, value, 1);
+	}
+
+	/**
+	 * Memoise the value for the given key. A value heavier than a segment's share of the maximum weight is not memoised, as it
+	 * would evict everything else.
+	 *
+	 * @param key
+	 *            key
+	 * @param value
+	 *            value, not null
+	 * @param weight
+	 *            the weight of the entry, e.g. its size in bytes
+	 */
+	public void put(K key, V value, long weight) {
+		if (value == null)
+			throw new NullPointerException("Null argument");
+		if (weight < 0)
+			throw new IllegalArgumentException("Negative weight " + weight);
+		segmentFor(key).put(key, value, weight);
+	}
+
+	public void clear() {
+		for (Segment<K, V> s : segments) {
+			s.clear();
+		}
+	}
+
+	/**
+	 * @return the number of successful lookups so far
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * @return the number of unsuccessful lookups so far
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * @return the number of entries evicted so far to stay within the maximum weight
+	 */
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	/**
+	 * @return the fraction of successful lookups so far, or 0 if there were none
+	 */
+	public double getHitRate() {
+		long h = hits.get();
+		long total = h + misses.get();
+		return total == 0 ? 0 : (double) h / total;
+	}
+
+	/**
+	 * @return the current number of entries
+	 */
+	public int size() {
+		int size = 0;
+		for (Segment<K, V> s : segments) {
+			size += s.size();
+		}
+		return size;
+	}
+
+	/**
+	 * @return the current total weight of the entries
+	 */
+	public long getWeight() {
+		long weight = 0;
+		for (Segment<K, V> s : segments) {
+			weight += s.getWeight();
+		}
+		return weight;
+	}
+
+	private Segment<K, V> segmentFor(K key) {
+		int h = key.hashCode();
+		// spread the bits, so that segments are not selected by the same bits as the buckets inside them:
+		h ^= (h >>> 16);
+		return segments[(h >>> 8) & segmentMask];
+	}
+
+	private static class Entry<V> {
+		final V value;
+		final long weight;
+
+		Entry(V value, long weight) {
+			this.value = value;
+			this.weight = weight;
+		}
+	}
+
+	private static class Segment<K, V> {
+		private final ReentrantLock lock = new ReentrantLock();
+		// access order, so that iteration starts with the least recently used entry:
+		private final LinkedHashMap<K, Entry<V>> map = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true);
+		private final long maxWeight;
+		private final AtomicLong evictions;
+		private long weight;
+
+		Segment(long maxWeight, AtomicLong evictions) {
+			this.maxWeight = maxWeight;
+			this.evictions = evictions;
+		}
+
+		V get(K key) {
+			lock.lock();
+			try {
+				Entry<V> e = map.get(key);
+				return e != null ? e.value : null;
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		void put(K key, V value, long valueWeight) {
+			if (valueWeight > maxWeight) {
+				return; // would evict everything else
+			}
+			lock.lock();
+			try {
+				Entry<V> old = map.put(key, new Entry<V>(value, valueWeight));
+				if (old != null) {
+					weight -= old.weight;
+				}
+				weight += valueWeight;
+				Iterator<Map.Entry<K, Entry<V>>> it = map.entrySet().iterator();
+				while (weight > maxWeight && it.hasNext()) {
+					Entry<V> eldest = it.next().getValue();
+					it.remove();
+					weight -= eldest.weight;
+					evictions.incrementAndGet();
+				}
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		int size() {
+			lock.lock();
+			try {
+				return map.size();
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		long getWeight() {
+			lock.lock();
+			try {
+				return weight;
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		void clear() {
+			lock.lock();
+			try {
+				map.clear();
+				weight = 0;
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+}
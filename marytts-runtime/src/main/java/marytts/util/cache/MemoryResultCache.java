@@ -0,0 +1,107 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.util.cache;
+
+import marytts.server.MaryProperties;
+
+/**
+ * An in-memory {@link ResultCache} bounded by the total size of the cached values.
+ * <p>
+ * The entries are kept in a {@link MemoCache} weighted by the size of the values, so that concurrent requests rarely contend for
+ * the same lock and the least recently used entries are evicted once the total size is exceeded.
+ */
+public class MemoryResultCache implements ResultCache {
+	private final MemoCache<CacheKey, Object> cache;
+
+	/**
+	 * Create a memory cache configured by the properties <code>cache.memory.maxbytes</code> and
+	 * <code>cache.memory.segments</code>.
+	 */
+	public MemoryResultCache() {
+		this(MaryProperties.getInteger("cache.memory.maxbytes", 64 * 1024 * 1024), MaryProperties.getInteger(
+				"cache.memory.segments", 16));
+	}
+
+	/**
+	 * Create a memory cache.
+	 * 
+	 * @param maxBytes
+	 *            the approximate maximum total size of all cached values, in bytes
+	 * @param numSegments
+	 *            the number of independently locked segments; rounded up to a power of two
+	 */
+	public MemoryResultCache(long maxBytes, int numSegments) {
+		cache = new MemoCache<CacheKey, Object>(maxBytes, numSegments);
+	}
+
+	public String lookupText(CacheKey key) {
+		Object value = cache.get(key);
+		return value instanceof String ? (String) value : null;
+	}
+
+	public CachedAudio lookupAudio(CacheKey key) {
+		Object value = cache.get(key);
+		return value instanceof CachedAudio ? (CachedAudio) value : null;
+	}
+
+	public void insertText(CacheKey key, String outputText) {
+		if (outputText == null)
+			throw new NullPointerException("Null argument");
+		cache.put(key, outputText, 2L * outputText.length());
+	}
+
+	public void insertAudio(CacheKey key, CachedAudio audio) {
+		if (audio == null)
+			throw new NullPointerException("Null argument");
+		cache.put(key, audio, audio.getSize());
+	}
+
+	public void shutdown() {
+		cache.clear();
+	}
+
+	/**
+	 * @return the number of successful lookups so far
+	 */
+	public long getHits() {
+		return cache.getHits();
+	}
+
+	/**
+	 * @return the number of unsuccessful lookups so far
+	 */
+	public long getMisses() {
+		return cache.getMisses();
+	}
+
+	/**
+	 * @return the number of entries evicted so far to stay within the size limit
+	 */
+	public long getEvictions() {
+		return cache.getEvictions();
+	}
+
+	/**
+	 * @return the current total size of the cached values, in bytes
+	 */
+	public long getSizeInBytes() {
+		return cache.getWeight();
+	}
+}
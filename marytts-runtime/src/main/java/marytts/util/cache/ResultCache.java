@@ -0,0 +1,83 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.util.cache;
+
+/**
+ * A cache of synthesis results, looked up by a {@link CacheKey} computed from all request parameters and the input data.
+ * <p>
+ * Implementations must be safe for concurrent use by many requests. They are selected with the <code>cache.class</code>
+ * property, and must provide a public default constructor; see {@link ResultCaches#getCache()}.
+ */
+public interface ResultCache {
+
+	/**
+	 * Look up the output text for the given key.
+	 * 
+	 * @param key
+	 *            the lookup key
+	 * @return the cached output text, or null if there is none
+	 * @throws Exception
+	 *             if the cache cannot be queried
+	 */
+	public String lookupText(CacheKey key) throws Exception;
+
+	/**
+	 * Look up the output audio for the given key.
+	 * 
+	 * @param key
+	 *            the lookup key
+	 * @return the cached audio, or null if there is none
+	 * @throws Exception
+	 *             if the cache cannot be queried
+	 */
+	public CachedAudio lookupAudio(CacheKey key) throws Exception;
+
+	/**
+	 * Remember the output text for the given key. If an entry with the same key exists already, this call may do nothing.
+	 * 
+	 * @param key
+	 *            the lookup key
+	 * @param outputText
+	 *            the output text. Must not be null.
+	 * @throws Exception
+	 *             if the entry cannot be stored
+	 */
+	public void insertText(CacheKey key, String outputText) throws Exception;
+
+	/**
+	 * Remember the output audio for the given key. If an entry with the same key exists already, this call may do nothing.
+	 * 
+	 * @param key
+	 *            the lookup key
+	 * @param audio
+	 *            the audio. Must not be null.
+	 * @throws Exception
+	 *             if the entry cannot be stored
+	 */
+	public void insertAudio(CacheKey key, CachedAudio audio) throws Exception;
+
+	/**
+	 * Release all resources held by the cache. After this has been called, the cache must not be used any more.
+	 * 
+	 * @throws Exception
+	 *             if there is a problem shutting down the cache
+	 */
+	public void shutdown() throws Exception;
+}
@@ -0,0 +1,60 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.util.cache;
+
+import marytts.server.MaryProperties;
+import marytts.util.MaryUtils;
+
+/**
+ * Access to the {@link ResultCache} used by the server.
+ */
+public class ResultCaches {
+	private static ResultCache cache;
+
+	/**
+	 * Try to get the result cache. This will either return the previously created cache, or if none exists, it will try to create
+	 * an instance of the class given in the property <code>cache.class</code> (by default, a {@link TieredResultCache}).
+	 * <p>
+	 * To the extent possible this method gives the no-throw guarantee: if the cache cannot be created, null will be returned and
+	 * any exception will be logged.
+	 * 
+	 * @return the ResultCache singleton object, or null if none could be created.
+	 */
+	public static synchronized ResultCache getCache() {
+		if (cache == null) {
+			String className = MaryProperties.getProperty("cache.class", TieredResultCache.class.getName());
+			try {
+				cache = (ResultCache) Class.forName(className).newInstance();
+			} catch (Exception e) {
+				MaryUtils.getLogger(ResultCaches.class).warn("Cannot set up cache " + className, e);
+			}
+		}
+		return cache;
+	}
+
+	/**
+	 * Indicate whether there is a result cache currently available.
+	 * 
+	 * @return true if there is a cache, false otherwise.
+	 */
+	public static synchronized boolean haveCache() {
+		return cache != null;
+	}
+}
@@ -0,0 +1,133 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.util.cache;
+
+import java.io.File;
+import java.io.IOException;
+
+import marytts.server.MaryProperties;
+import marytts.util.MaryCache;
+import marytts.util.MaryUtils;
+
+import org.apache.log4j.Logger;
+
+/**
+ * A two-tier {@link ResultCache}: a fast {@link MemoryResultCache} in front of an optional persistent cache. Lookups are answered
+ * from memory if possible; entries found only in the persistent tier are copied into memory. New entries are written to both
+ * tiers.
+ */
+public class TieredResultCache implements ResultCache {
+	private Logger logger;
+	private MemoryResultCache memory;
+	private ResultCache persistent;
+
+	/**
+	 * Create a tiered cache with a memory tier configured from the properties, and, if the property
+	 * <code>cache.persistent</code> is true, a persistent tier: either the {@link MaryCache} database, or, if
+	 * <code>cache.persistent.type</code> is <code>files</code>, a {@link FileResultCache} in the directory <code>cache.dir</code>,
+	 * limited to <code>cache.dir.maxmegabytes</code>.
+	 * 
+	 * @throws IOException
+	 *             if the persistent tier cannot be set up
+	 */
+	public TieredResultCache() throws IOException {
+		this(new MemoryResultCache(), createPersistentCache());
+	}
+
+	private static ResultCache createPersistentCache() throws IOException {
+		if (!MaryProperties.getBoolean("cache.persistent", true)) {
+			return null;
+		}
+		if ("files".equals(MaryProperties.getProperty("cache.persistent.type", "database"))) {
+			return new FileResultCache(new File(MaryProperties.getFilename("cache.dir", "maryCache")), MaryProperties.getBoolean(
+					"cache.clearOnStart", false), MaryProperties.getInteger("cache.dir.maxmegabytes", 1024) * 1024L * 1024L);
+		}
+		return MaryCache.getCache();
+	}
+
+	/**
+	 * Create a tiered cache.
+	 * 
+	 * @param memory
+	 *            the memory tier. Must not be null.
+	 * @param persistent
+	 *            the persistent tier, or null for a memory-only cache.
+	 */
+	public TieredResultCache(MemoryResultCache memory, ResultCache persistent) {
+		if (memory == null)
+			throw new NullPointerException("Need a memory cache");
+		this.logger = MaryUtils.getLogger("TieredResultCache");
+		this.memory = memory;
+		this.persistent = persistent;
+	}
+
+	public MemoryResultCache getMemoryCache() {
+		return memory;
+	}
+
+	public ResultCache getPersistentCache() {
+		return persistent;
+	}
+
+	public String lookupText(CacheKey key) throws Exception {
+		String text = memory.lookupText(key);
+		if (text == null && persistent != null) {
+			text = persistent.lookupText(key);
+			if (text != null) {
+				memory.insertText(key, text);
+			}
+		}
+		return text;
+	}
+
+	public CachedAudio lookupAudio(CacheKey key) throws Exception {
+		CachedAudio audio = memory.lookupAudio(key);
+		if (audio == null && persistent != null) {
+			audio = persistent.lookupAudio(key);
+			if (audio != null) {
+				memory.insertAudio(key, audio);
+			}
+		}
+		return audio;
+	}
+
+	public void insertText(CacheKey key, String outputText) throws Exception {
+		memory.insertText(key, outputText);
+		if (persistent != null) {
+			persistent.insertText(key, outputText);
+		}
+	}
+
+	public void insertAudio(CacheKey key, CachedAudio audio) throws Exception {
+		memory.insertAudio(key, audio);
+		if (persistent != null) {
+			persistent.insertAudio(key, audio);
+		}
+	}
+
+	public void shutdown() throws Exception {
+		logger.info("Memory cache: " + memory.getHits() + " hits, " + memory.getMisses() + " misses, " + memory.getEvictions()
+				+ " evictions");
+		memory.shutdown();
+		if (persistent != null) {
+			persistent.shutdown();
+		}
+	}
+}
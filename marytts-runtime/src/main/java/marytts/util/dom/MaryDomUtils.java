@@ -36,6 +36,7 @@ import marytts.util.MaryUtils;
 import org.w3c.dom.DOMException;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
+import org.w3c.dom.Node;
 import org.w3c.dom.Text;
 import org.w3c.dom.traversal.DocumentTraversal;
 import org.w3c.dom.traversal.NodeFilter;
@@ -163,6 +164,49 @@ public class MaryDomUtils extends DomUtils {
 		return boundary;
 	}
 
+	/**
+	 * Split a MaryXML document after its first sentence, i.e. before the second &lt;s&gt; element. Both parts keep the elements
+	 * enclosing the split point, such as paragraphs, voice or prosody elements; anything between the two sentences, such as a
+	 * boundary, goes with the first part.
+	 * 
+	 * @param doc
+	 *            a MaryXML document of type TOKENS or later, i.e. with sentences; it is not modified.
+	 * @return the first sentence and the rest, as two new documents; or null if the document has fewer than two sentences, or no
+	 *         text after its first sentence.
+	 */
+	public static Document[] splitAfterFirstSentence(Document doc) {
+		if (doc.getElementsByTagName(MaryXML.SENTENCE).getLength() < 2) {
+			return null;
+		}
+		Document first = (Document) doc.cloneNode(true);
+		removeFrom(first.getElementsByTagName(MaryXML.SENTENCE).item(1));
+		Document rest = (Document) doc.cloneNode(true);
+		removeBefore(rest.getElementsByTagName(MaryXML.SENTENCE).item(1));
+		if (getPlainTextBelow(rest.getDocumentElement()).trim().equals("")) {
+			return null;
+		}
+		return new Document[] { first, rest };
+	}
+
+	/* remove node and everything following it in document order, except its ancestors */
+	private static void removeFrom(Node node) {
+		for (Node n = node; n.getParentNode().getNodeType() != Node.DOCUMENT_NODE; n = n.getParentNode()) {
+			while (n.getNextSibling() != null) {
+				n.getParentNode().removeChild(n.getNextSibling());
+			}
+		}
+		node.getParentNode().removeChild(node);
+	}
+
+	/* remove everything preceding node in document order, except its ancestors */
+	private static void removeBefore(Node node) {
+		for (Node n = node; n.getParentNode().getNodeType() != Node.DOCUMENT_NODE; n = n.getParentNode()) {
+			while (n.getPreviousSibling() != null) {
+				n.getParentNode().removeChild(n.getPreviousSibling());
+			}
+		}
+	}
+
 	/**
 	 * Try to determine the locale of a document by looking at the xml:lang attribute of the document element.
 	 * 
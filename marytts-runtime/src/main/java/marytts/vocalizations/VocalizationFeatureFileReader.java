@@ -49,7 +49,7 @@ public class VocalizationFeatureFileReader extends marytts.unitselection.data.Fe
 			throw new MaryConfigurationException("File [" + fileName + "] is not a valid Mary listener feature file.");
 		}
 		featureDefinition = new FeatureDefinition(dis);
-		int numberOfUnits = dis.readInt();
+		numberOfUnits = dis.readInt();
 		featureVectors = new FeatureVector[numberOfUnits];
 		for (int i = 0; i < numberOfUnits; i++) {
 			featureVectors[i] = featureDefinition.readFeatureVector(i, dis);
@@ -72,10 +72,7 @@ public class VocalizationFeatureFileReader extends marytts.unitselection.data.Fe
 		}
 		featureDefinition = new FeatureDefinition(bb);
 		int numberOfUnits = bb.getInt();
-		featureVectors = new FeatureVector[numberOfUnits];
-		for (int i = 0; i < numberOfUnits; i++) {
-			featureVectors[i] = featureDefinition.readFeatureVector(i, bb);
-		}
+		setFeatureData(bb, numberOfUnits);
 	}
 
 	/**
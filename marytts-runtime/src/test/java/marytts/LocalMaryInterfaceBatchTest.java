@@ -0,0 +1,221 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+
+import marytts.LocalMaryInterface.BatchCallback;
+import marytts.LocalMaryInterface.BatchItem;
+import marytts.LocalMaryInterface.BatchProcessor;
+import marytts.exceptions.SynthesisException;
+
+import org.junit.Test;
+
+/**
+ * The batch loop of {@link LocalMaryInterface#generateAudioBatch(Iterator, int, BatchCallback)}, with a processor that stands in
+ * for synthesis, so that no voice is needed.
+ */
+public class LocalMaryInterfaceBatchTest {
+	private static final AudioFormat FORMAT = new AudioFormat(16000, 16, 1, true, false);
+
+	private static List<BatchItem> items(int n) {
+		List<BatchItem> items = new ArrayList<BatchItem>();
+		for (int i = 0; i < n; i++) {
+			items.add(new BatchItem("text " + i, i));
+		}
+		return items;
+	}
+
+	private static AudioInputStream audio() {
+		return new AudioInputStream(new ByteArrayInputStream(new byte[0]), FORMAT, 0);
+	}
+
+	/**
+	 * Remembers the results in the order in which they arrive.
+	 */
+	private static class Results implements BatchCallback {
+		final List<BatchItem> done = Collections.synchronizedList(new ArrayList<BatchItem>());
+		final Map<BatchItem, Object> results = Collections.synchronizedMap(new IdentityHashMap<BatchItem, Object>());
+
+		public void onSuccess(BatchItem item, AudioInputStream audio) {
+			done.add(item);
+			assertTrue(results.put(item, audio) == null);
+		}
+
+		public void onFailure(BatchItem item, SynthesisException e) {
+			done.add(item);
+			assertTrue(results.put(item, e) == null);
+		}
+	}
+
+	/**
+	 * Returns a new stream for each item, and remembers it.
+	 */
+	private static class Synthesiser implements BatchProcessor {
+		final Map<BatchItem, AudioInputStream> audio = Collections
+				.synchronizedMap(new IdentityHashMap<BatchItem, AudioInputStream>());
+
+		public AudioInputStream process(BatchItem item) throws SynthesisException {
+			AudioInputStream ais = audio();
+			audio.put(item, ais);
+			return ais;
+		}
+	}
+
+	@Test
+	public void singleThreadReportsItemsInOrder() throws Exception {
+		List<BatchItem> items = items(20);
+		Results results = new Results();
+		Synthesiser synthesiser = new Synthesiser();
+		LocalMaryInterface.processBatch(items.iterator(), 1, results, synthesiser);
+		assertEquals(items, results.done);
+		for (BatchItem item : items) {
+			assertSame(synthesiser.audio.get(item), results.results.get(item));
+		}
+	}
+
+	@Test
+	public void everyItemIsReportedOnce() throws Exception {
+		List<BatchItem> items = items(200);
+		Results results = new Results();
+		Synthesiser synthesiser = new Synthesiser();
+		LocalMaryInterface.processBatch(items.iterator(), 4, results, synthesiser);
+		assertEquals(items.size(), results.done.size());
+		for (BatchItem item : items) {
+			assertSame(synthesiser.audio.get(item), results.results.get(item));
+		}
+	}
+
+	@Test
+	public void failuresDoNotStopTheBatch() throws Exception {
+		List<BatchItem> items = items(50);
+		final Map<BatchItem, SynthesisException> errors = Collections
+				.synchronizedMap(new IdentityHashMap<BatchItem, SynthesisException>());
+		Results results = new Results() {
+			@Override
+			public void onSuccess(BatchItem item, AudioInputStream audio) {
+				super.onSuccess(item, audio);
+				if ((Integer) item.getUserData() % 5 == 0) {
+					throw new IllegalStateException("callback failure");
+				}
+			}
+		};
+		LocalMaryInterface.processBatch(items.iterator(), 3, results, new BatchProcessor() {
+			public AudioInputStream process(BatchItem item) throws SynthesisException {
+				if ((Integer) item.getUserData() % 2 == 1) {
+					SynthesisException e = new SynthesisException("cannot process " + item.getText());
+					errors.put(item, e);
+					throw e;
+				}
+				return audio();
+			}
+		});
+		assertEquals(items.size(), results.done.size());
+		assertEquals(items.size() / 2, errors.size());
+		for (BatchItem item : items) {
+			Object result = results.results.get(item);
+			if ((Integer) item.getUserData() % 2 == 1) {
+				assertSame(errors.get(item), result);
+			} else {
+				assertTrue(result instanceof AudioInputStream);
+			}
+		}
+	}
+
+	@Test
+	public void itemsAreTakenOnlyAsFastAsTheyAreProcessed() throws Exception {
+		final int numThreads = 2;
+		final AtomicInteger taken = new AtomicInteger();
+		final Iterator<BatchItem> items = new Iterator<BatchItem>() {
+			public boolean hasNext() {
+				return taken.get() < 100;
+			}
+
+			public BatchItem next() {
+				return new BatchItem("text", taken.getAndIncrement());
+			}
+
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+		final CountDownLatch started = new CountDownLatch(numThreads);
+		final CountDownLatch release = new CountDownLatch(1);
+		final AtomicInteger running = new AtomicInteger();
+		final AtomicInteger maxRunning = new AtomicInteger();
+		final Results results = new Results();
+		final BatchProcessor blocking = new BatchProcessor() {
+			public AudioInputStream process(BatchItem item) throws SynthesisException {
+				int now = running.incrementAndGet();
+				synchronized (maxRunning) {
+					maxRunning.set(Math.max(maxRunning.get(), now));
+				}
+				started.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					throw new SynthesisException(e);
+				}
+				running.decrementAndGet();
+				return audio();
+			}
+		};
+		final List<Throwable> failure = Collections.synchronizedList(new ArrayList<Throwable>());
+		Thread batch = new Thread() {
+			@Override
+			public void run() {
+				try {
+					LocalMaryInterface.processBatch(items, numThreads, results, blocking);
+				} catch (Throwable t) {
+					failure.add(t);
+				}
+			}
+		};
+		batch.start();
+		assertTrue(started.await(10, TimeUnit.SECONDS));
+		Thread.sleep(200);
+		// two items being processed, two waiting for a thread, and one waiting for a permit:
+		assertEquals(2 * numThreads + 1, taken.get());
+		assertTrue(results.done.isEmpty());
+		release.countDown();
+		batch.join(10000);
+		assertFalse(batch.isAlive());
+		assertTrue(failure.toString(), failure.isEmpty());
+		assertEquals(100, results.done.size());
+		assertEquals(numThreads, maxRunning.get());
+	}
+}
@@ -0,0 +1,94 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.htsengine;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Tests of the {@link HTSVocoder} methods that need no voice; reusing a vocoder for synthesis is tested with a voice.
+ */
+public class HTSVocoderTest {
+	private static final double ALPHA = 0.42;
+
+	private static double[] lsp(int m) {
+		double[] lsp = new double[m + 1];
+		lsp[0] = 0.5; // gain
+		for (int i = 1; i <= m; i++) {
+			lsp[i] = i / (m + 1.0) * 0.5; // increasing normalised frequencies
+		}
+		return lsp;
+	}
+
+	@Test
+	public void lsp2mgcWorksWithoutVocoding() {
+		int m = 24;
+		double[] expected = new double[m + 1];
+		new HTSVocoder().lsp2mgc(lsp(m), expected, m, ALPHA);
+		for (double c : expected) {
+			assertFalse(Double.isNaN(c) || Double.isInfinite(c));
+		}
+
+		// a vocoder whose work buffers were allocated for a lower order:
+		HTSVocoder vocoder = new HTSVocoder();
+		vocoder.lsp2mgc(lsp(10), new double[11], 10, ALPHA);
+		double[] actual = new double[m + 1];
+		vocoder.lsp2mgc(lsp(m), actual, m, ALPHA);
+		assertArrayEquals(expected, actual, 0);
+	}
+
+	@Test
+	public void poolKeepsAtMostMaxIdleVocoders() {
+		HMMData voice = new HMMData();
+		int n = 2 * HTSVocoder.MAX_IDLE_VOCODERS;
+		Map<HTSVocoder, Boolean> used = new IdentityHashMap<HTSVocoder, Boolean>();
+		List<HTSVocoder> vocoders = new ArrayList<HTSVocoder>();
+		for (int i = 0; i < n; i++) {
+			HTSVocoder vocoder = HTSVocoder.getPooledVocoder(voice);
+			assertFalse(used.containsKey(vocoder));
+			used.put(vocoder, Boolean.TRUE);
+			vocoders.add(vocoder);
+		}
+		for (HTSVocoder vocoder : vocoders) {
+			vocoder.release();
+		}
+
+		// another voice has its own pool:
+		assertFalse(used.containsKey(HTSVocoder.getPooledVocoder(new HMMData())));
+
+		int reused = 0;
+		for (int i = 0; i < n; i++) {
+			if (used.containsKey(HTSVocoder.getPooledVocoder(voice))) {
+				reused++;
+			}
+		}
+		assertEquals(HTSVocoder.MAX_IDLE_VOCODERS, reused);
+		assertTrue(reused < n);
+	}
+}
@@ -0,0 +1,164 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.htsengine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Compares the {@link MLSAFilter} kernels with the filter functions of {@link HTSVocoder}.
+ */
+public class MLSAFilterTest {
+	private static final int M = 25;
+	private static final double ALPHA = 0.42;
+	private static final int FRAME = 80;
+	// long enough for the delay lines to be copied back several times:
+	private static final int NUM_SAMPLES = 5 * MLSAFilter.SLACK + 37;
+
+	@Test
+	public void mlsaDoubleIsIdentical() {
+		double[] expected = referenceMLSA();
+		double[] actual = filter(MLSAFilter.newInstance(0, M, false), 0);
+		for (int i = 0; i < NUM_SAMPLES; i++) {
+			assertEquals("sample " + i, expected[i], actual[i], 0.0);
+		}
+	}
+
+	@Test
+	public void mglsaDoubleIsIdentical() {
+		for (int stage = 1; stage <= 3; stage++) {
+			double[] expected = referenceMGLSA(stage);
+			double[] actual = filter(MLSAFilter.newInstance(stage, M, false), stage);
+			for (int i = 0; i < NUM_SAMPLES; i++) {
+				assertEquals("stage " + stage + ", sample " + i, expected[i], actual[i], 0.0);
+			}
+		}
+	}
+
+	@Test
+	public void mlsaFloatIsClose() {
+		double snr = snr(referenceMLSA(), filter(MLSAFilter.newInstance(0, M, true), 0));
+		assertTrue("SNR " + snr + " dB", snr > 60);
+	}
+
+	@Test
+	public void mglsaFloatIsClose() {
+		double snr = snr(referenceMGLSA(2), filter(MLSAFilter.newInstance(2, M, true), 2));
+		assertTrue("SNR " + snr + " dB", snr > 60);
+	}
+
+	@Test
+	public void resetRestartsFilter() {
+		MLSAFilter f = MLSAFilter.newInstance(0, M, false);
+		double[] first = filter(f, 0);
+		f.reset();
+		double[] second = filter(f, 0);
+		for (int i = 0; i < NUM_SAMPLES; i++) {
+			assertEquals("sample " + i, first[i], second[i], 0.0);
+		}
+	}
+
+	private double[] referenceMLSA() {
+		double[] d = new double[2 * (HTSVocoder.PADEORDER + 1) + (HTSVocoder.PADEORDER + 1) * (M + 1)];
+		int pt2 = 2 * (HTSVocoder.PADEORDER + 1) + HTSVocoder.PADEORDER * (M + 1);
+		int[] pt3 = new int[HTSVocoder.PADEORDER + 1];
+		for (int i = HTSVocoder.PADEORDER; i >= 1; i--) {
+			pt3[i] = 2 * (HTSVocoder.PADEORDER + 1) + (i - 1) * (M + 1);
+		}
+		Signal s = new Signal(0);
+		double[] out = new double[NUM_SAMPLES];
+		for (int i = 0; i < NUM_SAMPLES; i++) {
+			out[i] = HTSVocoder.mlsadf(s.next(i), s.c, M, ALPHA, d, pt2, pt3);
+			s.interpolate();
+		}
+		return out;
+	}
+
+	private double[] referenceMGLSA(int stage) {
+		double[] d = new double[stage * M];
+		Signal s = new Signal(stage);
+		double[] out = new double[NUM_SAMPLES];
+		for (int i = 0; i < NUM_SAMPLES; i++) {
+			out[i] = HTSVocoder.mglsadf(s.next(i), s.c, M - 1, ALPHA, stage, d);
+			s.interpolate();
+		}
+		return out;
+	}
+
+	private double[] filter(MLSAFilter f, int stage) {
+		Signal s = new Signal(stage);
+		double[] out = new double[NUM_SAMPLES];
+		for (int i = 0; i < NUM_SAMPLES; i++) {
+			double x = s.next(i);
+			if (i % FRAME == 0) {
+				f.setCoefficients(s.c, s.cinc);
+			}
+			out[i] = f.filter(x, ALPHA);
+			s.interpolate();
+			f.interpolate();
+		}
+		return out;
+	}
+
+	private static double snr(double[] reference, double[] signal) {
+		double energy = 0;
+		double noise = 0;
+		for (int i = 0; i < reference.length; i++) {
+			energy += reference[i] * reference[i];
+			noise += (reference[i] - signal[i]) * (reference[i] - signal[i]);
+		}
+		return 10 * Math.log10(energy / noise);
+	}
+
+	/**
+	 * Pulse train plus noise as excitation, with filter coefficients interpolated towards a new target in every frame, as in
+	 * {@link HTSVocoder}; the same sequence for every instance.
+	 */
+	private static class Signal {
+		final double[] c = new double[M];
+		final double[] cinc = new double[M];
+		private final Random random = new Random(1234);
+		private final int stage;
+
+		Signal(int stage) {
+			this.stage = stage;
+		}
+
+		double next(int i) {
+			if (i % FRAME == 0) {
+				for (int k = 1; k < M; k++) {
+					cinc[k] = (0.5 * random.nextGaussian() / (k * k) - c[k]) / FRAME;
+				}
+			}
+			double x = (i % 100 == 0 ? 10 : 0) + 0.1 * random.nextGaussian();
+			return stage == 0 ? x * Math.exp(0.1) : x * 0.9;
+		}
+
+		void interpolate() {
+			for (int k = 0; k < M; k++) {
+				c[k] += cinc[k];
+			}
+		}
+	}
+}
@@ -0,0 +1,202 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package marytts.server.http;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+
+import marytts.util.cache.CachedAudio;
+
+import org.apache.http.nio.ContentEncoder;
+import org.apache.http.nio.FileContentEncoder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CachedAudioNHttpEntityTest {
+	private static final AudioFormat FORMAT = new AudioFormat(16000, 16, 1, true, false);
+
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	private static CachedAudio audio(int numBytes) {
+		byte[] samples = new byte[numBytes];
+		for (int i = 0; i < numBytes; i++) {
+			samples[i] = (byte) i;
+		}
+		return new CachedAudio(FORMAT, ByteBuffer.wrap(samples));
+	}
+
+	private static CachedAudioNHttpEntity entity(int numBytes) {
+		return new CachedAudioNHttpEntity(audio(numBytes));
+	}
+
+	private CachedAudio fileAudio(int numBytes) throws Exception {
+		File file = tmp.newFile();
+		audio(numBytes).writeTo(file);
+		return CachedAudio.fromFile(file);
+	}
+
+	private static byte[] written(CachedAudioNHttpEntity entity) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		entity.writeTo(out);
+		return out.toByteArray();
+	}
+
+	/*
+	 * Produce the entity's content as the HTTP server would, calling produceContent until the encoder is completed.
+	 */
+	private static byte[] produce(CachedAudioNHttpEntity entity, ChunkedEncoder encoder) throws Exception {
+		for (int calls = 0; !encoder.isCompleted(); calls++) {
+			assertTrue("content not completed", calls < 10000);
+			entity.produceContent(encoder, null);
+		}
+		entity.finish();
+		return encoder.out.toByteArray();
+	}
+
+	private static byte[] readFully(InputStream in) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		int b;
+		while ((b = in.read()) != -1) { // byte by byte, to cross the header / samples boundary one byte at a time
+			out.write(b);
+		}
+		return out.toByteArray();
+	}
+
+	@Test
+	public void contentEqualsWrittenBytes() throws Exception {
+		CachedAudioNHttpEntity entity = entity(1000);
+		ByteArrayOutputStream written = new ByteArrayOutputStream();
+		entity.writeTo(written);
+		byte[] content = readFully(entity.getContent());
+		assertEquals(entity.getContentLength(), content.length);
+		assertArrayEquals(written.toByteArray(), content);
+		assertEquals("RIFF", new String(content, 0, 4, "ASCII"));
+		assertEquals("data", new String(content, 36, 4, "ASCII"));
+	}
+
+	@Test
+	public void contentIsRepeatable() throws Exception {
+		CachedAudioNHttpEntity entity = entity(10);
+		assertArrayEquals(readFully(entity.getContent()), readFully(entity.getContent()));
+	}
+
+	@Test
+	public void producedContentEqualsWrittenBytes() throws Exception {
+		CachedAudioNHttpEntity entity = entity(1000);
+		byte[] expected = written(entity);
+		// fewer bytes per write than the header, so that the header and the samples are both sent in parts:
+		assertArrayEquals(expected, produce(entity, new ChunkedEncoder(7)));
+		// the entity can be produced again after finish():
+		assertArrayEquals(expected, produce(entity, new ChunkedEncoder(1000)));
+	}
+
+	@Test
+	public void fileSamplesAreTransferredFromTheFile() throws Exception {
+		CachedAudio audio = fileAudio(1000);
+		CachedAudioNHttpEntity entity = new CachedAudioNHttpEntity(audio);
+		ChunkedFileEncoder encoder = new ChunkedFileEncoder(300);
+		assertArrayEquals(written(entity), produce(entity, encoder));
+		assertEquals(audio.getSize(), encoder.transferred);
+		assertEquals(44, encoder.written);
+	}
+
+	@Test
+	public void fileSamplesAreWrittenToOtherEncoders() throws Exception {
+		CachedAudioNHttpEntity entity = new CachedAudioNHttpEntity(fileAudio(1000));
+		assertArrayEquals(written(entity), produce(entity, new ChunkedEncoder(300)));
+	}
+
+	@Test
+	public void sendsOnlyWaveInCachedFormat() {
+		CachedAudio audio = audio(10);
+		assertTrue(CachedAudioNHttpEntity.canSend(audio, new AudioFileFormat(AudioFileFormat.Type.WAVE, FORMAT, 5)));
+		assertFalse(CachedAudioNHttpEntity.canSend(audio, new AudioFileFormat(AudioFileFormat.Type.AU, FORMAT, 5)));
+		assertFalse(CachedAudioNHttpEntity.canSend(audio, new AudioFileFormat(AudioFileFormat.Type.WAVE, new AudioFormat(22050,
+				16, 1, true, false), 5)));
+		AudioFormat bigEndian = new AudioFormat(16000, 16, 1, true, true);
+		assertFalse(CachedAudioNHttpEntity.canSend(new CachedAudio(bigEndian, ByteBuffer.allocate(10)), new AudioFileFormat(
+				AudioFileFormat.Type.WAVE, bigEndian, 5)));
+		assertFalse(CachedAudioNHttpEntity.canSend(null, new AudioFileFormat(AudioFileFormat.Type.WAVE, FORMAT, 5)));
+	}
+
+	/**
+	 * An encoder accepting at most a given number of bytes per call, like a connection whose send buffer is full.
+	 */
+	private static class ChunkedEncoder implements ContentEncoder {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final int chunk;
+		int written;
+		private boolean completed;
+
+		ChunkedEncoder(int chunk) {
+			this.chunk = chunk;
+		}
+
+		public int write(ByteBuffer src) throws IOException {
+			assertFalse(completed);
+			int n = Math.min(chunk, src.remaining());
+			for (int i = 0; i < n; i++) {
+				out.write(src.get());
+			}
+			written += n;
+			return n;
+		}
+
+		public void complete() {
+			completed = true;
+		}
+
+		public boolean isCompleted() {
+			return completed;
+		}
+	}
+
+	private static class ChunkedFileEncoder extends ChunkedEncoder implements FileContentEncoder {
+		long transferred;
+
+		ChunkedFileEncoder(int chunk) {
+			super(chunk);
+		}
+
+		public long transfer(FileChannel src, long position, long count) throws IOException {
+			assertFalse(isCompleted());
+			ByteBuffer buf = ByteBuffer.allocate((int) Math.min(chunk, count));
+			int n = src.read(buf, position);
+			out.write(buf.array(), 0, n);
+			transferred += n;
+			return n;
+		}
+	}
+}
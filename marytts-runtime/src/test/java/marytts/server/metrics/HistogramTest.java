@@ -0,0 +1,88 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package marytts.server.metrics;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class HistogramTest {
+	private static final long MS = 1000000;
+
+	@Test
+	public void emptyHistogram() {
+		Histogram h = new Histogram();
+		assertEquals(0, h.getCount());
+		assertEquals(0, h.getSumNanos());
+		assertArrayEquals(new long[Histogram.BOUNDS.length + 1], h.getCumulativeCounts());
+	}
+
+	@Test
+	public void boundsAreInclusive() {
+		Histogram h = new Histogram();
+		h.observe(0);
+		h.observe(1 * MS); // le 0.001
+		h.observe(1 * MS + 1); // le 0.0025
+		h.observe(10 * MS); // le 0.01
+		long[] cumulative = h.getCumulativeCounts();
+		assertEquals(2, cumulative[0]);
+		assertEquals(3, cumulative[1]);
+		assertEquals(3, cumulative[2]);
+		assertEquals(4, cumulative[3]);
+	}
+
+	@Test
+	public void largeValuesGoToLastBucket() {
+		Histogram h = new Histogram();
+		h.observe(30000 * MS); // le 30
+		h.observe(30000 * MS + 1); // +Inf
+		h.observe(Long.MAX_VALUE / 2);
+		long[] cumulative = h.getCumulativeCounts();
+		assertEquals(0, cumulative[Histogram.BOUNDS.length - 2]);
+		assertEquals(1, cumulative[Histogram.BOUNDS.length - 1]);
+		assertEquals(3, cumulative[Histogram.BOUNDS.length]);
+	}
+
+	@Test
+	public void cumulativeCountsAndSum() {
+		Histogram h = new Histogram();
+		long[] nanos = { 3 * MS, 40 * MS, 40 * MS, 200 * MS, 700 * MS, 3000 * MS };
+		long sum = 0;
+		for (long n : nanos) {
+			h.observe(n);
+			sum += n;
+		}
+		assertEquals(nanos.length, h.getCount());
+		assertEquals(sum, h.getSumNanos());
+		long[] cumulative = h.getCumulativeCounts();
+		for (int i = 0; i < Histogram.BOUNDS.length; i++) {
+			int expected = 0;
+			for (long n : nanos) {
+				if (n <= Histogram.BOUNDS[i] * 1e9) {
+					expected++;
+				}
+			}
+			assertEquals("le " + Histogram.BOUNDS[i], expected, cumulative[i]);
+		}
+		assertEquals(nanos.length, cumulative[Histogram.BOUNDS.length]);
+	}
+}
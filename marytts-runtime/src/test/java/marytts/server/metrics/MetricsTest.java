@@ -0,0 +1,129 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package marytts.server.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import org.junit.Test;
+
+public class MetricsTest {
+	private static final long MS = 1000000;
+
+	private static List<String> lines(Metrics metrics) {
+		return Arrays.asList(metrics.getPrometheusText().split("\n"));
+	}
+
+	private static void assertLine(List<String> lines, String line) {
+		assertTrue("missing: " + line, lines.contains(line));
+	}
+
+	@Test
+	public void moduleHistogram() {
+		Metrics metrics = new Metrics(false);
+		StageMetrics m = metrics.getStage("JPhonemiser", Locale.GERMAN, "bits1-hsmm");
+		m.record(2 * MS, true);
+		m.record(20 * MS, false);
+		m.addOutputBytes(1234);
+		List<String> lines = lines(metrics);
+		String labels = "module=\"JPhonemiser\",locale=\"de\",voice=\"bits1-hsmm\"";
+		assertLine(lines, "# HELP marytts_module_duration_seconds Processing time per module, locale and voice.");
+		assertLine(lines, "# TYPE marytts_module_duration_seconds histogram");
+		assertLine(lines, "marytts_module_duration_seconds_bucket{" + labels + ",le=\"0.001\"} 0");
+		assertLine(lines, "marytts_module_duration_seconds_bucket{" + labels + ",le=\"0.0025\"} 1");
+		assertLine(lines, "marytts_module_duration_seconds_bucket{" + labels + ",le=\"0.025\"} 2");
+		assertLine(lines, "marytts_module_duration_seconds_bucket{" + labels + ",le=\"30\"} 2");
+		assertLine(lines, "marytts_module_duration_seconds_bucket{" + labels + ",le=\"+Inf\"} 2");
+		assertLine(lines, "marytts_module_duration_seconds_sum{" + labels + "} 0.022");
+		assertLine(lines, "marytts_module_duration_seconds_count{" + labels + "} 2");
+		assertLine(lines, "marytts_module_errors_total{" + labels + "} 1");
+		assertLine(lines, "marytts_module_output_bytes_total{" + labels + "} 1234");
+	}
+
+	@Test
+	public void requestsWithoutLocaleOrVoice() {
+		Metrics metrics = new Metrics(false);
+		StageMetrics m = metrics.getStage(Metrics.REQUEST, null, null);
+		m.record(5 * MS, true);
+		m.addInputChars(42);
+		m.addOutputAudioBytes(32000);
+		m.recordTimeToFirstAudio(300 * MS);
+		List<String> lines = lines(metrics);
+		assertLine(lines, "marytts_request_time_to_first_audio_seconds_bucket{locale=\"\",voice=\"\",le=\"0.25\"} 0");
+		assertLine(lines, "marytts_request_time_to_first_audio_seconds_bucket{locale=\"\",voice=\"\",le=\"0.5\"} 1");
+		assertLine(lines, "marytts_request_time_to_first_audio_seconds_count{locale=\"\",voice=\"\"} 1");
+		assertLine(lines, "marytts_request_duration_seconds_count{locale=\"\",voice=\"\"} 1");
+		assertLine(lines, "marytts_request_input_chars_total{locale=\"\",voice=\"\"} 42");
+		assertLine(lines, "marytts_request_output_audio_bytes_total{locale=\"\",voice=\"\"} 32000");
+		for (String line : lines) {
+			assertTrue(line, !line.startsWith("marytts_module_duration_seconds"));
+		}
+	}
+
+	@Test
+	public void labelValuesAreEscaped() {
+		Metrics metrics = new Metrics(false);
+		metrics.getStage("A \"quoted\" module", Locale.US, "back\\slash\nnewline").record(MS, true);
+		metrics.getPhonemiser(new Locale("x\"y")).recordLtsFallback();
+		List<String> lines = lines(metrics);
+		assertLine(lines, "marytts_module_errors_total{module=\"A \\\"quoted\\\" module\",locale=\"en_US\",voice=\"back\\\\slash\\nnewline\"} 0");
+		assertLine(lines, "marytts_phonemiser_lts_fallbacks_total{locale=\"x\\\"y\"} 1");
+	}
+
+	@Test
+	public void unlabelledSamples() {
+		Metrics metrics = new Metrics(false);
+		metrics.recordCacheLookup(true, true);
+		metrics.recordCacheLookup(true, false);
+		metrics.recordCacheLookup(false, false);
+		metrics.recordQueueTime(3 * MS);
+		List<String> lines = lines(metrics);
+		assertLine(lines, "marytts_cache_lookups_total{type=\"text\",result=\"hit\"} 0");
+		assertLine(lines, "marytts_cache_lookups_total{type=\"text\",result=\"miss\"} 1");
+		assertLine(lines, "marytts_cache_lookups_total{type=\"audio\",result=\"hit\"} 1");
+		assertLine(lines, "marytts_cache_lookups_total{type=\"audio\",result=\"miss\"} 1");
+		assertLine(lines, "marytts_queue_wait_seconds_bucket{le=\"0.005\"} 1");
+		assertLine(lines, "marytts_queue_wait_seconds_sum 0.003");
+		assertLine(lines, "marytts_queue_wait_seconds_count 1");
+		assertLine(lines, "marytts_requests_running 0");
+		assertEquals(1.0 / 3, metrics.getCacheHitRate(), 1e-12);
+	}
+
+	@Test
+	public void everyFamilyHasHelpAndType() {
+		Metrics metrics = new Metrics(false);
+		metrics.getStage("Synthesis", Locale.US, "cmu-slt-hsmm").record(MS, true);
+		String previousFamily = null;
+		for (String line : lines(metrics)) {
+			if (line.startsWith("# HELP ")) {
+				previousFamily = line.split(" ")[2];
+			} else if (line.startsWith("# TYPE ")) {
+				assertEquals(line, previousFamily, line.split(" ")[2]);
+			} else {
+				assertTrue(line, line.startsWith(previousFamily));
+			}
+		}
+	}
+}
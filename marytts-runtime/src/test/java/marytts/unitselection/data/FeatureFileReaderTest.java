@@ -0,0 +1,130 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.unitselection.data;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Random;
+
+import marytts.exceptions.MaryConfigurationException;
+import marytts.features.FeatureDefinition;
+import marytts.features.FeatureVector;
+import marytts.util.data.MaryHeader;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that the per-feature accessors of {@link FeatureFileReader} agree with its feature vectors, whether the feature data is
+ * memory-mapped or read into feature vectors on the heap.
+ */
+public class FeatureFileReaderTest {
+	private static final int NUM_UNITS = 25;
+
+	private FeatureDefinition featureDefinition;
+	private FeatureVector[] written;
+	private File file;
+
+	@Before
+	public void setUp() throws IOException {
+		featureDefinition = new FeatureDefinition(new BufferedReader(new StringReader("ByteValuedFeatureProcessors\n"
+				+ "phone 0 a b c\n" + "stressed 0 1\n" + "ShortValuedFeatureProcessors\n" + "position 0 1 2 3 4 5 6 7\n"
+				+ "ContinuousFeatureProcessors\n" + "duration\n" + "f0\n")), false);
+		Random random = new Random(1);
+		written = new FeatureVector[NUM_UNITS];
+		for (int i = 0; i < NUM_UNITS; i++) {
+			written[i] = featureDefinition.toFeatureVector(i,
+					new byte[] { (byte) random.nextInt(4), (byte) random.nextInt(2) },
+					new short[] { (short) random.nextInt(8) },
+					new float[] { random.nextFloat(), i % 5 == 0 ? Float.NaN : 100 + 200 * random.nextFloat() });
+		}
+		file = File.createTempFile("features", ".mry");
+		file.deleteOnExit();
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		new MaryHeader(MaryHeader.UNITFEATS).writeTo(out);
+		featureDefinition.writeBinaryTo(out);
+		out.writeInt(NUM_UNITS);
+		for (FeatureVector fv : written) {
+			fv.writeTo(out);
+		}
+		out.close();
+	}
+
+	private void assertAccessorsAgree(FeatureFileReader reader) {
+		assertEquals(NUM_UNITS, reader.getNumberOfUnits());
+		int nBytes = featureDefinition.getNumberOfByteFeatures();
+		int nDiscrete = nBytes + featureDefinition.getNumberOfShortFeatures();
+		for (int u = 0; u < NUM_UNITS; u++) {
+			FeatureVector fv = reader.getFeatureVector(u);
+			assertSame(fv, reader.getFeatureVector(u));
+			for (int i = 0; i < featureDefinition.getNumberOfFeatures(); i++) {
+				String message = "unit " + u + ", feature " + i;
+				if (i < nBytes) {
+					assertEquals(message, written[u].getByteFeature(i), reader.getByteFeature(u, i));
+					assertEquals(message, fv.getByteFeature(i), reader.getByteFeature(u, i));
+					assertEquals(message, fv.getFeatureAsInt(i), reader.getFeatureAsInt(u, i));
+				} else if (i < nDiscrete) {
+					assertEquals(message, written[u].getShortFeature(i), reader.getShortFeature(u, i));
+					assertEquals(message, fv.getShortFeature(i), reader.getShortFeature(u, i));
+					assertEquals(message, fv.getFeatureAsInt(i), reader.getFeatureAsInt(u, i));
+				} else {
+					assertEquals(message, written[u].getContinuousFeature(i), reader.getContinuousFeature(u, i), 0);
+					assertEquals(message, fv.getContinuousFeature(i), reader.getContinuousFeature(u, i), 0);
+				}
+			}
+		}
+		FeatureVector[] vectors = reader.getFeatureVectors();
+		for (int u = 0; u < NUM_UNITS; u++) {
+			assertSame(reader.getFeatureVector(u), vectors[u]);
+		}
+	}
+
+	@Test
+	public void mappedAccessorsAgreeWithFeatureVectors() throws IOException, MaryConfigurationException {
+		FeatureFileReader reader = new FeatureFileReader(file.getPath());
+		assertNotNull(reader.featureData);
+		assertAccessorsAgree(reader);
+	}
+
+	@Test
+	public void heapAccessorsAgreeWithFeatureVectors() throws IOException, MaryConfigurationException {
+		FeatureFileReader reader = new FeatureFileReader();
+		reader.loadFromStream(file.getPath());
+		assertNull(reader.featureData);
+		assertAccessorsAgree(reader);
+	}
+
+	@Test
+	public void inMemoryAccessorsAgreeWithFeatureVectors() {
+		assertAccessorsAgree(new FeatureFileReader(featureDefinition, written));
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void mappedUnitIndexIsChecked() throws IOException, MaryConfigurationException {
+		new FeatureFileReader(file.getPath()).getFeatureVector(NUM_UNITS);
+	}
+}
@@ -0,0 +1,204 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.unitselection.select;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import marytts.cart.CART;
+import marytts.cart.LeafNode.PdfLeafNode;
+import marytts.exceptions.MaryConfigurationException;
+import marytts.features.FeatureDefinition;
+import marytts.features.FeatureVector;
+import marytts.unitselection.data.DiphoneUnit;
+import marytts.unitselection.data.Unit;
+import marytts.util.data.MaryHeader;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that the batch join cost {@link JoinCostFunction#cost(Target, Unit, Target, Unit[], double[])} gives the same values as
+ * the pairwise cost, for each implementation.
+ */
+public class JoinCostFeaturesTest {
+	private static final int NUM_UNITS = 12;
+	private static final int NUM_FEATURES = 3;
+
+	private File joinFile;
+	private File precompiledFile;
+	private Target t1;
+	private Target t2;
+	private List<Unit> lefts;
+	private Unit[] rights;
+
+	@Before
+	public void setUp() throws IOException {
+		Random random = new Random(1);
+		joinFile = File.createTempFile("joinCostFeatures", ".mry");
+		joinFile.deleteOnExit();
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(joinFile)));
+		new MaryHeader(MaryHeader.JOINFEATS).writeTo(out);
+		out.writeInt(NUM_FEATURES);
+		String[] weightFunctions = { "", "linear", "step 20%" };
+		for (int i = 0; i < NUM_FEATURES; i++) {
+			out.writeFloat(0.5f + i);
+			out.writeUTF(weightFunctions[i]);
+		}
+		out.writeInt(NUM_UNITS);
+		for (int u = 0; u < 2 * NUM_UNITS; u++) { // left and right features of each unit
+			for (int i = 0; i < NUM_FEATURES; i++) {
+				out.writeFloat(u % 7 == 3 && i == 1 ? Float.NaN : 100 * random.nextFloat());
+			}
+		}
+		out.close();
+
+		// precompiled costs, in the list format, for some of the pairs:
+		precompiledFile = File.createTempFile("joinCosts", ".mry");
+		precompiledFile.deleteOnExit();
+		out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(precompiledFile)));
+		new MaryHeader(MaryHeader.PRECOMPUTED_JOINCOSTS).writeTo(out);
+		out.writeInt(NUM_UNITS);
+		for (int left = 0; left < NUM_UNITS; left++) {
+			out.writeInt(left);
+			out.writeInt(NUM_UNITS / 2);
+			for (int right = left % 2; right < NUM_UNITS; right += 2) {
+				out.writeInt(right);
+				out.writeFloat(random.nextFloat());
+			}
+		}
+		out.close();
+
+		t1 = new Target("a", null);
+		t2 = new Target("b", null);
+		lefts = new ArrayList<Unit>();
+		List<Unit> units = new ArrayList<Unit>();
+		for (int u = 0; u < NUM_UNITS; u++) {
+			Unit unit = new Unit(10 * u, u == 5 ? 0 : 10, u);
+			lefts.add(unit);
+			units.add(unit);
+		}
+		for (int u = 0; u + 1 < NUM_UNITS; u += 3) {
+			DiphoneUnit diphone = new DiphoneUnit(lefts.get(u), lefts.get(u + 1));
+			lefts.add(diphone);
+			units.add(diphone);
+		}
+		rights = units.toArray(new Unit[units.size()]);
+	}
+
+	private void assertBatchEqualsSingle(JoinCostFunction jcf) {
+		for (Unit left : lefts) {
+			double[] costs = new double[rights.length];
+			jcf.cost(t1, left, t2, rights, costs);
+			for (int j = 0; j < rights.length; j++) {
+				assertEquals(left + " -> " + rights[j], jcf.cost(t1, left, t2, rights[j]), costs[j], 0);
+			}
+		}
+	}
+
+	@Test
+	public void batchCostEqualsSingleCost() throws IOException, MaryConfigurationException {
+		JoinCostFeatures jcf = new JoinCostFeatures();
+		jcf.load(joinFile.getPath(), null, null, 1);
+		assertBatchEqualsSingle(jcf);
+	}
+
+	@Test
+	public void batchCostEqualsSingleCostWithPrecompiledCosts() throws IOException, MaryConfigurationException {
+		JoinCostFeatures jcf = new JoinCostFeatures();
+		jcf.load(joinFile.getPath(), null, precompiledFile.getPath(), 1);
+		assertBatchEqualsSingle(jcf);
+	}
+
+	@Test
+	public void batchSignalCostEqualsSingleSignalCost() throws IOException, MaryConfigurationException {
+		JoinCostFeatures jcf = new JoinCostFeatures(joinFile.getPath());
+		int[] all = new int[NUM_UNITS];
+		for (int u = 0; u < NUM_UNITS; u++) {
+			all[u] = u;
+		}
+		double[] costs = new double[NUM_UNITS];
+		for (int u1 = 0; u1 < NUM_UNITS; u1++) {
+			jcf.cost(u1, all, costs);
+			for (int u2 = 0; u2 < NUM_UNITS; u2++) {
+				assertEquals(jcf.cost(u1, u2), costs[u2], 0);
+			}
+		}
+	}
+
+	@Test
+	public void precompiledBatchCostEqualsSingleCost() throws IOException, MaryConfigurationException {
+		assertBatchEqualsSingle(new PrecompiledJoinCostReader(precompiledFile.getPath()));
+	}
+
+	@Test
+	public void joinModelBatchCostEqualsSingleCost() throws IOException, MaryConfigurationException {
+		FeatureDefinition featureDefinition = new FeatureDefinition(new BufferedReader(new StringReader(
+				"ByteValuedFeatureProcessors\nphone 0 a b\nShortValuedFeatureProcessors\nContinuousFeatureProcessors\n")), false);
+		t1.setFeatureVector(new FeatureVector(new byte[] { 1 }, new short[0], new float[0], 0));
+		JoinModelCost jmc = new JoinModelCost();
+		jmc.setFeatureDefinition(featureDefinition);
+		jmc.jcf = new JoinCostFeatures(joinFile.getPath());
+		double[] mean = { 1, 2, 3 };
+		double[] variance = { 4, 5, 6 };
+		jmc.joinTree = new CART[] { new CART(new PdfLeafNode(0, mean, variance, 1), featureDefinition) };
+		assertBatchEqualsSingle(jmc);
+	}
+
+	@Test
+	public void unitIndicesMustBeBelowNumberOfUnits() throws IOException, MaryConfigurationException {
+		JoinCostFeatures jcf = new JoinCostFeatures(joinFile.getPath());
+		try {
+			jcf.cost(NUM_UNITS, 0);
+			fail("left index not checked");
+		} catch (RuntimeException e) {
+			// the range check, rather than an ArrayIndexOutOfBoundsException from the feature arrays:
+			assertTrue(e.getMessage(), e.getMessage().contains("is out of range"));
+		}
+		try {
+			jcf.cost(0, NUM_UNITS);
+			fail("right index not checked");
+		} catch (RuntimeException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("is out of range"));
+		}
+		try {
+			jcf.cost(0, new int[] { 0, NUM_UNITS }, new double[2]);
+			fail("batch right index not checked");
+		} catch (RuntimeException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("is out of range"));
+		}
+		try {
+			jcf.getLeftJCF(NUM_UNITS);
+			fail("feature row index not checked");
+		} catch (RuntimeException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("is out of range"));
+		}
+	}
+}
@@ -0,0 +1,129 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.unitselection.select;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+
+import marytts.exceptions.MaryConfigurationException;
+import marytts.util.data.MaryHeader;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Join cost files with invalid unit indices must be rejected when they are loaded.
+ */
+public class PrecompiledJoinCostReaderTest {
+
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	/*
+	 * Write a join cost file in the list format; each row is a left unit index followed by (right unit index, cost) pairs.
+	 */
+	private File writeLists(int[]... rows) throws Exception {
+		File file = tmp.newFile();
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		try {
+			new MaryHeader(MaryHeader.PRECOMPUTED_JOINCOSTS).writeTo(out);
+			out.writeInt(rows.length);
+			for (int[] row : rows) {
+				out.writeInt(row[0]);
+				out.writeInt((row.length - 1) / 2);
+				for (int k = 1; k < row.length; k += 2) {
+					out.writeInt(row[k]);
+					out.writeFloat(row[k + 1]);
+				}
+			}
+		} finally {
+			out.close();
+		}
+		return file;
+	}
+
+	private static void assertRejected(File file) throws Exception {
+		try {
+			new PrecompiledJoinCostReader(file.getPath());
+			fail("loaded invalid join cost file");
+		} catch (MaryConfigurationException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void loadsValidLists() throws Exception {
+		PrecompiledJoinCostReader reader = new PrecompiledJoinCostReader(writeLists(new int[] { 3, 4, 2, 0, 5 }, new int[] { 1 },
+				new int[] { 0, 1, 7 }).getPath());
+		assertEquals(2, reader.cost(3, 4), 0);
+		assertEquals(5, reader.cost(3, 0), 0);
+		assertEquals(7, reader.cost(0, 1), 0);
+		assertEquals(Double.POSITIVE_INFINITY, reader.cost(1, 0), 0);
+		assertEquals(Double.POSITIVE_INFINITY, reader.cost(2, 0), 0);
+		assertEquals(Double.POSITIVE_INFINITY, reader.cost(4, 0), 0);
+	}
+
+	@Test
+	public void rejectsNegativeLeftIndex() throws Exception {
+		assertRejected(writeLists(new int[] { 0, 1, 1 }, new int[] { -1, 1, 1 }));
+	}
+
+	@Test
+	public void rejectsNegativeRightIndex() throws Exception {
+		assertRejected(writeLists(new int[] { 0, 1, 1, -2, 1 }));
+	}
+
+	@Test
+	public void rejectsRepeatedLeftIndex() throws Exception {
+		assertRejected(writeLists(new int[] { 2, 1, 1 }, new int[] { 0, 1, 1 }, new int[] { 2, 3, 1 }));
+	}
+
+	@Test
+	public void rejectsRepeatedRightIndex() throws Exception {
+		assertRejected(writeLists(new int[] { 0, 1, 1, 2, 1, 1, 3 }));
+	}
+
+	@Test
+	public void rejectsDecreasingRowOffsets() throws Exception {
+		File file = tmp.newFile();
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		try {
+			new MaryHeader(MaryHeader.PRECOMPUTED_JOINCOSTS_TABLE).writeTo(out);
+			out.writeInt(2); // units
+			out.writeInt(2); // entries
+			for (int offset : new int[] { 0, 3, 2 }) {
+				out.writeInt(offset);
+			}
+			out.writeInt(0);
+			out.writeInt(1);
+			out.writeFloat(1);
+			out.writeFloat(1);
+		} finally {
+			out.close();
+		}
+		assertRejected(file);
+	}
+}
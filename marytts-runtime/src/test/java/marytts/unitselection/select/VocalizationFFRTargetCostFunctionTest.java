@@ -0,0 +1,107 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.unitselection.select;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Random;
+
+import marytts.exceptions.MaryConfigurationException;
+import marytts.features.FeatureDefinition;
+import marytts.features.FeatureVector;
+import marytts.unitselection.data.Unit;
+import marytts.util.data.MaryHeader;
+import marytts.vocalizations.VocalizationFeatureFileReader;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that the batch target cost of {@link VocalizationFFRTargetCostFunction} gives the same values as the cost per unit.
+ */
+public class VocalizationFFRTargetCostFunctionTest {
+	private static final int NUM_UNITS = 20;
+
+	private FeatureDefinition featureDefinition;
+	private VocalizationFFRTargetCostFunction costFunction;
+	private Random random = new Random(1);
+
+	@Before
+	public void setUp() throws IOException, MaryConfigurationException {
+		featureDefinition = new FeatureDefinition(new BufferedReader(new StringReader("ByteValuedFeatureProcessors\n"
+				+ "1 | name 0 yeah right mhm\n" + "ShortValuedFeatureProcessors\n" + "2 | intonation 0 rise fall\n"
+				+ "ContinuousFeatureProcessors\n" + "3 linear | meaning float\n" + "1 linear | intensity float\n")), true);
+		File file = File.createTempFile("vocalizationFeatures", ".mry");
+		file.deleteOnExit();
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		new MaryHeader(MaryHeader.LISTENERFEATS).writeTo(out);
+		featureDefinition.writeBinaryTo(out);
+		out.writeInt(NUM_UNITS);
+		for (int i = 0; i < NUM_UNITS; i++) {
+			randomFeatureVector(i).writeTo(out);
+		}
+		out.close();
+		costFunction = new VocalizationFFRTargetCostFunction(new VocalizationFeatureFileReader(file.getPath()));
+	}
+
+	private FeatureVector randomFeatureVector(int index) {
+		// missing continuous values are costed differently by the vocalization cost function:
+		float meaning = random.nextInt(4) == 0 ? Float.NaN : 5 * random.nextFloat();
+		float intensity = random.nextInt(4) == 0 ? Float.NaN : random.nextFloat();
+		return featureDefinition.toFeatureVector(index, new byte[] { (byte) random.nextInt(4) },
+				new short[] { (short) random.nextInt(3) }, new float[] { meaning, intensity });
+	}
+
+	@Test
+	public void batchCostEqualsSingleCost() {
+		int[] unitIndices = new int[NUM_UNITS];
+		for (int i = 0; i < NUM_UNITS; i++) {
+			unitIndices[NUM_UNITS - 1 - i] = i;
+		}
+		for (int t = 0; t < 10; t++) {
+			Target target = new Target("vocalization", null);
+			target.setFeatureVector(randomFeatureVector(0));
+			double[] costs = costFunction.cost(target, unitIndices);
+			for (int k = 0; k < NUM_UNITS; k++) {
+				Unit unit = new Unit(0, 1, unitIndices[k]);
+				assertEquals(costFunction.cost(target, unit), costs[k], 0);
+			}
+		}
+	}
+
+	@Test
+	public void unitFeaturesAreMapped() {
+		for (int i = 0; i < NUM_UNITS; i++) {
+			Unit unit = new Unit(0, 1, i);
+			FeatureVector fv = costFunction.getFeatureVector(unit);
+			assertEquals(featureDefinition.getFeatureValueAsString(0, fv.getByteFeature(0)), costFunction.getFeature(unit,
+					"name"));
+			assertEquals(fv.getByteFeature(0), costFunction.getByteFeature(i, 0));
+			assertSame(fv, costFunction.getFeatureVectors()[i]);
+		}
+	}
+}
@@ -0,0 +1,317 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.unitselection.select.viterbi;
+
+import static org.junit.Assert.*;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import marytts.exceptions.MaryConfigurationException;
+import marytts.exceptions.SynthesisException;
+import marytts.unitselection.data.Unit;
+import marytts.unitselection.data.UnitDatabase;
+import marytts.unitselection.select.JoinCostFunction;
+import marytts.unitselection.select.SelectedUnit;
+import marytts.unitselection.select.Target;
+
+import org.junit.Test;
+
+/**
+ * Compares the Viterbi search with the search as it was done with one ViterbiPath object per path, on a small unit database
+ * with random costs.
+ */
+public class ViterbiTest {
+	private static final int NUM_TARGETS = 6;
+	private static final int NUM_CANDIDATES = 8;
+	private static final float W_TARGET_COSTS = 0.7f;
+
+	/**
+	 * A database with NUM_CANDIDATES units for each target, returned in random order, and random target and join costs.
+	 */
+	private static class SyntheticDatabase extends UnitDatabase {
+		final List<Target> targets = new ArrayList<Target>();
+		final double[][] targetCosts = new double[NUM_TARGETS][NUM_CANDIDATES];
+		final int[][] order = new int[NUM_TARGETS][NUM_CANDIDATES];
+
+		SyntheticDatabase(long seed) {
+			Random random = new Random(seed);
+			for (int t = 0; t < NUM_TARGETS; t++) {
+				targets.add(new Target("t" + t, null));
+				List<Integer> shuffled = new ArrayList<Integer>();
+				for (int c = 0; c < NUM_CANDIDATES; c++) {
+					targetCosts[t][c] = random.nextDouble();
+					shuffled.add(c);
+				}
+				Collections.shuffle(shuffled, random);
+				for (int c = 0; c < NUM_CANDIDATES; c++) {
+					order[t][c] = shuffled.get(c);
+				}
+			}
+			final double[][] joinCosts = new double[NUM_TARGETS * NUM_CANDIDATES][NUM_TARGETS * NUM_CANDIDATES];
+			for (int i = 0; i < joinCosts.length; i++) {
+				for (int j = 0; j < joinCosts.length; j++) {
+					joinCosts[i][j] = 2 * random.nextDouble();
+				}
+			}
+			this.joinCostFunction = new JoinCostFunction() {
+				public double cost(Target t1, Unit u1, Target t2, Unit u2) {
+					return joinCosts[u1.index][u2.index];
+				}
+
+				public void cost(Target t1, Unit u1, Target t2, Unit[] u2, double[] costs) {
+					for (int k = 0; k < u2.length; k++) {
+						costs[k] = cost(t1, u1, t2, u2[k]);
+					}
+				}
+
+				public void init(String configPrefix) throws MaryConfigurationException {
+				}
+
+				public void load(String joinFileName, InputStream weightStream, String precompiledCostFileName, float wSignal) {
+				}
+			};
+		}
+
+		@Override
+		public List<ViterbiCandidate> getCandidates(Target target) {
+			int t = targets.indexOf(target);
+			List<ViterbiCandidate> candidates = new ArrayList<ViterbiCandidate>();
+			for (int c : order[t]) {
+				int index = t * NUM_CANDIDATES + c;
+				candidates.add(new ViterbiCandidate(target, new Unit(index, 1, index), targetCosts[t][c]));
+			}
+			return candidates;
+		}
+	}
+
+	private static class OldPath {
+		final ViterbiCandidate candidate;
+		final OldPath previous;
+		final double score;
+
+		OldPath(ViterbiCandidate candidate, OldPath previous, double score) {
+			this.candidate = candidate;
+			this.previous = previous;
+			this.score = score;
+		}
+	}
+
+	/**
+	 * The search as it was before the paths were replaced by back pointers: the paths of each point were kept in a list, in which
+	 * a path replaced by a better one was removed and the better one appended, and the beam extended the first beamSize paths in
+	 * that list to the beamSize candidates with the lowest target costs.
+	 */
+	private static OldPath oldSearch(SyntheticDatabase database, int beamSize) {
+		float wJoinCosts = 1 - W_TARGET_COSTS;
+		JoinCostFunction joinCostFunction = database.getJoinCostFunction();
+		List<OldPath> paths = new ArrayList<OldPath>();
+		paths.add(new OldPath(null, null, 0));
+		for (Target target : database.targets) {
+			List<ViterbiCandidate> candidates = database.getCandidates(target);
+			Collections.sort(candidates);
+			List<OldPath> nextPaths = new ArrayList<OldPath>();
+			Map<ViterbiCandidate, OldPath> bestPaths = new IdentityHashMap<ViterbiCandidate, OldPath>();
+			int nPaths = paths.size();
+			if (beamSize != -1 && beamSize < nPaths) {
+				nPaths = beamSize;
+			}
+			int i = 0;
+			for (OldPath pp : paths) {
+				int j = 0;
+				for (ViterbiCandidate c : candidates) {
+					double joinCost = 0;
+					if (pp.candidate != null) {
+						joinCost = joinCostFunction.cost(pp.candidate.target, pp.candidate.unit, c.target, c.unit);
+					}
+					double cost = joinCost * wJoinCosts + c.targetCost * W_TARGET_COSTS + 0;
+					OldPath np = new OldPath(c, pp, cost + pp.score);
+					OldPath bestPathSoFar = bestPaths.get(c);
+					if (bestPathSoFar == null || np.score < bestPathSoFar.score) {
+						nextPaths.remove(bestPathSoFar);
+						nextPaths.add(np);
+						bestPaths.put(c, np);
+					}
+					if (++j == beamSize)
+						break;
+				}
+				if (++i == nPaths)
+					break;
+			}
+			paths = nextPaths;
+		}
+		OldPath best = null;
+		for (OldPath p : paths) {
+			if (best == null || p.score < best.score) {
+				best = p;
+			}
+		}
+		return best;
+	}
+
+	private static List<Integer> unitIndices(OldPath path) {
+		List<Integer> indices = new ArrayList<Integer>();
+		for (OldPath p = path; p.candidate != null; p = p.previous) {
+			indices.add(0, p.candidate.unit.index);
+		}
+		return indices;
+	}
+
+	private static List<Integer> unitIndices(List<SelectedUnit> selectedUnits) {
+		List<Integer> indices = new ArrayList<Integer>();
+		for (SelectedUnit su : selectedUnits) {
+			indices.add(su.getUnit().index);
+		}
+		return indices;
+	}
+
+	private static Viterbi search(SyntheticDatabase database, int beamSize, double beamWidth) throws SynthesisException {
+		Viterbi viterbi = new Viterbi(database.targets, database, W_TARGET_COSTS, beamSize);
+		viterbi.setBeamWidth(beamWidth);
+		viterbi.apply();
+		return viterbi;
+	}
+
+	private static double bestScore(Viterbi viterbi) {
+		double best = Double.POSITIVE_INFINITY;
+		ViterbiPoint finalPoint = viterbi.lastPoint.previous;
+		for (int j = 0; j < finalPoint.candidates.length; j++) {
+			double score = finalPoint.getScore(j);
+			if (score < best) {
+				best = score;
+			}
+		}
+		return best;
+	}
+
+	private void assertSameAsOldSearch(int beamSize) throws SynthesisException {
+		for (long seed = 1; seed <= 20; seed++) {
+			SyntheticDatabase database = new SyntheticDatabase(seed);
+			OldPath expected = oldSearch(database, beamSize);
+			Viterbi viterbi = search(database, beamSize, Double.POSITIVE_INFINITY);
+			String message = "seed " + seed + ", beam size " + beamSize;
+			assertEquals(message, unitIndices(expected), unitIndices(viterbi.getSelectedUnits()));
+			assertEquals(message, expected.score, bestScore(viterbi), 0);
+		}
+	}
+
+	@Test
+	public void unlimitedSearchGivesOldResult() throws SynthesisException {
+		assertSameAsOldSearch(-1);
+	}
+
+	@Test
+	public void beamSearchGivesOldResult() throws SynthesisException {
+		for (int beamSize : new int[] { 1, 2, 3, 5, NUM_CANDIDATES, NUM_CANDIDATES + 1 }) {
+			assertSameAsOldSearch(beamSize);
+		}
+	}
+
+	@Test
+	public void unlimitedSearchFindsBestPath() throws SynthesisException {
+		SyntheticDatabase database = new SyntheticDatabase(42);
+		// enumerate all NUM_CANDIDATES^NUM_TARGETS unit sequences:
+		List<OldPath> paths = new ArrayList<OldPath>();
+		paths.add(new OldPath(null, null, 0));
+		float wJoinCosts = 1 - W_TARGET_COSTS;
+		for (Target target : database.targets) {
+			List<OldPath> nextPaths = new ArrayList<OldPath>();
+			for (OldPath pp : paths) {
+				for (ViterbiCandidate c : database.getCandidates(target)) {
+					double joinCost = pp.candidate == null ? 0 : database.getJoinCostFunction().cost(pp.candidate.target,
+							pp.candidate.unit, c.target, c.unit);
+					nextPaths.add(new OldPath(c, pp, pp.score + joinCost * wJoinCosts + c.targetCost * W_TARGET_COSTS));
+				}
+			}
+			paths = nextPaths;
+		}
+		OldPath best = paths.get(0);
+		for (OldPath p : paths) {
+			if (p.score < best.score) {
+				best = p;
+			}
+		}
+		Viterbi viterbi = search(database, -1, Double.POSITIVE_INFINITY);
+		assertEquals(unitIndices(best), unitIndices(viterbi.getSelectedUnits()));
+		assertEquals(best.score, bestScore(viterbi), 1e-9);
+	}
+
+	@Test
+	public void wideBeamWidthDoesNotPrune() throws SynthesisException {
+		for (long seed = 1; seed <= 20; seed++) {
+			SyntheticDatabase database = new SyntheticDatabase(seed);
+			Viterbi unlimited = search(database, -1, Double.POSITIVE_INFINITY);
+			// no path can score more than NUM_TARGETS * 2 worse than the best one:
+			Viterbi wide = search(database, 0, 2 * NUM_TARGETS);
+			assertEquals(unitIndices(unlimited.getSelectedUnits()), unitIndices(wide.getSelectedUnits()));
+			assertEquals(bestScore(unlimited), bestScore(wide), 0);
+		}
+	}
+
+	@Test
+	public void zeroBeamWidthExtendsOnlyBestPath() throws SynthesisException {
+		for (long seed = 1; seed <= 20; seed++) {
+			SyntheticDatabase database = new SyntheticDatabase(seed);
+			Viterbi viterbi = search(database, 0, 0);
+			for (ViterbiPoint point = viterbi.firstPoint.next; point.next != null; point = point.next) {
+				int best = -1;
+				for (int i = 0; i < point.previous.candidates.length; i++) {
+					if (best == -1 || point.previous.getScore(i) < point.previous.getScore(best)) {
+						best = i;
+					}
+				}
+				for (int j = 0; j < point.candidates.length; j++) {
+					assertEquals("seed " + seed, best, point.backPointers[j]);
+				}
+			}
+			assertEquals(NUM_TARGETS, viterbi.getSelectedUnits().size());
+			assertTrue(bestScore(viterbi) >= bestScore(search(database, -1, Double.POSITIVE_INFINITY)));
+		}
+	}
+
+	@Test
+	@SuppressWarnings("deprecation")
+	public void deprecatedPathsFollowBackPointers() throws SynthesisException {
+		SyntheticDatabase database = new SyntheticDatabase(7);
+		Viterbi viterbi = search(database, 3, Double.POSITIVE_INFINITY);
+		OldPath expected = oldSearch(database, 3);
+
+		List<ViterbiPath> startPaths = viterbi.firstPoint.getPaths();
+		assertEquals(1, startPaths.size());
+		assertNull(startPaths.get(0).getCandidate());
+
+		List<ViterbiPath> paths = viterbi.lastPoint.getPaths();
+		assertEquals(3, paths.size());
+		Collections.sort(paths);
+		ViterbiPath best = paths.get(0);
+		assertEquals(expected.score, best.getScore(), 0);
+		assertSame(best.getCandidate().getBestPath().getCandidate(), best.getCandidate());
+		List<Integer> indices = new ArrayList<Integer>();
+		for (ViterbiPath p = best; p.getCandidate() != null; p = p.getPrevious()) {
+			indices.add(0, p.getCandidate().getUnit().index);
+		}
+		assertEquals(unitIndices(expected), indices);
+	}
+}
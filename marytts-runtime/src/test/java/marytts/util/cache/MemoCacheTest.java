@@ -0,0 +1,75 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.util.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class MemoCacheTest {
+
+	@Test
+	public void evictsLeastRecentlyUsedEntries() {
+		MemoCache<String, String> c = new MemoCache<String, String>(2, 1);
+		c.put("a", "A");
+		c.put("b", "B");
+		assertEquals("A", c.get("a")); // now "b" is the least recently used
+		c.put("c", "C");
+		assertNull(c.get("b"));
+		assertEquals("A", c.get("a"));
+		assertEquals("C", c.get("c"));
+		assertEquals(2, c.size());
+		assertEquals(1, c.getEvictions());
+		assertEquals(3, c.getHits());
+		assertEquals(1, c.getMisses());
+	}
+
+	@Test
+	public void evictsByWeight() {
+		MemoCache<String, String> c = new MemoCache<String, String>(10, 1);
+		c.put("a", "A", 4);
+		c.put("b", "B", 4);
+		c.put("a", "A", 2); // replaces the entry and its weight; now "b" is the least recently used
+		assertEquals(6, c.getWeight());
+		c.put("c", "C", 4);
+		assertEquals(10, c.getWeight());
+		assertEquals(0, c.getEvictions());
+		c.put("d", "D", 3);
+		assertNull(c.get("b"));
+		assertEquals("A", c.get("a"));
+		assertEquals(9, c.getWeight());
+		assertEquals(1, c.getEvictions());
+		c.put("e", "E", 9);
+		assertEquals("E", c.get("e"));
+		assertEquals(9, c.getWeight());
+		assertEquals(4, c.getEvictions());
+	}
+
+	@Test
+	public void doesNotMemoiseValuesHeavierThanSegment() {
+		MemoCache<String, String> c = new MemoCache<String, String>(10, 2);
+		c.put("a", "A", 1);
+		c.put("b", "B", 6);
+		assertNull(c.get("b"));
+		assertEquals("A", c.get("a"));
+		assertEquals(1, c.getWeight());
+	}
+}
@@ -0,0 +1,197 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package marytts.util.cache;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+
+import marytts.util.MaryCache;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TieredResultCacheTest {
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	private static final AudioFormat FORMAT = new AudioFormat(16000, 16, 1, true, false);
+
+	private static CachedAudio audio(int numBytes) {
+		return new CachedAudio(FORMAT, ByteBuffer.allocate(numBytes));
+	}
+
+	private static byte[] bytes(CachedAudio audio) {
+		ByteBuffer buf = audio.getSamples();
+		byte[] b = new byte[buf.remaining()];
+		buf.get(b);
+		return b;
+	}
+
+	private static CacheKey key(String text) {
+		return CacheKey.create("TEXT", "AUDIO", "en_US", "cmu-slt-hsmm", null, "", "", CacheKey.hashOf(text));
+	}
+
+	@Test
+	public void keysDependOnAllFields() {
+		CacheKey k = key("Hello world");
+		assertEquals(k, key("Hello world"));
+		assertFalse(k.equals(key("Hello world!")));
+		assertFalse(k.equals(CacheKey.create("TEXT", "AUDIO", "en_US", "cmu-slt-hsmm", null, null, "",
+				CacheKey.hashOf("Hello world"))));
+		assertFalse(k.equals(CacheKey.create("TEXT", "AUDIO", "en_US", "cmu-slt-hsm", "m", "", "", CacheKey.hashOf("Hello world"))));
+	}
+
+	@Test
+	public void memoryCacheEvictsLeastRecentlyUsed() {
+		MemoryResultCache c = new MemoryResultCache(1000, 1);
+		c.insertAudio(key("a"), audio(400));
+		c.insertAudio(key("b"), audio(400));
+		assertTrue(c.lookupAudio(key("a")) != null); // now "b" is the least recently used
+		c.insertAudio(key("c"), audio(400));
+		assertNull(c.lookupAudio(key("b")));
+		assertTrue(c.lookupAudio(key("a")) != null);
+		assertTrue(c.lookupAudio(key("c")) != null);
+		assertEquals(1, c.getEvictions());
+		assertTrue(c.getSizeInBytes() <= 1000);
+	}
+
+	@Test
+	public void memoryCacheKeepsTextAndAudioApart() {
+		MemoryResultCache c = new MemoryResultCache(1000, 4);
+		c.insertText(key("a"), "<maryxml/>");
+		assertEquals("<maryxml/>", c.lookupText(key("a")));
+		assertNull(c.lookupAudio(key("a")));
+	}
+
+	@Test
+	public void persistentHitsArePromoted() throws Exception {
+		MaryCache persistent = new MaryCache(tmp.newFile(), true);
+		byte[] samples = new byte[] { 1, 2, 3, 4 };
+		persistent.insertAudio(key("a"), new CachedAudio(FORMAT, ByteBuffer.wrap(samples)));
+		persistent.insertText(key("b"), "two\nlines");
+		MemoryResultCache memory = new MemoryResultCache(1000, 4);
+		TieredResultCache c = new TieredResultCache(memory, persistent);
+		assertArrayEquals(samples, bytes(c.lookupAudio(key("a"))));
+		assertArrayEquals(samples, bytes(memory.lookupAudio(key("a"))));
+		assertEquals("two\nlines", c.lookupText(key("b")));
+		assertNull(c.lookupText(key("c")));
+		c.insertText(key("c"), "three");
+		assertEquals("three", persistent.lookupText(key("c")));
+		c.shutdown();
+	}
+
+	@Test
+	public void fileCacheMapsAudio() throws Exception {
+		FileResultCache c = new FileResultCache(tmp.newFolder(), true);
+		byte[] samples = new byte[] { 1, 2, 3, 4, 5, 6 };
+		c.insertAudio(key("a"), new CachedAudio(FORMAT, ByteBuffer.wrap(samples)));
+		CachedAudio cached = c.lookupAudio(key("a"));
+		assertArrayEquals(samples, bytes(cached));
+		assertTrue(cached.matches(FORMAT));
+		assertEquals(3, cached.getFrameLength());
+		assertEquals(cached.getFile().length(), cached.getSamplesOffset() + samples.length);
+		assertNull(c.lookupAudio(key("b")));
+	}
+
+	@Test
+	public void serialisedAudioRoundTrips() throws Exception {
+		byte[] samples = new byte[] { 1, 2, 3, 4 };
+		CachedAudio copy = CachedAudio.fromByteArray(new CachedAudio(FORMAT, ByteBuffer.wrap(samples)).toByteArray());
+		assertArrayEquals(samples, bytes(copy));
+		assertTrue(copy.matches(FORMAT));
+		AudioInputStream ais = copy.getAudioInputStream();
+		assertEquals(2, ais.getFrameLength());
+	}
+
+	@Test
+	public void fileCacheEvictsLeastRecentlyUsed() throws Exception {
+		File dir = tmp.newFolder();
+		FileResultCache c = new FileResultCache(dir, true, 1000);
+		c.insertAudio(key("a"), audio(400));
+		c.insertAudio(key("b"), audio(400));
+		long entrySize = new File(dir, key("a") + ".pcm").length();
+		assertEquals(2 * entrySize, c.getSizeInBytes());
+		// file times may be coarse, so make "a" and "b" clearly older than any lookup:
+		long now = System.currentTimeMillis();
+		new File(dir, key("a") + ".pcm").setLastModified(now - 20000);
+		new File(dir, key("b") + ".pcm").setLastModified(now - 10000);
+		assertTrue(c.lookupAudio(key("a")) != null); // now "b" is the least recently used
+		c.insertAudio(key("c"), audio(400));
+		assertNull(c.lookupAudio(key("b")));
+		assertTrue(c.lookupAudio(key("a")) != null);
+		assertTrue(c.lookupAudio(key("c")) != null);
+		assertEquals(1, c.getEvictions());
+		assertEquals(2 * entrySize, c.getSizeInBytes());
+	}
+
+	@Test
+	public void fileCacheCountsExistingEntries() throws Exception {
+		File dir = tmp.newFolder();
+		FileResultCache c = new FileResultCache(dir, true);
+		c.insertAudio(key("a"), audio(400));
+		c.insertText(key("b"), "some text");
+		long size = c.getSizeInBytes();
+		assertEquals(new File(dir, key("a") + ".pcm").length() + new File(dir, key("b") + ".txt").length(), size);
+		assertEquals(size, new FileResultCache(dir, false).getSizeInBytes());
+		// reopened with a lower limit, the cache removes entries right away:
+		FileResultCache smaller = new FileResultCache(dir, false, size - 1);
+		assertTrue(smaller.getSizeInBytes() < size - 1);
+		assertEquals(1, smaller.getEvictions());
+		assertEquals(0, new FileResultCache(dir, true).getSizeInBytes());
+	}
+
+	@Test
+	public void fileAudioRoundTrips() throws Exception {
+		for (AudioFormat format : new AudioFormat[] { FORMAT, new AudioFormat(22050, 16, 2, true, true),
+				new AudioFormat(AudioFormat.Encoding.PCM_UNSIGNED, 8000, 8, 1, 1, 8000, false) }) {
+			byte[] samples = new byte[12];
+			for (int i = 0; i < samples.length; i++) {
+				samples[i] = (byte) (i * 7);
+			}
+			File file = tmp.newFile();
+			new CachedAudio(format, ByteBuffer.wrap(samples)).writeTo(file);
+			CachedAudio copy = CachedAudio.fromFile(file);
+			assertArrayEquals(samples, bytes(copy));
+			assertTrue(copy.matches(format));
+			assertEquals(format.getEncoding(), copy.getFormat().getEncoding());
+			assertEquals(format.getFrameSize(), copy.getFormat().getFrameSize());
+			assertEquals(format.getFrameRate(), copy.getFormat().getFrameRate(), 0);
+			assertEquals(file, copy.getFile());
+			assertEquals(file.length(), copy.getSamplesOffset() + samples.length);
+			AudioInputStream ais = copy.getAudioInputStream();
+			assertEquals(samples.length / format.getFrameSize(), ais.getFrameLength());
+			byte[] read = new byte[samples.length];
+			assertEquals(samples.length, ais.read(read));
+			assertArrayEquals(samples, read);
+			assertEquals(-1, ais.read(read));
+		}
+	}
+}
@@ -33,7 +33,7 @@ public abstract class ProducingDoubleDataSource extends BufferedDoubleDataSource
 
 	protected ArrayBlockingQueue<Double> queue = new ArrayBlockingQueue<Double>(1024);
 	private Thread dataProducingThread = null;
-	private boolean hasSentEndOfStream = false;
+	private volatile boolean hasSentEndOfStream = false;
 	private boolean hasReceivedEndOfStream = false;
 
 	protected ProducingDoubleDataSource() {
@@ -86,10 +86,23 @@ public abstract class ProducingDoubleDataSource extends BufferedDoubleDataSource
 		hasSentEndOfStream = true;
 	}
 
+	/**
+	 * Whether there is more data to read. This does not wait for the producer: once it has sent the end of the stream, this
+	 * returns false as soon as all data before it has been read.
+	 * 
+	 * @return true if another call to getData() will return data, or will wait for the producer to produce some.
+	 */
 	@Override
 	public boolean hasMoreData() {
 		checkStarted();
-		return !isAllProductionDataRead() || available() > 0;
+		if (currentlyInBuffer() > 0) {
+			return true;
+		}
+		if (isAllProductionDataRead()) {
+			return false;
+		}
+		// once sent, the end of stream marker is the last item in the queue:
+		return !(hasSentEndOfStream && queue.size() <= 1);
 	}
 
 	@Override
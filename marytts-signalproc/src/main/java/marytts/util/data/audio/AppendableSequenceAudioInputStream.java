@@ -18,6 +18,7 @@ import javax.sound.sampled.AudioSystem;
  */
 public class AppendableSequenceAudioInputStream extends SequenceAudioInputStream {
 	protected boolean doneAppending = false;
+	protected Runnable appendListener;
 
 	/**
 	 * Create a sequence audio input stream to which more AudioInputStreams can be appended after creation. When the currently
@@ -41,24 +42,115 @@ public class AppendableSequenceAudioInputStream extends SequenceAudioInputStream
 	 * @throws IllegalArgumentException
 	 *             if this method is called after doneAppending() was called.
 	 */
-	public synchronized void append(AudioInputStream ais) {
-		if (ais == this)
-			throw new IllegalArgumentException("Cannot append me to myself");
-		if (doneAppending)
-			throw new IllegalArgumentException("Cannot append after doneAppending() was called!");
-		m_audioInputStreamList.add(ais);
-		// System.err.println("Appending audio");
-		notifyAll();
+	public void append(AudioInputStream ais) {
+		Runnable listener;
+		synchronized (this) {
+			if (ais == this)
+				throw new IllegalArgumentException("Cannot append me to myself");
+			if (doneAppending)
+				throw new IllegalArgumentException("Cannot append after doneAppending() was called!");
+			m_audioInputStreamList.add(ais);
+			// System.err.println("Appending audio");
+			notifyAll();
+			listener = appendListener;
+		}
+		if (listener != null) {
+			listener.run();
+		}
 	}
 
 	/**
 	 * Inform this audio input stream not to expect any further calls to append(), and report end-of-stream when all data has been
 	 * read.
 	 */
-	public synchronized void doneAppending() {
-		doneAppending = true;
-		// System.err.println("Done appending");
-		notifyAll();
+	public void doneAppending() {
+		Runnable listener;
+		synchronized (this) {
+			doneAppending = true;
+			// System.err.println("Done appending");
+			notifyAll();
+			listener = appendListener;
+		}
+		if (listener != null) {
+			listener.run();
+		}
+	}
+
+	/**
+	 * Register a callback which is run after each call to append() and doneAppending(), in the thread calling these methods. A
+	 * consumer can use it to fetch new data with {@link #readAvailable(byte[], int, int)} as soon as it is appended, instead of
+	 * waiting for it in read().
+	 * 
+	 * @param listener
+	 *            the callback, or null to remove it
+	 */
+	public synchronized void setAppendListener(Runnable listener) {
+		this.appendListener = listener;
+	}
+
+	/**
+	 * Read the data appended so far, without waiting for more. Of each appended stream, no more is read than its available()
+	 * method reports. When no data is available, a stream is left alone if it is a {@link DDSAudioInputStream} whose audio is
+	 * still being produced (see {@link DDSAudioInputStream#isProducing()}); any other stream is assumed to hold all its data
+	 * already, so that it is read once more to find its end. Sequences of streams are read stream by stream.
+	 * 
+	 * @param buf
+	 *            the buffer into which the data is read
+	 * @param off
+	 *            the start offset in buf
+	 * @param len
+	 *            the maximum number of bytes to read; should be at least one frame
+	 * @return the number of bytes read, a whole number of frames, which is 0 if no data is available right now, or -1 if
+	 *         doneAppending() was called and all data has been read.
+	 * @throws IOException
+	 *             if one of the appended streams cannot be read
+	 */
+	public synchronized int readAvailable(byte[] buf, int off, int len) throws IOException {
+		int frameSize = Math.max(getFormat().getFrameSize(), 1);
+		len -= len % frameSize;
+		if (len <= 0) {
+			return 0;
+		}
+		while (m_nCurrentStream < m_audioInputStreamList.size()) {
+			int n = readAvailable(m_audioInputStreamList.get(m_nCurrentStream), buf, off, len, frameSize);
+			if (n != -1) {
+				return n;
+			}
+			m_nCurrentStream++;
+		}
+		return doneAppending ? -1 : 0;
+	}
+
+	/**
+	 * Read from one of the appended streams without waiting, see {@link #readAvailable(byte[], int, int)}.
+	 * 
+	 * @return the number of bytes read, 0 if none is available now, or -1 at the end of the stream
+	 */
+	private static int readAvailable(AudioInputStream ais, byte[] buf, int off, int len, int frameSize) throws IOException {
+		if (ais instanceof AppendableSequenceAudioInputStream) {
+			return ((AppendableSequenceAudioInputStream) ais).readAvailable(buf, off, len);
+		}
+		if (ais instanceof SequenceAudioInputStream) {
+			SequenceAudioInputStream sequence = (SequenceAudioInputStream) ais;
+			while (sequence.m_nCurrentStream < sequence.m_audioInputStreamList.size()) {
+				int n = readAvailable(sequence.m_audioInputStreamList.get(sequence.m_nCurrentStream), buf, off, len, frameSize);
+				if (n != -1) {
+					return n;
+				}
+				sequence.m_nCurrentStream++;
+			}
+			return -1;
+		}
+		int available = Math.min(ais.available(), len);
+		available -= available % frameSize;
+		if (available > 0) {
+			return ais.read(buf, off, available);
+		}
+		if (ais instanceof DDSAudioInputStream && ((DDSAudioInputStream) ais).isProducing()) {
+			return 0; // not produced yet
+		}
+		// at the end, so this returns -1 without waiting:
+		return ais.read(buf, off, frameSize);
 	}
 
 	public synchronized int read() throws IOException {
@@ -27,6 +27,7 @@ import javax.sound.sampled.AudioInputStream;
 import javax.sound.sampled.AudioSystem;
 
 import marytts.util.data.DoubleDataSource;
+import marytts.util.data.ProducingDoubleDataSource;
 
 /**
  * @author Marc Schr&ouml;der An audio input stream that draws its audio data from a DoubleDataSource.
@@ -182,6 +183,16 @@ public class DDSAudioInputStream extends AudioInputStream {
 		return frameSize * source.available();
 	}
 
+	/**
+	 * Whether the audio is still being produced in another thread, so that reading more than {@link #available()} reports would
+	 * wait for it. This is the case while the data source is a {@link ProducingDoubleDataSource} with more data to come.
+	 * 
+	 * @return true if reading may wait for the producer of the data
+	 */
+	public boolean isProducing() {
+		return source instanceof ProducingDoubleDataSource && source.hasMoreData();
+	}
+
 	/**
 	 * Closes this audio input stream and releases any system resources associated with the stream.
 	 * 
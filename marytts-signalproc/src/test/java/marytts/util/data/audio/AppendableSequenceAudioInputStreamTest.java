@@ -0,0 +1,150 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.util.data.audio;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+
+import marytts.util.data.ProducingDoubleDataSource;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AppendableSequenceAudioInputStreamTest {
+	private static final AudioFormat FORMAT = new AudioFormat(16000, 16, 1, true, false);
+
+	private static AudioInputStream audio(int from, int to) {
+		byte[] bytes = new byte[to - from + 1];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte) (from + i);
+		}
+		return new AudioInputStream(new ByteArrayInputStream(bytes), FORMAT, bytes.length / FORMAT.getFrameSize());
+	}
+
+	@Test
+	public void readAvailableDoesNotWait() throws Exception {
+		AppendableSequenceAudioInputStream ais = new AppendableSequenceAudioInputStream(FORMAT, null);
+		byte[] buf = new byte[8];
+		Assert.assertEquals(0, ais.readAvailable(buf, 0, buf.length));
+		ais.append(audio(1, 4));
+		Assert.assertEquals(4, ais.readAvailable(buf, 0, buf.length));
+		Assert.assertEquals(0, ais.readAvailable(buf, 0, buf.length));
+		ais.append(audio(5, 6));
+		ais.append(audio(7, 8));
+		Assert.assertEquals(2, ais.readAvailable(buf, 4, buf.length - 4));
+		Assert.assertEquals(2, ais.readAvailable(buf, 6, buf.length - 6));
+		Assert.assertArrayEquals(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 }, buf);
+		Assert.assertEquals(0, ais.readAvailable(buf, 0, buf.length));
+		ais.doneAppending();
+		Assert.assertEquals(-1, ais.readAvailable(buf, 0, buf.length));
+	}
+
+	@Test(timeout = 10000)
+	public void readAvailableDoesNotWaitForProducer() throws Exception {
+		SlowProducer producer = new SlowProducer(100);
+		producer.start();
+		AppendableSequenceAudioInputStream ais = new AppendableSequenceAudioInputStream(FORMAT, null);
+		ais.append(new SequenceAudioInputStream(FORMAT, Arrays.asList(audio(1, 4), new DDSAudioInputStream(producer, FORMAT))));
+		ais.doneAppending();
+		byte[] buf = new byte[1000];
+		Assert.assertEquals(4, ais.readAvailable(buf, 0, buf.length));
+		int total = 0;
+		while (total < 200) { // the first half, as it is produced
+			int n = ais.readAvailable(buf, 0, buf.length);
+			Assert.assertTrue(n >= 0);
+			total += n;
+		}
+		Assert.assertEquals(200, total);
+		// the producer now waits, and reading must not:
+		Assert.assertEquals(0, ais.readAvailable(buf, 0, buf.length));
+		producer.release.countDown();
+		int n;
+		while ((n = ais.readAvailable(buf, 0, buf.length)) != -1) {
+			total += n;
+		}
+		Assert.assertEquals(400, total);
+	}
+
+	@Test
+	public void emptyStreamEnds() throws Exception {
+		AppendableSequenceAudioInputStream ais = new AppendableSequenceAudioInputStream(FORMAT, null);
+		ais.doneAppending();
+		Assert.assertEquals(-1, ais.readAvailable(new byte[2], 0, 2));
+	}
+
+	@Test
+	public void listenerRunsAfterAppending() throws Exception {
+		final AppendableSequenceAudioInputStream ais = new AppendableSequenceAudioInputStream(FORMAT, null);
+		final AtomicInteger bytesSeen = new AtomicInteger();
+		final AtomicInteger calls = new AtomicInteger();
+		ais.setAppendListener(new Runnable() {
+			public void run() {
+				calls.incrementAndGet();
+				try {
+					int n = ais.readAvailable(new byte[16], 0, 16);
+					if (n > 0) {
+						bytesSeen.addAndGet(n);
+					}
+				} catch (Exception e) {
+					throw new AssertionError(e);
+				}
+			}
+		});
+		ais.append(audio(1, 2));
+		Assert.assertEquals(2, bytesSeen.get());
+		ais.append(audio(3, 6));
+		Assert.assertEquals(6, bytesSeen.get());
+		ais.doneAppending();
+		Assert.assertEquals(3, calls.get());
+	}
+
+	/**
+	 * Produces two halves of its audio, the second one only when released.
+	 */
+	private static class SlowProducer extends ProducingDoubleDataSource {
+		private final int halfLength;
+		final CountDownLatch release = new CountDownLatch(1);
+
+		SlowProducer(int halfLength) {
+			super(2 * halfLength);
+			this.halfLength = halfLength;
+		}
+
+		public void run() {
+			for (int i = 0; i < halfLength; i++) {
+				putOneDataPoint(0.1);
+			}
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			}
+			for (int i = 0; i < halfLength; i++) {
+				putOneDataPoint(0.1);
+			}
+			putEndOfStream();
+		}
+	}
+}
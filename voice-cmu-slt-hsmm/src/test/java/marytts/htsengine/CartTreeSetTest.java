@@ -0,0 +1,139 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.htsengine;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+import marytts.cart.LeafNode.PdfLeafNode;
+import marytts.config.MaryConfig;
+import marytts.htsengine.HMMData.FeatureType;
+import marytts.modules.HTSEngine;
+import marytts.util.cache.MemoCache;
+import marytts.util.io.PropertiesAccessor;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * The pdfs found through the pdf cache of a tree set must be those found by interpreting the trees.
+ */
+public class CartTreeSetTest {
+	private static final String voiceName = "cmu-slt-hsmm";
+
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	private HMMData htsData;
+	private File pfeats;
+
+	@Before
+	public void setUp() throws Exception {
+		Properties props = new Properties();
+		props.putAll(MaryConfig.getVoiceConfig(voiceName).getProperties());
+		props.setProperty("voice." + voiceName + ".pdfCacheEntries", "0");
+		htsData = new HMMData();
+		htsData.initHMMData(new PropertiesAccessor(props), voiceName);
+		pfeats = tmp.newFile("test.pfeats");
+		copyResource("/marytts/voice/CmuSltHsmm/cmu_us_arctic_slt_b0487.pfeats", pfeats);
+	}
+
+	private HTSUttModel utteranceModel() throws Exception {
+		HTSUttModel um = new HTSEngine().processUttFromFile(pfeats.getPath(), htsData);
+		assertTrue(um.getNumUttModel() > 0);
+		return um;
+	}
+
+	@Test
+	public void cachedPdfsAreInterpretedPdfs() throws Exception {
+		CartTreeSet trees = htsData.getCartTreeSet();
+		assertNull(trees.getPdfCache(FeatureType.MGC));
+		HTSUttModel expected = utteranceModel();
+
+		trees.enablePdfCache(100000);
+		MemoCache<?, PdfLeafNode[]> mgcCache = trees.getPdfCache(FeatureType.MGC);
+		assertNotNull(mgcCache);
+		assertSameModels(expected, utteranceModel());
+		long misses = mgcCache.getMisses();
+		assertTrue(misses > 0);
+		assertSameModels(expected, utteranceModel());
+		// all contexts were memoised in the first pass:
+		assertEquals(misses, mgcCache.getMisses());
+		assertTrue(mgcCache.getHits() >= expected.getNumUttModel());
+	}
+
+	@Test
+	public void pdfsAreInterpretedPdfsAfterEviction() throws Exception {
+		HTSUttModel expected = utteranceModel();
+		htsData.getCartTreeSet().enablePdfCache(4);
+		assertSameModels(expected, utteranceModel());
+		assertSameModels(expected, utteranceModel());
+		assertTrue(htsData.getCartTreeSet().getPdfCache(FeatureType.MGC).getEvictions() > 0);
+	}
+
+	private void assertSameModels(HTSUttModel expected, HTSUttModel actual) {
+		int numStates = htsData.getCartTreeSet().getNumStates();
+		assertEquals(expected.getNumUttModel(), actual.getNumUttModel());
+		for (int i = 0; i < expected.getNumUttModel(); i++) {
+			HTSModel e = expected.getUttModel(i);
+			HTSModel a = actual.getUttModel(i);
+			assertEquals(e.getPhoneName(), a.getPhoneName());
+			assertEquals(e.getTotalDur(), a.getTotalDur());
+			for (int state = 0; state < numStates; state++) {
+				assertEquals(e.getDur(state), a.getDur(state));
+				assertEquals(e.getVoiced(state), a.getVoiced(state));
+				for (FeatureType type : new FeatureType[] { FeatureType.LF0, FeatureType.MGC, FeatureType.STR, FeatureType.MAG }) {
+					if (htsData.getCartTreeSet().getTrees(type) == null) {
+						continue;
+					}
+					assertArrayEquals(type + " " + i + "/" + state, e.getMean(type, state), a.getMean(type, state), 0);
+					assertArrayEquals(type + " " + i + "/" + state, e.getVariance(type, state), a.getVariance(type, state), 0);
+				}
+			}
+		}
+	}
+
+	private static void copyResource(String resource, File target) throws Exception {
+		InputStream in = CartTreeSetTest.class.getResourceAsStream(resource);
+		assertNotNull(resource, in);
+		OutputStream out = new FileOutputStream(target);
+		try {
+			byte[] buf = new byte[8192];
+			int n;
+			while ((n = in.read(buf)) != -1) {
+				out.write(buf, 0, n);
+			}
+		} finally {
+			in.close();
+			out.close();
+		}
+	}
+}
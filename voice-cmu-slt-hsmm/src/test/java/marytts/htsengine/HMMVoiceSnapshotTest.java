@@ -0,0 +1,297 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.htsengine;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Properties;
+
+import marytts.cart.CART;
+import marytts.cart.DecisionNode;
+import marytts.cart.LeafNode.PdfLeafNode;
+import marytts.cart.Node;
+import marytts.config.MaryConfig;
+import marytts.exceptions.MaryConfigurationException;
+import marytts.features.FeatureDefinition;
+import marytts.htsengine.HMMData.FeatureType;
+import marytts.modules.HTSEngine;
+import marytts.util.io.PropertiesAccessor;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * A voice loaded from its snapshot must have the same trees, pdfs and GV models as the voice loaded from its tree and pdf files,
+ * and generate the same parameters. A damaged tree in a snapshot must be reported as a configuration error.
+ */
+public class HMMVoiceSnapshotTest {
+	private static final String voiceName = "cmu-slt-hsmm";
+
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	private HMMData loadVoice(String snapshotFile) throws Exception {
+		Properties props = new Properties();
+		props.putAll(MaryConfig.getVoiceConfig(voiceName).getProperties());
+		if (snapshotFile != null) {
+			props.setProperty("voice." + voiceName + ".snapshotFile", snapshotFile);
+		}
+		HMMData htsData = new HMMData();
+		htsData.initHMMData(new PropertiesAccessor(props), voiceName);
+		return htsData;
+	}
+
+	@Test
+	public void snapshotRoundTrips() throws Exception {
+		HMMData original = loadVoice(null);
+		File snapshot = tmp.newFile("cmu-slt-hsmm.snapshot");
+		HMMVoiceSnapshot.write(original, snapshot.getPath());
+		HMMData loaded = loadVoice(snapshot.getPath());
+
+		assertEquals(original.getCartTreeSet().getNumStates(), loaded.getCartTreeSet().getNumStates());
+		assertEquals(original.getCartTreeSet().getLf0Stream(), loaded.getCartTreeSet().getLf0Stream());
+		for (FeatureType type : FeatureType.values()) {
+			CART[] expected = original.getCartTreeSet().getTrees(type);
+			CART[] actual = loaded.getCartTreeSet().getTrees(type);
+			if (expected == null) {
+				assertNull(actual);
+				continue;
+			}
+			assertEquals(type.toString(), expected.length, actual.length);
+			assertEquals(original.getCartTreeSet().getVsize(type), loaded.getCartTreeSet().getVsize(type));
+			for (int i = 0; i < expected.length; i++) {
+				assertSameTree(expected[i].getRootNode(), actual[i].getRootNode());
+			}
+		}
+
+		GVModelSet expectedGV = original.getGVModelSet();
+		GVModelSet actualGV = loaded.getGVModelSet();
+		assertArrayEquals(expectedGV.getGVmeanMgc(), actualGV.getGVmeanMgc(), 0);
+		assertArrayEquals(expectedGV.getGVcovInvMgc(), actualGV.getGVcovInvMgc(), 0);
+		assertArrayEquals(expectedGV.getGVmeanLf0(), actualGV.getGVmeanLf0(), 0);
+		assertArrayEquals(expectedGV.getGVcovInvLf0(), actualGV.getGVcovInvLf0(), 0);
+		assertArrayEquals(expectedGV.getGVmeanStr(), actualGV.getGVmeanStr(), 0);
+		assertArrayEquals(expectedGV.getGVcovInvStr(), actualGV.getGVcovInvStr(), 0);
+		assertArrayEquals(expectedGV.getGVmeanMag(), actualGV.getGVmeanMag(), 0);
+		assertArrayEquals(expectedGV.getGVcovInvMag(), actualGV.getGVcovInvMag(), 0);
+
+		File pfeats = tmp.newFile("test.pfeats");
+		copyResource("/marytts/voice/CmuSltHsmm/cmu_us_arctic_slt_b0487.pfeats", pfeats);
+		HTSParameterGeneration expectedPar = generateParameters(original, pfeats);
+		HTSParameterGeneration actualPar = generateParameters(loaded, pfeats);
+		assertTrue(Arrays.equals(expectedPar.getVoicedArray(), actualPar.getVoicedArray()));
+		assertSameParameters(expectedPar.getMcepPst(), actualPar.getMcepPst());
+		assertSameParameters(expectedPar.getlf0Pst(), actualPar.getlf0Pst());
+		assertSameParameters(expectedPar.getStrPst(), actualPar.getStrPst());
+		assertSameParameters(expectedPar.getMagPst(), actualPar.getMagPst());
+	}
+
+	private static void assertSameTree(Node expected, Node actual) {
+		if (expected == null) {
+			assertNull(actual);
+			return;
+		}
+		assertNotNull(actual);
+		assertSame(expected.getClass(), actual.getClass());
+		if (expected instanceof DecisionNode) {
+			DecisionNode e = (DecisionNode) expected;
+			DecisionNode a = (DecisionNode) actual;
+			assertEquals(e.getDecisionNodeType(), a.getDecisionNodeType());
+			assertEquals(e.getNodeDefinition(), a.getNodeDefinition());
+			assertEquals(e.getNumberOfDaugthers(), a.getNumberOfDaugthers());
+			for (int k = 0; k < e.getNumberOfDaugthers(); k++) {
+				assertSameTree(e.getDaughter(k), a.getDaughter(k));
+			}
+		} else {
+			PdfLeafNode e = (PdfLeafNode) expected;
+			PdfLeafNode a = (PdfLeafNode) actual;
+			assertEquals(e.getVectorSize(), a.getVectorSize());
+			assertArrayEquals(e.getMean(), a.getMean(), 0);
+			assertArrayEquals(e.getVariance(), a.getVariance(), 0);
+			assertEquals(e.getVoicedWeight(), a.getVoicedWeight(), 0);
+		}
+	}
+
+	private static HTSParameterGeneration generateParameters(HMMData htsData, File pfeats) throws Exception {
+		HTSUttModel um = new HTSEngine().processUttFromFile(pfeats.getPath(), htsData);
+		assertTrue(um.getNumUttModel() > 0);
+		HTSParameterGeneration pdf2par = new HTSParameterGeneration();
+		pdf2par.htsMaximumLikelihoodParameterGeneration(um, htsData);
+		return pdf2par;
+	}
+
+	private static void assertSameParameters(HTSPStream expected, HTSPStream actual) {
+		if (expected == null) {
+			assertNull(actual);
+			return;
+		}
+		assertEquals(expected.getT(), actual.getT());
+		for (int t = 0; t < expected.getT(); t++) {
+			assertArrayEquals(expected.getParVec(t), actual.getParVec(t), 0);
+		}
+	}
+
+	private static void copyResource(String resource, File target) throws Exception {
+		InputStream in = HMMVoiceSnapshotTest.class.getResourceAsStream(resource);
+		assertNotNull(resource, in);
+		OutputStream out = new FileOutputStream(target);
+		try {
+			byte[] buf = new byte[8192];
+			int n;
+			while ((n = in.read(buf)) != -1) {
+				out.write(buf, 0, n);
+			}
+		} finally {
+			in.close();
+			out.close();
+		}
+	}
+
+	private static FeatureDefinition treeFeatures() throws Exception {
+		return new FeatureDefinition(new BufferedReader(new StringReader("ByteValuedFeatureProcessors\n" + "phone 0 a e i\n"
+				+ "ShortValuedFeatureProcessors\n" + "syllables 0 1 2\n" + "ContinuousFeatureProcessors\n" + "duration\n")),
+				false);
+	}
+
+	private static PdfLeafNode leaf(int id) {
+		return new PdfLeafNode(id, new double[] { id, 1 }, new double[] { 0.5, 0.25 }, 0.5);
+	}
+
+	/**
+	 * A tree with decision nodes 0 (phone), 1 (duration) and 2 (syllables), and leaves 1 to 5. The daughters of node 0 are
+	 * [-2, 0, -3, 5], those of node 1 [1, 2], and those of node 2 [3, 4].
+	 */
+	private static ByteBuffer writeTree(FeatureDefinition fd) throws Exception {
+		DecisionNode byPhone = new DecisionNode.ByteDecisionNode("phone", 4, fd);
+		DecisionNode byDuration = new DecisionNode.BinaryFloatDecisionNode("duration", 0.1f, fd);
+		byDuration.addDaughter(leaf(1));
+		byDuration.addDaughter(leaf(2));
+		DecisionNode bySyllables = new DecisionNode.BinaryShortDecisionNode("syllables", "1", fd);
+		bySyllables.addDaughter(leaf(3));
+		bySyllables.addDaughter(leaf(4));
+		byPhone.addDaughter(byDuration);
+		byPhone.addDaughter(null);
+		byPhone.addDaughter(bySyllables);
+		byPhone.addDaughter(leaf(5));
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		HMMVoiceSnapshot.writeTree(byPhone, out);
+		out.close();
+		return ByteBuffer.wrap(bytes.toByteArray());
+	}
+
+	// positions of the ints in a tree with three decision nodes:
+	private static final int FEATURE_INDEX = 3 * 4;
+	private static final int NODE_TYPE = 6 * 4;
+	private static final int CHILD_OFFSET = 13 * 4;
+	private static final int CHILD = 16 * 4;
+
+	@Test
+	public void treeRoundTrips() throws Exception {
+		FeatureDefinition fd = treeFeatures();
+		ByteBuffer bb = writeTree(fd);
+		Node tree = HMMVoiceSnapshot.readTree(bb, fd);
+		assertEquals(0, bb.remaining());
+		ByteBuffer again = writeTree(fd);
+		assertTrue(again.equals(writeTreeOf(tree)));
+		assertEquals(-2, again.getInt(CHILD));
+		assertEquals(5, again.getInt(CHILD + 3 * 4));
+	}
+
+	private static ByteBuffer writeTreeOf(Node tree) throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		HMMVoiceSnapshot.writeTree(tree, out);
+		out.close();
+		return ByteBuffer.wrap(bytes.toByteArray());
+	}
+
+	private static void assertInvalid(int position, int value) throws Exception {
+		FeatureDefinition fd = treeFeatures();
+		ByteBuffer bb = writeTree(fd);
+		bb.putInt(position, value);
+		try {
+			HMMVoiceSnapshot.readTree(bb, fd);
+			fail("accepted " + value + " at " + position);
+		} catch (MaryConfigurationException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void invalidNodeTypesAreRejected() throws Exception {
+		assertInvalid(NODE_TYPE, -1);
+		assertInvalid(NODE_TYPE, DecisionNode.Type.values().length);
+		// a byte node on the continuous feature:
+		assertInvalid(NODE_TYPE + 4, DecisionNode.Type.ByteDecisionNode.ordinal());
+		// a binary node with four daughters:
+		assertInvalid(NODE_TYPE, DecisionNode.Type.BinaryByteDecisionNode.ordinal());
+	}
+
+	@Test
+	public void invalidFeatureIndexesAreRejected() throws Exception {
+		assertInvalid(FEATURE_INDEX, -1);
+		assertInvalid(FEATURE_INDEX, 3);
+		// a short node on a byte feature:
+		assertInvalid(FEATURE_INDEX + 8, 0);
+	}
+
+	@Test
+	public void invalidDaughtersAreRejected() throws Exception {
+		// a leaf or decision node that does not exist:
+		assertInvalid(CHILD + 3 * 4, 6);
+		assertInvalid(CHILD, -4);
+		assertInvalid(CHILD, Integer.MIN_VALUE);
+		// a cycle back to the root, and a node which is its own daughter:
+		assertInvalid(CHILD + 4 * 4, -1);
+		assertInvalid(CHILD + 4 * 4, -2);
+		// a leaf with two mothers:
+		assertInvalid(CHILD + 3 * 4, 1);
+		// daughters outside the list of daughters:
+		assertInvalid(CHILD_OFFSET, 1);
+		assertInvalid(CHILD_OFFSET + 4, 9);
+		assertInvalid(CHILD_OFFSET + 8, 3);
+	}
+
+	@Test
+	public void invalidLengthsAreRejected() throws Exception {
+		assertInvalid(0, -1);
+		assertInvalid(4, Integer.MAX_VALUE);
+		assertInvalid(8, 1 << 30);
+		assertInvalid(CHILD - 4, -5);
+	}
+}
@@ -0,0 +1,240 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.htsengine;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+
+import marytts.config.MaryConfig;
+import marytts.modules.HTSEngine;
+import marytts.util.io.PropertiesAccessor;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Parameters generated window by window must be close to those generated for the whole utterance, and parameters generated in
+ * parallel must be the same as those generated sequentially.
+ */
+public class HTSParameterGenerationTest {
+	private static final String voiceName = "cmu-slt-hsmm";
+
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	private HMMData htsData;
+	private File pfeats;
+
+	@Before
+	public void setUp() throws Exception {
+		Properties props = new Properties();
+		props.putAll(MaryConfig.getVoiceConfig(voiceName).getProperties());
+		htsData = new HMMData();
+		htsData.initHMMData(new PropertiesAccessor(props), voiceName);
+		pfeats = tmp.newFile("test.pfeats");
+		copyResource("/marytts/voice/CmuSltHsmm/cmu_us_arctic_slt_b0487.pfeats", pfeats);
+	}
+
+	private HTSUttModel utteranceModel() throws Exception {
+		HTSUttModel um = new HTSEngine().processUttFromFile(pfeats.getPath(), htsData);
+		assertTrue(um.getNumUttModel() > 0);
+		return um;
+	}
+
+	private HTSParameterGeneration generateWhole() throws Exception {
+		HTSParameterGeneration pdf2par = new HTSParameterGeneration();
+		pdf2par.htsMaximumLikelihoodParameterGeneration(utteranceModel(), htsData);
+		return pdf2par;
+	}
+
+	/*
+	 * Global variance is optimised over each window rather than over the utterance, so the windowed parameters are compared
+	 * without it.
+	 */
+	@Test
+	public void windowedGenerationIsCloseToWholeUtterance() throws Exception {
+		htsData.setUseGV(false);
+		HTSParameterGeneration whole = generateWhole();
+
+		HTSParameterGeneration windowed = new HTSParameterGeneration();
+		windowed.htsStreamingParameterGeneration(utteranceModel(), htsData, 200, 40);
+		assertTrue(windowed.isStreaming());
+		assertTrue(Arrays.equals(whole.getVoicedArray(), windowed.getVoicedArray()));
+		assertSameParameters(whole.getlf0Pst(), windowed.getlf0Pst(), 0, whole.getlf0Pst().getT(), 0);
+
+		int total = windowed.getVoicedArray().length;
+		assertEquals(0, windowed.getGeneratedFrames());
+		int windows = 0;
+		while (windowed.getGeneratedFrames() < total) {
+			int before = windowed.getGeneratedFrames();
+			int generated = windowed.generateNextWindow(htsData);
+			assertEquals(generated, windowed.getGeneratedFrames());
+			assertTrue(generated > before);
+			windows++;
+		}
+		assertTrue(windows > 1);
+		assertEquals(total, windowed.generateNextWindow(htsData));
+
+		assertSameParameters(whole.getMcepPst(), windowed.getMcepPst(), 0, total, 0.01);
+		assertSameParameters(whole.getStrPst(), windowed.getStrPst(), 0, total, 0.01);
+		assertSameParameters(whole.getMagPst(), windowed.getMagPst(), 0, total, 0.01);
+	}
+
+	@Test
+	public void windowSetsOnlyTheKeptFrames() throws Exception {
+		htsData.setUseGV(false);
+		HTSParameterGeneration whole = generateWhole();
+
+		HTSParameterGeneration windowed = new HTSParameterGeneration();
+		windowed.htsStreamingParameterGeneration(utteranceModel(), htsData, 200, 40);
+		HTSPStream mcep = windowed.getMcepPst();
+		int from = 300, keepFrom = 340, keepTo = 460, to = 500;
+		assertTrue(to < mcep.getT());
+		mcep.mlpg(htsData, false, null, from, to, keepFrom, keepTo);
+
+		assertSameParameters(whole.getMcepPst(), mcep, keepFrom, keepTo, 0.01);
+		double[] zero = new double[mcep.getOrder()];
+		for (int t = 0; t < mcep.getT(); t++) {
+			if (t < keepFrom || t >= keepTo) {
+				assertArrayEquals(zero, mcep.getParVec(t), 0);
+			}
+		}
+	}
+
+	/*
+	 * With global variance, a window covering the whole utterance is generated as the whole utterance.
+	 */
+	@Test
+	public void windowOverWholeUtteranceIsWholeUtterance() throws Exception {
+		assertTrue(htsData.getUseGV());
+		HTSParameterGeneration whole = generateWhole();
+
+		HTSParameterGeneration windowed = new HTSParameterGeneration();
+		windowed.htsStreamingParameterGeneration(utteranceModel(), htsData, 200, 40);
+		int total = windowed.getVoicedArray().length;
+		windowed.getMcepPst().mlpg(htsData, true, null, 0, total, 0, total);
+		assertSameParameters(whole.getMcepPst(), windowed.getMcepPst(), 0, total, 0);
+	}
+
+	@Test
+	public void parallelGenerationIsSequentialGeneration() throws Exception {
+		HTSParameterGeneration sequential = generateWhole();
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			assertSameParameters(sequential, generateWhole(pool));
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void parallelGenerationInsideForkJoinPoolIsSequentialGeneration() throws Exception {
+		HTSParameterGeneration sequential = generateWhole();
+		final ForkJoinPool pool = new ForkJoinPool(4);
+		ForkJoinPool outer = new ForkJoinPool(2);
+		try {
+			// the dimensions are then forked in the outer pool:
+			HTSParameterGeneration parallel = outer.submit(new Callable<HTSParameterGeneration>() {
+				public HTSParameterGeneration call() throws Exception {
+					return generateWhole(pool);
+				}
+			}).get();
+			assertSameParameters(sequential, parallel);
+		} finally {
+			outer.shutdown();
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void parallelWindowedGenerationIsSequentialWindowedGeneration() throws Exception {
+		HTSParameterGeneration sequential = new HTSParameterGeneration();
+		sequential.htsStreamingParameterGeneration(utteranceModel(), htsData, 200, 40);
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			HTSParameterGeneration parallel = new HTSParameterGeneration();
+			parallel.setForkJoinPool(pool);
+			parallel.htsStreamingParameterGeneration(utteranceModel(), htsData, 200, 40);
+			int total = sequential.getVoicedArray().length;
+			while (sequential.getGeneratedFrames() < total) {
+				assertEquals(sequential.generateNextWindow(htsData), parallel.generateNextWindow(htsData));
+			}
+			assertSameParameters(sequential, parallel);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	private HTSParameterGeneration generateWhole(ForkJoinPool pool) throws Exception {
+		HTSParameterGeneration pdf2par = new HTSParameterGeneration();
+		pdf2par.setForkJoinPool(pool);
+		pdf2par.htsMaximumLikelihoodParameterGeneration(utteranceModel(), htsData);
+		return pdf2par;
+	}
+
+	private static void assertSameParameters(HTSParameterGeneration expected, HTSParameterGeneration actual) {
+		int total = expected.getVoicedArray().length;
+		assertTrue(Arrays.equals(expected.getVoicedArray(), actual.getVoicedArray()));
+		assertSameParameters(expected.getlf0Pst(), actual.getlf0Pst(), 0, expected.getlf0Pst().getT(), 0);
+		assertSameParameters(expected.getMcepPst(), actual.getMcepPst(), 0, total, 0);
+		assertSameParameters(expected.getStrPst(), actual.getStrPst(), 0, total, 0);
+		assertSameParameters(expected.getMagPst(), actual.getMagPst(), 0, total, 0);
+	}
+
+	private static void assertSameParameters(HTSPStream expected, HTSPStream actual, int from, int to, double delta) {
+		if (expected == null) {
+			assertEquals(null, actual);
+			return;
+		}
+		assertEquals(expected.getT(), actual.getT());
+		for (int t = from; t < to; t++) {
+			assertArrayEquals("frame " + t, expected.getParVec(t), actual.getParVec(t), delta);
+		}
+	}
+
+	private static void copyResource(String resource, File target) throws Exception {
+		InputStream in = HTSParameterGenerationTest.class.getResourceAsStream(resource);
+		assertNotNull(resource, in);
+		OutputStream out = new FileOutputStream(target);
+		try {
+			byte[] buf = new byte[8192];
+			int n;
+			while ((n = in.read(buf)) != -1) {
+				out.write(buf, 0, n);
+			}
+		} finally {
+			in.close();
+			out.close();
+		}
+	}
+}
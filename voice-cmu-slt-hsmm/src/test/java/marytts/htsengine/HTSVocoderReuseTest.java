@@ -0,0 +1,102 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.htsengine;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+import marytts.config.MaryConfig;
+import marytts.modules.HTSEngine;
+import marytts.util.io.PropertiesAccessor;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * A pooled vocoder that is used again must produce the same samples as a fresh vocoder.
+ */
+public class HTSVocoderReuseTest {
+	private static final String voiceName = "cmu-slt-hsmm";
+
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	private HMMData loadVoice() throws Exception {
+		Properties props = new Properties();
+		props.putAll(MaryConfig.getVoiceConfig(voiceName).getProperties());
+		HMMData htsData = new HMMData();
+		htsData.initHMMData(new PropertiesAccessor(props), voiceName);
+		return htsData;
+	}
+
+	@Test
+	public void reusedVocoderProducesSameSamples() throws Exception {
+		HMMData htsData = loadVoice();
+		File pfeats = tmp.newFile("test.pfeats");
+		copyResource("/marytts/voice/CmuSltHsmm/cmu_us_arctic_slt_b0487.pfeats", pfeats);
+		HTSUttModel um = new HTSEngine().processUttFromFile(pfeats.getPath(), htsData);
+		assertTrue(um.getNumUttModel() > 0);
+		HTSParameterGeneration pdf2par = new HTSParameterGeneration();
+		pdf2par.htsMaximumLikelihoodParameterGeneration(um, htsData);
+
+		double[] expected = vocode(new HTSVocoder(), pdf2par, htsData);
+		assertTrue(expected.length > 0);
+
+		HTSVocoder vocoder = HTSVocoder.getPooledVocoder(htsData);
+		assertArrayEquals(expected, vocode(vocoder, pdf2par, htsData), 0);
+		assertArrayEquals(expected, vocode(vocoder, pdf2par, htsData), 0);
+		vocoder.release();
+
+		HTSVocoder reused = HTSVocoder.getPooledVocoder(htsData);
+		assertSame(vocoder, reused);
+		assertArrayEquals(expected, vocode(reused, pdf2par, htsData), 0);
+		reused.release();
+	}
+
+	private static double[] vocode(HTSVocoder vocoder, HTSParameterGeneration pdf2par, HMMData htsData) throws Exception {
+		return vocoder.htsMLSAVocoder(pdf2par.getlf0Pst(), pdf2par.getMcepPst(), pdf2par.getStrPst(), pdf2par.getMagPst(),
+				pdf2par.getVoicedArray(), htsData, null);
+	}
+
+	private static void copyResource(String resource, File target) throws Exception {
+		InputStream in = HTSVocoderReuseTest.class.getResourceAsStream(resource);
+		assertNotNull(resource, in);
+		OutputStream out = new FileOutputStream(target);
+		try {
+			byte[] buf = new byte[8192];
+			int n;
+			while ((n = in.read(buf)) != -1) {
+				out.write(buf, 0, n);
+			}
+		} finally {
+			in.close();
+			out.close();
+		}
+	}
+}